@@ -1,12 +1,23 @@
 package com.example;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
+
+import com.example.gateway.AsyncProxyHandler;
+import com.example.gateway.GatewayServerFactory;
+import com.example.gateway.OrderEventsSubscriber;
+import com.example.gateway.RateLimiter;
+import com.example.gateway.ResponseCache;
+import com.example.gateway.RouteTable;
+import com.example.gateway.UpstreamClients;
+import com.example.gateway.UpstreamSettings;
+import com.example.messaging.MessageSchema;
+import com.example.metrics.MetricsRegistry;
+import com.example.metrics.SparkMetrics;
+
+import spark.embeddedserver.EmbeddedServers;
 
 import static spark.Spark.awaitInitialization;
 import static spark.Spark.before;
@@ -14,7 +25,6 @@ import static spark.Spark.get;
 import static spark.Spark.notFound;
 import static spark.Spark.options;
 import static spark.Spark.port;
-import static spark.Spark.post;
 
 /**
  * Hello world!
@@ -26,20 +36,59 @@ public class App
             System.getenv("PAYMENTS_SERVICE_URL") : "http://localhost:8082";
     private static final String ORDERS_SERVICE_URL = System.getenv("ORDERS_SERVICE_URL") != null ?
             System.getenv("ORDERS_SERVICE_URL") : "http://localhost:8081";
-    private static final HttpClient httpClient = HttpClient.newHttpClient();
+
+    private static final String RABBITMQ_HOST = System.getenv("RABBITMQ_HOST") != null ?
+            System.getenv("RABBITMQ_HOST") : "localhost";
+    private static final int RABBITMQ_PORT = System.getenv("RABBITMQ_PORT") != null ?
+            Integer.parseInt(System.getenv("RABBITMQ_PORT")) : 5672;
+
+    // Время жизни закэшированных ответов: заказ сбрасывается по событию смены статуса,
+    // баланс - по депозиту через шлюз и по событию о заказе (оплата списывает средства)
+    static final Duration ORDER_CACHE_TTL = System.getenv("ORDER_CACHE_TTL_MS") != null ?
+            Duration.ofMillis(Long.parseLong(System.getenv("ORDER_CACHE_TTL_MS"))) : Duration.ofSeconds(5);
+    static final Duration BALANCE_CACHE_TTL = System.getenv("BALANCE_CACHE_TTL_MS") != null ?
+            Duration.ofMillis(Long.parseLong(System.getenv("BALANCE_CACHE_TTL_MS"))) : Duration.ofSeconds(2);
+
+    // Сколько заказов пользователь может создать подряд; запас восстанавливается за секунду
+    static final int ORDER_CREATE_RATE_LIMIT = System.getenv("ORDER_CREATE_RATE_LIMIT") != null ?
+            Integer.parseInt(System.getenv("ORDER_CREATE_RATE_LIMIT")) : 5;
+
+    // Сколько панель пользователя ждет баланс и заказы; не успевшая часть приходит как null
+    static final Duration DASHBOARD_BUDGET = System.getenv("DASHBOARD_BUDGET_MS") != null ?
+            Duration.ofMillis(Long.parseLong(System.getenv("DASHBOARD_BUDGET_MS"))) : Duration.ofMillis(500);
+
+    // Имена сервисов в таблице маршрутов
+    static final String PAYMENTS = "payments";
+    static final String ORDERS = "orders";
 
     public static void main( String[] args )
     {
+        // Проксируемые маршруты обслуживает асинхронный обработчик перед маршрутами Spark.
+        // Пул соединений, таймауты, предел одновременных запросов и предохранитель каждого сервиса
+        // задаются переменными ORDERS_* / PAYMENTS_* (или общими UPSTREAM_*)
+        RouteTable routeTable = createRouteTable(PAYMENTS_SERVICE_URL, ORDERS_SERVICE_URL);
+        UpstreamClients upstreams = new UpstreamClients(routeTable,
+            name -> UpstreamSettings.fromEnv(name.toUpperCase(), System.getenv()));
+        int cacheMaxPaths = System.getenv("CACHE_MAX_PATHS") != null ?
+            Integer.parseInt(System.getenv("CACHE_MAX_PATHS")) : ResponseCache.DEFAULT_MAX_PATHS;
+        ResponseCache responseCache = new ResponseCache(cacheMaxPaths);
+        int rateLimitMaxBuckets = System.getenv("RATE_LIMIT_MAX_BUCKETS") != null ?
+            Integer.parseInt(System.getenv("RATE_LIMIT_MAX_BUCKETS")) : RateLimiter.DEFAULT_MAX_BUCKETS;
+        AsyncProxyHandler proxyHandler = new AsyncProxyHandler(upstreams, routeTable, responseCache,
+            new RateLimiter(rateLimitMaxBuckets));
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new GatewayServerFactory(proxyHandler));
+
+        // Смена статуса заказа делает устаревшими закэшированные заказ и баланс пользователя
+        OrderEventsSubscriber orderEvents = new OrderEventsSubscriber(RABBITMQ_HOST, RABBITMQ_PORT)
+            .addListener(event -> invalidateOrder(responseCache, event));
+        orderEvents.start();
+
         port(8080); 
 
         System.out.println( "API Gateway is starting on port 8080" );
 
         // Настройка CORS
-        before((request, response) -> {
-            response.header("Access-Control-Allow-Origin", "*");
-            response.header("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-            response.header("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Requested-With");
-        });
+        before((request, response) -> AsyncProxyHandler.addCorsHeaders(response.raw()));
 
         options("/*", (request, response) -> {
             response.status(200);
@@ -49,124 +98,33 @@ public class App
         // Basic API endpoints
         get("/api/hello", (req, res) -> "Hello from API Gateway!");
 
-        // Account endpoints
-        post("/api/accounts", (req, res) -> {
-            try {
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(PAYMENTS_SERVICE_URL + "/payments/accounts"))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(req.body()))
-                    .build();
-
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                res.status(response.statusCode());
-                res.type("application/json");
-                return response.body();
-            } catch (Exception e) {
-                res.status(500);
-                return "{\"error\":\"" + e.getMessage() + "\"}";
-            }
-        });
-
-        // Проверка баланса
-        get("/api/accounts/:userId/balance", (req, res) -> {
-            try {
-                String userId = req.params(":userId");
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(PAYMENTS_SERVICE_URL + "/payments/accounts/" + userId + "/balance"))
-                    .GET()
-                    .build();
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                res.status(response.statusCode());
-                res.type("application/json");
-                return response.body();
-            } catch (Exception e) {
-                res.status(500);
-                return "{\"error\":\"" + e.getMessage() + "\"}";
-            }
+        // Счетчики кэша ответов: попадания, сэкономленные запросы к сервисам, ответы 304
+        get("/api/gateway/cache", (req, res) -> {
+            res.type("application/json");
+            return responseCache.getStats().toJson();
         });
 
-        // Пополнение счета
-        post("/api/accounts/:userId/deposit", (req, res) -> {
-            try {
-                String userId = req.params(":userId");
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(PAYMENTS_SERVICE_URL + "/payments/accounts/" + userId + "/deposit"))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(req.body()))
-                    .build();
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                res.status(response.statusCode());
-                res.type("application/json");
-                return response.body();
-            } catch (Exception e) {
-                res.status(500);
-                return "{\"error\":\"" + e.getMessage() + "\"}";
-            }
+        // Запросы, получившие ответ одновременного такого же запроса к сервису
+        get("/api/gateway/coalescing", (req, res) -> {
+            res.type("application/json");
+            return "{\"coalescedRequests\":" + proxyHandler.getCoalescedRequests() + "}";
         });
 
-        // Order endpoints
-        // Создание заказа
-        post("/api/orders", (req, res) -> {
-            try {
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(ORDERS_SERVICE_URL + "/api/orders"))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(req.body()))
-                    .build();
-
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                res.status(response.statusCode());
-                res.type("application/json");
-                return response.body();
-            } catch (Exception e) {
-                res.status(500);
-                return "{\"error\":\"" + e.getMessage() + "\"}";
-            }
+        // Счетчики ограничителя частоты: пропущенные запросы, ответы 429, число корзин
+        get("/api/gateway/rate-limits", (req, res) -> {
+            res.type("application/json");
+            return proxyHandler.getRateLimiterStats().toJson();
         });
 
-        // Получение заказов пользователя
-        get("/api/users/:userId/orders", (req, res) -> {
-            try {
-                String userId = req.params(":userId");
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(ORDERS_SERVICE_URL + "/api/users/" + userId + "/orders"))
-                    .GET()
-                    .build();
-
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                res.status(response.statusCode());
-                res.type("application/json");
-                return response.body();
-            } catch (Exception e) {
-                res.status(500);
-                return "{\"error\":\"" + e.getMessage() + "\"}";
-            }
-        });
+        // Метрики в формате Prometheus: время обработки запросов по маршрутам, время ответа сервисов,
+        // запросы в работе, состояние предохранителей и экземпляров, счетчики кэша, объединения запросов
+        // и ограничителя частоты
+        get("/metrics", SparkMetrics.endpoint(MetricsRegistry.getDefault()));
 
-        // Получение деталей заказа
-        get("/api/orders/:orderId", (req, res) -> {
-            try {
-                String orderId = req.params(":orderId");
-                String userId = req.queryParams("userId");
-                
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(ORDERS_SERVICE_URL + "/api/orders/" + orderId + "?userId=" + userId))
-                    .GET()
-                    .build();
-
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                res.status(response.statusCode());
-                res.type("application/json");
-                return response.body();
-            } catch (Exception e) {
-                res.status(500);
-                return "{\"error\":\"" + e.getMessage() + "\"}";
-            }
+        // Счетчики пулов соединений к сервисам: запросы, новые соединения, повторно использованные
+        get("/api/gateway/upstreams", (req, res) -> {
+            res.type("application/json");
+            return upstreams.statsJson();
         });
 
         // Swagger YAML endpoint
@@ -263,4 +221,42 @@ public class App
         awaitInitialization();
         System.out.println("API Gateway is ready at http://localhost:8080/docs");
     }
+
+    /**
+     * Сбросить закэшированные ответы, устаревшие после смены статуса заказа
+     */
+    static void invalidateOrder(ResponseCache cache, MessageSchema.OrderStatusChanged event) {
+        cache.invalidate("/api/orders/" + event.orderId);
+        cache.invalidate("/api/accounts/" + event.userId + "/balance");
+    }
+
+    /**
+     * Маршруты, проксируемые в микросервисы: путь шлюза -> сервис и путь в сервисе.
+     * URL сервиса может содержать несколько экземпляров через запятую. Сервисы хранят счета и заказы
+     * в памяти экземпляра, поэтому запросы пользователя всегда идут в один экземпляр - тот, чья позиция
+     * в списке совпадает с его NODE_ID и разделом пользователя (см. {@link com.example.messaging.Partitions}).
+     */
+    static RouteTable createRouteTable(String paymentsServiceUrl, String ordersServiceUrl) {
+        return new RouteTable()
+            .upstream(PAYMENTS, paymentsServiceUrl)
+            .upstream(ORDERS, ordersServiceUrl)
+            // Account endpoints
+            .route("POST", "/api/accounts",                  PAYMENTS, "/payments/accounts")
+                .sticky()
+            .route("GET",  "/api/accounts/:userId/balance",  PAYMENTS, "/payments/accounts/:userId/balance")
+                .sticky().cacheFor(BALANCE_CACHE_TTL).coalesce()
+            .route("POST", "/api/accounts/:userId/deposit",  PAYMENTS, "/payments/accounts/:userId/deposit")
+                .sticky().invalidates("/api/accounts/:userId/balance")
+            // Order endpoints
+            .route("POST", "/api/orders",                    ORDERS,   "/api/orders")
+                .sticky().rateLimit(ORDER_CREATE_RATE_LIMIT, Duration.ofSeconds(1))
+            .route("GET",  "/api/users/:userId/orders",      ORDERS,   "/api/users/:userId/orders")
+                .sticky().coalesce()
+            .route("GET",  "/api/orders/:orderId",           ORDERS,   "/api/orders/:orderId")
+                .sticky().cacheFor(ORDER_CACHE_TTL).coalesce()
+            // Баланс и заказы пользователя одним запросом
+            .aggregate("/api/users/:userId/dashboard", DASHBOARD_BUDGET)
+                .part("balance", "/api/accounts/:userId/balance")
+                .part("orders",  "/api/users/:userId/orders");
+    }
 }
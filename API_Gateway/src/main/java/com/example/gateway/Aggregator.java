@@ -0,0 +1,191 @@
+package com.example.gateway;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+import com.example.logging.Logger;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Ответ составного маршрута {@link RouteTable#aggregate}: части запрашиваются у сервисов одновременно
+ * и собираются в один JSON {@code {"<часть>": <ответ>, ..., "partial": false}}.
+ * Ответ отправляется, как только готовы все части или истек бюджет маршрута; не успевшие
+ * или неудачные части равны null и перечислены в {@code errors}, а {@code partial} равен true.
+ * Части кэшируемых маршрутов берутся из {@link ResponseCache}, а полученные у сервиса - сохраняются в нем,
+ * даже если пришли после отправки ответа.
+ */
+class Aggregator {
+    private static final Logger logger = Logger.getLogger(Aggregator.class);
+    // Часть больше этого размера считается ошибкой
+    private static final int MAX_PART_BYTES = 1024 * 1024;
+
+    private final UpstreamClients upstreams;
+    private final RouteTable routeTable;
+    private final ResponseCache cache;
+
+    Aggregator(UpstreamClients upstreams, RouteTable routeTable, ResponseCache cache) {
+        this.upstreams = upstreams;
+        this.routeTable = routeTable;
+        this.cache = cache;
+    }
+
+    void handle(RouteTable.Match match, AsyncContext async) {
+        Map<String, String> parts = match.getPartPaths();
+        Exchange exchange = new Exchange(async, parts.keySet().toArray(new String[0]));
+        long budgetMillis = match.getRoute().getBudget().toMillis();
+        exchange.timer = upstreams.getScheduler().schedule(exchange::finish, budgetMillis, TimeUnit.MILLISECONDS);
+        int index = 0;
+        for (String path : parts.values()) {
+            fetch(exchange, index++, path);
+        }
+    }
+
+    private void fetch(Exchange exchange, int index, String path) {
+        RouteTable.Match part = routeTable.match("GET", path);
+        if (part == null || part.getRoute().isAggregate()) {
+            exchange.complete(index, null, "no route for " + path);
+            return;
+        }
+        RouteTable.Route route = part.getRoute();
+        if (route.isCached()) {
+            ResponseCache.CachedResponse hit = cache.get(path, null);
+            if (hit != null) {
+                JsonElement json = parse(hit.getBody());
+                exchange.complete(index, json, json != null ? null : "invalid JSON");
+                return;
+            }
+        }
+        long begin = cache.begin();
+        try {
+            String affinityKey = route.isSticky() ? part.getParam(":userId") : null;
+            upstreams.get(route.getUpstream()).newRequest(part.targetPathAndQuery(null), affinityKey)
+                    .send(new BufferingResponseListener(MAX_PART_BYTES) {
+                        @Override
+                        public void onComplete(Result result) {
+                            if (result.isFailed()) {
+                                Throwable failure = result.getFailure();
+                                exchange.complete(index, null, failure.getMessage() != null
+                                        ? failure.getMessage() : failure.getClass().getSimpleName());
+                                return;
+                            }
+                            Response response = result.getResponse();
+                            byte[] body = getContent();
+                            if (response.getStatus() / 100 != 2) {
+                                exchange.complete(index, null, "status " + response.getStatus());
+                                return;
+                            }
+                            if (route.isCached() && response.getStatus() == HttpServletResponse.SC_OK) {
+                                String contentType = response.getHeaders().get(HttpHeader.CONTENT_TYPE);
+                                cache.put(path, null, begin, response.getStatus(),
+                                        contentType != null ? contentType : "application/json", body, route.getCacheTtl());
+                            }
+                            JsonElement json = parse(body);
+                            exchange.complete(index, json, json != null ? null : "invalid JSON");
+                        }
+                    });
+        } catch (UpstreamUnavailableException e) {
+            exchange.complete(index, null, e.getMessage());
+        }
+    }
+
+    private static JsonElement parse(byte[] body) {
+        try {
+            return JsonParser.parseString(new String(body, StandardCharsets.UTF_8));
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Сбор частей одного ответа; части приходят из разных потоков клиента, поэтому методы синхронизированы
+     */
+    private static final class Exchange {
+        private final AsyncContext async;
+        private final String[] names;
+        private final JsonElement[] results;
+        private final String[] errors;
+        private int remaining;
+        private boolean finished;
+        private Scheduler.Task timer;
+
+        private Exchange(AsyncContext async, String[] names) {
+            this.async = async;
+            this.names = names;
+            this.results = new JsonElement[names.length];
+            this.errors = new String[names.length];
+            this.remaining = names.length;
+        }
+
+        synchronized void complete(int index, JsonElement result, String error) {
+            if (finished) {
+                return;
+            }
+            results[index] = result;
+            errors[index] = error;
+            if (--remaining == 0) {
+                finish();
+            }
+        }
+
+        /**
+         * Отправить ответ из готовых частей - когда готовы все или по истечении бюджета
+         */
+        synchronized void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (timer != null) {
+                timer.cancel();
+            }
+            JsonObject body = new JsonObject();
+            JsonObject partErrors = new JsonObject();
+            boolean anySucceeded = false;
+            for (int i = 0; i < names.length; i++) {
+                if (results[i] != null) {
+                    body.add(names[i], results[i]);
+                    anySucceeded = true;
+                } else {
+                    body.add(names[i], JsonNull.INSTANCE);
+                    partErrors.addProperty(names[i], errors[i] != null ? errors[i] : "timeout");
+                }
+            }
+            body.addProperty("partial", partErrors.size() > 0);
+            if (partErrors.size() > 0) {
+                body.add("errors", partErrors);
+            }
+            write(anySucceeded ? HttpServletResponse.SC_OK : HttpServletResponse.SC_BAD_GATEWAY, body);
+        }
+
+        private void write(int status, JsonObject body) {
+            HttpServletResponse response = (HttpServletResponse) async.getResponse();
+            try {
+                byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+                AsyncProxyHandler.addCorsHeaders(response);
+                response.setStatus(status);
+                response.setContentType("application/json");
+                response.setContentLength(bytes.length);
+                response.getOutputStream().write(bytes);
+            } catch (IOException | IllegalStateException e) {
+                logger.warn("Failed to write aggregated response: {}", e.getMessage());
+            } finally {
+                async.complete();
+            }
+        }
+    }
+}
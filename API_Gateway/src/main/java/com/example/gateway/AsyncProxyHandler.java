@@ -0,0 +1,517 @@
+package com.example.gateway;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.client.util.InputStreamContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.Callback;
+
+import com.example.logging.Logger;
+import com.example.metrics.MetricsRegistry;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Неблокирующий прокси к микросервисам по {@link RouteTable}.
+ * Запрос к сервису отправляется асинхронно через {@link UpstreamClient} этого сервиса, а ответ клиенту
+ * дописывается через {@link AsyncContext}. Поток Jetty освобождается сразу после отправки,
+ * поэтому число одновременных запросов ограничено пулами соединений к сервисам, а не пулом потоков.
+ * Тела запросов и ответов передаются потоком байт, без декодирования в строки и полной буферизации.
+ * Исключение - кэшируемые маршруты и маршруты с объединением запросов: их небольшие ответы
+ * собираются целиком. Ответы кэшируемых маршрутов сохраняются в {@link ResponseCache} и отдаются
+ * с ETag, а на совпавший If-None-Match шлюз отвечает 304. Одинаковые одновременные GET-запросы
+ * к маршрутам с объединением (single-flight) ждут один общий запрос к сервису и получают его ответ.
+ * Если сервис недоступен (разомкнут предохранитель или занято максимальное число одновременных запросов),
+ * шлюз сразу отвечает 503 с Retry-After. Запросы сверх ограничения частоты маршрута ({@link RateLimiter})
+ * получают 429 с Retry-After и до сервиса не доходят. Составные маршруты собирает {@link Aggregator}.
+ * Запросы пользователя к маршрутам с привязкой ({@link RouteTable#sticky}) идут в один экземпляр сервиса.
+ */
+public class AsyncProxyHandler extends AbstractHandler {
+    private static final Logger logger = Logger.getLogger(AsyncProxyHandler.class);
+    private static final String DEFAULT_CONTENT_TYPE = "application/json";
+    private static final int COPY_BUFFER_SIZE = 8192;
+    // Собираемый целиком ответ больше этого размера считается ошибкой
+    private static final int MAX_BUFFERED_BODY_BYTES = 1024 * 1024;
+    // Тело не больше этого размера читается целиком, чтобы найти в нем userId для ограничения частоты и привязки
+    private static final int MAX_USER_ID_BODY_BYTES = 64 * 1024;
+
+    private final UpstreamClients upstreams;
+    private final RouteTable routeTable;
+    private final ResponseCache cache;
+    private final RateLimiter rateLimiter;
+    private final Aggregator aggregator;
+    // Запросы к сервису, выполняющиеся сейчас для маршрутов с объединением: путь и строка запроса -> запрос
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder coalescedRequests = new LongAdder();
+
+    public AsyncProxyHandler(UpstreamClients upstreams, RouteTable routeTable) {
+        this(upstreams, routeTable, new ResponseCache());
+    }
+
+    public AsyncProxyHandler(UpstreamClients upstreams, RouteTable routeTable, ResponseCache cache) {
+        this(upstreams, routeTable, cache, new RateLimiter());
+    }
+
+    public AsyncProxyHandler(UpstreamClients upstreams, RouteTable routeTable, ResponseCache cache,
+                             RateLimiter rateLimiter) {
+        this.upstreams = upstreams;
+        this.routeTable = routeTable;
+        this.cache = cache;
+        this.rateLimiter = rateLimiter;
+        this.aggregator = new Aggregator(upstreams, routeTable, cache);
+        registerMetrics(MetricsRegistry.getDefault());
+        // Клиенты запускаются и останавливаются вместе с сервером
+        addBean(upstreams);
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        RouteTable.Match match = routeTable.match(request.getMethod(), target);
+        if (match == null) {
+            return;
+        }
+        baseRequest.setHandled(true);
+        RouteTable.Route route = match.getRoute();
+        request.setAttribute(RequestMetricsHandler.ROUTE_ATTRIBUTE, route.getPathPattern());
+        byte[] bufferedBody = null;
+        String userId = null;
+        if (route.isRateLimited() || route.isSticky()) {
+            userId = userId(match, request);
+            if (userId == null) {
+                bufferedBody = readSmallBody(request);
+                userId = userIdFromJson(bufferedBody);
+            }
+        }
+        if (route.isRateLimited()) {
+            String key = route.getMethod() + " " + route.getPathPattern() + "|"
+                    + (userId != null ? "user:" + userId : "ip:" + request.getRemoteAddr());
+            long waitNanos = rateLimiter.tryAcquire(key, route.getRateLimitPermits(), route.getRateLimitPeriod());
+            if (waitNanos > 0) {
+                addCorsHeaders(response);
+                response.setHeader("Retry-After", String.valueOf(retryAfterSeconds(waitNanos / 1_000_000)));
+                writeError(response, 429, "Rate limit exceeded");
+                return;
+            }
+        }
+        if (route.isAggregate()) {
+            AsyncContext async = request.startAsync();
+            async.setTimeout(0);
+            aggregator.handle(match, async);
+            return;
+        }
+        if (route.isCached()) {
+            ResponseCache.CachedResponse hit = cache.get(match.getPath(), request.getQueryString());
+            if (hit != null) {
+                writeCached(hit, request, response);
+                return;
+            }
+        }
+
+        AsyncContext async = request.startAsync();
+        // Время ожидания ограничивает клиент сервиса, у AsyncContext своего таймаута нет
+        async.setTimeout(0);
+        Flight flight = route.isCoalesced() ? joinOrStart(match, request, async) : new Flight(null, async);
+        if (flight == null) {
+            return;
+        }
+        Response.Listener listener = route.isCached() || route.isCoalesced()
+                ? new BufferedListener(match, request, flight, cache.begin())
+                : new StreamingListener(match, async);
+        try {
+            send(match, request, bufferedBody, route.isSticky() ? userId : null, listener);
+        } catch (UpstreamUnavailableException e) {
+            reject(flight, e);
+        }
+    }
+
+    /**
+     * Присоединить запрос к такому же выполняющемуся или начать новый
+     * @return новый запрос к сервису или null, если запрос ждет ответа уже выполняющегося
+     */
+    private Flight joinOrStart(RouteTable.Match match, HttpServletRequest request, AsyncContext async) {
+        String key = match.getPath() + '?' + (request.getQueryString() != null ? request.getQueryString() : "");
+        while (true) {
+            Flight flight = new Flight(key, async);
+            Flight current = flights.putIfAbsent(key, flight);
+            if (current == null) {
+                return flight;
+            }
+            if (current.join(async)) {
+                coalescedRequests.increment();
+                return null;
+            }
+            // Запрос только что завершился и уже раздает ответ - начинаем новый
+        }
+    }
+
+    private void send(RouteTable.Match match, HttpServletRequest request, byte[] bufferedBody, String affinityKey,
+                      Response.Listener listener) throws IOException, UpstreamUnavailableException {
+        UpstreamClient upstream = upstreams.get(match.getRoute().getUpstream());
+        // Тело готовится до того, как запрос займет место среди запросов к сервису
+        ContentProvider body = bufferedBody != null ? new BytesContentProvider(bufferedBody) : requestBody(request);
+        org.eclipse.jetty.client.api.Request upstreamRequest = upstream.newRequest(
+                match.targetPathAndQuery(request.getQueryString()), affinityKey);
+        copyRequest(request, body, upstreamRequest);
+        upstreamRequest.send(listener);
+    }
+
+    /**
+     * Сервис недоступен - быстрый ответ 503 всем ждущим клиентам, без обращения к сервису
+     */
+    private void reject(Flight flight, UpstreamUnavailableException e) {
+        if (flight.key != null) {
+            flights.remove(flight.key, flight);
+        }
+        long retryAfterSeconds = retryAfterSeconds(e.getRetryAfter().toMillis());
+        for (AsyncContext async : flight.close()) {
+            HttpServletResponse response = (HttpServletResponse) async.getResponse();
+            try {
+                addCorsHeaders(response);
+                response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+                writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+            } catch (IOException | IllegalStateException writeFailure) {
+                logger.warn("Failed to write rejected response: {}", writeFailure.getMessage());
+            } finally {
+                async.complete();
+            }
+        }
+    }
+
+    /**
+     * Значение Retry-After: целые секунды с округлением вверх, не меньше одной
+     */
+    private static long retryAfterSeconds(long millis) {
+        return Math.max(1, (millis + 999) / 1000);
+    }
+
+    /**
+     * Пользователь из параметра {@code :userId} пути или {@code userId} строки запроса
+     */
+    private static String userId(RouteTable.Match match, HttpServletRequest request) {
+        String userId = match.getParam(":userId");
+        if (userId != null || request.getQueryString() == null) {
+            return userId;
+        }
+        for (String param : request.getQueryString().split("&")) {
+            if (param.startsWith("userId=")) {
+                return URLDecoder.decode(param.substring("userId=".length()), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Прочитать небольшое тело целиком; большое или без длины по-прежнему передается потоком
+     * @return тело или null
+     */
+    private static byte[] readSmallBody(HttpServletRequest request) throws IOException {
+        long contentLength = request.getContentLengthLong();
+        if (contentLength <= 0 || contentLength > MAX_USER_ID_BODY_BYTES) {
+            return null;
+        }
+        return request.getInputStream().readAllBytes();
+    }
+
+    private static String userIdFromJson(byte[] body) {
+        if (body == null) {
+            return null;
+        }
+        try {
+            JsonElement json = JsonParser.parseString(new String(body, StandardCharsets.UTF_8));
+            if (json.isJsonObject() && json.getAsJsonObject().get("userId") instanceof JsonPrimitive) {
+                return json.getAsJsonObject().get("userId").getAsString();
+            }
+        } catch (JsonParseException e) {
+            // Некорректное тело отклонит сервис, пользователь не определен
+        }
+        return null;
+    }
+
+    /**
+     * Счетчики ограничителя частоты запросов
+     */
+    public RateLimiter.Stats getRateLimiterStats() {
+        return rateLimiter.getStats();
+    }
+
+    /**
+     * Счетчики кэша, ограничителя частоты и объединения запросов в реестре метрик ({@code GET /metrics})
+     */
+    private void registerMetrics(MetricsRegistry registry) {
+        cache.registerMetrics(registry);
+        rateLimiter.registerMetrics(registry);
+        registry.counter("gateway_coalesced_requests_total", "Requests answered by a concurrent identical upstream request",
+                coalescedRequests::sum);
+    }
+
+    /**
+     * Сколько запросов получили ответ чужого запроса к сервису вместо своего
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.sum();
+    }
+
+    private static void copyRequest(HttpServletRequest request, ContentProvider body,
+                                    org.eclipse.jetty.client.api.Request upstream) {
+        upstream.method(request.getMethod());
+        String contentType = request.getContentType();
+        if (contentType != null || !"GET".equals(request.getMethod())) {
+            upstream.header(HttpHeader.CONTENT_TYPE, contentType != null ? contentType : DEFAULT_CONTENT_TYPE);
+        }
+        if (body != null) {
+            upstream.content(body);
+        }
+    }
+
+    /**
+     * Тело запроса читается из потока сервлета по мере отправки сервису
+     */
+    private static ContentProvider requestBody(HttpServletRequest request) throws IOException {
+        long contentLength = request.getContentLengthLong();
+        if (contentLength == 0 || (contentLength < 0 && "GET".equals(request.getMethod()))) {
+            return null;
+        }
+        return new InputStreamContentProvider(request.getInputStream()) {
+            @Override
+            public long getLength() {
+                // Известная длина уходит сервису в Content-Length, иначе тело передается chunked
+                return contentLength;
+            }
+        };
+    }
+
+    /**
+     * Успешный изменяющий запрос делает устаревшими закэшированные ответы по связанным путям
+     */
+    private void invalidateAfter(RouteTable.Match match, Result result) {
+        if (!result.isFailed() && result.getResponse().getStatus() / 100 == 2) {
+            for (String path : match.getInvalidatedPaths()) {
+                cache.invalidate(path);
+            }
+        }
+    }
+
+    private void writeCached(ResponseCache.CachedResponse cached, HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        addCorsHeaders(response);
+        response.setHeader("ETag", cached.getEtag());
+        // Браузер хранит ответ, но каждый раз сверяет его со шлюзом по ETag
+        response.setHeader("Cache-Control", "no-cache");
+        if (cached.matches(request.getHeader("If-None-Match"))) {
+            cache.recordNotModified();
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setStatus(cached.getStatus());
+        response.setContentType(cached.getContentType());
+        response.setContentLength(cached.getBody().length);
+        response.getOutputStream().write(cached.getBody());
+    }
+
+    private static void complete(AsyncContext async, HttpServletResponse response, Result result) {
+        try {
+            if (result.isFailed() && !response.isCommitted()) {
+                response.reset();
+                addCorsHeaders(response);
+                writeError(response, result.getFailure());
+            }
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Failed to write proxied response: {}", e.getMessage());
+        } finally {
+            async.complete();
+        }
+    }
+
+    private static void writeError(HttpServletResponse response, Throwable error) throws IOException {
+        Throwable cause = error.getCause() != null ? error.getCause() : error;
+        String message = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+        writeError(response, 500, message);
+    }
+
+    private static void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        message = message.replace("\\", "\\\\").replace("\"", "\\\"");
+        response.setStatus(status);
+        response.setContentType(DEFAULT_CONTENT_TYPE);
+        response.getOutputStream().write(("{\"error\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * CORS-заголовки шлюза - общие для прокси и маршрутов Spark
+     */
+    public static void addCorsHeaders(HttpServletResponse response) {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
+        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Requested-With, If-None-Match");
+        response.setHeader("Access-Control-Expose-Headers", "ETag");
+    }
+
+    /**
+     * Передает ответ сервиса клиенту по мере поступления: заголовки сразу, тело кусками
+     */
+    private final class StreamingListener extends Response.Listener.Adapter {
+        private final RouteTable.Match match;
+        private final AsyncContext async;
+        private final HttpServletResponse response;
+        private final byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+
+        private StreamingListener(RouteTable.Match match, AsyncContext async) {
+            this.match = match;
+            this.async = async;
+            this.response = (HttpServletResponse) async.getResponse();
+        }
+
+        @Override
+        public void onHeaders(Response upstreamResponse) {
+            // Заголовки сервиса получены - начинаем ответ клиенту, тело пойдет следом
+            response.setStatus(upstreamResponse.getStatus());
+            addCorsHeaders(response);
+            String upstreamType = upstreamResponse.getHeaders().get(HttpHeader.CONTENT_TYPE);
+            response.setContentType(upstreamType != null ? upstreamType : DEFAULT_CONTENT_TYPE);
+            long contentLength = upstreamResponse.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString());
+            if (contentLength >= 0) {
+                response.setContentLengthLong(contentLength);
+            }
+        }
+
+        @Override
+        public void onContent(Response upstreamResponse, ByteBuffer content, Callback callback) {
+            try {
+                write(response.getOutputStream(), content);
+                callback.succeeded();
+            } catch (IOException e) {
+                // Клиент шлюза отключился - прерываем обмен с сервисом
+                callback.failed(e);
+            }
+        }
+
+        private void write(ServletOutputStream out, ByteBuffer content) throws IOException {
+            if (content.hasArray()) {
+                out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+                content.position(content.limit());
+                return;
+            }
+            while (content.hasRemaining()) {
+                int length = Math.min(content.remaining(), copyBuffer.length);
+                content.get(copyBuffer, 0, length);
+                out.write(copyBuffer, 0, length);
+            }
+        }
+
+        @Override
+        public void onComplete(Result result) {
+            invalidateAfter(match, result);
+            complete(async, response, result);
+        }
+    }
+
+    /**
+     * Запрос к сервису и клиенты, ожидающие его ответ
+     */
+    private static final class Flight {
+        private final String key;
+        private final List<AsyncContext> waiters = new ArrayList<>(1);
+        private boolean closed;
+
+        private Flight(String key, AsyncContext leader) {
+            this.key = key;
+            waiters.add(leader);
+        }
+
+        /**
+         * Присоединиться к запросу; false, если ответ уже раздается
+         */
+        synchronized boolean join(AsyncContext waiter) {
+            if (closed) {
+                return false;
+            }
+            waiters.add(waiter);
+            return true;
+        }
+
+        synchronized List<AsyncContext> close() {
+            closed = true;
+            return waiters;
+        }
+    }
+
+    /**
+     * Собирает ответ целиком и раздает его всем ожидающим клиентам.
+     * Успешный ответ кэшируемого маршрута сохраняется и отдается с ETag.
+     */
+    private final class BufferedListener extends BufferingResponseListener {
+        private final RouteTable.Match match;
+        private final String queryString;
+        private final Flight flight;
+        private final long begin;
+
+        private BufferedListener(RouteTable.Match match, HttpServletRequest request, Flight flight, long begin) {
+            super(MAX_BUFFERED_BODY_BYTES);
+            this.match = match;
+            this.queryString = request.getQueryString();
+            this.flight = flight;
+            this.begin = begin;
+        }
+
+        @Override
+        public void onComplete(Result result) {
+            if (flight.key != null) {
+                flights.remove(flight.key, flight);
+            }
+            List<AsyncContext> waiters = flight.close();
+
+            ResponseCache.CachedResponse cached = null;
+            Response upstreamResponse = result.getResponse();
+            String contentType = upstreamResponse.getHeaders().get(HttpHeader.CONTENT_TYPE);
+            contentType = contentType != null ? contentType : DEFAULT_CONTENT_TYPE;
+            byte[] body = result.isFailed() ? null : getContent();
+            if (!result.isFailed() && match.getRoute().isCached()
+                    && upstreamResponse.getStatus() == HttpServletResponse.SC_OK) {
+                cached = cache.put(match.getPath(), queryString, begin,
+                        upstreamResponse.getStatus(), contentType, body, match.getRoute().getCacheTtl());
+            }
+
+            for (AsyncContext async : waiters) {
+                HttpServletResponse response = (HttpServletResponse) async.getResponse();
+                if (!result.isFailed()) {
+                    try {
+                        if (cached != null) {
+                            writeCached(cached, (HttpServletRequest) async.getRequest(), response);
+                        } else {
+                            // Ответ некэшируемого маршрута и ошибки сервиса передаются как есть
+                            addCorsHeaders(response);
+                            response.setStatus(upstreamResponse.getStatus());
+                            response.setContentType(contentType);
+                            response.setContentLength(body.length);
+                            response.getOutputStream().write(body);
+                        }
+                    } catch (IOException e) {
+                        logger.warn("Failed to write buffered response: {}", e.getMessage());
+                    }
+                }
+                complete(async, response, result);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.gateway;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Предохранитель запросов к одному сервису.
+ * Помнит исходы последних запросов (скользящее окно): ошибки (нет ответа, таймаут, ответ 5xx)
+ * и медленные ответы. Когда доля ошибок или медленных ответов в окне достигает порога, предохранитель
+ * размыкается, и запросы к сервису сразу отклоняются, не дожидаясь таймаутов. Через заданное время
+ * пропускается несколько пробных запросов: если все успешны, предохранитель замыкается, иначе снова размыкается.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final Clock clock;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallMillis;
+    private final long openMillis;
+    private final int halfOpenProbes;
+
+    // Кольцевой буфер исходов последних запросов
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openUntilMillis;
+    private int probesStarted;
+    private int probesSucceeded;
+    private long rejected;
+    private long opened;
+
+    public CircuitBreaker(UpstreamSettings settings) {
+        this(settings, Clock.systemUTC());
+    }
+
+    CircuitBreaker(UpstreamSettings settings, Clock clock) {
+        this.clock = clock;
+        this.minimumCalls = settings.getMinimumCalls();
+        this.failureRateThreshold = settings.getFailureRateThreshold();
+        this.slowCallRateThreshold = settings.getSlowCallRateThreshold();
+        this.slowCallMillis = settings.getSlowCallDuration().toMillis();
+        this.openMillis = settings.getOpenDuration().toMillis();
+        this.halfOpenProbes = settings.getHalfOpenProbes();
+        this.failed = new boolean[settings.getSlidingWindowSize()];
+        this.slow = new boolean[settings.getSlidingWindowSize()];
+    }
+
+    /**
+     * Можно ли отправить запрос сервису. Разрешенный запрос обязан сообщить исход в {@link #onResult}.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && clock.millis() >= openUntilMillis) {
+            state = State.HALF_OPEN;
+            probesStarted = 0;
+            probesSucceeded = 0;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && probesStarted < halfOpenProbes) {
+            probesStarted++;
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    /**
+     * Учесть исход разрешенного запроса
+     * @param failure сервис не ответил или ответил ошибкой 5xx
+     * @param latency время от отправки запроса до конца ответа
+     */
+    public synchronized void onResult(boolean failure, Duration latency) {
+        boolean slowCall = latency.toMillis() >= slowCallMillis;
+        if (state == State.HALF_OPEN) {
+            if (failure || slowCall) {
+                trip();
+            } else if (++probesSucceeded >= halfOpenProbes) {
+                state = State.CLOSED;
+                clearWindow();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // Запрос отправлен до размыкания - его исход уже ничего не меняет
+            return;
+        }
+        record(failure, slowCall);
+        if (calls >= minimumCalls
+                && (getFailureRate() >= failureRateThreshold || getSlowCallRate() >= slowCallRateThreshold)) {
+            trip();
+        }
+    }
+
+    private void record(boolean failure, boolean slowCall) {
+        if (calls == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            calls++;
+        }
+        failed[next] = failure;
+        slow[next] = slowCall;
+        failures += failure ? 1 : 0;
+        slowCalls += slowCall ? 1 : 0;
+        next = (next + 1) % failed.length;
+    }
+
+    private void trip() {
+        state = State.OPEN;
+        openUntilMillis = clock.millis() + openMillis;
+        opened++;
+        clearWindow();
+    }
+
+    private void clearWindow() {
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && clock.millis() >= openUntilMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Через сколько разомкнутый предохранитель начнет пропускать пробные запросы
+     */
+    public synchronized Duration getRetryAfter() {
+        return state == State.OPEN ? Duration.ofMillis(Math.max(0, openUntilMillis - clock.millis())) : Duration.ZERO;
+    }
+
+    private double getFailureRate() {
+        return calls == 0 ? 0 : (double) failures / calls;
+    }
+
+    private double getSlowCallRate() {
+        return calls == 0 ? 0 : (double) slowCalls / calls;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(getState(), calls, getFailureRate(), getSlowCallRate(), rejected, opened);
+    }
+
+    /**
+     * Снимок состояния предохранителя
+     */
+    public static final class Stats {
+        private final State state;
+        private final int bufferedCalls;
+        private final double failureRate;
+        private final double slowCallRate;
+        private final long rejected;
+        private final long opened;
+
+        Stats(State state, int bufferedCalls, double failureRate, double slowCallRate, long rejected, long opened) {
+            this.state = state;
+            this.bufferedCalls = bufferedCalls;
+            this.failureRate = failureRate;
+            this.slowCallRate = slowCallRate;
+            this.rejected = rejected;
+            this.opened = opened;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * Запросы в текущем окне
+         */
+        public int getBufferedCalls() {
+            return bufferedCalls;
+        }
+
+        public double getFailureRate() {
+            return failureRate;
+        }
+
+        public double getSlowCallRate() {
+            return slowCallRate;
+        }
+
+        /**
+         * Запросы, отклоненные без обращения к сервису
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Сколько раз предохранитель размыкался
+         */
+        public long getOpened() {
+            return opened;
+        }
+
+        public String toJson() {
+            return "{\"state\":\"" + state + "\""
+                    + ",\"bufferedCalls\":" + bufferedCalls
+                    + ",\"failureRate\":" + String.format(Locale.ROOT, "%.4f", failureRate)
+                    + ",\"slowCallRate\":" + String.format(Locale.ROOT, "%.4f", slowCallRate)
+                    + ",\"rejected\":" + rejected
+                    + ",\"opened\":" + opened + "}";
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.gateway;
+
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import com.example.metrics.MetricsRegistry;
+
+import spark.ExceptionMapper;
+import spark.embeddedserver.EmbeddedServer;
+import spark.embeddedserver.EmbeddedServerFactory;
+import spark.embeddedserver.jetty.EmbeddedJettyServer;
+import spark.embeddedserver.jetty.JettyHandler;
+import spark.embeddedserver.jetty.JettyServerFactory;
+import spark.http.matching.MatcherFilter;
+import spark.route.Routes;
+import spark.staticfiles.StaticFilesConfiguration;
+
+/**
+ * Встроенный Jetty для Spark, в котором перед маршрутами Spark стоит асинхронный прокси.
+ * Запросы, совпавшие с таблицей прокси, обрабатываются {@link AsyncProxyHandler} без занятия
+ * потока Jetty на время ответа сервиса; остальные (swagger, health) - обычными маршрутами Spark.
+ * Регистрация: {@code EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new GatewayServerFactory(proxy))}.
+ */
+public class GatewayServerFactory implements EmbeddedServerFactory {
+    private static final int DEFAULT_MAX_THREADS = 200;
+    private static final int DEFAULT_MIN_THREADS = 8;
+    private static final int DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
+    private final Handler proxyHandler;
+    private final MetricsRegistry registry;
+
+    public GatewayServerFactory(Handler proxyHandler) {
+        this(proxyHandler, MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param registry реестр, в который {@link RequestMetricsHandler} пишет время обработки запросов
+     */
+    public GatewayServerFactory(Handler proxyHandler, MetricsRegistry registry) {
+        this.proxyHandler = proxyHandler;
+        this.registry = registry;
+    }
+
+    @Override
+    public EmbeddedServer create(Routes routeMatcher,
+                                 StaticFilesConfiguration staticFilesConfiguration,
+                                 ExceptionMapper exceptionMapper,
+                                 boolean hasMultipleHandler) {
+        // То же, что делает EmbeddedJettyFactory, но с прокси перед фильтром Spark
+        MatcherFilter matcherFilter = new MatcherFilter(routeMatcher, staticFilesConfiguration, exceptionMapper, false, hasMultipleHandler);
+        matcherFilter.init(null);
+        JettyHandler sparkHandler = new JettyHandler(matcherFilter);
+
+        RequestMetricsHandler handlers = new RequestMetricsHandler(registry);
+        handlers.setHandler(new HandlerList(proxyHandler, sparkHandler));
+        return new EmbeddedJettyServer(new ServerFactory(), handlers);
+    }
+
+    private static final class ServerFactory implements JettyServerFactory {
+        @Override
+        public Server create(int maxThreads, int minThreads, int threadTimeoutMillis) {
+            return new Server(new QueuedThreadPool(
+                    maxThreads > 0 ? maxThreads : DEFAULT_MAX_THREADS,
+                    minThreads > 0 ? minThreads : DEFAULT_MIN_THREADS,
+                    threadTimeoutMillis > 0 ? threadTimeoutMillis : DEFAULT_IDLE_TIMEOUT_MILLIS));
+        }
+
+        @Override
+        public Server create(ThreadPool threadPool) {
+            return threadPool != null ? new Server(threadPool) : new Server();
+        }
+    }
+}
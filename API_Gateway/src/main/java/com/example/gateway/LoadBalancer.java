@@ -0,0 +1,168 @@
+package com.example.gateway;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.example.messaging.Partitions;
+
+/**
+ * Выбор экземпляра сервиса для запроса.
+ * Без ключа - "два случайных": из двух случайных экземпляров выбирается тот, у которого меньше
+ * незавершенных запросов; это почти так же хорошо, как искать минимум среди всех, но без перебора.
+ * С ключом (пользователем) - всегда экземпляр, которому принадлежит пользователь ({@link Partitions}):
+ * сервисы хранят данные пользователя в памяти экземпляра, и туда же направляют его сообщения.
+ * Экземпляр, подряд не ответивший или ответивший 5xx заданное число раз, исключается на время (пассивная
+ * проверка здоровья) - но только для запросов без ключа. Запрос с ключом на другом экземпляре не нашел бы
+ * данных пользователя, поэтому он идет на свой экземпляр и при исключении.
+ * Если исключены все экземпляры, запросы без ключа распределяются между всеми.
+ */
+public class LoadBalancer {
+    private final List<Instance> instances;
+    private final int ejectAfterFailures;
+    private final long ejectionMillis;
+    private final LongSupplier clock;
+
+    public LoadBalancer(List<String> baseUrls, UpstreamSettings settings) {
+        this(baseUrls, settings, System::currentTimeMillis);
+    }
+
+    LoadBalancer(List<String> baseUrls, UpstreamSettings settings, LongSupplier clock) {
+        if (baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("No upstream instances");
+        }
+        List<Instance> list = new ArrayList<>(baseUrls.size());
+        for (String baseUrl : baseUrls) {
+            list.add(new Instance(baseUrl));
+        }
+        this.instances = Collections.unmodifiableList(list);
+        this.ejectAfterFailures = settings.getEjectAfterFailures();
+        this.ejectionMillis = settings.getEjectionDuration().toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * Выбрать экземпляр и учесть начатый запрос; по завершении запроса нужно вызвать {@link Instance#release}
+     * @param affinityKey ключ привязки (например, userId) или null
+     */
+    public Instance acquire(String affinityKey) {
+        Instance instance = affinityKey != null ? byKey(affinityKey) : leastOutstandingOfTwo();
+        instance.outstanding.incrementAndGet();
+        instance.requests.increment();
+        return instance;
+    }
+
+    private List<Instance> available() {
+        if (instances.size() == 1) {
+            return instances;
+        }
+        long now = clock.getAsLong();
+        List<Instance> healthy = new ArrayList<>(instances.size());
+        for (Instance instance : instances) {
+            if (instance.ejectedUntil <= now) {
+                healthy.add(instance);
+            }
+        }
+        return healthy.isEmpty() ? instances : healthy;
+    }
+
+    private Instance leastOutstandingOfTwo() {
+        List<Instance> candidates = available();
+        int size = candidates.size();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Instance a = candidates.get(first);
+        Instance b = candidates.get(second);
+        return b.outstanding.get() < a.outstanding.get() ? b : a;
+    }
+
+    private Instance byKey(String key) {
+        return instances.get(Partitions.of(key, instances.size()));
+    }
+
+    public List<Instance> getInstances() {
+        return instances;
+    }
+
+    /**
+     * Экземпляр сервиса и его счетчики
+     */
+    public final class Instance {
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder ejections = new LongAdder();
+        private volatile long ejectedUntil;
+
+        private Instance(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        /**
+         * Учесть завершенный запрос
+         * @param failure экземпляр не ответил или ответил 5xx
+         */
+        public void release(boolean failure) {
+            outstanding.decrementAndGet();
+            if (!failure) {
+                consecutiveFailures.set(0);
+                return;
+            }
+            failures.increment();
+            if (consecutiveFailures.incrementAndGet() >= ejectAfterFailures) {
+                consecutiveFailures.set(0);
+                ejectedUntil = clock.getAsLong() + ejectionMillis;
+                ejections.increment();
+            }
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        /**
+         * Незавершенные запросы
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public long getEjections() {
+            return ejections.sum();
+        }
+
+        public boolean isEjected() {
+            return ejectedUntil > clock.getAsLong();
+        }
+
+        public String toJson() {
+            return "{\"url\":\"" + baseUrl + "\""
+                    + ",\"outstanding\":" + outstanding.get()
+                    + ",\"requests\":" + requests.sum()
+                    + ",\"failures\":" + failures.sum()
+                    + ",\"ejections\":" + ejections.sum()
+                    + ",\"ejected\":" + isEjected() + "}";
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.gateway;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import com.example.messaging.MessageSchema;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+/**
+ * Подписка шлюза на события об изменении статуса заказов (fanout-обменник {@link MessageSchema#ORDER_STATUS_EXCHANGE}).
+ * У каждого экземпляра шлюза своя временная очередь, поэтому событие получают все экземпляры.
+ * Доставка без гарантий: пока брокер недоступен, события теряются, и устаревание
+ * закэшированных ответов ограничивает только их TTL.
+ */
+public class OrderEventsSubscriber implements AutoCloseable {
+    private static final long RECONNECT_DELAY_SECONDS = 5;
+
+    private final ConnectionFactory factory;
+    private final List<Consumer<MessageSchema.OrderStatusChanged>> listeners = new CopyOnWriteArrayList<>();
+    private final Gson gson = new Gson();
+    private final ScheduledExecutorService connector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-events-connector");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Connection connection;
+
+    public OrderEventsSubscriber(String host, int port) {
+        factory = new ConnectionFactory();
+        factory.setHost(host);
+        factory.setPort(port);
+        // После установленного соединения переподключение и повторное объявление очереди делает клиент
+        factory.setAutomaticRecoveryEnabled(true);
+    }
+
+    public OrderEventsSubscriber addListener(Consumer<MessageSchema.OrderStatusChanged> listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Подключиться к брокеру в фоне, повторяя попытки, пока брокер не станет доступен.
+     * Шлюз при этом работает и без событий.
+     */
+    public void start() {
+        connector.execute(this::connectOrRetry);
+    }
+
+    private void connectOrRetry() {
+        try {
+            connect();
+            System.out.println("Subscribed to order status events on exchange " + MessageSchema.ORDER_STATUS_EXCHANGE);
+        } catch (IOException | TimeoutException e) {
+            System.err.println("Failed to subscribe to order status events, retrying in "
+                    + RECONNECT_DELAY_SECONDS + "s: " + e.getMessage());
+            connector.schedule(this::connectOrRetry, RECONNECT_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void connect() throws IOException, TimeoutException {
+        Connection newConnection = factory.newConnection("api-gateway");
+        try {
+            Channel channel = newConnection.createChannel();
+            channel.exchangeDeclare(MessageSchema.ORDER_STATUS_EXCHANGE, BuiltinExchangeType.FANOUT, true);
+            // Очередь с именем от сервера: эксклюзивная и удаляется при отключении шлюза
+            String queue = channel.queueDeclare().getQueue();
+            channel.queueBind(queue, MessageSchema.ORDER_STATUS_EXCHANGE, "");
+            channel.basicConsume(queue, true, (consumerTag, delivery) -> handle(delivery.getBody()), consumerTag -> { });
+        } catch (IOException | RuntimeException e) {
+            newConnection.abort();
+            throw e;
+        }
+        connection = newConnection;
+    }
+
+    /**
+     * Разобрать событие и передать слушателям
+     */
+    void handle(byte[] body) {
+        MessageSchema.OrderStatusChanged event;
+        try {
+            event = gson.fromJson(new String(body, StandardCharsets.UTF_8), MessageSchema.OrderStatusChanged.class);
+        } catch (JsonParseException e) {
+            System.err.println("Invalid order status event: " + e.getMessage());
+            return;
+        }
+        if (event == null || !MessageSchema.OrderEventType.ORDER_STATUS_CHANGED.equals(event.eventType)) {
+            return;
+        }
+        for (Consumer<MessageSchema.OrderStatusChanged> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                System.err.println("Order status listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        connector.shutdownNow();
+        Connection current = connection;
+        if (current != null) {
+            current.abort();
+        }
+    }
+}
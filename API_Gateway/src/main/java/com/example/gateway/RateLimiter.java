@@ -0,0 +1,197 @@
+package com.example.gateway;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.example.metrics.MetricsRegistry;
+
+/**
+ * Ограничение частоты запросов: корзина токенов на каждый ключ (пользователь и маршрут).
+ * Корзина вмещает {@code permits} токенов и пополняется на {@code permits} за {@code period};
+ * запрос забирает токен, а при пустой корзине отклоняется.
+ * <p>
+ * Корзина хранится одним числом - моментом, когда она снова станет полной
+ * (то же самое, что число токенов, но без отдельного времени пополнения), и меняется одним CAS, без блокировок.
+ * Число корзин ограничено: при переполнении сначала удаляются полные корзины - их удаление
+ * не меняет поведения, потому что новая корзина тоже полная.
+ */
+public class RateLimiter {
+    public static final int DEFAULT_MAX_BUCKETS = 100_000;
+
+    private final int maxBuckets;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public RateLimiter() {
+        this(DEFAULT_MAX_BUCKETS);
+    }
+
+    public RateLimiter(int maxBuckets) {
+        this(maxBuckets, System::nanoTime);
+    }
+
+    RateLimiter(int maxBuckets, LongSupplier nanoClock) {
+        this.maxBuckets = maxBuckets;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Забрать токен из корзины ключа
+     * @param permits емкость корзины - сколько запросов можно сделать подряд
+     * @param period за сколько пустая корзина наполняется целиком
+     * @return 0, если запрос разрешен, иначе через сколько наносекунд появится токен
+     */
+    public long tryAcquire(String key, int permits, Duration period) {
+        long now = nanoClock.getAsLong();
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new Bucket(period.toNanos() / permits, period.toNanos(), now);
+            Bucket existing = buckets.putIfAbsent(key, bucket);
+            if (existing != null) {
+                bucket = existing;
+            } else if (buckets.size() > maxBuckets) {
+                evict(now);
+            }
+        }
+        long wait = bucket.tryAcquire(now);
+        if (wait == 0) {
+            allowed.increment();
+        } else {
+            rejected.increment();
+        }
+        return wait;
+    }
+
+    /**
+     * Освободить место: удалить полные корзины, а если все корзины используются - любые,
+     * пока не останется 90% от предела (чтобы не перебирать корзины на каждом новом ключе)
+     */
+    private void evict(long now) {
+        int target = maxBuckets - maxBuckets / 10;
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            if (buckets.size() <= target) {
+                return;
+            }
+            if (entry.getValue().isFull(now) && buckets.remove(entry.getKey(), entry.getValue())) {
+                evictions.increment();
+            }
+        }
+        // Удаленная активная корзина вернется полной - пользователь получит лишний запас запросов
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            if (buckets.size() <= target) {
+                return;
+            }
+            if (buckets.remove(entry.getKey(), entry.getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public Stats getStats() {
+        return new Stats(allowed.sum(), rejected.sum(), evictions.sum(), buckets.size());
+    }
+
+    /**
+     * Счетчики ограничителя в реестре метрик - те же, что в {@link #getStats()}
+     */
+    void registerMetrics(MetricsRegistry registry) {
+        registry.counter("gateway_rate_limit_requests_total", "Requests checked against a rate limit by result",
+                allowed::sum, "result", "allowed");
+        registry.counter("gateway_rate_limit_requests_total", "Requests checked against a rate limit by result",
+                rejected::sum, "result", "rejected");
+        registry.counter("gateway_rate_limit_bucket_evictions_total", "Token buckets evicted to stay within the limit",
+                evictions::sum);
+        registry.gauge("gateway_rate_limit_buckets", "Token buckets in memory", buckets::size);
+    }
+
+    /**
+     * Корзина токенов одного ключа
+     */
+    private static final class Bucket {
+        // Сколько пополняется один токен
+        private final long intervalNanos;
+        // Время наполнения пустой корзины
+        private final long capacityNanos;
+        // Когда корзина станет полной; токенов в ней (capacityNanos - (fullAt - now)) / intervalNanos
+        private final AtomicLong fullAt;
+
+        private Bucket(long intervalNanos, long capacityNanos, long now) {
+            this.intervalNanos = intervalNanos;
+            this.capacityNanos = capacityNanos;
+            this.fullAt = new AtomicLong(now);
+        }
+
+        long tryAcquire(long now) {
+            while (true) {
+                long current = fullAt.get();
+                long next = Math.max(current, now) + intervalNanos;
+                long deficit = next - now;
+                if (deficit > capacityNanos) {
+                    return deficit - capacityNanos;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        boolean isFull(long now) {
+            return fullAt.get() <= now;
+        }
+    }
+
+    /**
+     * Снимок счетчиков ограничителя
+     */
+    public static final class Stats {
+        private final long allowed;
+        private final long rejected;
+        private final long evictions;
+        private final int buckets;
+
+        Stats(long allowed, long rejected, long evictions, int buckets) {
+            this.allowed = allowed;
+            this.rejected = rejected;
+            this.evictions = evictions;
+            this.buckets = buckets;
+        }
+
+        public long getAllowed() {
+            return allowed;
+        }
+
+        /**
+         * Запросы, получившие 429
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getBuckets() {
+            return buckets;
+        }
+
+        public String toJson() {
+            return "{\"allowed\":" + allowed
+                    + ",\"rejected\":" + rejected
+                    + ",\"evictions\":" + evictions
+                    + ",\"buckets\":" + buckets + "}";
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.gateway;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import com.example.metrics.Histogram;
+import com.example.metrics.MetricsRegistry;
+import com.example.metrics.SparkMetrics;
+
+/**
+ * Время обработки всех запросов шлюза - и проксируемых, и маршрутов Spark - по маршрутам и статусам.
+ * Проксируемый запрос завершается асинхронно, поэтому время записывается по завершении {@code AsyncContext}.
+ * Маршрут - шаблон пути из {@link RouteTable}, который {@link AsyncProxyHandler} кладет в атрибут
+ * {@link #ROUTE_ATTRIBUTE}; остальные запросы учитываются как {@code other}.
+ */
+public class RequestMetricsHandler extends HandlerWrapper {
+    public static final String ROUTE_ATTRIBUTE = RequestMetricsHandler.class.getName() + ".route";
+
+    private final MetricsRegistry registry;
+    private final Map<String, Histogram> requests = new ConcurrentHashMap<>();
+
+    public RequestMetricsHandler(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        long start = System.nanoTime();
+        try {
+            super.handle(target, baseRequest, request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(request, response, start);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                record(request, response, start);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, HttpServletResponse response, long start) {
+        Object route = request.getAttribute(ROUTE_ATTRIBUTE);
+        String method = request.getMethod();
+        String routeLabel = route != null ? route.toString() : "other";
+        String status = String.valueOf(response.getStatus());
+        requests.computeIfAbsent(method + ' ' + routeLabel + ' ' + status,
+                key -> registry.histogram(SparkMetrics.REQUESTS_METRIC, "HTTP request latency",
+                        "method", method, "route", routeLabel, "status", status))
+                .recordSince(start);
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.gateway;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+import com.example.metrics.MetricsRegistry;
+
+/**
+ * Кэш ответов шлюза на частые GET-запросы (заказ, баланс).
+ * Ограничен по числу путей и вытесняет давно не запрашиваемые (LRU); каждый ответ живет
+ * не дольше TTL своего маршрута. Ответы разных строк запроса одного пути хранятся вместе,
+ * поэтому {@link #invalidate(String)} сбрасывает их все сразу - например, при смене статуса заказа.
+ * Ответ, запрошенный у сервиса до сброса, после сброса не сохраняется: запрос берет
+ * номер {@link #begin()} и передает его в {@link #put}.
+ */
+public class ResponseCache {
+    public static final int DEFAULT_MAX_PATHS = 10_000;
+
+    private final int maxPaths;
+    private final Clock clock;
+    private final LinkedHashMap<String, PathEntry> entries;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResponseCache() {
+        this(DEFAULT_MAX_PATHS);
+    }
+
+    public ResponseCache(int maxPaths) {
+        this(maxPaths, Clock.systemUTC());
+    }
+
+    ResponseCache(int maxPaths, Clock clock) {
+        this.maxPaths = maxPaths;
+        this.clock = clock;
+        // accessOrder = true: итерация от давно не использованных путей к недавним
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PathEntry> eldest) {
+                if (size() > ResponseCache.this.maxPaths) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Свежий ответ из кэша или null. Промах означает запрос к сервису.
+     */
+    public CachedResponse get(String path, String queryString) {
+        CachedResponse response;
+        synchronized (entries) {
+            PathEntry entry = entries.get(path);
+            response = entry != null ? entry.responses.get(queryKey(queryString)) : null;
+            if (response != null && response.expiresAtMillis <= clock.millis()) {
+                entry.responses.remove(queryKey(queryString));
+                response = null;
+            }
+        }
+        if (response != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return response;
+    }
+
+    /**
+     * Номер, который запрос к сервису берет перед отправкой и передает в {@link #put}
+     */
+    public long begin() {
+        return sequence.get();
+    }
+
+    /**
+     * Сохранить ответ сервиса, если путь не сбрасывался после {@code begin}
+     * @return ответ с вычисленным ETag (сохраненный или нет)
+     */
+    public CachedResponse put(String path, String queryString, long begin,
+                              int status, String contentType, byte[] body, Duration ttl) {
+        CachedResponse response = new CachedResponse(status, contentType, body, etag(body), clock.millis() + ttl.toMillis());
+        synchronized (entries) {
+            PathEntry entry = entries.computeIfAbsent(path, key -> new PathEntry());
+            if (entry.invalidatedAt <= begin) {
+                entry.responses.put(queryKey(queryString), response);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Сбросить все ответы по пути шлюза, с любой строкой запроса
+     */
+    public void invalidate(String path) {
+        synchronized (entries) {
+            PathEntry entry = entries.computeIfAbsent(path, key -> new PathEntry());
+            entry.responses.clear();
+            // Отметка остается в кэше, чтобы не сохранить ответ, запрошенный до сброса
+            entry.invalidatedAt = sequence.incrementAndGet();
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * Учесть ответ 304 - клиенту не пришлось заново получать тело
+     */
+    void recordNotModified() {
+        notModified.increment();
+    }
+
+    /**
+     * Число сохраненных ответов
+     */
+    public int size() {
+        synchronized (entries) {
+            int size = 0;
+            for (PathEntry entry : entries.values()) {
+                size += entry.responses.size();
+            }
+            return size;
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), notModified.sum(), invalidations.sum(), evictions.sum(), size());
+    }
+
+    /**
+     * Счетчики кэша в реестре метрик - те же, что в {@link #getStats()}
+     */
+    void registerMetrics(MetricsRegistry registry) {
+        registry.counter("gateway_cache_hits_total", "Requests answered from the response cache", hits::sum);
+        registry.counter("gateway_cache_misses_total", "Cacheable requests sent to the upstream", misses::sum);
+        registry.counter("gateway_cache_backend_calls_saved_total", "Upstream requests avoided thanks to the cache",
+                hits::sum);
+        registry.counter("gateway_cache_not_modified_total", "304 responses to a matching If-None-Match",
+                notModified::sum);
+        registry.counter("gateway_cache_invalidations_total", "Paths invalidated by writes and order events",
+                invalidations::sum);
+        registry.counter("gateway_cache_evictions_total", "Paths evicted to stay within the size limit",
+                evictions::sum);
+        registry.gauge("gateway_cache_entries", "Cached responses", this::size);
+    }
+
+    private static String queryKey(String queryString) {
+        return queryString != null ? queryString : "";
+    }
+
+    /**
+     * Сильный ETag по содержимому: одинаковое тело - одинаковый ETag при любом числе экземпляров шлюза
+     */
+    static String etag(byte[] body) {
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        return "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(body.length) + "\"";
+    }
+
+    private static final class PathEntry {
+        private final Map<String, CachedResponse> responses = new HashMap<>(2);
+        private long invalidatedAt;
+    }
+
+    /**
+     * Сохраненный ответ сервиса
+     */
+    public static final class CachedResponse {
+        private final int status;
+        private final String contentType;
+        private final byte[] body;
+        private final String etag;
+        private final long expiresAtMillis;
+
+        private CachedResponse(int status, String contentType, byte[] body, String etag, long expiresAtMillis) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+            this.etag = etag;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Совпадает ли ETag с заголовком If-None-Match клиента (список или {@code *})
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Снимок счетчиков кэша
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long notModified;
+        private final long invalidations;
+        private final long evictions;
+        private final int size;
+
+        Stats(long hits, long misses, long notModified, long invalidations, long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.notModified = notModified;
+            this.invalidations = invalidations;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        /**
+         * Запросы к сервисам, которые не понадобились благодаря кэшу
+         */
+        public long getBackendCallsSaved() {
+            return hits;
+        }
+
+        /**
+         * Ответы 304 без тела
+         */
+        public long getNotModified() {
+            return notModified;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public String toJson() {
+            return "{\"hits\":" + hits
+                    + ",\"misses\":" + misses
+                    + ",\"hitRate\":" + String.format(Locale.ROOT, "%.4f", getHitRate())
+                    + ",\"backendCallsSaved\":" + getBackendCallsSaved()
+                    + ",\"notModified\":" + notModified
+                    + ",\"invalidations\":" + invalidations
+                    + ",\"evictions\":" + evictions
+                    + ",\"size\":" + size + "}";
+        }
+    }
+}
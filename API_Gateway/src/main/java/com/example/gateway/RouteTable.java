@@ -0,0 +1,370 @@
+package com.example.gateway;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Таблица маршрутов шлюза: шаблон пути запроса -> сервис и шаблон пути в сервисе.
+ * Шаблоны в стиле Spark: сегмент {@code :name} совпадает с любым сегментом пути
+ * и подставляется в шаблон пути сервиса. Строка запроса передается сервису без изменений.
+ * Составной маршрут ({@link #aggregate}) не ведет в сервис, а собирает ответы нескольких
+ * GET-маршрутов этой же таблицы в один ответ.
+ * У сервиса может быть несколько экземпляров - экземпляр для запроса выбирает {@link LoadBalancer}.
+ */
+public class RouteTable {
+    private final Map<String, List<String>> upstreams = new LinkedHashMap<>();
+    private final List<Route> routes = new ArrayList<>();
+
+    /**
+     * Зарегистрировать сервис
+     * @param name имя сервиса, на которое ссылаются маршруты
+     * @param baseUrls базовый URL, например {@code http://orders-service:8081}, или URL нескольких
+     *                 экземпляров через запятую
+     */
+    public RouteTable upstream(String name, String baseUrls) {
+        List<String> instances = new ArrayList<>();
+        for (String baseUrl : baseUrls.split(",")) {
+            String trimmed = baseUrl.trim();
+            if (!trimmed.isEmpty()) {
+                instances.add(trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed);
+            }
+        }
+        if (instances.isEmpty()) {
+            throw new IllegalArgumentException("No base URL for upstream: " + name);
+        }
+        upstreams.put(name, Collections.unmodifiableList(instances));
+        return this;
+    }
+
+    /**
+     * Зарегистрировать маршрут
+     * @param method HTTP-метод
+     * @param pathPattern путь запроса к шлюзу, например {@code /api/orders/:orderId}
+     * @param upstream имя сервиса
+     * @param targetPattern путь в сервисе, может использовать параметры pathPattern
+     */
+    public RouteTable route(String method, String pathPattern, String upstream, String targetPattern) {
+        if (!upstreams.containsKey(upstream)) {
+            throw new IllegalArgumentException("Unknown upstream: " + upstream);
+        }
+        routes.add(new Route(method, pathPattern, upstream, targetPattern));
+        return this;
+    }
+
+    /**
+     * Зарегистрировать составной GET-маршрут: части ({@link #part}) запрашиваются параллельно,
+     * а ответ собирается не дольше {@code budget} - не успевшие части в него не попадают
+     * @param pathPattern путь запроса к шлюзу, например {@code /api/users/:userId/dashboard}
+     */
+    public RouteTable aggregate(String pathPattern, Duration budget) {
+        Route route = new Route("GET", pathPattern, null, "");
+        route.budget = budget;
+        routes.add(route);
+        return this;
+    }
+
+    /**
+     * Добавить часть последнему составному маршруту
+     * @param name имя поля ответа
+     * @param pathPattern путь GET-маршрута этой таблицы, может использовать параметры составного маршрута
+     */
+    public RouteTable part(String name, String pathPattern) {
+        Route route = lastRoute();
+        if (!route.isAggregate()) {
+            throw new IllegalArgumentException("Not an aggregate route: " + route.pathPattern);
+        }
+        route.parts.put(name, pathPattern);
+        return this;
+    }
+
+    /**
+     * Кэшировать успешные ответы последнего добавленного GET-маршрута в {@link ResponseCache}
+     * @param ttl сколько ответ считается свежим
+     */
+    public RouteTable cacheFor(Duration ttl) {
+        Route route = lastRoute();
+        if (!"GET".equals(route.method) || route.isAggregate()) {
+            throw new IllegalArgumentException("Only GET routes can be cached: " + route.pathPattern);
+        }
+        route.cacheTtl = ttl;
+        return this;
+    }
+
+    /**
+     * После успешного ответа последнего добавленного маршрута сбросить в кэше ответы по этим путям шлюза.
+     * Пути могут использовать параметры маршрута, например {@code /api/accounts/:userId/balance}.
+     */
+    public RouteTable invalidates(String... pathPatterns) {
+        lastRoute().invalidates = pathPatterns.clone();
+        return this;
+    }
+
+    /**
+     * Объединять одинаковые одновременные запросы последнего добавленного GET-маршрута:
+     * пока запрос к сервису выполняется, такие же запросы (путь и строка запроса) ждут его ответ
+     */
+    public RouteTable coalesce() {
+        Route route = lastRoute();
+        if (!"GET".equals(route.method) || route.isAggregate()) {
+            throw new IllegalArgumentException("Only GET routes can be coalesced: " + route.pathPattern);
+        }
+        route.coalesced = true;
+        return this;
+    }
+
+    /**
+     * Ограничить частоту запросов последнего добавленного маршрута для каждого пользователя ({@link RateLimiter}).
+     * Пользователь определяется по параметру {@code :userId} пути, параметру {@code userId} строки запроса
+     * или полю {@code userId} JSON-тела, а если его нет - по адресу клиента.
+     * @param permits сколько запросов можно сделать подряд
+     * @param period за сколько запас запросов восстанавливается полностью
+     */
+    public RouteTable rateLimit(int permits, Duration period) {
+        if (permits <= 0 || period.isZero() || period.isNegative()) {
+            throw new IllegalArgumentException("Invalid rate limit: " + permits + " per " + period);
+        }
+        Route route = lastRoute();
+        route.rateLimitPermits = permits;
+        route.rateLimitPeriod = period;
+        return this;
+    }
+
+    /**
+     * Отправлять запросы одного пользователя последнего добавленного маршрута всегда в один экземпляр сервиса:
+     * сервисы хранят данные в памяти экземпляра. Пользователь определяется так же, как в {@link #rateLimit};
+     * запросы без пользователя распределяются по нагрузке.
+     */
+    public RouteTable sticky() {
+        Route route = lastRoute();
+        if (route.isAggregate()) {
+            throw new IllegalArgumentException("Aggregate routes use their parts' instances: " + route.pathPattern);
+        }
+        route.sticky = true;
+        return this;
+    }
+
+    private Route lastRoute() {
+        if (routes.isEmpty()) {
+            throw new IllegalStateException("No route to configure");
+        }
+        return routes.get(routes.size() - 1);
+    }
+
+    /**
+     * Найти маршрут для запроса
+     * @return совпадение или null, если запрос не проксируется
+     */
+    public Match match(String method, String path) {
+        String[] parts = split(path);
+        for (Route route : routes) {
+            Map<String, String> params = route.match(method, parts);
+            if (params != null) {
+                return new Match(route, path, route.resolveTarget(params), params);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Сервисы: имя -> базовые URL экземпляров
+     */
+    public Map<String, List<String>> getUpstreams() {
+        return Collections.unmodifiableMap(upstreams);
+    }
+
+    public List<Route> getRoutes() {
+        return Collections.unmodifiableList(routes);
+    }
+
+    private static String[] split(String path) {
+        String trimmed = path.startsWith("/") ? path.substring(1) : path;
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/");
+    }
+
+    /**
+     * Маршрут таблицы
+     */
+    public static final class Route {
+        private final String method;
+        private final String pathPattern;
+        private final String[] segments;
+        private final String upstream;
+        private final String[] targetSegments;
+        private Duration cacheTtl;
+        private String[] invalidates = new String[0];
+        private boolean coalesced;
+        private int rateLimitPermits;
+        private Duration rateLimitPeriod;
+        private Duration budget;
+        private boolean sticky;
+        private final Map<String, String> parts = new LinkedHashMap<>();
+
+        private Route(String method, String pathPattern, String upstream, String targetPattern) {
+            this.method = method;
+            this.pathPattern = pathPattern;
+            this.segments = split(pathPattern);
+            this.upstream = upstream;
+            this.targetSegments = split(targetPattern);
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPathPattern() {
+            return pathPattern;
+        }
+
+        /**
+         * @return имя сервиса или null у составного маршрута
+         */
+        public String getUpstream() {
+            return upstream;
+        }
+
+        public boolean isAggregate() {
+            return budget != null;
+        }
+
+        /**
+         * @return сколько ждать части составного маршрута или null, если маршрут не составной
+         */
+        public Duration getBudget() {
+            return budget;
+        }
+
+        /**
+         * @return время жизни ответа в кэше или null, если маршрут не кэшируется
+         */
+        public Duration getCacheTtl() {
+            return cacheTtl;
+        }
+
+        public boolean isCached() {
+            return cacheTtl != null;
+        }
+
+        public boolean isCoalesced() {
+            return coalesced;
+        }
+
+        public boolean isSticky() {
+            return sticky;
+        }
+
+        public boolean isRateLimited() {
+            return rateLimitPeriod != null;
+        }
+
+        public int getRateLimitPermits() {
+            return rateLimitPermits;
+        }
+
+        /**
+         * @return за сколько восстанавливается запас запросов или null, если частота не ограничена
+         */
+        public Duration getRateLimitPeriod() {
+            return rateLimitPeriod;
+        }
+
+        private Map<String, String> match(String requestMethod, String[] parts) {
+            if (!method.equals(requestMethod) || parts.length != segments.length) {
+                return null;
+            }
+            Map<String, String> params = null;
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i].startsWith(":")) {
+                    if (params == null) {
+                        params = new HashMap<>();
+                    }
+                    params.put(segments[i], parts[i]);
+                } else if (!segments[i].equals(parts[i])) {
+                    return null;
+                }
+            }
+            return params != null ? params : Collections.emptyMap();
+        }
+
+        private String resolveTarget(Map<String, String> params) {
+            return resolve(targetSegments, params);
+        }
+    }
+
+    private static String resolve(String[] segments, Map<String, String> params) {
+        StringBuilder path = new StringBuilder();
+        for (String segment : segments) {
+            path.append('/').append(segment.startsWith(":") ? params.get(segment) : segment);
+        }
+        return path.toString();
+    }
+
+    /**
+     * Результат сопоставления запроса с таблицей
+     */
+    public static final class Match {
+        private final Route route;
+        private final String path;
+        private final String targetPath;
+        private final Map<String, String> params;
+
+        private Match(Route route, String path, String targetPath, Map<String, String> params) {
+            this.route = route;
+            this.path = path;
+            this.targetPath = targetPath;
+            this.params = params;
+        }
+
+        public Route getRoute() {
+            return route;
+        }
+
+        /**
+         * Путь и строка запроса к сервису - без адреса экземпляра, его выбирает {@link LoadBalancer}
+         */
+        public String targetPathAndQuery(String queryString) {
+            return targetPath + (queryString != null ? "?" + queryString : "");
+        }
+
+        public String getTargetPath() {
+            return targetPath;
+        }
+
+        public String getParam(String name) {
+            return params.get(name);
+        }
+
+        /**
+         * Путь запроса к шлюзу
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Части составного маршрута: имя поля ответа -> путь шлюза
+         */
+        public Map<String, String> getPartPaths() {
+            Map<String, String> paths = new LinkedHashMap<>();
+            for (Map.Entry<String, String> part : route.parts.entrySet()) {
+                paths.put(part.getKey(), resolve(split(part.getValue()), params));
+            }
+            return paths;
+        }
+
+        /**
+         * Пути шлюза, ответы по которым устаревают после этого запроса
+         */
+        public List<String> getInvalidatedPaths() {
+            List<String> paths = new ArrayList<>(route.invalidates.length);
+            for (String pattern : route.invalidates) {
+                paths.add(resolve(split(pattern), params));
+            }
+            return paths;
+        }
+    }
+}
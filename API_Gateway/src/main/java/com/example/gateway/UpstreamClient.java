@@ -0,0 +1,323 @@
+package com.example.gateway;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.client.AbstractConnectionPool;
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+import com.example.metrics.Histogram;
+import com.example.metrics.MetricsRegistry;
+
+/**
+ * Клиент шлюза к одному сервису: свой пул соединений, таймауты и протокол из {@link UpstreamSettings}.
+ * Считает начатые запросы и открытые соединения, чтобы было видно, сколько запросов
+ * ушло по уже открытым соединениям, а сколько потребовало нового TCP-соединения.
+ * Защищает шлюз от медленного или упавшего сервиса: число одновременных запросов к сервису ограничено
+ * (bulkhead), а {@link CircuitBreaker} после череды ошибок сразу отклоняет запросы.
+ * Если у сервиса несколько экземпляров, экземпляр для каждого запроса выбирает {@link LoadBalancer};
+ * ограничение и предохранитель общие для всех экземпляров сервиса.
+ */
+public class UpstreamClient {
+    private final String name;
+    private final UpstreamSettings settings;
+    private final LoadBalancer loadBalancer;
+    private final HttpClient httpClient;
+    private final CircuitBreaker circuitBreaker;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder bulkheadRejected = new LongAdder();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong connectionsClosed = new AtomicLong();
+    private final Histogram latency;
+
+    UpstreamClient(String name, List<String> baseUrls, UpstreamSettings settings, Executor executor, Scheduler scheduler) {
+        this.name = name;
+        this.settings = settings;
+        this.loadBalancer = new LoadBalancer(baseUrls, settings);
+        this.circuitBreaker = new CircuitBreaker(settings);
+        this.latency = registerMetrics(MetricsRegistry.getDefault());
+
+        Connection.Listener connectionCounter = new Connection.Listener() {
+            @Override
+            public void onOpened(Connection connection) {
+                connectionsOpened.incrementAndGet();
+            }
+
+            @Override
+            public void onClosed(Connection connection) {
+                connectionsClosed.incrementAndGet();
+            }
+        };
+
+        HttpClientTransport transport;
+        if (settings.isH2c()) {
+            HTTP2Client http2Client = new HTTP2Client();
+            http2Client.setSelectors(1);
+            http2Client.addBean(connectionCounter);
+            transport = new HttpClientTransportOverHTTP2(http2Client);
+        } else {
+            transport = new HttpClientTransportOverHTTP(1);
+        }
+        httpClient = new HttpClient(transport);
+        httpClient.addBean(connectionCounter);
+        httpClient.setExecutor(executor);
+        httpClient.setScheduler(scheduler);
+        httpClient.setMaxConnectionsPerDestination(settings.getMaxConnections());
+        httpClient.setMaxRequestsQueuedPerDestination(settings.getMaxQueuedRequests());
+        httpClient.setConnectTimeout(settings.getConnectTimeout().toMillis());
+        httpClient.setIdleTimeout(settings.getKeepAlive().toMillis());
+        // Прокси отдает ответ сервиса как есть: без переходов по редиректам и без распаковки gzip
+        httpClient.setFollowRedirects(false);
+        httpClient.getContentDecoderFactories().clear();
+    }
+
+    /**
+     * Новый запрос к сервису с таймаутами чтения и всего обмена.
+     * Запрос занимает место среди одновременных запросов к сервису до конца обмена,
+     * поэтому созданный запрос нужно отправить.
+     * @param pathAndQuery путь и строка запроса в сервисе
+     * @param affinityKey ключ привязки к экземпляру (например, userId) или null - тогда выбирается менее загруженный
+     * @throws UpstreamUnavailableException предохранитель разомкнут или все места заняты
+     */
+    public Request newRequest(String pathAndQuery, String affinityKey) throws UpstreamUnavailableException {
+        if (inFlight.incrementAndGet() > settings.getMaxConcurrentRequests()) {
+            inFlight.decrementAndGet();
+            bulkheadRejected.increment();
+            throw new UpstreamUnavailableException(name, "too many concurrent requests", Duration.ofSeconds(1));
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            inFlight.decrementAndGet();
+            throw new UpstreamUnavailableException(name, "circuit breaker is open", circuitBreaker.getRetryAfter());
+        }
+        LoadBalancer.Instance instance = loadBalancer.acquire(affinityKey);
+        long start = System.nanoTime();
+        return httpClient.newRequest(instance.getBaseUrl() + pathAndQuery)
+                .timeout(settings.getRequestTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .idleTimeout(settings.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .onRequestBegin(request -> requests.increment())
+                .onComplete(result -> {
+                    inFlight.decrementAndGet();
+                    boolean failure = isFailure(result);
+                    instance.release(failure);
+                    long elapsed = System.nanoTime() - start;
+                    latency.record(elapsed);
+                    circuitBreaker.onResult(failure, Duration.ofNanos(elapsed));
+                });
+    }
+
+    /**
+     * Показатели сервиса и его экземпляров в реестре метрик
+     * @return гистограмма времени ответа сервиса
+     */
+    private Histogram registerMetrics(MetricsRegistry registry) {
+        registry.gauge("gateway_upstream_in_flight_requests", "Requests to the upstream waiting for a response",
+                inFlight::get, "upstream", name);
+        registry.gauge("gateway_upstream_circuit_open", "1 if the upstream circuit breaker rejects requests",
+                () -> circuitBreaker.getState() == CircuitBreaker.State.OPEN ? 1 : 0, "upstream", name);
+        for (LoadBalancer.Instance instance : loadBalancer.getInstances()) {
+            registry.gauge("gateway_upstream_instance_outstanding_requests", "Requests to the instance waiting for a response",
+                    instance::getOutstanding, "upstream", name, "instance", instance.getBaseUrl());
+            registry.gauge("gateway_upstream_instance_ejected", "1 if the instance is ejected after consecutive failures",
+                    () -> instance.isEjected() ? 1 : 0, "upstream", name, "instance", instance.getBaseUrl());
+        }
+        return registry.histogram("gateway_upstream_request_seconds", "Upstream response time, including failures",
+                "upstream", name);
+    }
+
+    /**
+     * Ошибка сервиса: ответа нет (отказ в соединении, таймаут) или ответ 5xx. Ответы 4xx - ошибки клиента.
+     */
+    private static boolean isFailure(Result result) {
+        return result.isFailed() || result.getResponse().getStatus() >= 500;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    public UpstreamSettings getSettings() {
+        return settings;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public Stats getStats() {
+        int active = 0;
+        int idle = 0;
+        int connecting = 0;
+        int queued = 0;
+        for (Destination destination : httpClient.getDestinations()) {
+            HttpDestination httpDestination = (HttpDestination) destination;
+            queued += httpDestination.getQueuedRequestCount();
+            ConnectionPool pool = httpDestination.getConnectionPool();
+            if (pool instanceof AbstractConnectionPool) {
+                AbstractConnectionPool connectionPool = (AbstractConnectionPool) pool;
+                active += connectionPool.getActiveConnectionCount();
+                idle += connectionPool.getIdleConnectionCount();
+                connecting += connectionPool.getPendingConnectionCount();
+            }
+        }
+        return new Stats(requests.sum(), connectionsOpened.get(), connectionsClosed.get(),
+                active, idle, connecting, queued, inFlight.get(), settings.getMaxConcurrentRequests(),
+                bulkheadRejected.sum(), circuitBreaker.getStats(), loadBalancer.getInstances());
+    }
+
+    /**
+     * Снимок счетчиков пула соединений, ограничителя одновременных запросов и предохранителя;
+     * счетчики экземпляров сервиса читаются при обращении
+     */
+    public static final class Stats {
+        private final long requests;
+        private final long connectionsOpened;
+        private final long connectionsClosed;
+        private final int activeConnections;
+        private final int idleConnections;
+        private final int connectingConnections;
+        private final int queuedRequests;
+        private final int inFlightRequests;
+        private final int maxConcurrentRequests;
+        private final long bulkheadRejected;
+        private final CircuitBreaker.Stats circuitBreaker;
+        private final List<LoadBalancer.Instance> instances;
+
+        Stats(long requests, long connectionsOpened, long connectionsClosed,
+              int activeConnections, int idleConnections, int connectingConnections, int queuedRequests,
+              int inFlightRequests, int maxConcurrentRequests, long bulkheadRejected, CircuitBreaker.Stats circuitBreaker,
+              List<LoadBalancer.Instance> instances) {
+            this.requests = requests;
+            this.connectionsOpened = connectionsOpened;
+            this.connectionsClosed = connectionsClosed;
+            this.activeConnections = activeConnections;
+            this.idleConnections = idleConnections;
+            this.connectingConnections = connectingConnections;
+            this.queuedRequests = queuedRequests;
+            this.inFlightRequests = inFlightRequests;
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            this.bulkheadRejected = bulkheadRejected;
+            this.circuitBreaker = circuitBreaker;
+            this.instances = instances;
+        }
+
+        /**
+         * Запросы, отправленные сервису
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * Установленные соединения (TCP-рукопожатия)
+         */
+        public long getConnectionsOpened() {
+            return connectionsOpened;
+        }
+
+        public long getConnectionsClosed() {
+            return connectionsClosed;
+        }
+
+        /**
+         * Запросы, ушедшие по уже открытому соединению
+         */
+        public long getReusedRequests() {
+            return Math.max(0, requests - connectionsOpened);
+        }
+
+        public int getActiveConnections() {
+            return activeConnections;
+        }
+
+        public int getIdleConnections() {
+            return idleConnections;
+        }
+
+        public int getConnectingConnections() {
+            return connectingConnections;
+        }
+
+        public int getQueuedRequests() {
+            return queuedRequests;
+        }
+
+        /**
+         * Запросы к сервису, выполняющиеся сейчас
+         */
+        public int getInFlightRequests() {
+            return inFlightRequests;
+        }
+
+        public int getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+
+        /**
+         * Запросы, отклоненные из-за предела одновременных запросов
+         */
+        public long getBulkheadRejected() {
+            return bulkheadRejected;
+        }
+
+        public CircuitBreaker.Stats getCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        /**
+         * Экземпляры сервиса с их счетчиками
+         */
+        public List<LoadBalancer.Instance> getInstances() {
+            return instances;
+        }
+
+        public String toJson() {
+            StringBuilder instancesJson = new StringBuilder("[");
+            for (LoadBalancer.Instance instance : instances) {
+                if (instancesJson.length() > 1) {
+                    instancesJson.append(',');
+                }
+                instancesJson.append(instance.toJson());
+            }
+            instancesJson.append(']');
+            return "{\"requests\":" + requests
+                    + ",\"connectionsOpened\":" + connectionsOpened
+                    + ",\"connectionsClosed\":" + connectionsClosed
+                    + ",\"reusedRequests\":" + getReusedRequests()
+                    + ",\"activeConnections\":" + activeConnections
+                    + ",\"idleConnections\":" + idleConnections
+                    + ",\"connectingConnections\":" + connectingConnections
+                    + ",\"queuedRequests\":" + queuedRequests
+                    + ",\"inFlightRequests\":" + inFlightRequests
+                    + ",\"maxConcurrentRequests\":" + maxConcurrentRequests
+                    + ",\"bulkheadRejected\":" + bulkheadRejected
+                    + ",\"circuitBreaker\":" + circuitBreaker.toJson()
+                    + ",\"instances\":" + instancesJson + "}";
+        }
+    }
+}
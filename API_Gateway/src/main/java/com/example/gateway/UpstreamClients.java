@@ -0,0 +1,78 @@
+package com.example.gateway;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * Клиенты ко всем сервисам из {@link RouteTable}. Пул потоков и планировщик общие,
+ * пулы соединений и таймауты - у каждого сервиса свои.
+ * Запускается и останавливается вместе с обработчиком, в который добавлен как bean.
+ */
+public class UpstreamClients extends ContainerLifeCycle {
+    private static final int DEFAULT_MAX_THREADS = 200;
+
+    private final Map<String, UpstreamClient> clients = new LinkedHashMap<>();
+    private final Scheduler scheduler;
+
+    /**
+     * @param settings настройки по имени сервиса
+     */
+    public UpstreamClients(RouteTable routeTable, Function<String, UpstreamSettings> settings) {
+        QueuedThreadPool executor = new QueuedThreadPool(DEFAULT_MAX_THREADS);
+        executor.setName("upstream-client");
+        scheduler = new ScheduledExecutorScheduler("upstream-scheduler", false);
+        addBean(executor);
+        addBean(scheduler);
+        for (Map.Entry<String, List<String>> upstream : routeTable.getUpstreams().entrySet()) {
+            UpstreamClient client = new UpstreamClient(upstream.getKey(), upstream.getValue(),
+                    settings.apply(upstream.getKey()), executor, scheduler);
+            clients.put(upstream.getKey(), client);
+            addBean(client.getHttpClient());
+        }
+    }
+
+    /**
+     * Клиенты с настройками по умолчанию
+     */
+    public UpstreamClients(RouteTable routeTable) {
+        this(routeTable, name -> new UpstreamSettings());
+    }
+
+    public UpstreamClient get(String upstream) {
+        return clients.get(upstream);
+    }
+
+    /**
+     * Планировщик таймаутов клиентов - общий для всех сервисов
+     */
+    Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    public Collection<UpstreamClient> getClients() {
+        return Collections.unmodifiableCollection(clients.values());
+    }
+
+    /**
+     * Счетчики пулов всех сервисов: {@code {"orders":{...},"payments":{...}}}
+     */
+    public String statsJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (UpstreamClient client : clients.values()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(client.getName()).append("\":").append(client.getStats().toJson());
+        }
+        return json.append('}').toString();
+    }
+}
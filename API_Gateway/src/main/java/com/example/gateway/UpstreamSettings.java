@@ -0,0 +1,307 @@
+package com.example.gateway;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Настройки соединений шлюза с одним сервисом: размер пула, keep-alive, таймауты и протокол,
+ * ограничение одновременных запросов, пороги {@link CircuitBreaker} и исключения экземпляров в {@link LoadBalancer}
+ */
+public class UpstreamSettings {
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS = 1024;
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(2);
+    public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_KEEP_ALIVE = Duration.ofSeconds(60);
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 256;
+    public static final int DEFAULT_SLIDING_WINDOW_SIZE = 20;
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 0.5;
+    public static final Duration DEFAULT_SLOW_CALL_DURATION = Duration.ofSeconds(2);
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(10);
+    public static final int DEFAULT_HALF_OPEN_PROBES = 3;
+    public static final int DEFAULT_EJECT_AFTER_FAILURES = 5;
+    public static final Duration DEFAULT_EJECTION_DURATION = Duration.ofSeconds(30);
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxQueuedRequests = DEFAULT_MAX_QUEUED_REQUESTS;
+    private Duration connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private Duration readTimeout = DEFAULT_READ_TIMEOUT;
+    private Duration requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+    private Duration keepAlive = DEFAULT_KEEP_ALIVE;
+    private boolean h2c;
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private int slidingWindowSize = DEFAULT_SLIDING_WINDOW_SIZE;
+    private int minimumCalls = DEFAULT_MINIMUM_CALLS;
+    private double failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    private double slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+    private Duration slowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+    private Duration openDuration = DEFAULT_OPEN_DURATION;
+    private int halfOpenProbes = DEFAULT_HALF_OPEN_PROBES;
+    private int ejectAfterFailures = DEFAULT_EJECT_AFTER_FAILURES;
+    private Duration ejectionDuration = DEFAULT_EJECTION_DURATION;
+
+    /**
+     * Максимум соединений к сервису; при HTTP/1.1 это и максимум одновременных запросов
+     */
+    public UpstreamSettings maxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /**
+     * Сколько запросов может ждать свободное соединение, остальные сразу получают ошибку
+     */
+    public UpstreamSettings maxQueuedRequests(int maxQueuedRequests) {
+        this.maxQueuedRequests = maxQueuedRequests;
+        return this;
+    }
+
+    public UpstreamSettings connectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    /**
+     * Максимальная пауза между байтами ответа
+     */
+    public UpstreamSettings readTimeout(Duration readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /**
+     * Максимальное время всего обмена с сервисом
+     */
+    public UpstreamSettings requestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        return this;
+    }
+
+    /**
+     * Сколько простаивающее соединение остается в пуле
+     */
+    public UpstreamSettings keepAlive(Duration keepAlive) {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * HTTP/2 без TLS (prior knowledge) - все запросы идут потоками по нескольким соединениям.
+     * Сервис должен принимать h2c на своем порту.
+     */
+    public UpstreamSettings h2c(boolean h2c) {
+        this.h2c = h2c;
+        return this;
+    }
+
+    /**
+     * Максимум запросов к сервису, выполняющихся одновременно (включая ждущие соединение).
+     * Следующие сразу получают 503, поэтому медленный сервис не накапливает запросы шлюза без предела.
+     */
+    public UpstreamSettings maxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    /**
+     * Сколько последних запросов учитывает предохранитель
+     */
+    public UpstreamSettings slidingWindowSize(int slidingWindowSize) {
+        this.slidingWindowSize = slidingWindowSize;
+        return this;
+    }
+
+    /**
+     * Сколько запросов должно быть в окне, прежде чем предохранитель может разомкнуться
+     */
+    public UpstreamSettings minimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    /**
+     * Доля ошибок в окне (от 0 до 1), при которой предохранитель размыкается
+     */
+    public UpstreamSettings failureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    /**
+     * Доля медленных ответов в окне (от 0 до 1), при которой предохранитель размыкается
+     */
+    public UpstreamSettings slowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        return this;
+    }
+
+    /**
+     * Ответ не быстрее этого времени считается медленным
+     */
+    public UpstreamSettings slowCallDuration(Duration slowCallDuration) {
+        this.slowCallDuration = slowCallDuration;
+        return this;
+    }
+
+    /**
+     * Сколько разомкнутый предохранитель отклоняет запросы до пробных
+     */
+    public UpstreamSettings openDuration(Duration openDuration) {
+        this.openDuration = openDuration;
+        return this;
+    }
+
+    /**
+     * Сколько пробных запросов должно пройти успешно, чтобы предохранитель замкнулся
+     */
+    public UpstreamSettings halfOpenProbes(int halfOpenProbes) {
+        this.halfOpenProbes = halfOpenProbes;
+        return this;
+    }
+
+    /**
+     * После скольких ошибок подряд экземпляр сервиса исключается из балансировки
+     */
+    public UpstreamSettings ejectAfterFailures(int ejectAfterFailures) {
+        this.ejectAfterFailures = ejectAfterFailures;
+        return this;
+    }
+
+    /**
+     * На сколько экземпляр исключается из балансировки
+     */
+    public UpstreamSettings ejectionDuration(Duration ejectionDuration) {
+        this.ejectionDuration = ejectionDuration;
+        return this;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public Duration getKeepAlive() {
+        return keepAlive;
+    }
+
+    public boolean isH2c() {
+        return h2c;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public Duration getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    public Duration getOpenDuration() {
+        return openDuration;
+    }
+
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    public int getEjectAfterFailures() {
+        return ejectAfterFailures;
+    }
+
+    public Duration getEjectionDuration() {
+        return ejectionDuration;
+    }
+
+    /**
+     * Настройки из переменных окружения: {@code <PREFIX>_MAX_CONNECTIONS}, {@code <PREFIX>_MAX_QUEUED_REQUESTS},
+     * {@code <PREFIX>_CONNECT_TIMEOUT_MS}, {@code <PREFIX>_READ_TIMEOUT_MS}, {@code <PREFIX>_REQUEST_TIMEOUT_MS},
+     * {@code <PREFIX>_KEEP_ALIVE_MS}, {@code <PREFIX>_H2C}, {@code <PREFIX>_MAX_CONCURRENT_REQUESTS},
+     * {@code <PREFIX>_BREAKER_FAILURE_RATE} и {@code <PREFIX>_BREAKER_SLOW_CALL_RATE} (в процентах),
+     * {@code <PREFIX>_BREAKER_SLOW_CALL_MS}, {@code <PREFIX>_BREAKER_OPEN_MS}, {@code <PREFIX>_EJECT_AFTER_FAILURES},
+     * {@code <PREFIX>_EJECTION_MS}. Не заданные значения берутся из переменных
+     * с префиксом {@code UPSTREAM}, затем значения по умолчанию.
+     */
+    public static UpstreamSettings fromEnv(String prefix, Map<String, String> env) {
+        Function<String, String> value = name -> {
+            String specific = env.get(prefix + "_" + name);
+            return specific != null ? specific : env.get("UPSTREAM_" + name);
+        };
+        UpstreamSettings settings = new UpstreamSettings();
+        if (value.apply("MAX_CONNECTIONS") != null) {
+            settings.maxConnections(Integer.parseInt(value.apply("MAX_CONNECTIONS")));
+        }
+        if (value.apply("MAX_QUEUED_REQUESTS") != null) {
+            settings.maxQueuedRequests(Integer.parseInt(value.apply("MAX_QUEUED_REQUESTS")));
+        }
+        if (value.apply("CONNECT_TIMEOUT_MS") != null) {
+            settings.connectTimeout(Duration.ofMillis(Long.parseLong(value.apply("CONNECT_TIMEOUT_MS"))));
+        }
+        if (value.apply("READ_TIMEOUT_MS") != null) {
+            settings.readTimeout(Duration.ofMillis(Long.parseLong(value.apply("READ_TIMEOUT_MS"))));
+        }
+        if (value.apply("REQUEST_TIMEOUT_MS") != null) {
+            settings.requestTimeout(Duration.ofMillis(Long.parseLong(value.apply("REQUEST_TIMEOUT_MS"))));
+        }
+        if (value.apply("KEEP_ALIVE_MS") != null) {
+            settings.keepAlive(Duration.ofMillis(Long.parseLong(value.apply("KEEP_ALIVE_MS"))));
+        }
+        settings.h2c(Boolean.parseBoolean(value.apply("H2C")));
+        if (value.apply("MAX_CONCURRENT_REQUESTS") != null) {
+            settings.maxConcurrentRequests(Integer.parseInt(value.apply("MAX_CONCURRENT_REQUESTS")));
+        }
+        if (value.apply("BREAKER_FAILURE_RATE") != null) {
+            settings.failureRateThreshold(Integer.parseInt(value.apply("BREAKER_FAILURE_RATE")) / 100.0);
+        }
+        if (value.apply("BREAKER_SLOW_CALL_RATE") != null) {
+            settings.slowCallRateThreshold(Integer.parseInt(value.apply("BREAKER_SLOW_CALL_RATE")) / 100.0);
+        }
+        if (value.apply("BREAKER_SLOW_CALL_MS") != null) {
+            settings.slowCallDuration(Duration.ofMillis(Long.parseLong(value.apply("BREAKER_SLOW_CALL_MS"))));
+        }
+        if (value.apply("BREAKER_OPEN_MS") != null) {
+            settings.openDuration(Duration.ofMillis(Long.parseLong(value.apply("BREAKER_OPEN_MS"))));
+        }
+        if (value.apply("EJECT_AFTER_FAILURES") != null) {
+            settings.ejectAfterFailures(Integer.parseInt(value.apply("EJECT_AFTER_FAILURES")));
+        }
+        if (value.apply("EJECTION_MS") != null) {
+            settings.ejectionDuration(Duration.ofMillis(Long.parseLong(value.apply("EJECTION_MS"))));
+        }
+        return settings;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.gateway;
+
+import java.time.Duration;
+
+/**
+ * Запрос к сервису не отправлен: предохранитель разомкнут или занято максимальное число одновременных запросов
+ */
+public class UpstreamUnavailableException extends Exception {
+    private final String upstream;
+    private final Duration retryAfter;
+
+    public UpstreamUnavailableException(String upstream, String message, Duration retryAfter) {
+        super("Upstream " + upstream + " is unavailable: " + message);
+        this.upstream = upstream;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getUpstream() {
+        return upstream;
+    }
+
+    /**
+     * Когда имеет смысл повторить запрос
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
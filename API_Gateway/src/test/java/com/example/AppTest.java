@@ -1,5 +1,12 @@
 package com.example;
 
+import java.time.Duration;
+import java.util.Arrays;
+
+import com.example.gateway.ResponseCache;
+import com.example.gateway.RouteTable;
+import com.example.messaging.MessageSchema;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -35,4 +42,40 @@ public class AppTest
     {
         assertTrue( true );
     }
+
+    public void testRouteTableMapsGatewayPathsToServices()
+    {
+        RouteTable routes = App.createRouteTable( "http://payments:8082", "http://orders:8081" );
+
+        assertEquals( "/payments/accounts/5/deposit",
+            routes.match( "POST", "/api/accounts/5/deposit" ).getTargetPath() );
+        assertEquals( "/api/users/5/orders",
+            routes.match( "GET", "/api/users/5/orders" ).getTargetPath() );
+        assertEquals( Arrays.asList( "http://orders:8081" ), routes.getUpstreams().get( "orders" ) );
+        for ( RouteTable.Route route : routes.getRoutes() )
+        {
+            assertTrue( route.getPathPattern(), route.isAggregate() || route.isSticky() );
+        }
+        assertNull( routes.match( "GET", "/api/hello" ) );
+        assertTrue( routes.match( "POST", "/api/orders" ).getRoute().isRateLimited() );
+        assertEquals( "/api/accounts/5/balance",
+            routes.match( "GET", "/api/users/5/dashboard" ).getPartPaths().get( "balance" ) );
+    }
+
+    public void testOrderStatusEventInvalidatesOrderAndBalance()
+    {
+        RouteTable routes = App.createRouteTable( "http://payments:8082", "http://orders:8081" );
+        assertTrue( routes.match( "GET", "/api/orders/42" ).getRoute().isCached() );
+        assertTrue( routes.match( "GET", "/api/accounts/7/balance" ).getRoute().isCached() );
+        assertFalse( routes.match( "GET", "/api/users/7/orders" ).getRoute().isCached() );
+
+        ResponseCache cache = new ResponseCache();
+        byte[] body = "{}".getBytes();
+        cache.put( "/api/orders/42", "userId=7", cache.begin(), 200, "application/json", body, Duration.ofMinutes(1) );
+        cache.put( "/api/accounts/7/balance", null, cache.begin(), 200, "application/json", body, Duration.ofMinutes(1) );
+
+        App.invalidateOrder( cache, new MessageSchema.OrderStatusChanged( 42, 7, "PAID" ) );
+
+        assertEquals( 0, cache.size() );
+    }
 }
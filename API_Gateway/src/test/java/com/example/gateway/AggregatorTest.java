@@ -0,0 +1,124 @@
+package com.example.gateway;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import junit.framework.TestCase;
+
+public class AggregatorTest extends TestCase
+{
+    private StubUpstream payments;
+    private StubUpstream orders;
+    private Server gateway;
+    private String gatewayUrl;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        payments = new StubUpstream(0);
+        orders = new StubUpstream(1000);
+        RouteTable routes = new RouteTable()
+            .upstream("payments", payments.url())
+            .upstream("orders", orders.url())
+            .upstream("broken", "http://127.0.0.1:1")
+            .route("GET", "/api/accounts/:userId/balance", "payments", "/payments/accounts/:userId/balance")
+                .cacheFor(Duration.ofSeconds(30))
+            .route("GET", "/api/users/:userId/orders", "orders", "/api/users/:userId/orders")
+            .route("GET", "/api/broken/:userId", "broken", "/unreachable")
+            .aggregate("/api/users/:userId/dashboard", Duration.ofMillis(200))
+                .part("balance", "/api/accounts/:userId/balance")
+                .part("orders", "/api/users/:userId/orders")
+            .aggregate("/api/users/:userId/full", Duration.ofSeconds(3))
+                .part("balance", "/api/accounts/:userId/balance")
+                .part("orders", "/api/users/:userId/orders")
+            .aggregate("/api/users/:userId/unavailable", Duration.ofSeconds(3))
+                .part("first", "/api/broken/:userId")
+                .part("second", "/api/missing/:userId");
+
+        gateway = new Server(new QueuedThreadPool(8, 2));
+        ServerConnector connector = new ServerConnector(gateway);
+        connector.setPort(0);
+        gateway.addConnector(connector);
+        gateway.setHandler(new AsyncProxyHandler(new UpstreamClients(routes), routes));
+        gateway.start();
+        gatewayUrl = "http://127.0.0.1:" + connector.getLocalPort();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        gateway.stop();
+        payments.stop();
+        orders.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws Exception
+    {
+        return client.send(HttpRequest.newBuilder(URI.create(gatewayUrl + path)).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+
+    public void testPartsAreFetchedConcurrentlyAndMerged() throws Exception
+    {
+        long start = System.nanoTime();
+        HttpResponse<String> response = get("/api/users/7/full");
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertEquals(200, response.statusCode());
+        JsonObject body = JsonParser.parseString(response.body()).getAsJsonObject();
+        assertFalse(body.get("partial").getAsBoolean());
+        assertEquals("/payments/accounts/7/balance", body.getAsJsonObject("balance").get("uri").getAsString());
+        assertEquals("/api/users/7/orders", body.getAsJsonObject("orders").get("uri").getAsString());
+        assertFalse(body.has("errors"));
+        // Время ответа - самая медленная часть, а не сумма частей
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 1900);
+    }
+
+    public void testSlowPartIsOmittedWhenBudgetExpires() throws Exception
+    {
+        long start = System.nanoTime();
+        HttpResponse<String> response = get("/api/users/7/dashboard");
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertEquals(200, response.statusCode());
+        JsonObject body = JsonParser.parseString(response.body()).getAsJsonObject();
+        assertTrue(body.get("partial").getAsBoolean());
+        assertTrue(body.get("orders").isJsonNull());
+        assertEquals("timeout", body.getAsJsonObject("errors").get("orders").getAsString());
+        assertEquals("/payments/accounts/7/balance", body.getAsJsonObject("balance").get("uri").getAsString());
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 900);
+    }
+
+    public void testCachedPartIsServedFromCache() throws Exception
+    {
+        get("/api/users/7/dashboard");
+        HttpResponse<String> second = get("/api/users/7/dashboard");
+
+        assertEquals(200, second.statusCode());
+        assertTrue(second.body(), second.body().contains("/payments/accounts/7/balance"));
+        assertEquals(1, payments.getRequests());
+    }
+
+    public void testFailedPartsAreReportedAndAllFailedIsBadGateway() throws Exception
+    {
+        HttpResponse<String> response = get("/api/users/7/unavailable");
+
+        assertEquals(502, response.statusCode());
+        JsonObject body = JsonParser.parseString(response.body()).getAsJsonObject();
+        assertTrue(body.get("partial").getAsBoolean());
+        assertTrue(body.get("first").isJsonNull());
+        assertEquals("no route for /api/missing/7", body.getAsJsonObject("errors").get("second").getAsString());
+        assertFalse(body.getAsJsonObject("errors").get("first").getAsString().equals("timeout"));
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.gateway;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.DefaultHandler;
+import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import com.example.metrics.MetricsRegistry;
+
+import junit.framework.TestCase;
+
+public class AsyncProxyHandlerTest extends TestCase
+{
+    private StubUpstream upstream;
+    private StubUpstream slowUpstream;
+    private AsyncProxyHandler proxy;
+    private final ResponseCache cache = new ResponseCache();
+    private Server gateway;
+    private HttpClient client;
+    private String gatewayUrl;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        upstream = new StubUpstream(0);
+        slowUpstream = new StubUpstream(300);
+        RouteTable routes = new RouteTable()
+            .upstream("orders", upstream.url())
+            .upstream("slow", slowUpstream.url())
+            .upstream("broken", "http://127.0.0.1:1")
+            .route("GET", "/api/orders/:orderId", "orders", "/api/orders/:orderId")
+            .route("POST", "/api/orders", "orders", "/api/orders")
+            .route("POST", "/api/large/:size", "orders", "/large/:size")
+            .route("GET", "/api/broken", "broken", "/unreachable")
+            .route("GET", "/api/cached/:id", "orders", "/api/orders/:id").cacheFor(Duration.ofSeconds(30))
+            .route("POST", "/api/cached/:id", "orders", "/api/orders").invalidates("/api/cached/:id")
+            .route("GET", "/api/users/:userId/orders", "slow", "/api/users/:userId/orders").coalesce()
+            .route("POST", "/api/limited", "orders", "/api/orders").rateLimit(2, Duration.ofMinutes(1));
+        proxy = new AsyncProxyHandler(new UpstreamClients(routes, name -> new UpstreamSettings()
+            .connectTimeout(Duration.ofSeconds(2))
+            .requestTimeout(Duration.ofSeconds(2))), routes, cache);
+
+        gateway = new Server(new QueuedThreadPool(8, 2));
+        ServerConnector connector = new ServerConnector(gateway);
+        connector.setPort(0);
+        gateway.addConnector(connector);
+        gateway.setHandler(new HandlerList(proxy, new DefaultHandler()));
+        gateway.start();
+        gatewayUrl = "http://127.0.0.1:" + connector.getLocalPort();
+        client = HttpClient.newHttpClient();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        gateway.stop();
+        upstream.stop();
+        slowUpstream.stop();
+    }
+
+    public void testGetIsForwardedWithPathParamsAndQuery() throws Exception
+    {
+        HttpResponse<String> response = client.send(
+            HttpRequest.newBuilder(URI.create(gatewayUrl + "/api/orders/42?userId=7")).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body(), response.body().contains("\"uri\":\"/api/orders/42?userId=7\""));
+        assertEquals("*", response.headers().firstValue("Access-Control-Allow-Origin").orElse(null));
+    }
+
+    public void testPostBodyIsForwarded() throws Exception
+    {
+        HttpResponse<String> response = client.send(
+            HttpRequest.newBuilder(URI.create(gatewayUrl + "/api/orders"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"userId\":1}"))
+                .build(),
+            HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body(), response.body().contains("\"method\":\"POST\""));
+        assertTrue(response.body(), response.body().contains("{'userId':1}"));
+    }
+
+    public void testLargeBodiesAreStreamedInBothDirections() throws Exception
+    {
+        int requestSize = 3 * 1024 * 1024;
+        int responseSize = 8 * 1024 * 1024;
+        HttpResponse<InputStream> response = client.send(
+            HttpRequest.newBuilder(URI.create(gatewayUrl + "/api/large/" + responseSize))
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(new byte[requestSize]))
+                .build(),
+            HttpResponse.BodyHandlers.ofInputStream());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("application/octet-stream", response.headers().firstValue("Content-Type").orElse(null));
+        assertEquals(String.valueOf(responseSize), response.headers().firstValue("Content-Length").orElse(null));
+        try (InputStream body = response.body()) {
+            assertEquals(responseSize, body.transferTo(OutputStream.nullOutputStream()));
+        }
+        assertEquals(requestSize, upstream.getReceivedBytes());
+    }
+
+    public void testCachedRouteIsServedFromCacheWithEtag() throws Exception
+    {
+        HttpResponse<String> first = get("/api/cached/5", null);
+        HttpResponse<String> second = get("/api/cached/5", null);
+
+        assertEquals(200, first.statusCode());
+        assertEquals(200, second.statusCode());
+        assertEquals(first.body(), second.body());
+        String etag = first.headers().firstValue("ETag").orElse(null);
+        assertNotNull(etag);
+        assertEquals(etag, second.headers().firstValue("ETag").orElse(null));
+        assertEquals(1, upstream.getRequests());
+        assertEquals(1, cache.getStats().getBackendCallsSaved());
+    }
+
+    public void testIfNoneMatchReturnsNotModified() throws Exception
+    {
+        String etag = get("/api/cached/6", null).headers().firstValue("ETag").orElse(null);
+
+        HttpResponse<String> revalidated = get("/api/cached/6", etag);
+
+        assertEquals(304, revalidated.statusCode());
+        assertEquals("", revalidated.body());
+        assertEquals(etag, revalidated.headers().firstValue("ETag").orElse(null));
+        assertEquals(1, cache.getStats().getNotModified());
+    }
+
+    public void testSuccessfulWriteInvalidatesCachedRead() throws Exception
+    {
+        get("/api/cached/7", null);
+        HttpResponse<String> write = client.send(
+            HttpRequest.newBuilder(URI.create(gatewayUrl + "/api/cached/7"))
+                .POST(HttpRequest.BodyPublishers.ofString("{}"))
+                .build(),
+            HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, write.statusCode());
+
+        get("/api/cached/7", null);
+
+        // Чтение, запись и повторное чтение после сброса
+        assertEquals(3, upstream.getRequests());
+    }
+
+    public void testConcurrentIdenticalGetsShareOneUpstreamCall() throws Exception
+    {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            responses.add(client.sendAsync(
+                HttpRequest.newBuilder(URI.create(gatewayUrl + "/api/users/3/orders?status=NEW")).GET().build(),
+                HttpResponse.BodyHandlers.ofString()));
+        }
+
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.get().statusCode());
+            assertTrue(response.get().body(), response.get().body().contains("\"uri\":\"/api/users/3/orders?status=NEW\""));
+        }
+        assertEquals(1, slowUpstream.getRequests());
+        assertEquals(9, proxy.getCoalescedRequests());
+        // Последний созданный обработчик - этот: его счетчик и выгружается в /metrics
+        assertTrue(MetricsRegistry.getDefault().scrape().contains("\ngateway_coalesced_requests_total 9\n"));
+    }
+
+    public void testDifferentQueriesAreNotCoalesced() throws Exception
+    {
+        CompletableFuture<HttpResponse<String>> first = client.sendAsync(
+            HttpRequest.newBuilder(URI.create(gatewayUrl + "/api/users/3/orders?status=NEW")).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<HttpResponse<String>> second = client.sendAsync(
+            HttpRequest.newBuilder(URI.create(gatewayUrl + "/api/users/3/orders?status=PAID")).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+
+        assertTrue(first.get().body(), first.get().body().contains("status=NEW"));
+        assertTrue(second.get().body(), second.get().body().contains("status=PAID"));
+        assertEquals(2, slowUpstream.getRequests());
+        assertEquals(0, proxy.getCoalescedRequests());
+    }
+
+    public void testCompletedCallIsNotReused() throws Exception
+    {
+        get("/api/users/4/orders", null);
+        get("/api/users/4/orders", null);
+
+        assertEquals(2, slowUpstream.getRequests());
+    }
+
+    public void testRateLimitRejectsUserOverLimitWith429() throws Exception
+    {
+        assertEquals(200, postLimited("{\"userId\":1,\"items\":[]}").statusCode());
+        HttpResponse<String> second = postLimited("{\"userId\":1,\"items\":[]}");
+        HttpResponse<String> third = postLimited("{\"userId\":1,\"items\":[]}");
+        HttpResponse<String> otherUser = postLimited("{\"userId\":2,\"items\":[]}");
+
+        assertEquals(200, second.statusCode());
+        // Тело, прочитанное ради userId, передается сервису без изменений
+        assertTrue(second.body(), second.body().contains("{'userId':1,'items':[]}"));
+        assertEquals(429, third.statusCode());
+        assertEquals("30", third.headers().firstValue("Retry-After").orElse(null));
+        assertEquals("*", third.headers().firstValue("Access-Control-Allow-Origin").orElse(null));
+        assertEquals(200, otherUser.statusCode());
+        assertEquals(3, upstream.getRequests());
+        assertEquals(1, proxy.getRateLimiterStats().getRejected());
+    }
+
+    private HttpResponse<String> postLimited(String body) throws Exception
+    {
+        return client.send(
+            HttpRequest.newBuilder(URI.create(gatewayUrl + "/api/limited"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws Exception
+    {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(gatewayUrl + path)).GET();
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    public void testUnmatchedRouteFallsThroughToNextHandler() throws Exception
+    {
+        HttpResponse<String> response = client.send(
+            HttpRequest.newBuilder(URI.create(gatewayUrl + "/api/unknown")).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(404, response.statusCode());
+        assertEquals(0, upstream.getRequests());
+    }
+
+    public void testUpstreamFailureReturnsError() throws Exception
+    {
+        HttpResponse<String> response = client.send(
+            HttpRequest.newBuilder(URI.create(gatewayUrl + "/api/broken")).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(500, response.statusCode());
+        assertTrue(response.body(), response.body().startsWith("{\"error\":"));
+    }
+}
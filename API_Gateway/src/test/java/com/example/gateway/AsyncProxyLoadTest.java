@@ -0,0 +1,120 @@
+package com.example.gateway;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import junit.framework.TestCase;
+
+/**
+ * Нагрузочный тест прокси: N одновременных клиентов, сервис отвечает с задержкой,
+ * у шлюза маленький пул потоков Jetty. Выводит p50/p99 задержки.
+ * Запускается только явно, так как держит ~4N сокетов в одном процессе (нужен ulimit -n):
+ * {@code mvn test -Dtest=AsyncProxyLoadTest -Dgateway.loadtest=true -Dgateway.loadtest.clients=5000}
+ */
+public class AsyncProxyLoadTest extends TestCase
+{
+    private static final int GATEWAY_THREADS = 16;
+    private static final long UPSTREAM_DELAY_MILLIS = 50;
+
+    public void testConcurrentClientsAreNotLimitedByGatewayThreads() throws Exception
+    {
+        if (!Boolean.getBoolean("gateway.loadtest")) {
+            System.out.println("AsyncProxyLoadTest skipped, run with -Dgateway.loadtest=true");
+            return;
+        }
+        int clients = Integer.getInteger("gateway.loadtest.clients", 5000);
+        int requestsPerClient = Integer.getInteger("gateway.loadtest.requests", 5);
+
+        StubUpstream upstream = new StubUpstream(UPSTREAM_DELAY_MILLIS);
+        RouteTable routes = new RouteTable()
+            .upstream("orders", upstream.url())
+            .route("GET", "/api/users/:userId/orders", "orders", "/api/users/:userId/orders");
+        UpstreamClients upstreams = new UpstreamClients(routes, name -> new UpstreamSettings()
+            .maxConnections(clients)
+            .maxQueuedRequests(clients * requestsPerClient)
+            .maxConcurrentRequests(clients)
+            .requestTimeout(Duration.ofSeconds(60)));
+        AsyncProxyHandler proxy = new AsyncProxyHandler(upstreams, routes);
+
+        Server gateway = new Server(new QueuedThreadPool(GATEWAY_THREADS, GATEWAY_THREADS));
+        ServerConnector connector = new ServerConnector(gateway, 1, 1);
+        connector.setPort(0);
+        connector.setAcceptQueueSize(clients);
+        gateway.addConnector(connector);
+        gateway.setHandler(proxy);
+        gateway.start();
+        String gatewayUrl = "http://127.0.0.1:" + connector.getLocalPort();
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+        long[] latencies = new long[clients * requestsPerClient];
+        AtomicInteger failures = new AtomicInteger();
+        try {
+            long started = System.nanoTime();
+            List<CompletableFuture<Void>> runs = new ArrayList<>(clients);
+            for (int c = 0; c < clients; c++) {
+                URI uri = URI.create(gatewayUrl + "/api/users/" + c + "/orders");
+                runs.add(runClient(client, uri, requestsPerClient, latencies, c * requestsPerClient, failures));
+            }
+            CompletableFuture.allOf(runs.toArray(new CompletableFuture[0])).get(5, TimeUnit.MINUTES);
+            double seconds = (System.nanoTime() - started) / 1e9;
+
+            Arrays.sort(latencies);
+            System.out.printf("Gateway load test: %d clients x %d requests, %d Jetty threads, upstream delay %d ms%n",
+                clients, requestsPerClient, GATEWAY_THREADS, UPSTREAM_DELAY_MILLIS);
+            System.out.printf("  throughput %.0f req/s, p50 %.1f ms, p99 %.1f ms, max %.1f ms, upstream max in-flight %d, failures %d%n",
+                latencies.length / seconds, percentile(latencies, 0.50), percentile(latencies, 0.99),
+                latencies[latencies.length - 1] / 1e6, upstream.getMaxInFlight(), failures.get());
+            System.out.println("  upstream pool " + upstreams.statsJson());
+
+            assertEquals(0, failures.get());
+            // Запросов в обработке у сервиса одновременно больше, чем потоков у шлюза
+            assertTrue(upstream.getMaxInFlight() > GATEWAY_THREADS * 10);
+        } finally {
+            gateway.stop();
+            upstream.stop();
+        }
+    }
+
+    /**
+     * Клиент последовательно выполняет requests запросов
+     */
+    private static CompletableFuture<Void> runClient(HttpClient client, URI uri, int requests,
+                                                     long[] latencies, int offset, AtomicInteger failures)
+    {
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < requests; i++) {
+            int slot = offset + i;
+            chain = chain.thenCompose(ignored -> {
+                long start = System.nanoTime();
+                return client.sendAsync(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.discarding())
+                    .handle((response, error) -> {
+                        latencies[slot] = System.nanoTime() - start;
+                        if (error != null || response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                        return null;
+                    });
+            });
+        }
+        return chain;
+    }
+
+    private static double percentile(long[] sorted, double quantile)
+    {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.gateway;
+
+import java.time.Duration;
+
+import junit.framework.TestCase;
+
+public class CircuitBreakerTest extends TestCase
+{
+    private static final Duration FAST = Duration.ofMillis(10);
+    private static final Duration SLOW = Duration.ofSeconds(3);
+
+    private MutableClock clock;
+    private CircuitBreaker breaker;
+
+    @Override
+    protected void setUp()
+    {
+        clock = new MutableClock();
+        breaker = new CircuitBreaker(new UpstreamSettings()
+            .slidingWindowSize(4)
+            .minimumCalls(4)
+            .failureRateThreshold(0.5)
+            .slowCallRateThreshold(0.75)
+            .slowCallDuration(Duration.ofSeconds(2))
+            .openDuration(Duration.ofSeconds(10))
+            .halfOpenProbes(2), clock);
+    }
+
+    private void call(boolean failure, Duration latency)
+    {
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(failure, latency);
+    }
+
+    public void testOpensWhenFailureRateReachesThreshold()
+    {
+        call(false, FAST);
+        call(true, FAST);
+        call(false, FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        call(true, FAST);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(Duration.ofSeconds(10), breaker.getRetryAfter());
+        assertEquals(1, breaker.getStats().getRejected());
+        assertEquals(1, breaker.getStats().getOpened());
+    }
+
+    public void testDoesNotOpenBeforeMinimumCalls()
+    {
+        call(true, FAST);
+        call(true, FAST);
+        call(true, FAST);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    public void testOpensWhenTooManyCallsAreSlow()
+    {
+        call(false, SLOW);
+        call(false, SLOW);
+        call(false, FAST);
+        call(false, SLOW);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    public void testWindowForgetsOldFailures()
+    {
+        call(true, FAST);
+        for (int i = 0; i < 10; i++) {
+            call(false, FAST);
+        }
+        call(true, FAST);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(4, breaker.getStats().getBufferedCalls());
+        assertEquals(0.25, breaker.getStats().getFailureRate(), 1e-9);
+    }
+
+    public void testSuccessfulProbesCloseTheCircuit()
+    {
+        for (int i = 0; i < 4; i++) {
+            call(true, FAST);
+        }
+        clock.advance(Duration.ofSeconds(10));
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        // Пробные запросы еще выполняются - остальные отклоняются
+        assertFalse(breaker.tryAcquire());
+        breaker.onResult(false, FAST);
+        breaker.onResult(false, FAST);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    public void testFailedProbeOpensTheCircuitAgain()
+    {
+        for (int i = 0; i < 4; i++) {
+            call(true, FAST);
+        }
+        clock.advance(Duration.ofSeconds(10));
+
+        call(true, FAST);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2, breaker.getStats().getOpened());
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.gateway;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import com.example.messaging.Partitions;
+
+import junit.framework.TestCase;
+import spark.Service;
+
+public class LoadBalancerTest extends TestCase
+{
+    private static final List<String> URLS = Arrays.asList("http://a", "http://b", "http://c");
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final UpstreamSettings settings = new UpstreamSettings()
+        .ejectAfterFailures(3)
+        .ejectionDuration(Duration.ofSeconds(10));
+
+    public void testLeastOutstandingOfTwoKeepsInstancesEven()
+    {
+        LoadBalancer balancer = new LoadBalancer(URLS, settings, now::get);
+
+        // Запросы не завершаются - каждый следующий видит нагрузку предыдущих
+        for (int i = 0; i < 300; i++) {
+            balancer.acquire(null);
+        }
+
+        for (LoadBalancer.Instance instance : balancer.getInstances()) {
+            assertTrue(instance.getBaseUrl() + ": " + instance.getOutstanding(),
+                instance.getOutstanding() >= 90 && instance.getOutstanding() <= 110);
+        }
+    }
+
+    public void testUserAlwaysGetsSameInstanceAndUsersSpreadEvenly()
+    {
+        LoadBalancer balancer = new LoadBalancer(URLS, settings, now::get);
+        Map<String, Integer> users = new HashMap<>();
+
+        for (int user = 0; user < 3000; user++) {
+            LoadBalancer.Instance instance = balancer.acquire(String.valueOf(user));
+            instance.release(false);
+            assertSame(instance, balancer.acquire(String.valueOf(user)));
+            users.merge(instance.getBaseUrl(), 1, Integer::sum);
+        }
+
+        for (String url : URLS) {
+            assertTrue(url + ": " + users.get(url), users.get(url) > 800);
+        }
+    }
+
+    public void testFailingInstanceIsEjectedForEjectionDuration()
+    {
+        LoadBalancer balancer = new LoadBalancer(URLS, settings, now::get);
+        LoadBalancer.Instance home = balancer.acquire("42");
+
+        home.release(true);
+        home.release(true);
+        assertFalse(home.isEjected());
+        balancer.acquire("42").release(true);
+
+        assertTrue(home.isEjected());
+        assertEquals(1, home.getEjections());
+        // Данные пользователя есть только на его экземпляре - запрос с ключом идет туда и при исключении
+        assertSame(home, balancer.acquire("42"));
+        for (int i = 0; i < 100; i++) {
+            assertNotSame(home, balancer.acquire(null));
+        }
+
+        now.addAndGet(Duration.ofSeconds(10).toMillis());
+        assertFalse(home.isEjected());
+        assertSame(home, balancer.acquire("42"));
+    }
+
+    public void testSuccessResetsConsecutiveFailures()
+    {
+        LoadBalancer balancer = new LoadBalancer(URLS, settings, now::get);
+        LoadBalancer.Instance instance = balancer.acquire("42");
+        instance.release(true);
+
+        // Ошибки чередуются с успешными ответами - подряд их не больше двух
+        for (int i = 0; i < 10; i++) {
+            balancer.acquire("42").release(i % 3 != 0);
+        }
+
+        assertFalse(instance.isEjected());
+        assertEquals(7, instance.getFailures());
+        assertEquals(0, instance.getOutstanding());
+    }
+
+    public void testAllInstancesEjectedFallsBackToAll()
+    {
+        LoadBalancer balancer = new LoadBalancer(URLS, settings, now::get);
+        for (LoadBalancer.Instance instance : balancer.getInstances()) {
+            for (int i = 0; i < 3; i++) {
+                instance.release(true);
+            }
+            assertTrue(instance.isEjected());
+        }
+
+        assertNotNull(balancer.acquire(null));
+        assertNotNull(balancer.acquire("42"));
+    }
+
+    public void testGatewaySpreadsLoadAcrossSparkInstances() throws Exception
+    {
+        List<Service> instances = new ArrayList<>();
+        List<AtomicInteger> hits = new ArrayList<>();
+        StringBuilder urls = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            AtomicInteger counter = new AtomicInteger();
+            Service instance = startInstance(i, counter);
+            instances.add(instance);
+            hits.add(counter);
+            urls.append(urls.length() > 0 ? "," : "").append("http://127.0.0.1:").append(instance.port());
+        }
+        RouteTable routes = new RouteTable()
+            .upstream("orders", urls.toString())
+            .route("GET", "/api/ping", "orders", "/ping")
+            .route("GET", "/api/users/:userId/orders", "orders", "/api/users/:userId/orders")
+                .sticky();
+        UpstreamClients upstreams = new UpstreamClients(routes,
+            name -> new UpstreamSettings().ejectAfterFailures(2));
+        Server gateway = new Server(new QueuedThreadPool(8, 2));
+        ServerConnector connector = new ServerConnector(gateway);
+        connector.setPort(0);
+        gateway.addConnector(connector);
+        gateway.setHandler(new AsyncProxyHandler(upstreams, routes));
+        gateway.start();
+        String gatewayUrl = "http://127.0.0.1:" + connector.getLocalPort();
+        HttpClient client = HttpClient.newHttpClient();
+        try {
+            for (int i = 0; i < 300; i++) {
+                assertEquals(200, get(client, gatewayUrl + "/api/ping").statusCode());
+            }
+            assertSpread(hits);
+
+            Map<String, String> homes = new HashMap<>();
+            for (int user = 0; user < 300; user++) {
+                homes.put(String.valueOf(user), get(client, gatewayUrl + "/api/users/" + user + "/orders").body());
+            }
+            assertSpread(hits);
+            for (int user = 0; user < 300; user += 30) {
+                assertEquals(homes.get(String.valueOf(user)),
+                    get(client, gatewayUrl + "/api/users/" + user + "/orders").body());
+            }
+            // Пользователь попадает на экземпляр, в очередь которого сервисы направляют его сообщения
+            for (int user = 0; user < 300; user++) {
+                assertEquals("{\"instance\":" + Partitions.of(user, 3) + "}", homes.get(String.valueOf(user)));
+            }
+
+            // Остановленный экземпляр исключается после двух ошибок, дальше запросы идут в живые
+            instances.get(0).stop();
+            instances.get(0).awaitStop();
+            for (int i = 0; i < 30; i++) {
+                get(client, gatewayUrl + "/api/ping");
+            }
+            for (int i = 0; i < 30; i++) {
+                assertEquals(200, get(client, gatewayUrl + "/api/ping").statusCode());
+            }
+            LoadBalancer.Instance stopped = upstreams.get("orders").getLoadBalancer().getInstances().get(0);
+            assertTrue(stopped.isEjected());
+        } finally {
+            gateway.stop();
+            for (Service instance : instances) {
+                instance.stop();
+            }
+        }
+    }
+
+    /**
+     * Экземпляр сервиса на Spark: отвечает своим номером и считает запросы
+     */
+    private static Service startInstance(int number, AtomicInteger hits)
+    {
+        Service service = Service.ignite().ipAddress("127.0.0.1").port(0);
+        service.get("/ping", (request, response) -> {
+            hits.incrementAndGet();
+            return "{\"instance\":" + number + "}";
+        });
+        service.get("/api/users/:userId/orders", (request, response) -> {
+            hits.incrementAndGet();
+            return "{\"instance\":" + number + "}";
+        });
+        service.awaitInitialization();
+        return service;
+    }
+
+    /**
+     * Каждый экземпляр получил не меньше 20% запросов (поровну - 33%); счетчики сбрасываются
+     */
+    private static void assertSpread(List<AtomicInteger> hits)
+    {
+        int total = 0;
+        for (AtomicInteger counter : hits) {
+            total += counter.get();
+        }
+        for (AtomicInteger counter : hits) {
+            assertTrue(counter.get() + " of " + total, counter.get() >= total / 5);
+        }
+        for (AtomicInteger counter : hits) {
+            counter.set(0);
+        }
+    }
+
+    private static HttpResponse<String> get(HttpClient client, String url) throws Exception
+    {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.gateway;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.messaging.MessageSchema;
+
+import junit.framework.TestCase;
+
+public class OrderEventsSubscriberTest extends TestCase
+{
+    private final List<MessageSchema.OrderStatusChanged> received = new ArrayList<>();
+    private final OrderEventsSubscriber subscriber = new OrderEventsSubscriber("localhost", 5672)
+        .addListener(received::add);
+
+    public void testStatusChangedEventIsPassedToListeners()
+    {
+        subscriber.handle(("{\"eventType\":\"ORDER_STATUS_CHANGED\",\"orderId\":42,\"userId\":7,\"status\":\"PAID\"}")
+            .getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(1, received.size());
+        assertEquals(42, received.get(0).orderId);
+        assertEquals(7, received.get(0).userId);
+        assertEquals("PAID", received.get(0).status);
+    }
+
+    public void testMalformedAndForeignMessagesAreIgnored()
+    {
+        subscriber.handle("not json".getBytes(StandardCharsets.UTF_8));
+        subscriber.handle("{\"eventType\":\"PROCESS_PAYMENT\",\"orderId\":1}".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(received.isEmpty());
+    }
+
+    public void testFailingListenerDoesNotStopOthers()
+    {
+        OrderEventsSubscriber failing = new OrderEventsSubscriber("localhost", 5672)
+            .addListener(event -> { throw new IllegalStateException("boom"); })
+            .addListener(received::add);
+
+        failing.handle("{\"eventType\":\"ORDER_STATUS_CHANGED\",\"orderId\":1,\"userId\":1,\"status\":\"FAILED\"}"
+            .getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(1, received.size());
+    }
+}
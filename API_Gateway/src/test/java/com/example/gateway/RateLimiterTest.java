@@ -0,0 +1,127 @@
+package com.example.gateway;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.example.metrics.MetricsRegistry;
+
+import junit.framework.TestCase;
+
+public class RateLimiterTest extends TestCase
+{
+    private static final Duration SECOND = Duration.ofSeconds(1);
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    public void testBurstIsAllowedThenRejectedUntilRefill()
+    {
+        RateLimiter limiter = new RateLimiter(100, now::get);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, limiter.tryAcquire("user:1", 4, SECOND));
+        }
+        long wait = limiter.tryAcquire("user:1", 4, SECOND);
+
+        // Один токен пополняется за четверть секунды
+        assertEquals(250_000_000L, wait);
+        now.addAndGet(wait);
+        assertEquals(0, limiter.tryAcquire("user:1", 4, SECOND));
+        assertTrue(limiter.tryAcquire("user:1", 4, SECOND) > 0);
+
+        RateLimiter.Stats stats = limiter.getStats();
+        assertEquals(5, stats.getAllowed());
+        assertEquals(2, stats.getRejected());
+    }
+
+    public void testStatsAreExportedAsMetrics()
+    {
+        RateLimiter limiter = new RateLimiter(100, now::get);
+        MetricsRegistry registry = new MetricsRegistry();
+        limiter.registerMetrics(registry);
+
+        limiter.tryAcquire("user:1", 1, SECOND);
+        limiter.tryAcquire("user:1", 1, SECOND);
+        limiter.tryAcquire("user:2", 1, SECOND);
+
+        String metrics = registry.scrape();
+        assertTrue(metrics, metrics.contains("\ngateway_rate_limit_requests_total{result=\"allowed\"} 2\n"));
+        assertTrue(metrics, metrics.contains("\ngateway_rate_limit_requests_total{result=\"rejected\"} 1\n"));
+        assertTrue(metrics, metrics.contains("\ngateway_rate_limit_buckets 2\n"));
+    }
+
+    public void testKeysHaveSeparateBuckets()
+    {
+        RateLimiter limiter = new RateLimiter(100, now::get);
+
+        assertEquals(0, limiter.tryAcquire("user:1", 1, SECOND));
+        assertTrue(limiter.tryAcquire("user:1", 1, SECOND) > 0);
+
+        assertEquals(0, limiter.tryAcquire("user:2", 1, SECOND));
+    }
+
+    public void testIdleBucketRefillsCompletelyButNotBeyondCapacity()
+    {
+        RateLimiter limiter = new RateLimiter(100, now::get);
+        limiter.tryAcquire("user:1", 2, SECOND);
+        limiter.tryAcquire("user:1", 2, SECOND);
+
+        now.addAndGet(Duration.ofMinutes(5).toNanos());
+
+        assertEquals(0, limiter.tryAcquire("user:1", 2, SECOND));
+        assertEquals(0, limiter.tryAcquire("user:1", 2, SECOND));
+        assertTrue(limiter.tryAcquire("user:1", 2, SECOND) > 0);
+    }
+
+    public void testFullBucketsAreEvictedFirst()
+    {
+        RateLimiter limiter = new RateLimiter(10, now::get);
+        // Корзина без запаса токенов - ее пользователь активен
+        limiter.tryAcquire("active", 1, Duration.ofHours(1));
+        now.addAndGet(1);
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire("idle:" + i, 10, SECOND);
+        }
+        now.addAndGet(SECOND.toNanos());
+
+        limiter.tryAcquire("new", 10, SECOND);
+
+        assertTrue(limiter.size() <= 10);
+        assertTrue(limiter.getStats().getEvictions() > 0);
+        assertTrue(limiter.tryAcquire("active", 1, Duration.ofHours(1)) > 0);
+    }
+
+    public void testConcurrentCallersNeverExceedPermits() throws Exception
+    {
+        RateLimiter limiter = new RateLimiter();
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    if (limiter.tryAcquire("user:1", 100, Duration.ofHours(1)) == 0) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(100, allowed.get());
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.gateway;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.DefaultHandler;
+import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import com.example.metrics.Histogram;
+import com.example.metrics.MetricsRegistry;
+import com.example.metrics.SparkMetrics;
+
+import junit.framework.TestCase;
+
+public class RequestMetricsHandlerTest extends TestCase
+{
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private StubUpstream orders;
+    private Server gateway;
+    private String gatewayUrl;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        orders = new StubUpstream(200);
+        RouteTable routes = new RouteTable()
+            .upstream("orders", orders.url())
+            .route("GET", "/api/orders/:orderId", "orders", "/api/orders/:orderId");
+        RequestMetricsHandler metrics = new RequestMetricsHandler(registry);
+        metrics.setHandler(new HandlerList(new AsyncProxyHandler(new UpstreamClients(routes), routes), new DefaultHandler()));
+
+        gateway = new Server(new QueuedThreadPool(8, 2));
+        ServerConnector connector = new ServerConnector(gateway);
+        connector.setPort(0);
+        gateway.addConnector(connector);
+        gateway.setHandler(metrics);
+        gateway.start();
+        gatewayUrl = "http://127.0.0.1:" + connector.getLocalPort();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        gateway.stop();
+        orders.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws Exception
+    {
+        return client.send(HttpRequest.newBuilder(URI.create(gatewayUrl + path)).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+
+    private Histogram requests(String route, String status)
+    {
+        return registry.histogram(SparkMetrics.REQUESTS_METRIC, "", "method", "GET", "route", route, "status", status);
+    }
+
+    public void testProxiedRequestsAreTimedUntilAsyncCompletion() throws Exception
+    {
+        assertEquals(200, get("/api/orders/1").statusCode());
+        assertEquals(200, get("/api/orders/2").statusCode());
+
+        Histogram proxied = requests("/api/orders/:orderId", "200");
+        // Завершение AsyncContext может наступить чуть позже, чем клиент получил ответ
+        for (int i = 0; i < 100 && proxied.getCount() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, proxied.getCount());
+        // Ответ сервиса задержан на 200 мс - время учтено по завершении, а не по выходе из обработчика
+        assertTrue(proxied.valueAtQuantile(0.5) + " ns", proxied.valueAtQuantile(0.5) >= Duration.ofMillis(200).toNanos());
+    }
+
+    public void testUnmatchedRequestsAreCountedAsOther() throws Exception
+    {
+        assertEquals(404, get("/missing").statusCode());
+
+        assertEquals(1, requests("other", "404").getCount());
+        assertTrue(registry.scrape(), registry.scrape().contains(
+            "http_server_requests_seconds_count{method=\"GET\",route=\"other\",status=\"404\"} 1\n"));
+    }
+}
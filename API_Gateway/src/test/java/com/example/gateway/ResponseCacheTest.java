@@ -0,0 +1,131 @@
+package com.example.gateway;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import com.example.metrics.MetricsRegistry;
+
+import junit.framework.TestCase;
+
+public class ResponseCacheTest extends TestCase
+{
+    private static final Duration TTL = Duration.ofSeconds(5);
+
+    private MutableClock clock;
+    private ResponseCache cache;
+
+    @Override
+    protected void setUp()
+    {
+        clock = new MutableClock();
+        cache = new ResponseCache(3, clock);
+    }
+
+    private ResponseCache.CachedResponse put(String path, String query, String body)
+    {
+        return cache.put(path, query, cache.begin(), 200, "application/json",
+            body.getBytes(StandardCharsets.UTF_8), TTL);
+    }
+
+    public void testEntryExpiresAfterTtl()
+    {
+        put("/api/orders/1", null, "{}");
+        assertNotNull(cache.get("/api/orders/1", null));
+
+        clock.advance(TTL);
+
+        assertNull(cache.get("/api/orders/1", null));
+        assertEquals(0, cache.size());
+    }
+
+    public void testStatsAreExportedAsMetrics()
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+        cache.registerMetrics(registry);
+        put("/api/orders/1", null, "{}");
+        cache.get("/api/orders/1", null);
+        cache.get("/api/orders/1", null);
+        cache.get("/api/orders/2", null);
+
+        String metrics = registry.scrape();
+        assertTrue(metrics, metrics.contains("\ngateway_cache_hits_total 2\n"));
+        assertTrue(metrics, metrics.contains("\ngateway_cache_misses_total 1\n"));
+        assertTrue(metrics, metrics.contains("\ngateway_cache_backend_calls_saved_total 2\n"));
+        assertTrue(metrics, metrics.contains("\ngateway_cache_entries 1\n"));
+    }
+
+    public void testLeastRecentlyUsedPathIsEvicted()
+    {
+        put("/a", null, "a");
+        put("/b", null, "b");
+        put("/c", null, "c");
+        // /a использован недавно, поэтому вытесняется /b
+        cache.get("/a", null);
+        put("/d", null, "d");
+
+        assertNotNull(cache.get("/a", null));
+        assertNull(cache.get("/b", null));
+        assertNotNull(cache.get("/d", null));
+        assertEquals(1, cache.getStats().getEvictions());
+    }
+
+    public void testInvalidateRemovesAllQueryVariants()
+    {
+        put("/api/orders/1", "userId=7", "{}");
+        put("/api/orders/1", null, "{}");
+        put("/api/orders/2", null, "{}");
+
+        cache.invalidate("/api/orders/1");
+
+        assertNull(cache.get("/api/orders/1", "userId=7"));
+        assertNull(cache.get("/api/orders/1", null));
+        assertNotNull(cache.get("/api/orders/2", null));
+        assertEquals(1, cache.getStats().getInvalidations());
+    }
+
+    public void testResponseFetchedBeforeInvalidationIsNotStored()
+    {
+        long begin = cache.begin();
+        cache.invalidate("/api/orders/1");
+
+        ResponseCache.CachedResponse stale = cache.put("/api/orders/1", null, begin, 200, "application/json",
+            "{\"status\":\"NEW\"}".getBytes(StandardCharsets.UTF_8), TTL);
+
+        assertNotNull(stale.getEtag());
+        assertNull(cache.get("/api/orders/1", null));
+
+        put("/api/orders/1", null, "{\"status\":\"PAID\"}");
+        assertNotNull(cache.get("/api/orders/1", null));
+    }
+
+    public void testEtagDependsOnBodyAndMatchesIfNoneMatch()
+    {
+        ResponseCache.CachedResponse first = put("/a", null, "{\"balance\":1}");
+        ResponseCache.CachedResponse same = put("/b", null, "{\"balance\":1}");
+        ResponseCache.CachedResponse other = put("/c", null, "{\"balance\":2}");
+
+        assertEquals(first.getEtag(), same.getEtag());
+        assertFalse(first.getEtag().equals(other.getEtag()));
+        assertTrue(first.matches(first.getEtag()));
+        assertTrue(first.matches("\"x\", W/" + first.getEtag()));
+        assertTrue(first.matches("*"));
+        assertFalse(first.matches(other.getEtag()));
+        assertFalse(first.matches(null));
+    }
+
+    public void testStatsReportHitRateAndSavedCalls()
+    {
+        put("/a", null, "a");
+        cache.get("/a", null);
+        cache.get("/a", null);
+        cache.get("/a", null);
+        cache.get("/missing", null);
+
+        ResponseCache.Stats stats = cache.getStats();
+        assertEquals(3, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0.75, stats.getHitRate(), 1e-9);
+        assertEquals(3, stats.getBackendCallsSaved());
+        assertTrue(stats.toJson(), stats.toJson().contains("\"hitRate\":0.7500"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.gateway;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class RouteTableTest extends TestCase
+{
+    private final RouteTable routes = new RouteTable()
+        .upstream("payments", "http://payments:8082/")
+        .upstream("orders", "http://orders:8081")
+        .route("GET", "/api/accounts/:userId/balance", "payments", "/payments/accounts/:userId/balance")
+        .route("GET", "/api/orders/:orderId", "orders", "/api/orders/:orderId")
+        .route("POST", "/api/orders", "orders", "/api/orders");
+
+    public void testParamsAreSubstitutedIntoTargetPath()
+    {
+        RouteTable.Match match = routes.match("GET", "/api/accounts/7/balance");
+
+        assertNotNull(match);
+        assertEquals("payments", match.getRoute().getUpstream());
+        assertEquals("7", match.getParam(":userId"));
+        assertEquals("/payments/accounts/7/balance", match.getTargetPath());
+        assertEquals("/payments/accounts/7/balance", match.targetPathAndQuery(null));
+    }
+
+    public void testQueryStringIsAppended()
+    {
+        assertEquals("/api/orders/42?userId=7",
+            routes.match("GET", "/api/orders/42").targetPathAndQuery("userId=7"));
+    }
+
+    public void testUpstreamAcceptsCommaSeparatedInstances()
+    {
+        RouteTable table = new RouteTable()
+            .upstream("orders", "http://orders-1:8081/, http://orders-2:8081")
+            .upstream("payments", "http://payments:8082/");
+
+        assertEquals(Arrays.asList("http://orders-1:8081", "http://orders-2:8081"), table.getUpstreams().get("orders"));
+        assertEquals(Arrays.asList("http://payments:8082"), table.getUpstreams().get("payments"));
+    }
+
+    public void testMethodAndSegmentCountMustMatch()
+    {
+        assertNull(routes.match("DELETE", "/api/orders/42"));
+        assertNull(routes.match("GET", "/api/orders"));
+        assertNull(routes.match("GET", "/api/orders/42/items"));
+        assertNotNull(routes.match("POST", "/api/orders"));
+    }
+
+    public void testUnknownUpstreamIsRejected()
+    {
+        try {
+            routes.route("GET", "/api/x", "missing", "/x");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("missing"));
+        }
+    }
+
+    public void testOnlyGetRoutesCanBeCoalesced()
+    {
+        routes.route("GET", "/api/users/:userId/orders", "orders", "/api/users/:userId/orders").coalesce();
+        assertTrue(routes.match("GET", "/api/users/1/orders").getRoute().isCoalesced());
+
+        try {
+            routes.route("POST", "/api/x", "orders", "/x").coalesce();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("/api/x"));
+        }
+    }
+
+    public void testAggregatePartsUseRouteParams()
+    {
+        routes.aggregate("/api/users/:userId/dashboard", Duration.ofMillis(500))
+            .part("orders", "/api/users/:userId/orders")
+            .part("order", "/api/orders/1");
+
+        RouteTable.Match match = routes.match("GET", "/api/users/7/dashboard");
+
+        assertTrue(match.getRoute().isAggregate());
+        assertNull(match.getRoute().getUpstream());
+        assertEquals("/api/users/7/orders", match.getPartPaths().get("orders"));
+        assertEquals("/api/orders/1", match.getPartPaths().get("order"));
+        assertEquals(Duration.ofMillis(500), match.getRoute().getBudget());
+    }
+
+    public void testPartRequiresAggregateRoute()
+    {
+        try {
+            routes.part("orders", "/api/users/:userId/orders");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("/api/orders"));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.gateway;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Тестовый микросервис: отвечает JSON с методом, путем и телом запроса после заданной задержки.
+ * Задержка выдерживается планировщиком на асинхронном запросе, поэтому одновременно
+ * "обрабатываемых" запросов может быть сколько угодно, независимо от числа потоков.
+ */
+class StubUpstream {
+    private final Server server;
+    private final ServerConnector connector;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long receivedBytes;
+
+    StubUpstream(long delayMillis) throws Exception {
+        this(delayMillis, false);
+    }
+
+    /**
+     * @param h2c принимать кроме HTTP/1.1 еще и HTTP/2 без TLS
+     */
+    StubUpstream(long delayMillis, boolean h2c) throws Exception {
+        server = new Server(new QueuedThreadPool(16, 4));
+        connector = h2c
+                ? new ServerConnector(server, 1, 1, new HttpConnectionFactory(), new HTTP2CServerConnectionFactory(new HttpConfiguration()))
+                : new ServerConnector(server, 1, 1);
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        connector.setAcceptQueueSize(10000);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException {
+                baseRequest.setHandled(true);
+                requests.incrementAndGet();
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                if (target.startsWith("/large/")) {
+                    respondLarge(request, response, Integer.parseInt(target.substring("/large/".length())));
+                    return;
+                }
+                byte[] body = request.getInputStream().readAllBytes();
+                String query = request.getQueryString() != null ? "?" + request.getQueryString() : "";
+                String json = "{\"method\":\"" + request.getMethod() + "\",\"protocol\":\"" + request.getProtocol() + "\",\"uri\":\"" + request.getRequestURI() + query
+                        + "\",\"body\":\"" + new String(body, StandardCharsets.UTF_8).replace("\"", "'") + "\"}";
+                AsyncContext async = request.startAsync();
+                async.setTimeout(0);
+                scheduler.schedule(() -> respond(async, json), delayMillis, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Ответ заданного размера; размер тела запроса запоминается
+     */
+    private void respondLarge(HttpServletRequest request, HttpServletResponse response, int size) throws IOException {
+        receivedBytes = request.getInputStream().transferTo(OutputStream.nullOutputStream());
+        response.setStatus(200);
+        response.setContentType("application/octet-stream");
+        response.setContentLength(size);
+        byte[] chunk = new byte[64 * 1024];
+        OutputStream out = response.getOutputStream();
+        for (int written = 0; written < size; written += chunk.length) {
+            out.write(chunk, 0, Math.min(chunk.length, size - written));
+        }
+        inFlight.decrementAndGet();
+    }
+
+    private void respond(AsyncContext async, String json) {
+        try {
+            HttpServletResponse response = (HttpServletResponse) async.getResponse();
+            response.setStatus(200);
+            response.setContentType("application/json");
+            response.getOutputStream().write(json.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Клиент отключился - ответ не нужен
+        } finally {
+            inFlight.decrementAndGet();
+            async.complete();
+        }
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + connector.getLocalPort();
+    }
+
+    int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    int getRequests() {
+        return requests.get();
+    }
+
+    void stop() throws Exception {
+        server.stop();
+        scheduler.shutdownNow();
+    }
+}
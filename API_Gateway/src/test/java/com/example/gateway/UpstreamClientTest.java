@@ -0,0 +1,215 @@
+package com.example.gateway;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import junit.framework.TestCase;
+
+public class UpstreamClientTest extends TestCase
+{
+    private StubUpstream upstream;
+    private UpstreamClients upstreams;
+    private Server gateway;
+    private String gatewayUrl;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        if (gateway != null) {
+            gateway.stop();
+        }
+        if (upstream != null) {
+            upstream.stop();
+        }
+    }
+
+    private void startGateway(StubUpstream stub, UpstreamSettings settings) throws Exception
+    {
+        upstream = stub;
+        RouteTable routes = new RouteTable()
+            .upstream("orders", upstream.url())
+            .route("GET", "/api/orders/:orderId", "orders", "/api/orders/:orderId");
+        upstreams = new UpstreamClients(routes, name -> settings);
+
+        gateway = new Server(new QueuedThreadPool(8, 2));
+        ServerConnector connector = new ServerConnector(gateway);
+        connector.setPort(0);
+        gateway.addConnector(connector);
+        gateway.setHandler(new AsyncProxyHandler(upstreams, routes));
+        gateway.start();
+        gatewayUrl = "http://127.0.0.1:" + connector.getLocalPort();
+    }
+
+    private CompletableFuture<HttpResponse<String>> get(int orderId)
+    {
+        return client.sendAsync(HttpRequest.newBuilder(URI.create(gatewayUrl + "/api/orders/" + orderId)).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+
+    public void testSequentialRequestsReuseOneConnection() throws Exception
+    {
+        startGateway(new StubUpstream(0), new UpstreamSettings());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(200, get(i).get(5, TimeUnit.SECONDS).statusCode());
+        }
+
+        // Соединение возвращается в пул сразу после того, как клиент получил ответ, а не до
+        UpstreamClient.Stats stats = upstreams.get("orders").getStats();
+        for (int i = 0; i < 100 && stats.getIdleConnections() == 0; i++) {
+            Thread.sleep(10);
+            stats = upstreams.get("orders").getStats();
+        }
+        assertEquals(10, stats.getRequests());
+        assertEquals(1, stats.getConnectionsOpened());
+        assertEquals(9, stats.getReusedRequests());
+        assertEquals(1, stats.getIdleConnections());
+        assertEquals(0, stats.getActiveConnections());
+        assertTrue(upstreams.statsJson(), upstreams.statsJson().startsWith("{\"orders\":{\"requests\":10,"));
+    }
+
+    public void testPoolSizeLimitsConnectionsAndQueuesTheRest() throws Exception
+    {
+        startGateway(new StubUpstream(100), new UpstreamSettings().maxConnections(2));
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            responses.add(get(i));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.get(10, TimeUnit.SECONDS).statusCode());
+        }
+
+        assertTrue(upstream.getMaxInFlight() <= 2);
+        assertEquals(2, upstreams.get("orders").getStats().getConnectionsOpened());
+    }
+
+    public void testReadTimeoutFailsSlowUpstream() throws Exception
+    {
+        startGateway(new StubUpstream(1000), new UpstreamSettings().readTimeout(Duration.ofMillis(100)));
+
+        HttpResponse<String> response = get(1).get(5, TimeUnit.SECONDS);
+
+        assertEquals(500, response.statusCode());
+        assertTrue(response.body(), response.body().toLowerCase().contains("timeout"));
+    }
+
+    public void testBulkheadRejectsRequestsOverConcurrencyLimit() throws Exception
+    {
+        startGateway(new StubUpstream(300), new UpstreamSettings().maxConcurrentRequests(2));
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            responses.add(get(i));
+        }
+        int ok = 0;
+        int rejected = 0;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            HttpResponse<String> result = response.get(5, TimeUnit.SECONDS);
+            if (result.statusCode() == 503) {
+                rejected++;
+                assertTrue(result.headers().firstValue("Retry-After").isPresent());
+                assertTrue(result.body(), result.body().contains("too many concurrent requests"));
+            } else {
+                assertEquals(200, result.statusCode());
+                ok++;
+            }
+        }
+
+        assertEquals(2, ok);
+        assertEquals(3, rejected);
+        UpstreamClient.Stats stats = upstreams.get("orders").getStats();
+        assertEquals(3, stats.getBulkheadRejected());
+        assertEquals(0, stats.getInFlightRequests());
+    }
+
+    public void testSlowUpstreamOpensCircuitAndFailsFast() throws Exception
+    {
+        startGateway(new StubUpstream(200), new UpstreamSettings()
+            .slowCallDuration(Duration.ofMillis(100))
+            .slidingWindowSize(2)
+            .minimumCalls(2)
+            .openDuration(Duration.ofSeconds(30)));
+        assertEquals(200, get(1).get(5, TimeUnit.SECONDS).statusCode());
+        assertEquals(200, get(2).get(5, TimeUnit.SECONDS).statusCode());
+
+        long start = System.nanoTime();
+        HttpResponse<String> response = get(3).get(5, TimeUnit.SECONDS);
+
+        assertEquals(503, response.statusCode());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 200);
+        assertEquals("30", response.headers().firstValue("Retry-After").orElse(null));
+        assertEquals(2, upstream.getRequests());
+        CircuitBreaker.Stats breaker = upstreams.get("orders").getStats().getCircuitBreaker();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getRejected());
+        assertTrue(upstreams.statsJson(), upstreams.statsJson().contains("\"circuitBreaker\":{\"state\":\"OPEN\""));
+    }
+
+    public void testH2cMultiplexesRequestsOverOneConnection() throws Exception
+    {
+        startGateway(new StubUpstream(50, true), new UpstreamSettings().h2c(true));
+        // Первый запрос открывает соединение, дальше запросы идут его потоками
+        assertEquals(200, get(0).get(5, TimeUnit.SECONDS).statusCode());
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            responses.add(get(i));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            HttpResponse<String> result = response.get(10, TimeUnit.SECONDS);
+            assertEquals(200, result.statusCode());
+            assertTrue(result.body(), result.body().contains("\"protocol\":\"HTTP/2.0\""));
+        }
+
+        UpstreamClient.Stats stats = upstreams.get("orders").getStats();
+        assertEquals(1, stats.getConnectionsOpened());
+        assertEquals(20, stats.getReusedRequests());
+    }
+
+    public void testSettingsFromEnvPreferServiceSpecificValues()
+    {
+        Map<String, String> env = new HashMap<>();
+        env.put("UPSTREAM_MAX_CONNECTIONS", "16");
+        env.put("UPSTREAM_READ_TIMEOUT_MS", "500");
+        env.put("ORDERS_READ_TIMEOUT_MS", "250");
+        env.put("ORDERS_H2C", "true");
+        env.put("PAYMENTS_MAX_CONCURRENT_REQUESTS", "32");
+        env.put("UPSTREAM_BREAKER_FAILURE_RATE", "25");
+        env.put("PAYMENTS_BREAKER_OPEN_MS", "5000");
+        env.put("ORDERS_EJECT_AFTER_FAILURES", "2");
+        env.put("UPSTREAM_EJECTION_MS", "1000");
+
+        UpstreamSettings orders = UpstreamSettings.fromEnv("ORDERS", env);
+        UpstreamSettings payments = UpstreamSettings.fromEnv("PAYMENTS", env);
+
+        assertEquals(16, orders.getMaxConnections());
+        assertEquals(Duration.ofMillis(250), orders.getReadTimeout());
+        assertTrue(orders.isH2c());
+        assertEquals(Duration.ofMillis(500), payments.getReadTimeout());
+        assertFalse(payments.isH2c());
+        assertEquals(UpstreamSettings.DEFAULT_CONNECT_TIMEOUT, payments.getConnectTimeout());
+        assertEquals(32, payments.getMaxConcurrentRequests());
+        assertEquals(UpstreamSettings.DEFAULT_MAX_CONCURRENT_REQUESTS, orders.getMaxConcurrentRequests());
+        assertEquals(0.25, orders.getFailureRateThreshold(), 1e-9);
+        assertEquals(Duration.ofSeconds(5), payments.getOpenDuration());
+        assertEquals(UpstreamSettings.DEFAULT_OPEN_DURATION, orders.getOpenDuration());
+        assertEquals(2, orders.getEjectAfterFailures());
+        assertEquals(UpstreamSettings.DEFAULT_EJECT_AFTER_FAILURES, payments.getEjectAfterFailures());
+        assertEquals(Duration.ofSeconds(1), payments.getEjectionDuration());
+    }
+}
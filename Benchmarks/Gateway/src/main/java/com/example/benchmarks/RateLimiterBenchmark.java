@@ -0,0 +1,72 @@
+package com.example.benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.gateway.RateLimiter;
+
+/**
+ * Собственная стоимость {@link RateLimiter#tryAcquire} на запрос шлюза - должна быть меньше микросекунды.
+ * Разрешенный и отклоненный запрос одного пользователя, запросы {@code users} разных пользователей
+ * (ключ собирается так же, как в шлюзе) и один ключ из нескольких потоков - конкуренция за CAS корзины.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+    private static final Duration PERIOD = Duration.ofSeconds(1);
+    // Токен пополняется за наносекунду - запас не кончится за время измерения
+    private static final int UNLIMITED = 1_000_000_000;
+
+    @Param({"10000"})
+    public int users;
+
+    private RateLimiter limiter;
+    private int nextUser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        limiter = new RateLimiter();
+        // Единственный токен пользователя "limited" забран до начала измерений
+        limiter.tryAcquire("limited", 1, Duration.ofDays(1));
+    }
+
+    @Benchmark
+    public long allowed() {
+        return limiter.tryAcquire("POST /api/orders|user:1", UNLIMITED, PERIOD);
+    }
+
+    @Benchmark
+    public long rejected() {
+        return limiter.tryAcquire("limited", 1, Duration.ofDays(1));
+    }
+
+    @Benchmark
+    public long manyUsers() {
+        int user = nextUser++ % users;
+        return limiter.tryAcquire("POST /api/orders|user:" + user, UNLIMITED, PERIOD);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long allowedContended() {
+        return limiter.tryAcquire("POST /api/orders|user:1", UNLIMITED, PERIOD);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.id.BlockIdGenerator;
+import com.example.id.NodeIdGenerator;
+
+/**
+ * Пропускная способность генераторов ID заказов. {@link NodeIdGenerator} в раскладке по умолчанию
+ * выдает не больше 2048 ID в миллисекунду на узел (чуть больше 2 миллионов в секунду): при этом пределе
+ * потоки ждут следующую миллисекунду, и результат в нескольких потоках показывает, насколько он близок.
+ * {@link BlockIdGenerator} - тот же резерв блоками, но без времени в ID, для сравнения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    private NodeIdGenerator nodeIds;
+    private BlockIdGenerator blockIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        nodeIds = new NodeIdGenerator(1);
+        blockIds = new BlockIdGenerator();
+    }
+
+    @Benchmark
+    public long nodeId() {
+        return nodeIds.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long nodeIdContended() {
+        return nodeIds.nextId();
+    }
+
+    @Benchmark
+    public long blockId() {
+        return blockIds.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long blockIdContended() {
+        return blockIds.nextId();
+    }
+}
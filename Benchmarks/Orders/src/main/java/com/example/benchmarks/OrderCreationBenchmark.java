@@ -0,0 +1,111 @@
+package com.example.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.Order;
+import com.example.logging.Appender;
+import com.example.logging.AsyncAppender;
+import com.example.logging.ConsoleAppender;
+import com.example.logging.Logger;
+import com.example.messaging.MessageBroker;
+import com.example.outbox.OutboxRepository;
+import com.example.outbox.OutboxService;
+import com.example.repository.OrderRepository;
+import com.example.service.OrderService;
+
+/**
+ * Пропускная способность {@link OrderService#createOrder} в зависимости от журнала:
+ * {@code console} - синхронная запись, как раньше с {@code System.out.println} (строка собирается
+ * и печатается под блокировкой потока вывода в потоке запроса), {@code async} - {@link AsyncAppender}.
+ * Вывод уходит в никуда, поэтому измеряется только стоимость журналирования для вызывающего потока;
+ * на реальном терминале или в логе контейнера синхронная запись обходится еще дороже.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderCreationBenchmark {
+
+    @Param({"console", "async"})
+    public String appender;
+
+    @Param({"3"})
+    public int itemsPerOrder;
+
+    private final List<Map<String, Object>> items = new ArrayList<>();
+    private Appender originalAppender;
+    private OrderService orderService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream());
+        originalAppender = Logger.getAppender();
+        Logger.setAppender("async".equals(appender)
+                ? new AsyncAppender(nowhere, nowhere, AsyncAppender.DEFAULT_CAPACITY)
+                : new ConsoleAppender(nowhere, nowhere));
+        for (int i = 0; i < itemsPerOrder; i++) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("name", "Good " + i);
+            item.put("description", "Benchmark good");
+            item.put("price", 10.5 + i);
+            item.put("quantity", 1 + i);
+            items.add(item);
+        }
+    }
+
+    /**
+     * Заказы и сообщения Outbox копятся в памяти - каждая итерация начинает с пустых хранилищ
+     */
+    @Setup(Level.Iteration)
+    public void newStores() {
+        // Брокер не подключается: сообщения только сохраняются в Outbox
+        orderService = new OrderService(new OrderRepository(),
+                new OutboxService(new OutboxRepository(), new MessageBroker()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Appender used = Logger.getAppender();
+        Logger.setAppender(originalAppender);
+        if (used instanceof AsyncAppender) {
+            ((AsyncAppender) used).close();
+        }
+    }
+
+    @Benchmark
+    public Order createOrder() {
+        return orderService.createOrder(42, items);
+    }
+
+    /**
+     * Несколько потоков запросов: синхронная запись выстраивает их в очередь на блокировке потока вывода
+     */
+    @Benchmark
+    @Threads(4)
+    public Order createOrderContended() {
+        return orderService.createOrder(42, items);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.benchmarks;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.Order;
+import com.example.OrderStatus;
+import com.example.repository.OrderRepository;
+
+/**
+ * Стоимость операций {@link OrderRepository} в зависимости от общего числа заказов.
+ * У пользователя всегда {@code ordersPerUser} заказов, остальные заказы принадлежат другим
+ * пользователям, поэтому при индексированном поиске время не должно расти вместе с {@code totalOrders}.
+ * Поиск по ID, смена статуса и перезапись берут случайный заказ, чтобы при нескольких потоках
+ * ({@code -t}) потоки не работали с одним и тем же заказом.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderRepositoryBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int totalOrders;
+
+    @Param({"10"})
+    public int ordersPerUser;
+
+    private OrderRepository orderRepository;
+    private Order[] orders;
+    private int userId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        orderRepository = new OrderRepository();
+        int users = Math.max(1, totalOrders / ordersPerUser);
+        orders = new Order[totalOrders];
+        for (int i = 0; i < totalOrders; i++) {
+            orders[i] = orderRepository.save(new Order(i % users));
+        }
+        userId = users / 2;
+    }
+
+    @Benchmark
+    public List<Order> findByUserId() {
+        return orderRepository.findByUserId(userId);
+    }
+
+    @Benchmark
+    public Optional<Order> findById() {
+        return orderRepository.findById(randomOrder().getId());
+    }
+
+    @Benchmark
+    public boolean updateStatus() {
+        return orderRepository.updateStatus(randomOrder().getId(), OrderStatus.PAID);
+    }
+
+    /**
+     * Повторное сохранение существующего заказа (вставку новых измеряет {@code OrderCreationBenchmark})
+     */
+    @Benchmark
+    public Order save() {
+        return orderRepository.save(randomOrder());
+    }
+
+    private Order randomOrder() {
+        return orders[ThreadLocalRandom.current().nextInt(orders.length)];
+    }
+}
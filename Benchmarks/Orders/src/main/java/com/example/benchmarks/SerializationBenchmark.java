@@ -0,0 +1,104 @@
+package com.example.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.Good;
+import com.example.Order;
+import com.example.messaging.MessageSchema;
+import com.google.gson.Gson;
+
+/**
+ * Стоимость Gson-сериализации сообщений {@link MessageSchema} и ответа {@code GET /api/orders/:orderId}.
+ * Сообщения фиксированного размера; размер ответа с заказом задается числом позиций {@code itemsPerOrder}.
+ * Экземпляр {@link Gson} потокобезопасен и, как в сервисах, общий для всех потоков ({@code -t}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private final Gson gson = new Gson();
+    private MessageSchema.PaymentRequest paymentRequest;
+    private String paymentRequestJson;
+    private String paymentResultJson;
+    private MessageSchema.OrderStatusChanged statusChanged;
+
+    @Setup
+    public void setUp() {
+        paymentRequest = new MessageSchema.PaymentRequest(42L, 7, 1299.99, "tx-42");
+        paymentRequest.messageId = "msg-42";
+        paymentRequestJson = gson.toJson(paymentRequest);
+        MessageSchema.PaymentResult paymentResult = new MessageSchema.PaymentResult(42L, 1299.99, false, "tx-42", "Insufficient funds");
+        paymentResult.messageId = "msg-43";
+        paymentResultJson = gson.toJson(paymentResult);
+        statusChanged = new MessageSchema.OrderStatusChanged(42L, 7, "PAID");
+        statusChanged.messageId = "msg-44";
+    }
+
+    /**
+     * Ответ с заказом в том же виде, что собирает {@code OrderController}
+     */
+    @State(Scope.Benchmark)
+    public static class OrderView {
+        @Param({"1", "10", "100"})
+        public int itemsPerOrder;
+
+        private Map<String, Object> orderData;
+
+        @Setup
+        public void setUp() {
+            Order order = new Order(7);
+            for (int i = 0; i < itemsPerOrder; i++) {
+                order.addItem(new Good(10.5 + i, "Good " + i, "Benchmark good", 1000), 1 + i % 3);
+            }
+            orderData = new HashMap<>();
+            orderData.put("orderId", order.getId());
+            orderData.put("status", order.getStatus().toString());
+            orderData.put("totalPrice", order.getTotalPrice());
+            orderData.put("items", order.getItems());
+            orderData.put("createdAt", order.getCreatedAt().toString());
+        }
+    }
+
+    @Benchmark
+    public String paymentRequestToJson() {
+        return gson.toJson(paymentRequest);
+    }
+
+    @Benchmark
+    public MessageSchema.PaymentRequest paymentRequestFromJson() {
+        return gson.fromJson(paymentRequestJson, MessageSchema.PaymentRequest.class);
+    }
+
+    @Benchmark
+    public MessageSchema.PaymentResult paymentResultFromJson() {
+        return gson.fromJson(paymentResultJson, MessageSchema.PaymentResult.class);
+    }
+
+    @Benchmark
+    public String orderStatusChangedToJson() {
+        return gson.toJson(statusChanged);
+    }
+
+    @Benchmark
+    public String orderViewToJson(OrderView view) {
+        return gson.toJson(view.orderData);
+    }
+}
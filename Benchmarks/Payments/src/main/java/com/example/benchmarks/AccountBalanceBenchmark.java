@@ -0,0 +1,111 @@
+package com.example.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.Account;
+import com.example.Money;
+
+/**
+ * Конкурентные пополнения и списания на небольшом числе "горячих" счетов.
+ * {@code longBalance} - текущий {@link Account} с балансом в копейках на AtomicLong,
+ * {@code doubleBalance} - прежняя реализация на AtomicReference&lt;Double&gt; для сравнения.
+ * Запуск с профилировщиком аллокаций: {@code -prof gc}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountBalanceBenchmark {
+
+    private static final Money AMOUNT = Money.ofMinor(1_00);
+
+    @Param({"1", "4"})
+    public int hotAccounts;
+
+    private Account[] accounts;
+    private DoubleBalance[] legacyAccounts;
+
+    @Setup
+    public void setUp() {
+        accounts = new Account[hotAccounts];
+        legacyAccounts = new DoubleBalance[hotAccounts];
+        for (int i = 0; i < hotAccounts; i++) {
+            accounts[i] = new Account(i);
+            accounts[i].deposit(Money.ofMinor(1_000_000_00));
+            legacyAccounts[i] = new DoubleBalance();
+            legacyAccounts[i].deposit(1_000_000.0);
+        }
+    }
+
+    @Benchmark
+    @Group("longBalance")
+    @GroupThreads(2)
+    public void deposit() {
+        accounts[nextAccount()].deposit(AMOUNT);
+    }
+
+    @Benchmark
+    @Group("longBalance")
+    @GroupThreads(2)
+    public boolean withdraw() {
+        return accounts[nextAccount()].withdraw(AMOUNT);
+    }
+
+    @Benchmark
+    @Group("doubleBalance")
+    @GroupThreads(2)
+    public void legacyDeposit() {
+        legacyAccounts[nextAccount()].deposit(1.0);
+    }
+
+    @Benchmark
+    @Group("doubleBalance")
+    @GroupThreads(2)
+    public boolean legacyWithdraw() {
+        return legacyAccounts[nextAccount()].withdraw(1.0);
+    }
+
+    private int nextAccount() {
+        return hotAccounts == 1 ? 0 : ThreadLocalRandom.current().nextInt(hotAccounts);
+    }
+
+    /**
+     * Прежняя реализация баланса счета
+     */
+    private static final class DoubleBalance {
+        private final AtomicReference<Double> balance = new AtomicReference<>(0.0);
+
+        void deposit(double amount) {
+            balance.updateAndGet(currentBalance -> currentBalance + amount);
+        }
+
+        boolean withdraw(double amount) {
+            double oldBalance = balance.get();
+            double newBalance = balance.updateAndGet(currentBalance -> {
+                if (currentBalance < amount) {
+                    return currentBalance;
+                }
+                return currentBalance - amount;
+            });
+            return newBalance == oldBalance - amount;
+        }
+    }
+}
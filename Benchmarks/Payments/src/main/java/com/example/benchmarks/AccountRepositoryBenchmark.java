@@ -0,0 +1,80 @@
+package com.example.benchmarks;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.Account;
+import com.example.Money;
+import com.example.repository.AccountRepository;
+
+/**
+ * Поиск счета в {@link AccountRepository} и списание с него, как при обработке запроса на оплату.
+ * Число счетов задает и размер хранилища, и конкуренцию: при {@code accounts=1} все потоки ({@code -t})
+ * списывают с одного счета и повторяют CAS в {@link Account#withdraw(Money)}, при большом числе счетов
+ * потоки почти не пересекаются. Баланса хватает на все итерации, поэтому списание всегда успешно.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountRepositoryBenchmark {
+
+    private static final Money AMOUNT = Money.ofMinor(1_00);
+
+    @Param({"1", "16", "100000"})
+    public int accounts;
+
+    private AccountRepository accountRepository;
+
+    @Setup
+    public void setUp() {
+        accountRepository = new AccountRepository();
+        for (int userId = 0; userId < accounts; userId++) {
+            Account account = new Account(userId);
+            account.deposit(Money.ofMinor(Long.MAX_VALUE / 2));
+            accountRepository.save(account);
+        }
+    }
+
+    @Benchmark
+    public Optional<Account> findByUserId() {
+        return accountRepository.findByUserId(nextUserId());
+    }
+
+    @Benchmark
+    public boolean existsByUserId() {
+        return accountRepository.existsByUserId(nextUserId());
+    }
+
+    /**
+     * Повторное создание счета существующего пользователя - ответ без записи
+     */
+    @Benchmark
+    public boolean saveIfAbsentExisting() {
+        return accountRepository.saveIfAbsent(new Account(nextUserId()));
+    }
+
+    @Benchmark
+    public boolean withdraw() {
+        return accountRepository.findByUserId(nextUserId()).get().withdraw(AMOUNT);
+    }
+
+    private int nextUserId() {
+        return accounts == 1 ? 0 : ThreadLocalRandom.current().nextInt(accounts);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.inbox.InboxMessage;
+import com.example.inbox.InboxRepository;
+import com.example.messaging.MessageSchema;
+
+/**
+ * Дедупликация входящих сообщений в {@link InboxRepository} при заполненном окне из {@code entries} записей.
+ * {@code existsByIdMiss} - новое сообщение, на которое отвечает фильтр Блума, {@code existsByIdHit} -
+ * повторная доставка. {@code saveIfAbsentNew} сохраняет новые сообщения и вытесняет самые старые,
+ * поэтому размер окна в ходе замера не меняется.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InboxRepositoryBenchmark {
+
+    @Param({"1000", "100000"})
+    public int entries;
+
+    private final AtomicLong nextId = new AtomicLong();
+    private InboxRepository inboxRepository;
+    private String[] storedIds;
+    private String[] missingIds;
+
+    @Setup
+    public void setUp() {
+        inboxRepository = new InboxRepository(entries, InboxRepository.DEFAULT_RETENTION, false);
+        storedIds = new String[entries];
+        missingIds = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            storedIds[i] = "stored-" + i;
+            missingIds[i] = "missing-" + i;
+            inboxRepository.saveIfAbsent(message(storedIds[i]));
+        }
+    }
+
+    @Benchmark
+    public boolean existsByIdHit() {
+        return inboxRepository.existsById(storedIds[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean existsByIdMiss() {
+        return inboxRepository.existsById(missingIds[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean saveIfAbsentNew() {
+        return inboxRepository.saveIfAbsent(message("new-" + nextId.incrementAndGet()));
+    }
+
+    private int nextIndex() {
+        return ThreadLocalRandom.current().nextInt(entries);
+    }
+
+    private static InboxMessage message(String id) {
+        return new InboxMessage(id, MessageSchema.PaymentRequestType.PROCESS_PAYMENT, "{}", "tx-" + id);
+    }
+}
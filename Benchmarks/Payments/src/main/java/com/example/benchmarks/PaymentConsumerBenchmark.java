@@ -0,0 +1,128 @@
+package com.example.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.inbox.InboxRepository;
+import com.example.inbox.InboxService;
+import com.example.logging.Appender;
+import com.example.logging.ConsoleAppender;
+import com.example.logging.Logger;
+import com.example.messaging.KeyedExecutor;
+import com.example.messaging.MessageBroker;
+import com.example.messaging.MessageSchema;
+import com.example.outbox.OutboxRepository;
+import com.example.outbox.OutboxService;
+import com.example.repository.AccountRepository;
+import com.example.repository.PaymentRepository;
+import com.example.service.AccountService;
+import com.example.service.PaymentService;
+import com.google.gson.Gson;
+
+/**
+ * Пропускная способность обработки запросов на оплату: последовательная обработка
+ * (как раньше в потоке доставки RabbitMQ) против полос {@link KeyedExecutor} с
+ * партиционированием по userId. {@code cpuTokens} имитирует работу обработчика,
+ * не связанную с хранилищем (разбор, сериализация, журналирование).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaymentConsumerBenchmark {
+
+    private static final int BATCH_SIZE = 1024;
+
+    @Param({"1000"})
+    public int users;
+
+    @Param({"0", "2000"})
+    public int cpuTokens;
+
+    private final Gson gson = new Gson();
+    private InboxService inboxService;
+    private KeyedExecutor lanes;
+    private Appender originalAppender;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Журнал сервисов в бенчмарке - только шум
+        PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream());
+        originalAppender = Logger.getAppender();
+        Logger.setAppender(new ConsoleAppender(nowhere, nowhere));
+
+        AccountService accountService = new AccountService(new AccountRepository());
+        for (int userId = 0; userId < users; userId++) {
+            accountService.createAccount(userId);
+            accountService.depositFunds(userId, 1_000_000_000d);
+        }
+        // Брокер не подключается: исходящие сообщения только сохраняются в Outbox
+        OutboxService outboxService = new OutboxService(new OutboxRepository(), new MessageBroker());
+        PaymentService paymentService = new PaymentService(new PaymentRepository(), accountService, outboxService);
+        inboxService = new InboxService(new InboxRepository(), paymentService);
+        lanes = new KeyedExecutor(Runtime.getRuntime().availableProcessors(), "payment-lane");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        lanes.shutdown(10, TimeUnit.SECONDS);
+        Logger.setAppender(originalAppender);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void sequential() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            handle(nextMessage());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void keyedLanes() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            String message = nextMessage();
+            lanes.execute(inboxService.partitionKey(message), () -> {
+                handle(message);
+                done.countDown();
+            });
+        }
+        done.await();
+    }
+
+    private void handle(String message) {
+        Blackhole.consumeCPU(cpuTokens);
+        inboxService.processMessage(message);
+    }
+
+    private String nextMessage() {
+        long n = sequence++;
+        MessageSchema.PaymentRequest request = new MessageSchema.PaymentRequest(
+                (int) n, (int) (n % users), 1.0, UUID.randomUUID().toString());
+        request.messageId = "msg-" + n;
+        return gson.toJson(request);
+    }
+}
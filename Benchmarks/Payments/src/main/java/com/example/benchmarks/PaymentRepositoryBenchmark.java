@@ -0,0 +1,85 @@
+package com.example.benchmarks;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.Payment;
+import com.example.PaymentStatus;
+import com.example.repository.PaymentRepository;
+
+/**
+ * Операции {@link PaymentRepository} в зависимости от числа сохраненных платежей.
+ * {@code saveIfAbsentDuplicate} - путь повторной доставки запроса на оплату: платеж с тем же
+ * transactionId уже есть, и репозиторий должен ответить без записи.
+ * Каждая операция берет случайный платеж, чтобы при нескольких потоках ({@code -t}) они не работали с одним.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentRepositoryBenchmark {
+
+    @Param({"1000", "100000"})
+    public int totalPayments;
+
+    private PaymentRepository paymentRepository;
+    private Payment[] payments;
+    private Payment[] duplicates;
+
+    @Setup
+    public void setUp() {
+        paymentRepository = new PaymentRepository();
+        payments = new Payment[totalPayments];
+        duplicates = new Payment[totalPayments];
+        for (int i = 0; i < totalPayments; i++) {
+            payments[i] = paymentRepository.save(new Payment(i, 100.0));
+            duplicates[i] = new Payment(i, 100.0);
+            duplicates[i].setTransactionId(payments[i].getTransactionId());
+        }
+    }
+
+    @Benchmark
+    public Optional<Payment> findById() {
+        return paymentRepository.findById(payments[nextIndex()].getId());
+    }
+
+    @Benchmark
+    public Optional<Payment> findByTransactionId() {
+        return paymentRepository.findByTransactionId(payments[nextIndex()].getTransactionId());
+    }
+
+    @Benchmark
+    public List<Payment> findByOrderId() {
+        return paymentRepository.findByOrderId(payments[nextIndex()].getOrderId());
+    }
+
+    @Benchmark
+    public boolean updateStatus() {
+        return paymentRepository.updateStatus(payments[nextIndex()].getId(), PaymentStatus.COMPLETED);
+    }
+
+    @Benchmark
+    public Optional<Payment> saveIfAbsentDuplicate() {
+        return paymentRepository.saveIfAbsent(duplicates[nextIndex()]);
+    }
+
+    private int nextIndex() {
+        return ThreadLocalRandom.current().nextInt(totalPayments);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Запуск бенчмарков при нескольких числах потоков со сводной таблицей результатов:
+ * строка - бенчмарк с параметрами, столбец - число потоков. Таблица и CSV печатаются в одном формате
+ * при каждом запуске, поэтому результаты до и после изменения можно сравнить построчно.
+ * <pre>
+ *   java -cp orders-benchmarks.jar com.example.benchmarks.BenchmarkRunner [-t 1,4] [-csv файл] [-quick] [regexp...]
+ * </pre>
+ * {@code -t} - числа потоков (по умолчанию 1 и 4), {@code -csv} - сохранить результаты в CSV,
+ * {@code -quick} - короткий прогон для проверки (1 прогрев и 2 измерения по секунде),
+ * регулярные выражения выбирают бенчмарки, как у JMH (по умолчанию - все).
+ * Число потоков, заданное здесь, заменяет {@code @Threads} бенчмарков.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        List<Integer> threadCounts = List.of(1, 4);
+        Path csv = null;
+        boolean quick = false;
+        List<String> includes = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-t":
+                    threadCounts = parseThreads(args[++i]);
+                    break;
+                case "-csv":
+                    csv = Paths.get(args[++i]);
+                    break;
+                case "-quick":
+                    quick = true;
+                    break;
+                default:
+                    includes.add(args[i]);
+            }
+        }
+
+        // бенчмарк с параметрами (в порядке JMH) -> число потоков -> результат
+        Map<String, Map<Integer, RunResult>> table = new LinkedHashMap<>();
+        for (int threads : threadCounts) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .threads(threads)
+                    .shouldFailOnError(true);
+            for (String include : includes) {
+                options.include(include);
+            }
+            if (quick) {
+                options.forks(1)
+                        .warmupIterations(1).warmupTime(TimeValue.seconds(1))
+                        .measurementIterations(2).measurementTime(TimeValue.seconds(1));
+            }
+            Collection<RunResult> results = new Runner(options.build()).run();
+            for (RunResult result : results) {
+                table.computeIfAbsent(key(result.getParams()), k -> new TreeMap<>()).put(threads, result);
+            }
+        }
+
+        System.out.println();
+        System.out.print(format(table, threadCounts));
+        if (csv != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(csv, StandardCharsets.UTF_8))) {
+                out.println("benchmark,threads,mode,score,error,unit");
+                for (Map.Entry<String, Map<Integer, RunResult>> row : table.entrySet()) {
+                    for (Map.Entry<Integer, RunResult> cell : row.getValue().entrySet()) {
+                        Result<?> result = cell.getValue().getPrimaryResult();
+                        out.printf("\"%s\",%d,%s,%s,%s,%s%n", row.getKey(), cell.getKey(),
+                                cell.getValue().getParams().getMode().shortLabel(),
+                                result.getScore(), result.getScoreError(), result.getScoreUnit());
+                    }
+                }
+            }
+            System.out.println("Results saved to " + csv.toAbsolutePath());
+        }
+    }
+
+    private static List<Integer> parseThreads(String value) {
+        List<Integer> threads = new ArrayList<>();
+        for (String part : value.split(",")) {
+            threads.add(Integer.parseInt(part.trim()));
+        }
+        return threads;
+    }
+
+    /**
+     * Короткое имя бенчмарка и его параметры: {@code OrderRepositoryBenchmark.findById totalOrders=1000}
+     */
+    private static String key(BenchmarkParams params) {
+        String benchmark = params.getBenchmark();
+        StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1));
+        for (String name : params.getParamsKeys()) {
+            key.append(' ').append(name).append('=').append(params.getParam(name));
+        }
+        return key.toString();
+    }
+
+    private static String format(Map<String, Map<Integer, RunResult>> table, List<Integer> threadCounts) {
+        int keyWidth = "Benchmark".length();
+        for (String key : table.keySet()) {
+            keyWidth = Math.max(keyWidth, key.length());
+        }
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%-" + keyWidth + "s  %-5s", "Benchmark", "Mode"));
+        for (int threads : threadCounts) {
+            out.append(String.format(Locale.ROOT, "  %22s", "threads=" + threads));
+        }
+        out.append("  Units\n");
+        for (Map.Entry<String, Map<Integer, RunResult>> row : table.entrySet()) {
+            RunResult any = row.getValue().values().iterator().next();
+            out.append(String.format(Locale.ROOT, "%-" + keyWidth + "s  %-5s", row.getKey(), any.getParams().getMode().shortLabel()));
+            for (int threads : threadCounts) {
+                RunResult cell = row.getValue().get(threads);
+                out.append(String.format(Locale.ROOT, "  %22s", cell != null ? score(cell.getPrimaryResult()) : "-"));
+            }
+            out.append("  ").append(any.getPrimaryResult().getScoreUnit()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static String score(Result<?> result) {
+        return Double.isNaN(result.getScoreError())
+                ? String.format(Locale.ROOT, "%.3f", result.getScore())
+                : String.format(Locale.ROOT, "%.3f ± %.3f", result.getScore(), result.getScoreError());
+    }
+}
@@ -1,18 +1,32 @@
 package com.example;
 
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.example.id.BlockIdGenerator;
+import com.example.id.IdGenerator;
 
 public class Account {
-    private static int lastId = 0;
+    private static volatile IdGenerator idGenerator = new BlockIdGenerator();
 
     private final int id;
     private final int userId;
-    private final AtomicReference<Double> balance;
+    // Баланс в копейках: целочисленный CAS без упаковки и без ошибок округления double
+    private final AtomicLong balanceMinor;
     
+    /**
+     * Заменить генератор ID счетов
+     */
+    public static void setIdGenerator(IdGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("ID generator cannot be null");
+        }
+        idGenerator = generator;
+    }
+
     public Account(int userId) {
-        this.id = ++lastId;
+        this.id = idGenerator.nextIntId();
         this.userId = userId;
-        this.balance = new AtomicReference<>(0.0);
+        this.balanceMinor = new AtomicLong();
     }
 
     public int getId() {
@@ -26,20 +40,34 @@ public class Account {
     }
 
     public double getBalance() {
-        return balance.get();
+        return getBalanceMoney().toDouble();
+    }
+
+    public Money getBalanceMoney() {
+        return Money.ofMinor(balanceMinor.get());
     }
 
     /**
      * Атомарное пополнение счета.
      * @param amount Сумма для пополнения
-     * @return Актуальный баланс после пополенния
      */
     public void deposit(double amount) {
-        if (amount > 0) {
-            balance.updateAndGet(currentBalance -> currentBalance + amount);
-            return;
+        deposit(Money.positive(amount, "Deposit amount"));
+    }
+
+    /**
+     * Атомарное пополнение счета.
+     * @param amount Сумма для пополнения
+     */
+    public void deposit(Money amount) {
+        long amountMinor = amount.getMinorUnits();
+        if (amountMinor <= 0) {
+            throw new IllegalArgumentException("Deposit amount must be positive");
         }
-        throw new IllegalArgumentException("Deposit amount must be positive");
+        long current;
+        do {
+            current = balanceMinor.get();
+        } while (!balanceMinor.compareAndSet(current, Math.addExact(current, amountMinor)));
     }
 
     /**
@@ -48,16 +76,27 @@ public class Account {
      * @return true если списание успешно, иначе false, если недостаточно средств
      */
     public boolean withdraw(double amount) {
-        if (amount <= 0) {
+        return withdraw(Money.positive(amount, "Withdrawal amount"));
+    }
+
+    /**
+     * Атомарное списание средств с проверкой на достаточность.
+     * Цикл CAS по long не выделяет памяти ни при успехе, ни при повторе.
+     * @param amount Сумма для списания
+     * @return true если списание успешно, иначе false, если недостаточно средств
+     */
+    public boolean withdraw(Money amount) {
+        long amountMinor = amount.getMinorUnits();
+        if (amountMinor <= 0) {
             throw new IllegalArgumentException("Withdrawal amount must be positive");
         }
-        double oldBalance = balance.get();
-        double newBalance = balance.updateAndGet(currentBalance -> {
-            if (currentBalance < amount) {
-                return currentBalance;
+        long current;
+        do {
+            current = balanceMinor.get();
+            if (current < amountMinor) {
+                return false;
             }
-            return currentBalance - amount;
-        });
-        return newBalance == oldBalance - amount;
+        } while (!balanceMinor.compareAndSet(current, current - amountMinor));
+        return true;
     }
 }
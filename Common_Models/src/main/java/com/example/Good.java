@@ -1,8 +1,10 @@
 package com.example;
 
+import com.example.id.BlockIdGenerator;
+import com.example.id.IdGenerator;
 
 public class Good {
-    private static int lastId = 0;
+    private static volatile IdGenerator idGenerator = new BlockIdGenerator();
 
     private final double Price;
     private final int Id;
@@ -11,9 +13,19 @@ public class Good {
 
     private int amount_on_market;
 
+    /**
+     * Заменить генератор ID товаров
+     */
+    public static void setIdGenerator(IdGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("ID generator cannot be null");
+        }
+        idGenerator = generator;
+    }
+
     public Good(double price, String name, String description, int AoM) {
         this.Price = price;
-        this.Id = ++lastId;
+        this.Id = idGenerator.nextIntId();
         this.Name = name;
         this.Description = description;
         this.amount_on_market = AoM;
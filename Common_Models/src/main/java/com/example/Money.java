@@ -0,0 +1,105 @@
+package com.example;
+
+/**
+ * Денежная сумма в минимальных единицах (копейках).
+ * Неизменяемый тип без BigDecimal: все операции - целочисленные,
+ * переполнение приводит к ArithmeticException, а не к потере точности.
+ */
+public final class Money implements Comparable<Money> {
+    public static final int MINOR_UNITS_PER_MAJOR = 100;
+    public static final Money ZERO = new Money(0);
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    /**
+     * Сумма в копейках
+     */
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * Сумма в рублях с округлением до копейки - для значений, пришедших из JSON
+     */
+    public static Money of(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("Amount must be a finite number");
+        }
+        double minor = amount * MINOR_UNITS_PER_MAJOR;
+        if (Math.abs(minor) >= Long.MAX_VALUE) {
+            throw new ArithmeticException("Amount is too large: " + amount);
+        }
+        return ofMinor(Math.round(minor));
+    }
+
+    /**
+     * Положительная сумма в рублях с округлением до копейки - для пополнений и списаний из JSON.
+     * Сумма меньше полукопейки округлилась бы до нуля, поэтому отклоняется с отдельным сообщением.
+     * @param what что это за сумма - начало сообщения об ошибке, например "Deposit amount"
+     */
+    public static Money positive(double amount, String what) {
+        if (!(amount > 0)) {
+            throw new IllegalArgumentException(what + " must be positive");
+        }
+        Money money = of(amount);
+        if (money.minorUnits == 0) {
+            throw new IllegalArgumentException(what + " must be at least 0.01, got " + amount);
+        }
+        return money;
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    /**
+     * Сумма в рублях - для ответов API, где сумма передается числом
+     */
+    public double toDouble() {
+        return (double) minorUnits / MINOR_UNITS_PER_MAJOR;
+    }
+
+    public Money plus(Money other) {
+        return ofMinor(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Money)) {
+            return false;
+        }
+        return minorUnits == ((Money) o).minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        long major = Math.abs(minorUnits / MINOR_UNITS_PER_MAJOR);
+        long minor = Math.abs(minorUnits % MINOR_UNITS_PER_MAJOR);
+        return (minorUnits < 0 ? "-" : "") + major + "." + (minor < 10 ? "0" : "") + minor;
+    }
+}
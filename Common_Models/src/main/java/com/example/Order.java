@@ -6,11 +6,14 @@ import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
+import com.example.id.BlockIdGenerator;
+import com.example.id.IdGenerator;
+
 
 public class Order {
-    private static int lastId = 0;
+    private static volatile IdGenerator idGenerator = new BlockIdGenerator();
 
-    private final int id;
+    private final long id;
     private final int userId;
     private final String transactionId;
     private OrderStatus status;
@@ -19,8 +22,19 @@ public class Order {
     private final List<OrderItem> items;
     private double totalPrice;
 
+    /**
+     * Заменить генератор ID заказов - например, на {@link com.example.id.NodeIdGenerator},
+     * чтобы несколько экземпляров сервиса заказов выдавали ID без координации
+     */
+    public static void setIdGenerator(IdGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("ID generator cannot be null");
+        }
+        idGenerator = generator;
+    }
+
     public Order(int userId) {
-        this.id = ++lastId;
+        this.id = idGenerator.nextId();
         this.userId = userId;
         this.transactionId = UUID.randomUUID().toString();
         this.status = OrderStatus.CREATED;
@@ -29,7 +43,7 @@ public class Order {
         this.createdAt = LocalDateTime.now();
     }
 
-    public int getId() {
+    public long getId() {
         return id;
     }
 
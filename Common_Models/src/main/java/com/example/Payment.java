@@ -3,23 +3,36 @@ package com.example;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
+import com.example.id.BlockIdGenerator;
+import com.example.id.IdGenerator;
+
 public class Payment {
-    private static int lastId = 0;
+    private static volatile IdGenerator idGenerator = new BlockIdGenerator();
 
     private final int id;
-    private final int orderId;
+    private final long orderId;
     private String transactionId; // Изменено с final на изменяемое
     private final double amount;
     private PaymentStatus status;
     private final LocalDateTime createdAt;
     private LocalDateTime processedAt;
 
-    public Payment(int orderId, double amount) {
+    /**
+     * Заменить генератор ID платежей
+     */
+    public static void setIdGenerator(IdGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("ID generator cannot be null");
+        }
+        idGenerator = generator;
+    }
+
+    public Payment(long orderId, double amount) {
         if (amount <= 0) {
             throw new IllegalArgumentException("Payment amount must be positive");
         }
 
-        this.id = ++lastId;
+        this.id = idGenerator.nextIntId();
         this.orderId = orderId;
         this.transactionId = UUID.randomUUID().toString(); // Генерируем по умолчанию
         this.amount = amount;
@@ -31,7 +44,7 @@ public class Payment {
         return id;
     }
 
-    public int getOrderId() {
+    public long getOrderId() {
         return orderId;
     }
 
@@ -0,0 +1,60 @@
+package com.example.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Генератор последовательных ID, раздающий потокам блоки идентификаторов.
+ * Общий счетчик изменяется один раз на блок, остальные ID поток выдает из своего
+ * диапазона без синхронизации. В однопоточном режиме ID идут подряд: 1, 2, 3...
+ * ID уникальны в пределах процесса, но не упорядочены между потоками.
+ */
+public class BlockIdGenerator implements IdGenerator {
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final AtomicLong nextBlockStart;
+    private final int blockSize;
+    private final ThreadLocal<Range> ranges = ThreadLocal.withInitial(Range::new);
+
+    public BlockIdGenerator() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    public BlockIdGenerator(int blockSize) {
+        this(1, blockSize);
+    }
+
+    /**
+     * @param firstId первый выдаваемый ID
+     * @param blockSize число ID, резервируемых потоком за одно обращение к общему счетчику
+     */
+    public BlockIdGenerator(long firstId, int blockSize) {
+        if (firstId <= 0) {
+            throw new IllegalArgumentException("First ID must be positive");
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.nextBlockStart = new AtomicLong(firstId);
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public long nextId() {
+        Range range = ranges.get();
+        if (range.next == range.end) {
+            // Один поток подряд берет соседние ID, пока другие потоки не забрали следующий блок
+            long start = nextBlockStart.getAndAdd(blockSize);
+            if (start < 0 || start + blockSize < 0) {
+                throw new ArithmeticException("ID space exhausted");
+            }
+            range.next = start;
+            range.end = start + blockSize;
+        }
+        return range.next++;
+    }
+
+    private static final class Range {
+        private long next;
+        private long end;
+    }
+}
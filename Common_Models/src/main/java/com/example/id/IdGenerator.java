@@ -0,0 +1,21 @@
+package com.example.id;
+
+/**
+ * Источник уникальных идентификаторов сущностей.
+ * Реализации должны быть потокобезопасны.
+ */
+public interface IdGenerator {
+
+    /**
+     * Следующий уникальный идентификатор (всегда положительный)
+     */
+    long nextId();
+
+    /**
+     * Следующий идентификатор для сущностей с int ID
+     * @throws ArithmeticException если идентификаторы вышли за пределы int
+     */
+    default int nextIntId() {
+        return Math.toIntExact(nextId());
+    }
+}
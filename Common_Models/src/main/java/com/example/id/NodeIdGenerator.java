@@ -0,0 +1,116 @@
+package com.example.id;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Генератор 64-битных ID, уникальных между несколькими экземплярами сервиса без координации.
+ * Раскладка ID (от старших битов к младшим):
+ * <pre>
+ *   [миллисекунды от EPOCH][ID узла][номер в миллисекунде]
+ * </pre>
+ * Всего не больше 53 бит: ID уходят во фронтенд числом JSON, а JavaScript точно представляет
+ * только целые до 2^53. По умолчанию 39 + 3 + 11 бит: 39 бит времени хватает до 2041 года
+ * (к этому времени {@link #EPOCH} нужно сдвинуть), 3 бита узла - на 8 экземпляров,
+ * 11 бит номера - на 2048 ID в миллисекунду, т.е. больше 2 миллионов ID в секунду на узел.
+ * Потоки резервируют номера блоками, поэтому общий счетчик изменяется не на каждый ID.
+ * Блок годен только в своей миллисекунде: оставшиеся номера прошедшей миллисекунды отбрасываются,
+ * поэтому время в ID отстает от момента создания меньше чем на миллисекунду, и ID разных потоков
+ * упорядочены по времени создания с точностью до миллисекунды.
+ */
+public class NodeIdGenerator implements IdGenerator {
+    public static final Instant EPOCH = Instant.parse("2024-01-01T00:00:00Z");
+    public static final int DEFAULT_NODE_BITS = 3;
+    public static final int DEFAULT_SEQUENCE_BITS = 11;
+    public static final int TIMESTAMP_BITS = 39;
+
+    private final long nodeId;
+    private final int nodeBits;
+    private final int sequenceBits;
+    private final long sequenceMask;
+    private final int blockSize;
+    private final Clock clock;
+    private final long epochMillis;
+
+    // Следующее свободное значение (миллисекунда << sequenceBits | номер)
+    private final AtomicLong nextSlot = new AtomicLong();
+    private final ThreadLocal<Range> ranges = ThreadLocal.withInitial(Range::new);
+
+    public NodeIdGenerator(int nodeId) {
+        this(nodeId, DEFAULT_NODE_BITS, DEFAULT_SEQUENCE_BITS);
+    }
+
+    public NodeIdGenerator(int nodeId, int nodeBits, int sequenceBits) {
+        this(nodeId, nodeBits, sequenceBits, Clock.systemUTC());
+    }
+
+    NodeIdGenerator(int nodeId, int nodeBits, int sequenceBits, Clock clock) {
+        if (nodeBits < 0 || sequenceBits < 1 || TIMESTAMP_BITS + nodeBits + sequenceBits > 63) {
+            throw new IllegalArgumentException("Invalid ID layout: " + nodeBits + " node bits, "
+                    + sequenceBits + " sequence bits");
+        }
+        if (nodeId < 0 || nodeId >= (1L << nodeBits)) {
+            throw new IllegalArgumentException("Node ID must be in [0, " + ((1L << nodeBits) - 1) + "]");
+        }
+        this.nodeId = nodeId;
+        this.nodeBits = nodeBits;
+        this.sequenceBits = sequenceBits;
+        this.sequenceMask = (1L << sequenceBits) - 1;
+        // Блок - не больше четверти миллисекунды, чтобы потоки не простаивали в ожидании следующей
+        this.blockSize = (int) Math.max(1, (sequenceMask + 1) / 4);
+        this.clock = clock;
+        this.epochMillis = EPOCH.toEpochMilli();
+    }
+
+    @Override
+    public long nextId() {
+        Range range = ranges.get();
+        if (range.next == range.end || (range.next >>> sequenceBits) < currentTimestamp()) {
+            reserve(range);
+        }
+        long slot = range.next++;
+        long timestamp = slot >>> sequenceBits;
+        return (timestamp << (nodeBits + sequenceBits)) | (nodeId << sequenceBits) | (slot & sequenceMask);
+    }
+
+    /**
+     * Зарезервировать для потока блок номеров в пределах одной миллисекунды
+     */
+    private void reserve(Range range) {
+        while (true) {
+            long now = currentTimestamp();
+            long current = nextSlot.get();
+            long start = Math.max(current, now << sequenceBits);
+            if ((start >>> sequenceBits) > now) {
+                // Номера текущей миллисекунды закончились - ждем следующую
+                Thread.onSpinWait();
+                continue;
+            }
+            long available = sequenceMask + 1 - (start & sequenceMask);
+            long end = start + Math.min(blockSize, available);
+            if (nextSlot.compareAndSet(current, end)) {
+                range.next = start;
+                range.end = end;
+                return;
+            }
+        }
+    }
+
+    private long currentTimestamp() {
+        long timestamp = clock.millis() - epochMillis;
+        if (timestamp < 0 || timestamp >= (1L << TIMESTAMP_BITS)) {
+            throw new IllegalStateException("Clock is outside of the ID timestamp range");
+        }
+        return timestamp;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    private static final class Range {
+        private long next;
+        private long end;
+    }
+}
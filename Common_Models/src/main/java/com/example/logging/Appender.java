@@ -0,0 +1,20 @@
+package com.example.logging;
+
+/**
+ * Получатель записей журнала. Сообщение передается шаблоном с аргументами:
+ * форматировать его или нет, решает приемник.
+ */
+public interface Appender {
+    /**
+     * Один или два аргумента передаются в {@code arg0} и {@code arg1}, чтобы частые вызовы не создавали массив;
+     * больше двух - в {@code args}, тогда {@code arg0} и {@code arg1} не используются
+     * @param argCount число аргументов шаблона
+     */
+    void append(LogLevel level, String logger, String template, int argCount, Object arg0, Object arg1, Object[] args);
+
+    /**
+     * Дождаться записи всех принятых сообщений
+     */
+    default void flush() {
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.logging;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Фоновая запись журнала. Вызывающий поток только копирует ссылки на шаблон и аргументы
+ * в заранее созданную ячейку кольцевого буфера и возвращается; форматирование и печать выполняет
+ * отдельный поток. Буфер без блокировок (ограниченная очередь Вьюкова): потоки-писатели занимают ячейки
+ * CAS-ом общего счетчика, а готовность ячейки публикуется ее порядковым номером.
+ * Если буфер заполнен, сообщение отбрасывается, а число отброшенных печатается следующей строкой журнала -
+ * медленный вывод не останавливает обработку запросов.
+ * Поток записи засыпает, когда буфер пуст, и просыпается сам, поэтому строка появляется с задержкой
+ * до {@link #MAX_IDLE_PARK_NANOS}: пока буфер остается пустым, сон удваивается от {@link #IDLE_PARK_NANOS},
+ * чтобы простаивающий сервис не будил поток тысячу раз в секунду. Аргументы форматируются позже вызова - изменяемые объекты передавать нельзя.
+ */
+public class AsyncAppender implements Appender, AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 8192;
+    static final long IDLE_PARK_NANOS = 1_000_000L;
+    static final long MAX_IDLE_PARK_NANOS = 100_000_000L;
+    // Аргументы сверх этого числа не сохраняются
+    private static final int MAX_ARGS = 8;
+
+    private final Slot[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final PrintStream out;
+    private final PrintStream err;
+    private final Thread writer;
+    private final StringBuilder line = new StringBuilder(256);
+    // Сколько сообщений записано; меняет только поток записи
+    private volatile long written;
+    // Сколько раз поток записи засыпал на пустом буфере; меняет только поток записи
+    private volatile long idleParks;
+    private volatile boolean closed;
+    private long reportedDropped;
+
+    public AsyncAppender() {
+        this(System.out, System.err, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity размер буфера, округляется вверх до степени двойки
+     */
+    public AsyncAppender(PrintStream out, PrintStream err, int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if (capacity == 1) {
+            size = 1;
+        }
+        this.slots = new Slot[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.out = out;
+        this.err = err;
+        this.writer = new Thread(this::run, "async-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void append(LogLevel level, String logger, String template, int argCount,
+                       Object arg0, Object arg1, Object[] args) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index].fill(level, logger, template, argCount, arg0, arg1, args);
+                    // Публикация: запись в ячейку видна потоку записи после этого номера
+                    sequences.lazySet(index, position + 1);
+                    return;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private void run() {
+        long head = 0;
+        long parkNanos = IDLE_PARK_NANOS;
+        while (true) {
+            long drained = drain(head);
+            if (drained > head) {
+                head = drained;
+                out.flush();
+                err.flush();
+                written = head;
+                parkNanos = IDLE_PARK_NANOS;
+                continue;
+            }
+            reportDropped();
+            if (closed) {
+                return;
+            }
+            LockSupport.parkNanos(this, parkNanos);
+            idleParks++;
+            parkNanos = Math.min(parkNanos * 2, MAX_IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Записать все опубликованные сообщения начиная с {@code head}
+     * @return номер следующего непрочитанного сообщения
+     */
+    private long drain(long head) {
+        while (true) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                return head;
+            }
+            Slot slot = slots[index];
+            line.setLength(0);
+            LogFormat.appendLine(line, slot.timestamp, slot.level, slot.thread, slot.logger,
+                    slot.template, slot.args, slot.argCount);
+            (slot.level.compareTo(LogLevel.WARN) >= 0 ? err : out).println(line);
+            slot.clear();
+            // Ячейка свободна для записи на следующем круге буфера
+            sequences.lazySet(index, head + slots.length);
+            head++;
+        }
+    }
+
+    private void reportDropped() {
+        long total = dropped.sum();
+        if (total > reportedDropped) {
+            err.println("AsyncAppender dropped " + (total - reportedDropped) + " log messages: buffer is full");
+            err.flush();
+            reportedDropped = total;
+        }
+    }
+
+    /**
+     * Дождаться записи сообщений, принятых до вызова
+     */
+    @Override
+    public void flush() {
+        long target = tail.get();
+        while (written < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+        }
+    }
+
+    long getIdleParks() {
+        return idleParks;
+    }
+
+    /**
+     * Сколько сообщений отброшено из-за заполненного буфера
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Записать оставшиеся сообщения и остановить поток записи
+     */
+    @Override
+    public void close() {
+        flush();
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ячейка буфера: создается один раз и переиспользуется, поэтому запись не выделяет память
+     * (кроме упаковки примитивных аргументов)
+     */
+    private static final class Slot {
+        private final Object[] args = new Object[MAX_ARGS];
+        private LogLevel level;
+        private long timestamp;
+        private String thread;
+        private String logger;
+        private String template;
+        private int argCount;
+
+        private void fill(LogLevel level, String logger, String template, int argCount,
+                          Object arg0, Object arg1, Object[] args) {
+            this.level = level;
+            this.timestamp = System.currentTimeMillis();
+            this.thread = Thread.currentThread().getName();
+            this.logger = logger;
+            this.template = template;
+            this.argCount = Math.min(argCount, MAX_ARGS);
+            if (argCount > 2) {
+                System.arraycopy(args, 0, this.args, 0, this.argCount);
+            } else {
+                this.args[0] = arg0;
+                this.args[1] = arg1;
+            }
+        }
+
+        private void clear() {
+            template = null;
+            thread = null;
+            for (int i = 0; i < argCount; i++) {
+                args[i] = null;
+            }
+            argCount = 0;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.logging;
+
+import java.io.PrintStream;
+
+/**
+ * Синхронная запись: строка форматируется и печатается в потоке вызывающего, под блокировкой PrintStream.
+ * WARN и ERROR пишутся в поток ошибок. Удобна в тестах и для сравнения с {@link AsyncAppender}.
+ */
+public class ConsoleAppender implements Appender {
+    private final PrintStream out;
+    private final PrintStream err;
+
+    public ConsoleAppender() {
+        this(System.out, System.err);
+    }
+
+    public ConsoleAppender(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    @Override
+    public void append(LogLevel level, String logger, String template, int argCount,
+                       Object arg0, Object arg1, Object[] args) {
+        StringBuilder line = new StringBuilder(128);
+        LogFormat.appendLine(line, System.currentTimeMillis(), level, Thread.currentThread().getName(), logger,
+                template, LogFormat.args(argCount, arg0, arg1, args), argCount);
+        (level.compareTo(LogLevel.WARN) >= 0 ? err : out).println(line);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.logging;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Формат строки журнала: {@code 2024-01-01 12:00:00.000 INFO  [поток] Логгер - сообщение}.
+ * Аргументы подставляются вместо {@code {}} по порядку; лишний последний аргумент-исключение
+ * печатается со стеком вызовов на следующих строках.
+ */
+final class LogFormat {
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private LogFormat() {
+    }
+
+    /**
+     * Аргументы вызова {@link Appender#append} одним массивом
+     */
+    static Object[] args(int argCount, Object arg0, Object arg1, Object[] args) {
+        if (argCount > 2) {
+            return args;
+        }
+        return argCount == 0 ? new Object[0] : argCount == 1 ? new Object[] {arg0} : new Object[] {arg0, arg1};
+    }
+
+    static void appendLine(StringBuilder line, long timestamp, LogLevel level, String thread, String logger,
+                           String template, Object[] args, int argCount) {
+        TIMESTAMP.formatTo(Instant.ofEpochMilli(timestamp), line);
+        line.append(' ').append(level.name());
+        for (int i = level.name().length(); i < 5; i++) {
+            line.append(' ');
+        }
+        line.append(" [").append(thread).append("] ").append(logger).append(" - ");
+        int used = appendMessage(line, template, args, argCount);
+        if (used == argCount - 1 && args[used] instanceof Throwable) {
+            StringWriter trace = new StringWriter();
+            ((Throwable) args[used]).printStackTrace(new PrintWriter(trace));
+            line.append(System.lineSeparator()).append(trace.toString().stripTrailing());
+        }
+    }
+
+    /**
+     * Подставить аргументы в шаблон
+     * @return сколько аргументов подставлено
+     */
+    static int appendMessage(StringBuilder out, String template, Object[] args, int argCount) {
+        if (template == null) {
+            out.append("null");
+            return 0;
+        }
+        int used = 0;
+        int from = 0;
+        int placeholder;
+        while (used < argCount && (placeholder = template.indexOf("{}", from)) >= 0) {
+            out.append(template, from, placeholder).append(args[used++]);
+            from = placeholder + 2;
+        }
+        out.append(template, from, template.length());
+        return used;
+    }
+}
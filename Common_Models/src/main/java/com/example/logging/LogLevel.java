@@ -0,0 +1,22 @@
+package com.example.logging;
+
+/**
+ * Уровни журнала по возрастанию важности
+ */
+public enum LogLevel {
+    DEBUG, INFO, WARN, ERROR;
+
+    /**
+     * Уровень по имени без учета регистра; неизвестное имя - INFO
+     */
+    public static LogLevel parse(String name) {
+        if (name != null) {
+            for (LogLevel level : values()) {
+                if (level.name().equalsIgnoreCase(name.trim())) {
+                    return level;
+                }
+            }
+        }
+        return INFO;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.logging;
+
+/**
+ * Журнал сервисов вместо {@code System.out.println}.
+ * Уровень задается при запуске ({@code -Dlog.level} или переменная окружения {@code LOG_LEVEL}, по умолчанию INFO)
+ * и хранится в статических константах, поэтому JIT удаляет вызовы отключенных уровней целиком.
+ * Сообщение - шаблон с {@code {}} вместо аргументов: строка собирается, только если уровень включен,
+ * и не в потоке вызывающего. Записи по умолчанию пишет {@link AsyncAppender}
+ * ({@code -Dlog.async=false} или {@code LOG_ASYNC=false} - синхронный {@link ConsoleAppender}).
+ * Последний аргумент-исключение, для которого нет {@code {}}, печатается со стеком вызовов.
+ */
+public final class Logger {
+    private static final LogLevel LEVEL = LogLevel.parse(setting("log.level", "LOG_LEVEL"));
+    private static final boolean DEBUG = LEVEL.compareTo(LogLevel.DEBUG) <= 0;
+    private static final boolean INFO = LEVEL.compareTo(LogLevel.INFO) <= 0;
+    private static final boolean WARN = LEVEL.compareTo(LogLevel.WARN) <= 0;
+
+    private static volatile Appender appender = defaultAppender();
+
+    private final String name;
+
+    private Logger(String name) {
+        this.name = name;
+    }
+
+    public static Logger getLogger(Class<?> type) {
+        return new Logger(type.getSimpleName());
+    }
+
+    public static Logger getLogger(String name) {
+        return new Logger(name);
+    }
+
+    /**
+     * Заменить приемник записей (например, в тестах и бенчмарках); прежний приемник дописывает свои записи
+     */
+    public static void setAppender(Appender newAppender) {
+        Appender previous = appender;
+        appender = newAppender;
+        previous.flush();
+    }
+
+    public static Appender getAppender() {
+        return appender;
+    }
+
+    /**
+     * Уровень, заданный при запуске
+     */
+    public static LogLevel getLevel() {
+        return LEVEL;
+    }
+
+    public boolean isDebugEnabled() {
+        return DEBUG;
+    }
+
+    public boolean isInfoEnabled() {
+        return INFO;
+    }
+
+    public boolean isWarnEnabled() {
+        return WARN;
+    }
+
+    public void debug(String message) {
+        if (DEBUG) {
+            appender.append(LogLevel.DEBUG, name, message, 0, null, null, null);
+        }
+    }
+
+    public void debug(String template, Object arg) {
+        if (DEBUG) {
+            appender.append(LogLevel.DEBUG, name, template, 1, arg, null, null);
+        }
+    }
+
+    public void debug(String template, Object arg0, Object arg1) {
+        if (DEBUG) {
+            appender.append(LogLevel.DEBUG, name, template, 2, arg0, arg1, null);
+        }
+    }
+
+    /**
+     * Массив аргументов создается до проверки уровня - в частых вызовах лучше проверить {@link #isDebugEnabled()}
+     */
+    public void debug(String template, Object... args) {
+        if (DEBUG) {
+            appender.append(LogLevel.DEBUG, name, template, args.length, null, null, args);
+        }
+    }
+
+    public void info(String message) {
+        if (INFO) {
+            appender.append(LogLevel.INFO, name, message, 0, null, null, null);
+        }
+    }
+
+    public void info(String template, Object arg) {
+        if (INFO) {
+            appender.append(LogLevel.INFO, name, template, 1, arg, null, null);
+        }
+    }
+
+    public void info(String template, Object arg0, Object arg1) {
+        if (INFO) {
+            appender.append(LogLevel.INFO, name, template, 2, arg0, arg1, null);
+        }
+    }
+
+    public void info(String template, Object... args) {
+        if (INFO) {
+            appender.append(LogLevel.INFO, name, template, args.length, null, null, args);
+        }
+    }
+
+    public void warn(String message) {
+        if (WARN) {
+            appender.append(LogLevel.WARN, name, message, 0, null, null, null);
+        }
+    }
+
+    public void warn(String template, Object arg) {
+        if (WARN) {
+            appender.append(LogLevel.WARN, name, template, 1, arg, null, null);
+        }
+    }
+
+    public void warn(String template, Object arg0, Object arg1) {
+        if (WARN) {
+            appender.append(LogLevel.WARN, name, template, 2, arg0, arg1, null);
+        }
+    }
+
+    public void warn(String template, Object... args) {
+        if (WARN) {
+            appender.append(LogLevel.WARN, name, template, args.length, null, null, args);
+        }
+    }
+
+    public void error(String message) {
+        appender.append(LogLevel.ERROR, name, message, 0, null, null, null);
+    }
+
+    public void error(String template, Object arg) {
+        appender.append(LogLevel.ERROR, name, template, 1, arg, null, null);
+    }
+
+    public void error(String template, Object arg0, Object arg1) {
+        appender.append(LogLevel.ERROR, name, template, 2, arg0, arg1, null);
+    }
+
+    public void error(String template, Object... args) {
+        appender.append(LogLevel.ERROR, name, template, args.length, null, null, args);
+    }
+
+    private static Appender defaultAppender() {
+        String async = setting("log.async", "LOG_ASYNC");
+        if (async != null && !Boolean.parseBoolean(async)) {
+            return new ConsoleAppender();
+        }
+        AsyncAppender asyncAppender = new AsyncAppender();
+        // Дописать буфер при остановке сервиса
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> getAppender().flush(), "async-log-flush"));
+        return asyncAppender;
+    }
+
+    private static String setting(String property, String env) {
+        String value = System.getProperty(property);
+        return value != null ? value : System.getenv(env);
+    }
+}
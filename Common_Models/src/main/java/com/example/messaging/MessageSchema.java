@@ -4,10 +4,28 @@ package com.example.messaging;
  * Определяет схему сообщений для взаимодействия между микросервисами
  */
 public class MessageSchema {
-    // Названия очередей
+    // Префиксы названий очередей: у каждого экземпляра сервиса своя очередь (см. paymentRequestsQueue)
     public static final String PAYMENT_REQUESTS_QUEUE = "payment_requests";
     public static final String ORDER_PAYMENT_RESULTS_QUEUE = "order_payment_results";
+
+    // Fanout-обменник событий об изменении статуса заказа: у каждого подписчика своя очередь
+    public static final String ORDER_STATUS_EXCHANGE = "order_status_events";
     
+    /**
+     * Очередь запросов на оплату экземпляра Payments, хранящего счета пользователей раздела
+     * {@link Partitions#of(int, int)}
+     */
+    public static String paymentRequestsQueue(int paymentsPartition) {
+        return PAYMENT_REQUESTS_QUEUE + "." + paymentsPartition;
+    }
+
+    /**
+     * Очередь результатов оплаты экземпляра Orders, хранящего заказ
+     */
+    public static String paymentResultsQueue(int ordersPartition) {
+        return ORDER_PAYMENT_RESULTS_QUEUE + "." + ordersPartition;
+    }
+
     // Типы событий для запросов на оплату
     public static class PaymentRequestType {
         public static final String PROCESS_PAYMENT = "PROCESS_PAYMENT";
@@ -19,21 +37,27 @@ public class MessageSchema {
         public static final String PAYMENT_FAILED = "PAYMENT_FAILED";
     }
     
+    // Типы событий заказа
+    public static class OrderEventType {
+        public static final String ORDER_STATUS_CHANGED = "ORDER_STATUS_CHANGED";
+    }
+
     /**
      * Структура сообщения для запроса оплаты
      */
     public static class PaymentRequest {
         public String messageId;       // Уникальный ID сообщения
         public String eventType;       // Тип события (PROCESS_PAYMENT)
-        public int orderId;            // ID заказа
+        public long orderId;           // ID заказа
         public int userId;             // ID пользователя
         public double amount;          // Сумма платежа
         public String transactionId;   // ID транзакции (связывает запрос и ответ)
+        public int ordersPartition;    // Экземпляр Orders, хранящий заказ: ему адресуется результат
         public long timestamp;         // Временная метка
         
         public PaymentRequest() {}
         
-        public PaymentRequest(int orderId, int userId, double amount, String transactionId) {
+        public PaymentRequest(long orderId, int userId, double amount, String transactionId) {
             this.eventType = PaymentRequestType.PROCESS_PAYMENT;
             this.orderId = orderId;
             this.userId = userId;
@@ -49,16 +73,17 @@ public class MessageSchema {
     public static class PaymentResult {
         public String messageId;       // Уникальный ID сообщения
         public String eventType;       // Тип события (PAYMENT_COMPLETED/PAYMENT_FAILED)
-        public int orderId;            // ID заказа
+        public long orderId;           // ID заказа
         public double amount;          // Сумма платежа
         public boolean success;        // Успешность платежа
         public String transactionId;   // ID транзакции (связывает запрос и ответ)
         public String failureReason;   // Причина неудачи (если есть)
+        public int ordersPartition;    // Экземпляр Orders, хранящий заказ (из запроса на оплату)
         public long timestamp;         // Временная метка
         
         public PaymentResult() {}
         
-        public PaymentResult(int orderId, double amount, boolean success, 
+        public PaymentResult(long orderId, double amount, boolean success, 
                             String transactionId, String failureReason) {
             this.eventType = success ? PaymentResultType.PAYMENT_COMPLETED : PaymentResultType.PAYMENT_FAILED;
             this.orderId = orderId;
@@ -69,4 +94,26 @@ public class MessageSchema {
             this.timestamp = System.currentTimeMillis();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Структура события об изменении статуса заказа
+     */
+    public static class OrderStatusChanged {
+        public String messageId;       // Уникальный ID сообщения
+        public String eventType;       // Тип события (ORDER_STATUS_CHANGED)
+        public long orderId;           // ID заказа
+        public int userId;             // ID пользователя
+        public String status;          // Новый статус заказа
+        public long timestamp;         // Временная метка
+
+        public OrderStatusChanged() {}
+
+        public OrderStatusChanged(long orderId, int userId, String status) {
+            this.eventType = OrderEventType.ORDER_STATUS_CHANGED;
+            this.orderId = orderId;
+            this.userId = userId;
+            this.status = status;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+}
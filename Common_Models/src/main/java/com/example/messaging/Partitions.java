@@ -0,0 +1,65 @@
+package com.example.messaging;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Раздел (экземпляр сервиса), которому принадлежат данные пользователя.
+ * Сервисы хранят счета и заказы в памяти экземпляра, поэтому шлюз, выбирая экземпляр для запроса,
+ * и сервисы, выбирая очередь для сообщения, должны получать один и тот же номер - для этого
+ * все они вызывают эту функцию. Номер экземпляра - его позиция в списке URL сервиса у шлюза
+ * ({@code ORDERS_SERVICE_URL}, {@code PAYMENTS_SERVICE_URL}) и {@code NODE_ID} самого экземпляра.
+ * <p>
+ * Rendezvous-хэширование: при добавлении экземпляра в конец списка к нему переезжает только
+ * его доля пользователей, остальные остаются на месте.
+ */
+public final class Partitions {
+
+    private Partitions() {
+    }
+
+    /**
+     * @param key ключ пользователя - userId в десятичной записи
+     * @param count число экземпляров
+     * @return номер экземпляра от 0 до count - 1
+     */
+    public static int of(String key, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Partition count must be positive");
+        }
+        long keyHash = hash(key);
+        int best = 0;
+        long bestScore = 0;
+        for (int partition = 0; partition < count; partition++) {
+            long score = mix(keyHash ^ mix(partition + 1));
+            if (partition == 0 || Long.compareUnsigned(score, bestScore) > 0) {
+                best = partition;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    public static int of(int userId, int count) {
+        return of(String.valueOf(userId), count);
+    }
+
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ b) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Перемешивание битов (финализатор MurmurHash3): близкие ключи дают далекие значения
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
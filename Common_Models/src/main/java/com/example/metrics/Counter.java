@@ -0,0 +1,39 @@
+package com.example.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Монотонно растущий счетчик. {@link LongAdder} распределяет увеличения по ячейкам потоков,
+ * поэтому частые вызовы из многих потоков не конкурируют за одну переменную.
+ */
+public final class Counter implements Metric {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Counter can only increase");
+        }
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public String type() {
+        return "counter";
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+        Metric.line(out, name, "", labels, null, String.valueOf(value.sum()));
+    }
+}
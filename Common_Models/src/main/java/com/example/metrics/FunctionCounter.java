@@ -0,0 +1,28 @@
+package com.example.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Счетчик, который ведет сам компонент (например, в своей статистике); читается в момент выгрузки метрик
+ */
+public final class FunctionCounter implements Metric {
+    private final LongSupplier value;
+
+    FunctionCounter(LongSupplier value) {
+        this.value = value;
+    }
+
+    public long get() {
+        return value.getAsLong();
+    }
+
+    @Override
+    public String type() {
+        return "counter";
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+        Metric.line(out, name, "", labels, null, String.valueOf(value.getAsLong()));
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Текущее значение (размер очереди, число запросов в работе), читается в момент выгрузки метрик
+ */
+public final class Gauge implements Metric {
+    private final DoubleSupplier value;
+
+    Gauge(DoubleSupplier value) {
+        this.value = value;
+    }
+
+    public double get() {
+        return value.getAsDouble();
+    }
+
+    @Override
+    public String type() {
+        return "gauge";
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+        Metric.line(out, name, "", labels, null, MetricsRegistry.format(value.getAsDouble()));
+    }
+}
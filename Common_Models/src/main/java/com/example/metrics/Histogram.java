@@ -0,0 +1,140 @@
+package com.example.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма длительностей в наносекундах с логарифмически-линейными корзинами, как в HdrHistogram:
+ * каждый интервал [2^k, 2^(k+1)) делится на {@value #SUB_BUCKETS} равных корзин, поэтому
+ * относительная погрешность квантилей не больше 1/16 при любом масштабе, а памяти нужно
+ * несколько килобайт. Запись - одно атомарное увеличение счетчика корзины, без блокировок.
+ * Выгружается как summary Prometheus: квантили и сумма в секундах, число значений.
+ */
+public final class Histogram implements Metric {
+    static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Значения больше 2^41 нс (~36 минут) попадают в последнюю корзину
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Гистограмма вне реестра - например, для отчета генератора нагрузки; в /metrics она не попадает
+     */
+    public Histogram() {
+    }
+
+    /**
+     * Учесть длительность
+     * @param nanos длительность в наносекундах, отрицательные считаются нулем
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Учесть время, прошедшее с момента {@code startNanos} ({@link System#nanoTime()})
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Значение, не меньше которого {@code quantile} учтенных значений (верхняя граница корзины)
+     */
+    public long valueAtQuantile(double quantile) {
+        return valueAtQuantile(snapshot(), quantile);
+    }
+
+    @Override
+    public String type() {
+        return "summary";
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+        long[] snapshot = snapshot();
+        for (double quantile : QUANTILES) {
+            Metric.line(out, name, "", labels, "quantile=\"" + quantile + "\"",
+                    MetricsRegistry.format(valueAtQuantile(snapshot, quantile) / 1e9));
+        }
+        Metric.line(out, name, "_sum", labels, null, MetricsRegistry.format(sum.sum() / 1e9));
+        Metric.line(out, name, "_count", labels, null, String.valueOf(total(snapshot)));
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+        }
+        return snapshot;
+    }
+
+    private long valueAtQuantile(long[] snapshot, double quantile) {
+        long total = total(snapshot);
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestInBucket(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static long total(long[] snapshot) {
+        long total = 0;
+        for (long bucket : snapshot) {
+            total += bucket;
+        }
+        return total;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long highestInBucket(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
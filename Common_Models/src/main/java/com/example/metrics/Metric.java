@@ -0,0 +1,29 @@
+package com.example.metrics;
+
+/**
+ * Метрика реестра: умеет записать свои значения в текстовом формате Prometheus
+ */
+interface Metric {
+
+    /**
+     * Тип семейства в строке {@code # TYPE}
+     */
+    String type();
+
+    /**
+     * @param labels метки в виде {@code name="value",...} или пустая строка
+     */
+    void write(StringBuilder out, String name, String labels);
+
+    static void line(StringBuilder out, String name, String suffix, String labels, String extraLabel, String value) {
+        out.append(name).append(suffix);
+        if (!labels.isEmpty() || extraLabel != null) {
+            out.append('{').append(labels);
+            if (extraLabel != null) {
+                out.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+}
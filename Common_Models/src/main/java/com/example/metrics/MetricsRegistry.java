@@ -0,0 +1,144 @@
+package com.example.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Реестр метрик сервиса и их выгрузка в текстовом формате Prometheus ({@code GET /metrics}).
+ * Метрика определяется именем и метками: повторный запрос с теми же именем и метками возвращает
+ * тот же объект. Поиск в реестре не бесплатный, поэтому метрики частых путей стоит держать в полях.
+ * Метки передаются парами: {@code counter("payments_total", "...", "result", "success")}.
+ */
+public final class MetricsRegistry {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Общий реестр процесса, его выгружает эндпоинт {@code /metrics}
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) get(name, help, "counter", labels, Counter::new);
+    }
+
+    /**
+     * Зарегистрировать счетчик, значение которого хранит сам компонент;
+     * прежний счетчик с теми же именем и метками заменяется
+     */
+    public FunctionCounter counter(String name, String help, LongSupplier value, String... labels) {
+        FunctionCounter counter = new FunctionCounter(value);
+        family(name, help, "counter").children.put(labels(labels), counter);
+        return counter;
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) get(name, help, "summary", labels, Histogram::new);
+    }
+
+    /**
+     * Зарегистрировать показатель; прежний показатель с теми же именем и метками заменяется
+     */
+    public Gauge gauge(String name, String help, DoubleSupplier value, String... labels) {
+        Gauge gauge = new Gauge(value);
+        family(name, help, "gauge").children.put(labels(labels), gauge);
+        return gauge;
+    }
+
+    /**
+     * Все метрики в текстовом формате Prometheus, семейства упорядочены по имени
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            Family family = entry.getValue();
+            if (family.children.isEmpty()) {
+                continue;
+            }
+            out.append("# HELP ").append(entry.getKey()).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(entry.getKey()).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Metric> child : family.children.entrySet()) {
+                child.getValue().write(out, entry.getKey(), child.getKey());
+            }
+        }
+        return out.toString();
+    }
+
+    private Metric get(String name, String help, String type, String[] labels, Supplier<Metric> factory) {
+        return family(name, help, type).children.computeIfAbsent(labels(labels), key -> factory.get());
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.get(name);
+        if (family == null) {
+            if (!NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Invalid metric name: " + name);
+            }
+            family = families.computeIfAbsent(name, key -> new Family(help, type));
+        }
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return family;
+    }
+
+    private static String labels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (!NAME.matcher(labels[i]).matches()) {
+                throw new IllegalArgumentException("Invalid label name: " + labels[i]);
+            }
+            text.append(i > 0 ? "," : "").append(labels[i]).append("=\"");
+            String value = labels[i + 1];
+            for (int c = 0; c < value.length(); c++) {
+                char ch = value.charAt(c);
+                if (ch == '\\' || ch == '"') {
+                    text.append('\\').append(ch);
+                } else if (ch == '\n') {
+                    text.append("\\n");
+                } else {
+                    text.append(ch);
+                }
+            }
+            text.append('"');
+        }
+        return text.toString();
+    }
+
+    static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return String.valueOf(value);
+    }
+
+    private static final class Family {
+        private final String help;
+        private final String type;
+        private final Map<String, Metric> children = new ConcurrentSkipListMap<>();
+
+        private Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
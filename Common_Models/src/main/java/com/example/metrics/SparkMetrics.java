@@ -0,0 +1,68 @@
+package com.example.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import spark.Route;
+
+import static spark.Spark.afterAfter;
+import static spark.Spark.before;
+import static spark.Spark.get;
+
+/**
+ * Метрики HTTP-запросов сервиса на Spark и эндпоинт {@code GET /metrics}.
+ * Фильтры Spark не знают, какой маршрут совпал, поэтому маршруты, которые нужно различать
+ * в метриках, оборачиваются в {@link #measured(Route)}; остальные запросы учитываются как {@code other}.
+ */
+public final class SparkMetrics {
+    public static final String REQUESTS_METRIC = "http_server_requests_seconds";
+
+    private static final String START_ATTRIBUTE = "metrics.start";
+    private static final String ROUTE_ATTRIBUTE = "metrics.route";
+
+    private SparkMetrics() {
+    }
+
+    /**
+     * Зарегистрировать фильтры учета запросов и эндпоинт {@code /metrics}; вызывать до объявления маршрутов
+     */
+    public static void install(MetricsRegistry registry) {
+        Map<String, Histogram> requests = new ConcurrentHashMap<>();
+        before((request, response) -> request.attribute(START_ATTRIBUTE, System.nanoTime()));
+        afterAfter((request, response) -> {
+            Long start = request.attribute(START_ATTRIBUTE);
+            if (start == null) {
+                return;
+            }
+            String route = request.attribute(ROUTE_ATTRIBUTE);
+            String method = request.requestMethod();
+            String status = String.valueOf(response.status());
+            String routeLabel = route != null ? route : "other";
+            requests.computeIfAbsent(method + ' ' + routeLabel + ' ' + status,
+                    key -> registry.histogram(REQUESTS_METRIC, "HTTP request latency",
+                            "method", method, "route", routeLabel, "status", status))
+                    .recordSince(start);
+        });
+        get("/metrics", endpoint(registry));
+    }
+
+    /**
+     * Маршрут, запросы которого учитываются под его шаблоном пути ({@code /api/orders/:orderId})
+     */
+    public static Route measured(Route route) {
+        return (request, response) -> {
+            request.attribute(ROUTE_ATTRIBUTE, request.matchedPath());
+            return route.handle(request, response);
+        };
+    }
+
+    /**
+     * Выгрузка реестра в формате Prometheus
+     */
+    public static Route endpoint(MetricsRegistry registry) {
+        return (request, response) -> {
+            response.type(MetricsRegistry.CONTENT_TYPE);
+            return registry.scrape();
+        };
+    }
+}
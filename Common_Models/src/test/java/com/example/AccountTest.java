@@ -0,0 +1,103 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class AccountTest
+{
+    @Test
+    public void testMoneyRoundsToMinorUnits()
+    {
+        assertEquals(30002, Money.of(300.02).getMinorUnits());
+        assertEquals(10, Money.of(0.1).getMinorUnits());
+        assertEquals("300.02", Money.of(300.02).toString());
+        assertEquals("-0.05", Money.ofMinor(-5).toString());
+        assertEquals(Money.ofMinor(30), Money.of(0.1).plus(Money.of(0.2)));
+    }
+
+    @Test
+    public void testBalanceHasNoFloatingPointDrift()
+    {
+        Account account = new Account(1);
+        for (int i = 0; i < 1000; i++) {
+            account.deposit(0.1);
+        }
+        account.withdraw(0.3);
+
+        assertEquals(9970, account.getBalanceMoney().getMinorUnits());
+        assertEquals(99.7, account.getBalance(), 0.0);
+    }
+
+    @Test
+    public void testWithdrawFailsOnInsufficientFunds()
+    {
+        Account account = new Account(1);
+        account.deposit(Money.ofMinor(100));
+
+        assertFalse(account.withdraw(Money.ofMinor(101)));
+        assertTrue(account.withdraw(Money.ofMinor(100)));
+        assertEquals(Money.ZERO, account.getBalanceMoney());
+    }
+
+    @Test
+    public void testAmountBelowHalfKopeckIsRejectedWithClearMessage()
+    {
+        Account account = new Account(1);
+        account.deposit(1.0);
+
+        try {
+            account.deposit(0.004);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Deposit amount must be at least 0.01, got 0.004", e.getMessage());
+        }
+        try {
+            account.withdraw(0.004);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Withdrawal amount must be at least 0.01, got 0.004", e.getMessage());
+        }
+        // Полкопейки и больше округляются до копейки
+        assertTrue(account.withdraw(0.005));
+        assertEquals(99, account.getBalanceMoney().getMinorUnits());
+    }
+
+    @Test(timeout = 5000)
+    public void testConcurrentWithdrawalsNeverOverdraw() throws InterruptedException
+    {
+        Account account = new Account(1);
+        account.deposit(Money.ofMinor(1000));
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger successes = new AtomicInteger();
+
+        for (int i = 0; i < threads; i++) {
+            executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < 1000; j++) {
+                    if (account.withdraw(Money.ofMinor(1))) {
+                        successes.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(4, TimeUnit.SECONDS));
+
+        assertEquals(1000, successes.get());
+        assertEquals(0, account.getBalanceMoney().getMinorUnits());
+    }
+}
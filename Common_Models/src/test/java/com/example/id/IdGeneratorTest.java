@@ -0,0 +1,178 @@
+package com.example.id;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class IdGeneratorTest
+{
+    private static final int THREADS = 8;
+
+    @Test
+    public void testBlockGeneratorIsSequentialInSingleThread()
+    {
+        BlockIdGenerator generator = new BlockIdGenerator(4);
+        for (long expected = 1; expected <= 10; expected++) {
+            assertEquals(expected, generator.nextId());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testBlockGeneratorHasNoCollisionsUnderContention() throws InterruptedException
+    {
+        long[] ids = generateConcurrently(new BlockIdGenerator(), 500_000);
+        assertUnique(ids);
+    }
+
+    @Test(timeout = 30000)
+    public void testNodeGeneratorsHaveNoCollisionsAcrossNodesAndThreads() throws InterruptedException
+    {
+        // Два "экземпляра сервиса" с разными ID узла выдают ID одновременно
+        NodeIdGenerator first = new NodeIdGenerator(1);
+        NodeIdGenerator second = new NodeIdGenerator(2);
+        long[] firstIds = generateConcurrently(first, 10_000);
+        long[] secondIds = generateConcurrently(second, 10_000);
+
+        long[] all = Arrays.copyOf(firstIds, firstIds.length + secondIds.length);
+        System.arraycopy(secondIds, 0, all, firstIds.length, secondIds.length);
+        assertUnique(all);
+
+        // В раскладке по умолчанию ID точно представимы числом JavaScript
+        for (long id : all) {
+            assertTrue(id > 0 && id < (1L << 53));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testDefaultLayoutHasNoCollisionsAcrossManyMilliseconds() throws InterruptedException
+    {
+        // 3 миллиона ID не умещаются в одну миллисекунду: номера исчерпываются, и потоки ждут следующую
+        long[] ids = generateConcurrently(new NodeIdGenerator(7), 375_000);
+        assertUnique(ids);
+    }
+
+    @Test(timeout = 5000)
+    public void testSequenceLimitWaitsForNextMillisecond() throws Exception
+    {
+        MutableClock clock = new MutableClock();
+        NodeIdGenerator generator = new NodeIdGenerator(1, NodeIdGenerator.DEFAULT_NODE_BITS,
+                NodeIdGenerator.DEFAULT_SEQUENCE_BITS, clock);
+        int perMillisecond = 1 << NodeIdGenerator.DEFAULT_SEQUENCE_BITS;
+        int shift = NodeIdGenerator.DEFAULT_NODE_BITS + NodeIdGenerator.DEFAULT_SEQUENCE_BITS;
+        long first = generator.nextId();
+        for (int i = 1; i < perMillisecond; i++) {
+            assertEquals(first >>> shift, generator.nextId() >>> shift);
+        }
+
+        // Номера миллисекунды исчерпаны: следующий ID выдается только после тика часов
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> next = executor.submit(generator::nextId);
+            Thread.sleep(100);
+            assertFalse(next.isDone());
+
+            clock.advance(Duration.ofMillis(1));
+
+            assertEquals((first >>> shift) + 1, next.get(1, TimeUnit.SECONDS) >>> shift);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLeftoverBlockIsDroppedAfterItsMillisecond()
+    {
+        MutableClock clock = new MutableClock();
+        NodeIdGenerator generator = new NodeIdGenerator(1, NodeIdGenerator.DEFAULT_NODE_BITS,
+                NodeIdGenerator.DEFAULT_SEQUENCE_BITS, clock);
+        long first = generator.nextId();
+        clock.advance(Duration.ofMinutes(5));
+        long second = generator.nextId();
+
+        // Блок потока еще не израсходован, но ID получает время создания, а не время резервирования блока
+        int shift = NodeIdGenerator.DEFAULT_NODE_BITS + NodeIdGenerator.DEFAULT_SEQUENCE_BITS;
+        assertEquals(Duration.ofMinutes(5).toMillis(), (second >>> shift) - (first >>> shift));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNodeIdMustFitLayout()
+    {
+        new NodeIdGenerator(64);
+    }
+
+    /**
+     * Сгенерировать perThread ID в каждом из THREADS потоков одновременно
+     */
+    private static long[] generateConcurrently(IdGenerator generator, int perThread) throws InterruptedException
+    {
+        long[] ids = new long[THREADS * perThread];
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t * perThread;
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    ids[offset + i] = generator.nextId();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(25, TimeUnit.SECONDS));
+        return ids;
+    }
+
+    private static final class MutableClock extends Clock
+    {
+        private volatile Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration)
+        {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone()
+        {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone)
+        {
+            return this;
+        }
+
+        @Override
+        public Instant instant()
+        {
+            return now;
+        }
+    }
+
+    private static void assertUnique(long[] ids)
+    {
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; i++) {
+            assertTrue("Duplicate ID " + sorted[i], sorted[i] != sorted[i - 1]);
+        }
+        assertTrue(sorted[0] > 0);
+    }
+}
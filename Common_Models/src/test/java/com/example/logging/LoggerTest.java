@@ -0,0 +1,178 @@
+package com.example.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoggerTest
+{
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private final Logger logger = Logger.getLogger(LoggerTest.class);
+    private Appender originalAppender;
+
+    @Before
+    public void setUp()
+    {
+        originalAppender = Logger.getAppender();
+    }
+
+    @After
+    public void tearDown()
+    {
+        Logger.setAppender(originalAppender);
+    }
+
+    private static PrintStream print(OutputStream stream)
+    {
+        return new PrintStream(stream, true, StandardCharsets.UTF_8);
+    }
+
+    private static String text(ByteArrayOutputStream stream)
+    {
+        return new String(stream.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testArgumentsAreSubstitutedIntoTemplate()
+    {
+        Logger.setAppender(new ConsoleAppender(print(out), print(err)));
+
+        logger.info("Order {} changed status to {}", 42L, "PAID");
+        logger.info("{} + {} = {}", 1, 2, 3);
+        logger.info("No placeholders", "ignored");
+
+        String[] lines = text(out).split(System.lineSeparator());
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(" INFO  [" + Thread.currentThread().getName()
+            + "] LoggerTest - Order 42 changed status to PAID"));
+        assertTrue(lines[1], lines[1].endsWith(" - 1 + 2 = 3"));
+        assertTrue(lines[2], lines[2].endsWith(" - No placeholders"));
+        assertEquals("", text(err));
+    }
+
+    @Test
+    public void testErrorsGoToErrorStreamWithStackTrace()
+    {
+        Logger.setAppender(new ConsoleAppender(print(out), print(err)));
+
+        logger.error("Failed to process order {}", 7, new IllegalStateException("broken"));
+
+        String error = text(err);
+        assertTrue(error, error.contains(" ERROR [") && error.contains("Failed to process order 7"));
+        assertTrue(error, error.contains("java.lang.IllegalStateException: broken"));
+        assertTrue(error, error.contains("\tat com.example.logging.LoggerTest"));
+        assertEquals("", text(out));
+    }
+
+    @Test
+    public void testDebugIsDisabledByDefault()
+    {
+        Logger.setAppender(new ConsoleAppender(print(out), print(err)));
+
+        assertEquals(LogLevel.INFO, Logger.getLevel());
+        assertFalse(logger.isDebugEnabled());
+        assertTrue(logger.isInfoEnabled());
+        logger.debug("Not printed {}", 1);
+
+        assertEquals("", text(out));
+    }
+
+    @Test(timeout = 30000)
+    public void testAsyncAppenderWritesMessagesOfAllThreadsInOrder() throws Exception
+    {
+        AsyncAppender appender = new AsyncAppender(print(out), print(err), 1 << 16);
+        Logger.setAppender(appender);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    logger.info("message {}", i);
+                }
+            }, "writer-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        appender.close();
+
+        int[] next = new int[8];
+        String[] lines = text(out).split(System.lineSeparator());
+        assertEquals(8000, lines.length);
+        for (String line : lines) {
+            int thread = Integer.parseInt(line.substring(line.indexOf("[writer-") + 8, line.indexOf(']')));
+            assertTrue(line, line.endsWith("message " + next[thread]));
+            next[thread]++;
+        }
+        assertEquals(0, appender.getDropped());
+    }
+
+    @Test(timeout = 30000)
+    public void testFullBufferDropsMessagesInsteadOfBlocking() throws Exception
+    {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream blocked = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+        AsyncAppender appender = new AsyncAppender(new PrintStream(blocked), print(err), 4);
+        Logger.setAppender(appender);
+
+        logger.info("first");
+        writing.await();
+        for (int i = 0; i < 19; i++) {
+            logger.info("message {}", i);
+        }
+
+        // Ячейка первого сообщения занята до конца его записи, в буфер поместились еще 3
+        assertEquals(16, appender.getDropped());
+        release.countDown();
+        appender.close();
+        assertTrue(text(err), text(err).contains("dropped 16 log messages"));
+    }
+
+    @Test(timeout = 30000)
+    public void testIdleWriterBacksOff() throws Exception
+    {
+        AsyncAppender appender = new AsyncAppender(print(out), print(err), 16);
+        Logger.setAppender(appender);
+
+        // С постоянным сном в 1 мс поток просыпался бы около тысячи раз за секунду простоя
+        Thread.sleep(1000);
+        long parks = appender.getIdleParks();
+        assertTrue(parks + " wakeups", parks < 50);
+
+        logger.info("after idle");
+        appender.flush();
+        assertTrue(text(out), text(out).endsWith("after idle" + System.lineSeparator()));
+        appender.close();
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PartitionsTest
+{
+    @Test
+    public void testUsersSpreadEvenlyAcrossPartitions()
+    {
+        int[] users = new int[3];
+        for (int userId = 0; userId < 3000; userId++) {
+            int partition = Partitions.of(userId, 3);
+            assertEquals(partition, Partitions.of(String.valueOf(userId), 3));
+            users[partition]++;
+        }
+
+        for (int count : users) {
+            assertTrue(String.valueOf(count), count > 800);
+        }
+    }
+
+    @Test
+    public void testAddingPartitionMovesUsersOnlyToIt()
+    {
+        for (int userId = 0; userId < 3000; userId++) {
+            int before = Partitions.of(userId, 3);
+            int after = Partitions.of(userId, 4);
+            assertTrue(userId + ": " + before + " -> " + after, after == before || after == 3);
+        }
+    }
+
+    @Test
+    public void testSinglePartition()
+    {
+        assertEquals(0, Partitions.of(42, 1));
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest
+{
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @Test
+    public void testSameNameAndLabelsReturnSameMetric()
+    {
+        Counter success = registry.counter("payments_total", "Processed payments", "result", "success");
+        Counter failed = registry.counter("payments_total", "Processed payments", "result", "failed");
+
+        assertSame(success, registry.counter("payments_total", "Processed payments", "result", "success"));
+        success.increment();
+        success.add(2);
+        failed.increment();
+
+        assertEquals("# HELP payments_total Processed payments\n"
+                + "# TYPE payments_total counter\n"
+                + "payments_total{result=\"failed\"} 1\n"
+                + "payments_total{result=\"success\"} 3\n", registry.scrape());
+    }
+
+    @Test
+    public void testLabelValuesAreEscaped()
+    {
+        registry.counter("errors_total", "Errors", "message", "say \"hi\"\\\n").increment();
+
+        assertTrue(registry.scrape(), registry.scrape().contains("errors_total{message=\"say \\\"hi\\\"\\\\\\n\"} 1\n"));
+    }
+
+    @Test
+    public void testNameCannotChangeType()
+    {
+        registry.counter("queue_size", "Queue size");
+        try {
+            registry.histogram("queue_size", "Queue size");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("counter"));
+        }
+    }
+
+    @Test
+    public void testGaugeIsReadOnScrapeAndReplacedOnReRegistration()
+    {
+        List<String> queue = new ArrayList<>();
+        registry.gauge("outbox_pending_messages", "Pending", () -> -1);
+        registry.gauge("outbox_pending_messages", "Pending", queue::size);
+        queue.add("message");
+        queue.add("message");
+
+        assertTrue(registry.scrape(), registry.scrape().endsWith("\noutbox_pending_messages 2\n"));
+    }
+
+    @Test
+    public void testFunctionCounterIsReadOnScrapeAsCounter()
+    {
+        long[] hits = {0};
+        registry.counter("cache_hits_total", "Hits", () -> -1);
+        registry.counter("cache_hits_total", "Hits", () -> hits[0]);
+        hits[0] = 5;
+
+        assertEquals("# HELP cache_hits_total Hits\n"
+                + "# TYPE cache_hits_total counter\n"
+                + "cache_hits_total 5\n", registry.scrape());
+    }
+
+    @Test
+    public void testHistogramQuantilesAreWithinOneSixteenth()
+    {
+        Histogram histogram = registry.histogram("latency_seconds", "Latency");
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000L, histogram.getMax());
+        assertNear(50_000_000L, histogram.valueAtQuantile(0.5));
+        assertNear(99_000_000L, histogram.valueAtQuantile(0.99));
+        assertEquals(100_000_000L, histogram.valueAtQuantile(1.0));
+        assertEquals(0, registry.histogram("empty_seconds", "Empty").valueAtQuantile(0.5));
+    }
+
+    @Test
+    public void testHistogramIsExportedAsSummaryInSeconds()
+    {
+        Histogram histogram = registry.histogram("http_server_requests_seconds", "Latency", "route", "/api/orders");
+        histogram.record(2_000_000);
+        histogram.record(4_000_000);
+
+        String text = registry.scrape();
+        assertTrue(text, text.contains("# TYPE http_server_requests_seconds summary\n"));
+        assertTrue(text, text.contains("http_server_requests_seconds{route=\"/api/orders\",quantile=\"0.5\"} 0.002"));
+        assertTrue(text, text.contains("http_server_requests_seconds_sum{route=\"/api/orders\"} 0.006\n"));
+        assertTrue(text, text.contains("http_server_requests_seconds_count{route=\"/api/orders\"} 2\n"));
+    }
+
+    @Test
+    public void testBucketsCoverValuesWithoutGaps()
+    {
+        for (int i = 0; i < 10_000; i++) {
+            long value = ThreadLocalRandom.current().nextLong(1L << 41);
+            int index = Histogram.index(value);
+            assertTrue(value + " <= " + Histogram.highestInBucket(index), value <= Histogram.highestInBucket(index));
+            assertTrue(index == 0 || value > Histogram.highestInBucket(index - 1));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentUpdatesAreNotLost() throws Exception
+    {
+        Counter counter = registry.counter("messages_total", "Messages");
+        Histogram histogram = registry.histogram("consume_seconds", "Consume time");
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    counter.increment();
+                    histogram.record(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(800_000, counter.get());
+        assertEquals(800_000, histogram.getCount());
+        assertTrue(registry.scrape().contains("consume_seconds_count 800000\n"));
+    }
+
+    private static void assertNear(long expected, long actual)
+    {
+        assertTrue(expected + " vs " + actual, Math.abs(actual - expected) <= expected / 16);
+    }
+}
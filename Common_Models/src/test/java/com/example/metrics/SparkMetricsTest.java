@@ -0,0 +1,70 @@
+package com.example.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static spark.Spark.awaitInitialization;
+import static spark.Spark.awaitStop;
+import static spark.Spark.get;
+import static spark.Spark.port;
+import static spark.Spark.stop;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SparkMetricsTest
+{
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String baseUrl;
+
+    @Before
+    public void setUp()
+    {
+        port(0);
+        SparkMetrics.install(registry);
+        get("/api/orders/:orderId", SparkMetrics.measured((request, response) -> "{}"));
+        get("/api/orders/:orderId/raw", (request, response) -> "{}");
+        awaitInitialization();
+        baseUrl = "http://127.0.0.1:" + port();
+    }
+
+    @After
+    public void tearDown()
+    {
+        stop();
+        awaitStop();
+    }
+
+    private HttpResponse<String> request(String path) throws Exception
+    {
+        return client.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testRequestsAreCountedPerRouteAndStatus() throws Exception
+    {
+        request("/api/orders/1");
+        request("/api/orders/2");
+        request("/api/orders/3/raw");
+        request("/missing");
+
+        HttpResponse<String> metrics = request("/metrics");
+
+        assertEquals(200, metrics.statusCode());
+        assertEquals(MetricsRegistry.CONTENT_TYPE, metrics.headers().firstValue("Content-Type").orElse(""));
+        String text = metrics.body();
+        assertTrue(text, text.contains(
+            "http_server_requests_seconds_count{method=\"GET\",route=\"/api/orders/:orderId\",status=\"200\"} 2\n"));
+        assertTrue(text, text.contains(
+            "http_server_requests_seconds_count{method=\"GET\",route=\"other\",status=\"200\"} 1\n"));
+        assertTrue(text, text.contains(
+            "http_server_requests_seconds_count{method=\"GET\",route=\"other\",status=\"404\"} 1\n"));
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.frontend.config;
+
+import com.example.messaging.MessageSchema;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Подписка на события об изменении статуса заказов: у каждого экземпляра фронтенда своя временная
+ * очередь на fanout-обменнике, поэтому событие получают все экземпляры и их браузеры
+ */
+@Configuration
+public class RabbitConfig {
+
+    @Bean
+    public FanoutExchange orderStatusExchange() {
+        return new FanoutExchange(MessageSchema.ORDER_STATUS_EXCHANGE, true, false);
+    }
+
+    @Bean
+    public Queue orderStatusQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding orderStatusBinding(Queue orderStatusQueue, FanoutExchange orderStatusExchange) {
+        return BindingBuilder.bind(orderStatusQueue).to(orderStatusExchange);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.frontend.messaging;
+
+import com.example.messaging.MessageSchema;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Пересылает события об изменении статуса заказа браузерам пользователя через STOMP
+ * в {@code /topic/users/{userId}/orders}, чтобы страница заказов не опрашивала шлюз
+ */
+@Component
+public class OrderStatusRelay {
+    private static final Logger logger = LoggerFactory.getLogger(OrderStatusRelay.class);
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+
+    public OrderStatusRelay(SimpMessagingTemplate messagingTemplate, ObjectMapper objectMapper) {
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    public static String destination(int userId) {
+        return "/topic/users/" + userId + "/orders";
+    }
+
+    @RabbitListener(queues = "#{orderStatusQueue.name}")
+    public void onOrderStatusChanged(Message message) {
+        MessageSchema.OrderStatusChanged event;
+        try {
+            event = objectMapper.readValue(message.getBody(), MessageSchema.OrderStatusChanged.class);
+        } catch (IOException e) {
+            logger.warn("Invalid order status event: {}", e.getMessage());
+            return;
+        }
+        if (!MessageSchema.OrderEventType.ORDER_STATUS_CHANGED.equals(event.eventType)) {
+            return;
+        }
+        messagingTemplate.convertAndSend(destination(event.userId), event);
+    }
+}
@@ -1,6 +1,32 @@
 document.addEventListener('DOMContentLoaded', function() {
     const API_BASE_URL = 'http://localhost:8080/api';
 
+    // Изменения статуса заказов приходят по WebSocket (STOMP) от Frontend_Service, без опроса шлюза
+    const stompClient = Stomp.over(new SockJS('/ws'));
+    stompClient.debug = null;
+    const stompConnected = new Promise(resolve => stompClient.connect({}, resolve));
+    const subscribedUsers = new Set();
+
+    function subscribeToOrderStatus(userId) {
+        if (subscribedUsers.has(userId)) {
+            return;
+        }
+        subscribedUsers.add(userId);
+        stompConnected.then(() => {
+            stompClient.subscribe(`/topic/users/${userId}/orders`, message => {
+                const event = JSON.parse(message.body);
+                showOrderStatus(event.orderId, event.status);
+            });
+        });
+    }
+
+    // Обновить статус заказа в таблице заказов и в блоке статуса, если заказ там показан
+    function showOrderStatus(orderId, status) {
+        document.querySelectorAll(`[data-order-status="${orderId}"]`).forEach(element => {
+            element.textContent = status;
+        });
+    }
+
     // Добавление нового товара в форму
     function addItemBlock() {
         const container = document.getElementById('itemsContainer');
@@ -108,6 +134,9 @@ document.addEventListener('DOMContentLoaded', function() {
             return;
         }
         
+        // Подписка до создания заказа, чтобы не пропустить быстрый результат оплаты
+        subscribeToOrderStatus(userId);
+
         try {
             const response = await fetch(`${API_BASE_URL}/orders`, {
                 method: 'POST',
@@ -125,6 +154,7 @@ document.addEventListener('DOMContentLoaded', function() {
                 resultDiv.innerHTML = `
                     <div class="alert alert-success">
                         <p class="mb-0">Заказ успешно создан! ID заказа: ${result.orderId}</p>
+                        <p class="mb-0">Статус: <span data-order-status="${result.orderId}">${result.status}</span></p>
                     </div>
                 `;
                 
@@ -186,7 +216,7 @@ document.addEventListener('DOMContentLoaded', function() {
                                     ${data.orders.map(order => `
                                         <tr>
                                             <td>${order.orderId}</td>
-                                            <td>${order.status}</td>
+                                            <td data-order-status="${order.orderId}">${order.status}</td>
                                             <td>${order.totalPrice} руб.</td>
                                             <td>${new Date(order.createdAt).toLocaleDateString('ru-RU')}</td>
                                         </tr>
@@ -195,6 +225,7 @@ document.addEventListener('DOMContentLoaded', function() {
                             </table>
                         </div>
                     `;
+                    subscribeToOrderStatus(userId);
                 } else {
                     ordersList.innerHTML = `
                         <div class="alert alert-info">
@@ -243,7 +274,7 @@ document.addEventListener('DOMContentLoaded', function() {
                 orderStatus.innerHTML = `
                     <div class="alert alert-info">
                         <h6>Статус заказа #${data.orderId}:</h6>
-                        <p class="mb-0">Статус: ${data.status}</p>
+                        <p class="mb-0">Статус: <span data-order-status="${data.orderId}">${data.status}</span></p>
                         <p class="mb-0">Сумма: ${data.totalPrice} руб.</p>
                         <p class="mb-0">Дата создания: ${new Date(data.createdAt).toLocaleDateString('ru-RU')}</p>
                         
@@ -274,6 +305,7 @@ document.addEventListener('DOMContentLoaded', function() {
                         </div>
                     </div>
                 `;
+                subscribeToOrderStatus(userId);
             } else {
                 const error = await response.json();
                 orderStatus.innerHTML = `
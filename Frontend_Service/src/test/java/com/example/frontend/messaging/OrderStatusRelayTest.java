@@ -0,0 +1,52 @@
+package com.example.frontend.messaging;
+
+import com.example.messaging.MessageSchema;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class OrderStatusRelayTest {
+
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final OrderStatusRelay relay = new OrderStatusRelay(messagingTemplate, new ObjectMapper());
+
+    private static Message message(String json) {
+        return new Message(json.getBytes(StandardCharsets.UTF_8), new MessageProperties());
+    }
+
+    @Test
+    public void testStatusChangeIsPushedToUserTopic() throws Exception {
+        String json = new ObjectMapper().writeValueAsString(new MessageSchema.OrderStatusChanged(42, 7, "PAID"));
+
+        relay.onOrderStatusChanged(message(json));
+
+        verify(messagingTemplate).convertAndSend(eq("/topic/users/7/orders"),
+                argThat((MessageSchema.OrderStatusChanged event) -> event.orderId == 42 && "PAID".equals(event.status)));
+    }
+
+    @Test
+    public void testInvalidAndForeignMessagesAreIgnored() {
+        relay.onOrderStatusChanged(message("not json"));
+        relay.onOrderStatusChanged(message("{\"eventType\":\"PAYMENT_COMPLETED\",\"userId\":7}"));
+
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    public void testDestinationIsPerUser() {
+        assertEquals("/topic/users/15/orders", OrderStatusRelay.destination(15));
+    }
+}
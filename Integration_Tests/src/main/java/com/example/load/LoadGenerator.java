@@ -0,0 +1,346 @@
+package com.example.load;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Генератор нагрузки на шлюз и сервисы, запущенные локально. Сценарии выполняются по очереди,
+ * каждый с частотой {@code --rate} в течение {@code --duration} по открытой модели ({@link OpenLoop}):
+ * <ul>
+ *   <li>{@code accounts} - создание счетов новых пользователей;</li>
+ *   <li>{@code deposits} - пополнение заранее созданных счетов;</li>
+ *   <li>{@code orders} - создание заказов пачками по {@code --burst}; после создания статус заказа опрашивается
+ *   через шлюз, пока не станет {@code PAID}, и время от отправки заказа до оплаты учитывается отдельно.</li>
+ * </ul>
+ * Для {@code deposits} и {@code orders} перед замером создаются {@code --users} счетов с большим балансом.
+ * Отчет - пропускная способность, процентили задержки и ошибки по причинам для каждого сценария.
+ */
+public class LoadGenerator {
+    static final String ACCOUNTS = "accounts";
+    static final String DEPOSITS = "deposits";
+    static final String ORDERS = "orders";
+    static final String ORDER_TO_PAID = "order-to-paid";
+
+    private static final double INITIAL_BALANCE = 1_000_000.0;
+    private static final double DEPOSIT_AMOUNT = 10.0;
+    private static final double ITEM_PRICE = 1.0;
+
+    private final LoadSettings settings;
+    private final HttpClient client;
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-status-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LoadGenerator(LoadSettings settings) {
+        this.settings = settings;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(settings.requestTimeout)
+                .build();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadSettings settings;
+        try {
+            settings = LoadSettings.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        LoadGenerator generator = new LoadGenerator(settings);
+        try {
+            List<ScenarioStats> results = generator.run();
+            System.out.println(report(settings, results));
+        } finally {
+            generator.close();
+        }
+    }
+
+    /**
+     * Выполнить выбранные сценарии по очереди
+     */
+    public List<ScenarioStats> run() throws InterruptedException {
+        List<ScenarioStats> results = new ArrayList<>();
+        if (settings.scenarios.contains(DEPOSITS) || settings.scenarios.contains(ORDERS)) {
+            prepareAccounts();
+        }
+        if (settings.scenarios.contains(ACCOUNTS)) {
+            // Новые пользователи - после заранее созданных
+            int firstUserId = settings.userIdBase + settings.users;
+            results.add(runRequests(ACCOUNTS, 201,
+                    index -> post("/api/accounts", new JSONObject().put("userId", firstUserId + index))));
+        }
+        if (settings.scenarios.contains(DEPOSITS)) {
+            results.add(runRequests(DEPOSITS, 200,
+                    index -> post("/api/accounts/" + userId(index) + "/deposit",
+                            new JSONObject().put("amount", DEPOSIT_AMOUNT))));
+        }
+        if (settings.scenarios.contains(ORDERS)) {
+            results.addAll(runOrders());
+        }
+        return results;
+    }
+
+    public void close() {
+        poller.shutdownNow();
+    }
+
+    /**
+     * Создать и пополнить счета пользователей, на которых работают сценарии; в замер не входит
+     */
+    private void prepareAccounts() {
+        List<CompletableFuture<HttpResponse<String>>> accounts = new ArrayList<>();
+        for (int i = 0; i < settings.users; i++) {
+            int userId = settings.userIdBase + i;
+            accounts.add(post("/api/accounts", new JSONObject().put("userId", userId))
+                    .thenCompose(response -> expect(response, 201, "create account for user " + userId))
+                    .thenCompose(response -> post("/api/accounts/" + userId + "/deposit",
+                            new JSONObject().put("amount", INITIAL_BALANCE)))
+                    .thenCompose(response -> expect(response, 200, "deposit to user " + userId)));
+        }
+        CompletableFuture.allOf(accounts.toArray(new CompletableFuture[0])).join();
+    }
+
+    private static CompletableFuture<HttpResponse<String>> expect(HttpResponse<String> response, int status,
+                                                                  String action) {
+        if (response.statusCode() != status) {
+            throw new IllegalStateException("Failed to " + action + ": HTTP " + response.statusCode()
+                    + " " + response.body());
+        }
+        return CompletableFuture.completedFuture(response);
+    }
+
+    /**
+     * Сценарий из одиночных запросов: успешен ответ с ожидаемым статусом
+     */
+    private ScenarioStats runRequests(String name, int expectedStatus,
+                                      LongFunction<CompletableFuture<HttpResponse<String>>> request)
+            throws InterruptedException {
+        ScenarioStats stats = new ScenarioStats(name);
+        long total = settings.totalRequests();
+        Responses responses = new Responses(total);
+        long start = OpenLoop.run(total, settings.rate, 1, (index, intended) -> {
+            stats.sent();
+            request.apply(index).whenComplete((response, error) -> responses.complete(() -> {
+                if (error != null) {
+                    stats.failed(reason(error));
+                } else if (response.statusCode() != expectedStatus) {
+                    stats.failed("HTTP " + response.statusCode());
+                } else {
+                    stats.succeeded(intended);
+                }
+            }));
+        });
+        await(responses, stats, start);
+        return stats;
+    }
+
+    /**
+     * Пачки заказов; каждый созданный заказ опрашивается, пока не будет оплачен
+     */
+    private List<ScenarioStats> runOrders() throws InterruptedException {
+        ScenarioStats created = new ScenarioStats(ORDERS);
+        ScenarioStats paid = new ScenarioStats(ORDER_TO_PAID);
+        long total = settings.totalRequests();
+        Responses responses = new Responses(total);
+        long start = OpenLoop.run(total, settings.rate, settings.burst, (index, intended) -> {
+            created.sent();
+            // Заказы пачки достаются разным пользователям, как при одновременных покупках
+            int userId = userId(index);
+            post("/api/orders", order(userId)).whenComplete((response, error) -> {
+                if (error != null) {
+                    responses.complete(() -> created.failed(reason(error)));
+                } else if (response.statusCode() != 201) {
+                    responses.complete(() -> created.failed("HTTP " + response.statusCode()));
+                } else {
+                    String orderId = field(response.body(), "orderId");
+                    if (orderId == null) {
+                        responses.complete(() -> {
+                            created.succeeded(intended);
+                            paid.sent();
+                            paid.failed("no orderId in response");
+                        });
+                    } else if (responses.record(() -> {
+                        created.succeeded(intended);
+                        paid.sent();
+                    })) {
+                        pollUntilPaid(orderId, userId, intended, paid, responses);
+                    }
+                }
+            });
+        });
+        await(responses, created, start);
+        paid.finished(start);
+        return List.of(created, paid);
+    }
+
+    private void pollUntilPaid(String orderId, int userId, long intended, ScenarioStats paid, Responses responses) {
+        poller.schedule(() -> {
+            // Сценарий закрыт по таймауту - заказ уже учтен как "no response"
+            if (responses.isClosed()) {
+                return;
+            }
+            get("/api/orders/" + orderId + "?userId=" + userId).whenComplete((response, error) -> {
+                String status = error == null && response.statusCode() == 200 ? field(response.body(), "status") : null;
+                if ("PAID".equals(status)) {
+                    responses.complete(() -> paid.succeeded(intended));
+                } else if ("FAILED".equals(status)) {
+                    responses.complete(() -> paid.failed("order FAILED"));
+                } else if (System.nanoTime() - intended > settings.paidTimeout.toNanos()) {
+                    responses.complete(() -> paid.failed("not PAID within " + settings.paidTimeout.toSeconds() + " s"
+                            + (status != null ? " (status " + status + ")" : "")));
+                } else {
+                    // Ошибки опроса не считаются: статус просто проверяется еще раз до истечения paidTimeout
+                    pollUntilPaid(orderId, userId, intended, paid, responses);
+                }
+            });
+        }, settings.pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Дождаться ответов на все запросы сценария; не дождавшиеся учитываются как ошибки
+     */
+    private void await(Responses responses, ScenarioStats stats, long start) throws InterruptedException {
+        long timeoutNanos = settings.requestTimeout.toNanos() * 2 + settings.paidTimeout.toNanos();
+        responses.await(timeoutNanos, stats);
+        stats.finished(start);
+    }
+
+    private int userId(long index) {
+        return settings.userIdBase + (int) (index % settings.users);
+    }
+
+    private static JSONObject order(int userId) {
+        JSONObject item = new JSONObject()
+                .put("name", "Load test product")
+                .put("description", "Load test product")
+                .put("price", ITEM_PRICE)
+                .put("quantity", 1);
+        return new JSONObject()
+                .put("userId", userId)
+                .put("items", new JSONArray().put(item));
+    }
+
+    /**
+     * Поле JSON-ответа строкой или null, если ответ не JSON или поля нет
+     */
+    private static String field(String body, String name) {
+        try {
+            Object value = new JSONObject(body).opt(name);
+            return value != null ? value.toString() : null;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    private CompletableFuture<HttpResponse<String>> post(String path, JSONObject body) {
+        return client.sendAsync(HttpRequest.newBuilder(URI.create(settings.gatewayUrl + path))
+                .timeout(settings.requestTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private CompletableFuture<HttpResponse<String>> get(String path) {
+        return client.sendAsync(HttpRequest.newBuilder(URI.create(settings.gatewayUrl + path))
+                .timeout(settings.requestTimeout)
+                .GET()
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String reason(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof HttpTimeoutException) {
+            return "timeout";
+        }
+        if (cause instanceof ConnectException) {
+            return "connection refused";
+        }
+        return cause.getClass().getSimpleName();
+    }
+
+    /**
+     * Ответы на запросы сценария. Результаты записываются в статистику под блокировкой, чтобы закрытие
+     * сценария по таймауту не пересекалось с записью: после {@link #await} поздние ответы отбрасываются,
+     * потому что их запросы уже учтены как "no response", а отчет не должен меняться.
+     */
+    private static final class Responses {
+        private final CountDownLatch pending;
+        private volatile boolean closed;
+
+        Responses(long total) {
+            this.pending = new CountDownLatch((int) total);
+        }
+
+        /**
+         * Записать промежуточный результат запроса (заказ создан, но еще не оплачен)
+         * @return false, если сценарий уже закрыт и запрос дальше отслеживать не нужно
+         */
+        synchronized boolean record(Runnable update) {
+            if (closed) {
+                return false;
+            }
+            update.run();
+            return true;
+        }
+
+        /**
+         * Записать окончательный результат запроса
+         */
+        synchronized void complete(Runnable update) {
+            if (!closed) {
+                update.run();
+                pending.countDown();
+            }
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Дождаться окончательных результатов и закрыть сценарий; не дождавшиеся запросы учитываются в {@code stats}
+         */
+        void await(long timeoutNanos, ScenarioStats stats) throws InterruptedException {
+            pending.await(timeoutNanos, TimeUnit.NANOSECONDS);
+            synchronized (this) {
+                closed = true;
+                for (long i = pending.getCount(); i > 0; i--) {
+                    stats.failed("no response");
+                }
+            }
+        }
+    }
+
+    static String report(LoadSettings settings, List<ScenarioStats> results) {
+        StringBuilder out = new StringBuilder(String.format(Locale.ROOT,
+                "Gateway %s, target rate %.1f/s for %d s, order bursts of %d, %d users%n",
+                settings.gatewayUrl, settings.rate, settings.duration.toSeconds(), settings.burst, settings.users));
+        out.append(ScenarioStats.header());
+        for (ScenarioStats stats : results) {
+            out.append(System.lineSeparator()).append(stats.format());
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.load;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Параметры нагрузочного прогона. Значения по умолчанию рассчитаны на шлюз и сервисы,
+ * запущенные локально (docker-compose или по отдельности).
+ */
+public class LoadSettings {
+    public static final List<String> ALL_SCENARIOS = List.of("accounts", "deposits", "orders");
+
+    String gatewayUrl = "http://localhost:8080";
+    List<String> scenarios = ALL_SCENARIOS;
+    double rate = 20;
+    Duration duration = Duration.ofSeconds(30);
+    int burst = 10;
+    int users = 100;
+    // Счета создаются заново при каждом прогоне, поэтому ID пользователей по умолчанию зависят от времени запуска
+    int userIdBase = 1_000_000 + (int) (System.currentTimeMillis() / 1000 % 100_000) * 10_000;
+    Duration paidTimeout = Duration.ofSeconds(10);
+    Duration pollInterval = Duration.ofMillis(20);
+    Duration requestTimeout = Duration.ofSeconds(10);
+
+    static final String USAGE = "Usage: LoadGenerator [--gateway URL] [--scenarios accounts,deposits,orders]"
+            + " [--rate requestsPerSecond] [--duration seconds] [--burst ordersPerBurst] [--users count]"
+            + " [--user-id-base id] [--paid-timeout seconds] [--poll-interval millis] [--request-timeout seconds]";
+
+    public static LoadSettings parse(String[] args) {
+        LoadSettings settings = new LoadSettings();
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name + "\n" + USAGE);
+            }
+            String value = args[++i];
+            switch (name) {
+                case "--gateway":
+                    settings.gatewayUrl = value;
+                    break;
+                case "--scenarios":
+                    settings.scenarios = Arrays.asList(value.split(","));
+                    break;
+                case "--rate":
+                    settings.rate = Double.parseDouble(value);
+                    break;
+                case "--duration":
+                    settings.duration = Duration.ofSeconds(Long.parseLong(value));
+                    break;
+                case "--burst":
+                    settings.burst = Integer.parseInt(value);
+                    break;
+                case "--users":
+                    settings.users = Integer.parseInt(value);
+                    break;
+                case "--user-id-base":
+                    settings.userIdBase = Integer.parseInt(value);
+                    break;
+                case "--paid-timeout":
+                    settings.paidTimeout = Duration.ofSeconds(Long.parseLong(value));
+                    break;
+                case "--poll-interval":
+                    settings.pollInterval = Duration.ofMillis(Long.parseLong(value));
+                    break;
+                case "--request-timeout":
+                    settings.requestTimeout = Duration.ofSeconds(Long.parseLong(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + name + "\n" + USAGE);
+            }
+        }
+        settings.validate();
+        return settings;
+    }
+
+    void validate() {
+        if (rate <= 0 || burst <= 0 || users <= 0) {
+            throw new IllegalArgumentException("Rate, burst and users must be positive");
+        }
+        if (!ALL_SCENARIOS.containsAll(scenarios)) {
+            throw new IllegalArgumentException("Unknown scenario in " + scenarios + ", expected " + ALL_SCENARIOS);
+        }
+    }
+
+    /**
+     * Число запросов сценария: все запросы расписываются заранее, поэтому при той же частоте
+     * и длительности их число одинаково от прогона к прогону
+     */
+    long totalRequests() {
+        return Math.max(1, Math.round(rate * duration.toNanos() / 1e9));
+    }
+}
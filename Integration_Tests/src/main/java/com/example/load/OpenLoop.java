@@ -0,0 +1,43 @@
+package com.example.load;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Открытая модель нагрузки: запросы отправляются по заранее рассчитанному расписанию и не ждут ответов
+ * на предыдущие, поэтому медленный сервис не снижает частоту запросов, а копит очередь, как при реальных
+ * пользователях. Запросы идут пачками по {@code burst} с одинаковым временем отправки; в среднем
+ * частота равна {@code rate}.
+ * <p>
+ * Задержку нужно считать от запланированного времени отправки, а не от фактического: иначе отставание
+ * самого генератора (координированное упущение) скрывает часть задержки.
+ */
+final class OpenLoop {
+
+    /**
+     * Отправка одного запроса; должна вернуться сразу, а ответ обработать асинхронно
+     */
+    interface Sender {
+        void send(long index, long intendedNanos);
+    }
+
+    private OpenLoop() {
+    }
+
+    /**
+     * Отправить {@code total} запросов
+     * @return время начала расписания по {@link System#nanoTime()}
+     */
+    static long run(long total, double rate, int burst, Sender sender) {
+        long start = System.nanoTime();
+        double burstIntervalNanos = burst * 1e9 / rate;
+        for (long index = 0; index < total; index++) {
+            long intended = start + (long) (index / burst * burstIntervalNanos);
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            sender.send(index, intended);
+        }
+        return start;
+    }
+}
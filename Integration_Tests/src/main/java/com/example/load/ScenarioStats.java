@@ -0,0 +1,106 @@
+package com.example.load;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.metrics.Histogram;
+
+/**
+ * Результаты одного сценария: отправленные и успешные запросы, ошибки по причинам
+ * и гистограмма задержки успешных запросов
+ */
+public class ScenarioStats {
+    static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_LABELS = {"p50", "p90", "p99", "p99.9"};
+
+    private final String name;
+    private final Histogram latency;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentSkipListMap<>();
+    private volatile long elapsedNanos;
+
+    public ScenarioStats(String name) {
+        this.name = name;
+        this.latency = new Histogram();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    void sent() {
+        sent.increment();
+    }
+
+    /**
+     * Успешный запрос, отправленный по расписанию в момент {@code intendedNanos}
+     */
+    void succeeded(long intendedNanos) {
+        latency.recordSince(intendedNanos);
+        succeeded.increment();
+    }
+
+    void failed(String reason) {
+        errors.computeIfAbsent(reason, key -> new LongAdder()).increment();
+    }
+
+    void finished(long startNanos) {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getSucceeded() {
+        return succeeded.sum();
+    }
+
+    public long getErrors() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public long getErrors(String reason) {
+        LongAdder count = errors.get(reason);
+        return count != null ? count.sum() : 0;
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Успешных запросов в секунду от начала расписания до завершения последнего запроса
+     */
+    public double getThroughput() {
+        return elapsedNanos > 0 ? getSucceeded() * 1e9 / elapsedNanos : 0;
+    }
+
+    static String header() {
+        StringBuilder out = new StringBuilder(String.format(Locale.ROOT, "%-16s %8s %8s %8s %12s",
+                "scenario", "sent", "ok", "errors", "ok/s"));
+        for (String label : QUANTILE_LABELS) {
+            out.append(String.format(Locale.ROOT, " %9s", label + " ms"));
+        }
+        return out.append(String.format(Locale.ROOT, " %9s", "max ms")).toString();
+    }
+
+    /**
+     * Строка отчета; под ней - ошибки по причинам, если они были
+     */
+    String format() {
+        StringBuilder out = new StringBuilder(String.format(Locale.ROOT, "%-16s %8d %8d %8d %12.1f",
+                name, getSent(), getSucceeded(), getErrors(), getThroughput()));
+        for (double quantile : QUANTILES) {
+            out.append(String.format(Locale.ROOT, " %9.1f", latency.valueAtQuantile(quantile) / 1e6));
+        }
+        out.append(String.format(Locale.ROOT, " %9.1f", latency.getMax() / 1e6));
+        for (Map.Entry<String, LongAdder> error : errors.entrySet()) {
+            out.append(String.format(Locale.ROOT, "%n  %-40s %8d", error.getKey(), error.getValue().sum()));
+        }
+        return out.toString();
+    }
+}
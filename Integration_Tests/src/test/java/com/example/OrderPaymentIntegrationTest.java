@@ -35,7 +35,7 @@ public class OrderPaymentIntegrationTest {
         
         // Проверка доступности сервисов
         assertServiceAvailable(API_GATEWAY_URL + "/api/hello");
-        assertServiceAvailable(ORDERS_URL + "/orders/hello");
+        assertServiceAvailable(ORDERS_URL + "/api/orders/hello");
         assertServiceAvailable(PAYMENTS_URL + "/payments/hello");
     }
     
@@ -47,7 +47,7 @@ public class OrderPaymentIntegrationTest {
         accountRequest.put("userId", userId);
         
         HttpRequest createAccountRequest = HttpRequest.newBuilder()
-                .uri(new URL(PAYMENTS_URL + "/accounts").toURI())
+                .uri(new URL(PAYMENTS_URL + "/payments/accounts").toURI())
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(accountRequest.toString()))
                 .build();
@@ -60,13 +60,13 @@ public class OrderPaymentIntegrationTest {
         assertTrue(accountJson.has("accountId"));
         
         // Шаг 2: Пополнение счета
-        JSONObject depositRequest = new JSONObject();
-        depositRequest.put("amount", 500.0); // Достаточно для покупки
+        JSONObject depositBody = new JSONObject();
+        depositBody.put("amount", 500.0); // Достаточно для покупки
         
         HttpRequest depositRequest = HttpRequest.newBuilder()
-                .uri(new URL(PAYMENTS_URL + "/accounts/" + userId + "/deposit").toURI())
+                .uri(new URL(PAYMENTS_URL + "/payments/accounts/" + userId + "/deposit").toURI())
                 .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(depositRequest.toString()))
+                .POST(HttpRequest.BodyPublishers.ofString(depositBody.toString()))
                 .build();
         
         HttpResponse<String> depositResponse = httpClient.send(
@@ -91,7 +91,7 @@ public class OrderPaymentIntegrationTest {
         orderRequest.put("items", items);
         
         HttpRequest createOrderRequest = HttpRequest.newBuilder()
-                .uri(new URL(ORDERS_URL + "/orders").toURI())
+                .uri(new URL(ORDERS_URL + "/api/orders").toURI())
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(orderRequest.toString()))
                 .build();
@@ -101,14 +101,14 @@ public class OrderPaymentIntegrationTest {
         
         assertEquals(201, orderResponse.statusCode());
         JSONObject orderJson = new JSONObject(orderResponse.body());
-        int orderId = orderJson.getInt("orderId");
+        long orderId = orderJson.getLong("orderId");
         
         // Шаг 4: Дождаться обработки платежа (это может занять некоторое время из-за асинхронности)
         waitForOrderStatus(orderId, userId, "PAID", 10);
         
         // Шаг 5: Проверка списания средств
         HttpRequest balanceRequest = HttpRequest.newBuilder()
-                .uri(new URL(PAYMENTS_URL + "/accounts/" + userId + "/balance").toURI())
+                .uri(new URL(PAYMENTS_URL + "/payments/accounts/" + userId + "/balance").toURI())
                 .GET()
                 .build();
         
@@ -124,13 +124,13 @@ public class OrderPaymentIntegrationTest {
     /**
      * Ждем пока статус заказа не изменится на указанный или не истечет таймаут
      */
-    private void waitForOrderStatus(int orderId, int userId, String expectedStatus, int maxAttempts) throws Exception {
+    private void waitForOrderStatus(long orderId, int userId, String expectedStatus, int maxAttempts) throws Exception {
         int attempts = 0;
         String status = "";
         
         while (!expectedStatus.equals(status) && attempts < maxAttempts) {
             HttpRequest orderStatusRequest = HttpRequest.newBuilder()
-                    .uri(new URL(ORDERS_URL + "/orders/" + orderId + "?userId=" + userId).toURI())
+                    .uri(new URL(ORDERS_URL + "/api/orders/" + orderId + "?userId=" + userId).toURI())
                     .GET()
                     .build();
             
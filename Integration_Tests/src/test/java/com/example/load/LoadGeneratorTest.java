@@ -0,0 +1,183 @@
+package com.example.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Генератор нагрузки против заглушки шлюза: каждый пятый заказ отклоняется с 429,
+ * остальные становятся PAID со второго опроса статуса
+ */
+public class LoadGeneratorTest {
+
+    private HttpServer gateway;
+    private ExecutorService gatewayExecutor;
+    private volatile long depositDelayMillis;
+    private final AtomicInteger orders = new AtomicInteger();
+    private final Map<String, AtomicInteger> statusPolls = new ConcurrentHashMap<>();
+    private LoadSettings settings;
+
+    @Before
+    public void setUp() throws IOException {
+        gateway = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        gateway.createContext("/api/accounts", exchange -> {
+            if (exchange.getRequestURI().getPath().endsWith("/deposit")) {
+                sleep(depositDelayMillis);
+                respond(exchange, 200, "{\"balance\":10.0}");
+            } else {
+                respond(exchange, 201, "{\"accountId\":1}");
+            }
+        });
+        gateway.createContext("/api/orders", exchange -> {
+            if ("POST".equals(exchange.getRequestMethod())) {
+                int order = orders.incrementAndGet();
+                if (order % 5 == 0) {
+                    respond(exchange, 429, "{\"error\":\"Too many requests\"}");
+                } else {
+                    respond(exchange, 201, "{\"orderId\":" + order + ",\"status\":\"CREATED\"}");
+                }
+            } else {
+                String orderId = exchange.getRequestURI().getPath().substring("/api/orders/".length());
+                int polls = statusPolls.computeIfAbsent(orderId, id -> new AtomicInteger()).incrementAndGet();
+                respond(exchange, 200, "{\"orderId\":" + orderId + ",\"status\":\"" + (polls < 2 ? "CREATED" : "PAID") + "\"}");
+            }
+        });
+        gatewayExecutor = Executors.newFixedThreadPool(64);
+        gateway.setExecutor(gatewayExecutor);
+        gateway.start();
+
+        settings = new LoadSettings();
+        settings.gatewayUrl = "http://127.0.0.1:" + gateway.getAddress().getPort();
+        settings.rate = 100;
+        settings.duration = Duration.ofSeconds(1);
+        settings.burst = 5;
+        settings.users = 10;
+        settings.pollInterval = Duration.ofMillis(10);
+        settings.paidTimeout = Duration.ofSeconds(5);
+    }
+
+    @After
+    public void tearDown() {
+        gateway.stop(0);
+        gatewayExecutor.shutdownNow();
+    }
+
+    @Test(timeout = 30000)
+    public void testScenariosReportSuccessesErrorsAndOrderToPaidLatency() throws Exception {
+        List<ScenarioStats> results = run();
+
+        assertEquals(4, results.size());
+        ScenarioStats accounts = results.get(0);
+        assertEquals(LoadGenerator.ACCOUNTS, accounts.getName());
+        assertEquals(100, accounts.getSent());
+        assertEquals(100, accounts.getSucceeded());
+
+        ScenarioStats deposits = results.get(1);
+        assertEquals(100, deposits.getSucceeded());
+        assertEquals(0, deposits.getErrors());
+
+        ScenarioStats created = results.get(2);
+        assertEquals(LoadGenerator.ORDERS, created.getName());
+        assertEquals(100, created.getSent());
+        assertEquals(80, created.getSucceeded());
+        assertEquals(20, created.getErrors("HTTP 429"));
+
+        ScenarioStats paid = results.get(3);
+        assertEquals(LoadGenerator.ORDER_TO_PAID, paid.getName());
+        assertEquals(80, paid.getSent());
+        assertEquals(80, paid.getSucceeded());
+        // Заказ становится PAID только на втором опросе - не раньше двух интервалов опроса
+        assertTrue(paid.getLatency().valueAtQuantile(0.5) >= Duration.ofMillis(20).toNanos());
+
+        String report = LoadGenerator.report(settings, results);
+        assertTrue(report, report.contains("HTTP 429"));
+        assertTrue(report, report.contains("p99.9 ms"));
+    }
+
+    @Test(timeout = 30000)
+    public void testSlowResponsesDoNotSlowDownSending() throws Exception {
+        depositDelayMillis = 300;
+        settings.scenarios = List.of(LoadGenerator.DEPOSITS);
+
+        ScenarioStats deposits = run().get(0);
+
+        assertEquals(100, deposits.getSucceeded());
+        // Открытая модель: запросы уходят по расписанию, а задержка ответа видна в процентилях.
+        // Один поток, ждущий каждого ответа, успел бы за то же время меньше 4 запросов в секунду.
+        assertTrue(deposits.getThroughput() + " ok/s", deposits.getThroughput() > 50);
+        assertTrue(deposits.getLatency().valueAtQuantile(0.5) >= Duration.ofMillis(300).toNanos());
+    }
+
+    @Test(timeout = 30000)
+    public void testLateResponsesAfterTimeoutAreNotCounted() throws Exception {
+        // Первый опрос статуса - позже, чем генератор перестает ждать ответов
+        settings.scenarios = List.of(LoadGenerator.ORDERS);
+        settings.requestTimeout = Duration.ofMillis(100);
+        settings.paidTimeout = Duration.ofMillis(100);
+        settings.pollInterval = Duration.ofSeconds(2);
+        LoadGenerator generator = new LoadGenerator(settings);
+        try {
+            List<ScenarioStats> results = generator.run();
+            ScenarioStats created = results.get(0);
+            ScenarioStats paid = results.get(1);
+            assertEquals(80, created.getSucceeded());
+            assertEquals(80, created.getErrors("no response"));
+            assertEquals(0, paid.getErrors());
+            String report = LoadGenerator.report(settings, results);
+
+            // Опросы после закрытия сценария не выполняются, и отчет не меняется
+            Thread.sleep(2500);
+
+            assertTrue(statusPolls.isEmpty());
+            assertEquals(0, paid.getErrors());
+            assertEquals(report, LoadGenerator.report(settings, results));
+        } finally {
+            generator.close();
+        }
+    }
+
+    private List<ScenarioStats> run() throws InterruptedException {
+        LoadGenerator generator = new LoadGenerator(settings);
+        try {
+            return generator.run();
+        } finally {
+            generator.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -7,15 +7,19 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.example.controller.OrderController;
+import com.example.id.NodeIdGenerator;
 import com.example.messaging.MessageBroker;
 import com.example.messaging.MessageHandler;
 import com.example.messaging.MessageSchema;
+import com.example.metrics.MetricsRegistry;
+import com.example.metrics.SparkMetrics;
 import com.example.outbox.OutboxRepository;
 import com.example.outbox.OutboxService;
 import com.example.repository.OrderRepository;
 import com.example.service.OrderService;
 import com.google.gson.Gson;
 
+import static com.example.metrics.SparkMetrics.measured;
 import static spark.Spark.awaitInitialization;
 import static spark.Spark.exception;
 import static spark.Spark.get;
@@ -34,6 +38,13 @@ public class App {
         
         System.out.println("Orders microservice is starting on port 8081");
 
+        // ID заказов уникальны между экземплярами сервиса: у каждого экземпляра свой NODE_ID.
+        // NODE_ID - также позиция экземпляра в ORDERS_SERVICE_URL шлюза: шлюз направляет сюда пользователей
+        // раздела NODE_ID (см. Partitions), и сюда же возвращаются результаты оплаты их заказов
+        int nodeId = System.getenv("NODE_ID") != null ?
+                     Integer.parseInt(System.getenv("NODE_ID")) : 0;
+        Order.setIdGenerator(new NodeIdGenerator(nodeId));
+        
         OrderRepository orderRepository = new OrderRepository();
         OutboxRepository outboxRepository = new OutboxRepository();
         
@@ -42,7 +53,13 @@ public class App {
         int rabbitMQPort = System.getenv("RABBITMQ_PORT") != null ? 
                            Integer.parseInt(System.getenv("RABBITMQ_PORT")) : 5672;
         
-        messageBroker = new MessageBroker(rabbitMQHost, rabbitMQPort);
+        // Параметры потребителя: prefetch и число потоков-обработчиков сообщений
+        int prefetchCount = System.getenv("RABBITMQ_PREFETCH") != null ?
+                            Integer.parseInt(System.getenv("RABBITMQ_PREFETCH")) : MessageBroker.DEFAULT_PREFETCH_COUNT;
+        int consumerThreads = System.getenv("CONSUMER_THREADS") != null ?
+                              Integer.parseInt(System.getenv("CONSUMER_THREADS")) : Runtime.getRuntime().availableProcessors();
+        
+        messageBroker = new MessageBroker(rabbitMQHost, rabbitMQPort, prefetchCount, consumerThreads);
         try {
             messageBroker.connect();
         } catch (Exception e) {
@@ -51,10 +68,13 @@ public class App {
             return;
         }
         
-        outboxService = new OutboxService(outboxRepository, messageBroker);
+        // Экземпляры Payments с разными счетами: их число должно совпадать с числом URL в PAYMENTS_SERVICE_URL шлюза
+        int paymentsInstances = System.getenv("PAYMENTS_INSTANCES") != null ?
+                                Integer.parseInt(System.getenv("PAYMENTS_INSTANCES")) : 1;
+        outboxService = new OutboxService(outboxRepository, messageBroker, paymentsInstances);
         outboxService.startProcessing();
         
-        OrderService orderService = new OrderService(orderRepository, outboxService);
+        OrderService orderService = new OrderService(orderRepository, outboxService, nodeId);
         
         // Инициализируем обработчик для входящих сообщений
         messageHandler = new MessageHandler(orderService);
@@ -63,23 +83,26 @@ public class App {
         
         // Запускаем слушателя для результатов оплаты
         try {
-            messageBroker.receiveMessages(MessageSchema.ORDER_PAYMENT_RESULTS_QUEUE, 
-                messageHandler::handlePaymentResult);
-            System.out.println("Started listening for payment results on queue: " 
-                + MessageSchema.ORDER_PAYMENT_RESULTS_QUEUE);
+            // Результаты оплаты заказов этого экземпляра приходят в его собственную очередь
+            String paymentResultsQueue = MessageSchema.paymentResultsQueue(nodeId);
+            messageBroker.receiveMessages(paymentResultsQueue, messageHandler::handlePaymentResult);
+            System.out.println("Started listening for payment results on queue: " + paymentResultsQueue);
         } catch (IOException e) {
             System.err.println("Failed to set up message consumer for payment results: " + e.getMessage());
             e.printStackTrace();
         }
         
+        // Время обработки запросов по маршрутам и эндпоинт /metrics для Prometheus
+        SparkMetrics.install(MetricsRegistry.getDefault());
+        
         get("/api/orders/hello", (req, res) -> "Hello from Orders Microservice!");
         
         // API endpoints
-        post("/api/orders", orderController.getCreateOrder());
-        get("/api/orders/:orderId", orderController.getGetOrder());
-        get("/api/users/:userId/orders", orderController.getGetUserOrders());
+        post("/api/orders", measured(orderController.getCreateOrder()));
+        get("/api/orders/:orderId", measured(orderController.getGetOrder()));
+        get("/api/users/:userId/orders", measured(orderController.getGetUserOrders()));
         
-        post("/api/orders/payment-result", orderController.getHandlePaymentResult());
+        post("/api/orders/payment-result", measured(orderController.getHandlePaymentResult()));
         
         // Добавляем эндпоинт для проверки состояния сервиса
         get("/api/orders/health", (req, res) -> {
@@ -55,7 +55,7 @@ public class OrderController {
         
         this.getOrder = (request, response) -> {
             try {
-                int orderId = Integer.parseInt(request.params(":orderId"));
+                long orderId = Long.parseLong(request.params(":orderId"));
                 
                 int userId = Integer.parseInt(request.queryParams("userId"));
                 
@@ -126,7 +126,7 @@ public class OrderController {
             try {
                 Map<String, Object> requestBody = gson.fromJson(request.body(), Map.class);
                 
-                int orderId = ((Number) requestBody.get("orderId")).intValue();
+                long orderId = ((Number) requestBody.get("orderId")).longValue();
                 boolean success = (Boolean) requestBody.get("success");
                 
                 OrderStatus newStatus = success ? OrderStatus.PAID : OrderStatus.FAILED;
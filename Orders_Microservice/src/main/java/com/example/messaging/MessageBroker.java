@@ -2,87 +2,279 @@ package com.example.messaging;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
+import com.example.logging.Logger;
+import com.example.metrics.Counter;
+import com.example.metrics.Histogram;
+import com.example.metrics.MetricsRegistry;
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
 
 public class MessageBroker {
+    private static final Logger logger = Logger.getLogger(MessageBroker.class);
+
+    public static final int DEFAULT_PREFETCH_COUNT = 32;
+
+    // Сколько ждать подтверждения брокера, прежде чем считать публикацию неудачной
+    private static final long CONFIRM_TIMEOUT_SECONDS = 10;
+
+    private static final AMQP.BasicProperties PERSISTENT = new AMQP.BasicProperties.Builder()
+            .deliveryMode(2) // persistent
+            .build();
+
     private final ConnectionFactory factory;
     private Connection connection;
     private Channel channel;
+    private final QueueTopology topology = new QueueTopology();
+
+    // Сколько неподтвержденных сообщений брокер отдает потребителю и сколько потоков их обрабатывают
+    private final int prefetchCount;
+    private final int consumerThreads;
+    private final ExecutorService consumerExecutor;
+
+    // Неподтвержденные публикации: delivery tag -> future, завершаемый по ack/nack брокера
+    private final ConcurrentNavigableMap<Long, CompletableFuture<Void>> outstandingConfirms =
+            new ConcurrentSkipListMap<>();
+    private final Object publishLock = new Object();
     
     public MessageBroker() {
         this("localhost", 5672);
     }
     
     public MessageBroker(String host, int port) {
+        this(host, port, DEFAULT_PREFETCH_COUNT, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MessageBroker(String host, int port, int prefetchCount, int consumerThreads) {
+        if (prefetchCount <= 0 || consumerThreads <= 0) {
+            throw new IllegalArgumentException("Prefetch count and consumer threads must be positive");
+        }
         factory = new ConnectionFactory();
         factory.setHost(host);
         factory.setPort(port);
+        this.prefetchCount = prefetchCount;
+        this.consumerThreads = consumerThreads;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.consumerExecutor = new ThreadPoolExecutor(consumerThreads, consumerThreads,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "message-consumer-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
     }
 
     public void connect() throws IOException, TimeoutException {
+        topology.reset();
         connection = factory.newConnection();
         channel = connection.createChannel();
+        if (connection instanceof Recoverable) {
+            // После автоматического восстановления соединения очереди нужно объявить заново
+            ((Recoverable) connection).addRecoveryListener(new RecoveryListener() {
+                @Override
+                public void handleRecovery(Recoverable recoverable) {
+                    topology.reset();
+                }
+
+                @Override
+                public void handleRecoveryStarted(Recoverable recoverable) {
+                }
+            });
+        }
+        channel.confirmSelect();
+        channel.addConfirmListener(
+                (deliveryTag, multiple) -> handleConfirm(deliveryTag, multiple, true),
+                (deliveryTag, multiple) -> handleConfirm(deliveryTag, multiple, false));
+        // При потере канала подтверждений по старым delivery tag уже не будет
+        channel.addShutdownListener(cause -> failOutstandingConfirms(cause));
     }
     
+    /**
+     * Синхронная отправка: публикует сообщение и ждет подтверждения брокера
+     */
     public void sendMessage(String queueName, String message) throws IOException {
-        System.out.println("Declaring queue: " + queueName);
-        channel.queueDeclare(queueName, true, false, false, null);
-        
-        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
-                .deliveryMode(2) // persistent
-                .build();
-        
-        System.out.println("Sending message to queue " + queueName + ": " + message);
-        channel.basicPublish("", queueName, properties, message.getBytes(StandardCharsets.UTF_8));
-        System.out.println(" [x] Sent '" + message + "' to queue '" + queueName + "'");
+        try {
+            publishAsync(queueName, message).get(CONFIRM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw new IOException("Message to queue " + queueName + " was not confirmed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out waiting for confirm from queue " + queueName, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for confirm", e);
+        }
+    }
+
+    /**
+     * Асинхронная публикация с подтверждением (publisher confirms).
+     * Позволяет отправлять сообщения конвейером, не дожидаясь подтверждения каждого.
+     * @return future, который завершается по ack брокера и завершается с ошибкой по nack,
+     *         потере канала или истечении времени ожидания
+     */
+    public CompletableFuture<Void> publishAsync(String queueName, String message) {
+        return publish("", queueName, message);
     }
 
+    /**
+     * Асинхронная публикация события в fanout-обменник с подтверждением.
+     * Каждый подписчик получает событие в свою очередь; без подписчиков брокер просто подтверждает публикацию.
+     */
+    public CompletableFuture<Void> publishToExchangeAsync(String exchangeName, String message) {
+        return publish(exchangeName, "", message);
+    }
+
+    private CompletableFuture<Void> publish(String exchangeName, String queueName, String message) {
+        CompletableFuture<Void> confirm = new CompletableFuture<>();
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        synchronized (publishLock) {
+            long deliveryTag = channel.getNextPublishSeqNo();
+            outstandingConfirms.put(deliveryTag, confirm);
+            try {
+                if (exchangeName.isEmpty()) {
+                    topology.ensureDeclared(channel, queueName);
+                } else {
+                    topology.ensureExchangeDeclared(channel, exchangeName);
+                }
+                channel.basicPublish(exchangeName, queueName, PERSISTENT, body);
+            } catch (IOException | RuntimeException e) {
+                outstandingConfirms.remove(deliveryTag, confirm);
+                confirm.completeExceptionally(e);
+                return confirm;
+            }
+            confirm.whenComplete((result, error) -> outstandingConfirms.remove(deliveryTag, confirm));
+        }
+        logger.debug(" [x] Published '{}' to {}", message, exchangeName.isEmpty() ? queueName : exchangeName);
+        return confirm.orTimeout(CONFIRM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Количество публикаций, ожидающих подтверждения брокера
+     */
+    public int getOutstandingConfirmCount() {
+        return outstandingConfirms.size();
+    }
+
+    private void handleConfirm(long deliveryTag, boolean multiple, boolean ack) {
+        Map<Long, CompletableFuture<Void>> confirmed = multiple
+                ? outstandingConfirms.headMap(deliveryTag, true)
+                : outstandingConfirms.subMap(deliveryTag, true, deliveryTag, true);
+        for (CompletableFuture<Void> confirm : confirmed.values()) {
+            if (ack) {
+                confirm.complete(null);
+            } else {
+                confirm.completeExceptionally(new IOException("Message was nacked by the broker"));
+            }
+        }
+        confirmed.clear();
+    }
+
+    private void failOutstandingConfirms(Throwable cause) {
+        for (CompletableFuture<Void> confirm : outstandingConfirms.values()) {
+            confirm.completeExceptionally(new IOException("Channel closed before confirm", cause));
+        }
+        outstandingConfirms.clear();
+    }
+
+    /**
+     * Получение сообщений из очереди.
+     * Брокер отдает потребителю до prefetchCount неподтвержденных сообщений, обработчик
+     * выполняется в пуле потоков, а каждое сообщение подтверждается по своему delivery tag.
+     */
     public void receiveMessages(String queueName, Consumer<String> messageHandler) throws IOException {
         try {
-            System.out.println("Declaring queue for receiving: " + queueName);
-            channel.queueDeclare(queueName, true, false, false, null);
+            logger.debug("Declaring queue for receiving: {}", queueName);
+            // Отдельный канал для потребителя, чтобы подтверждения не смешивались с публикациями
+            Channel consumerChannel = connection.createChannel();
+            topology.ensureDeclared(consumerChannel, queueName);
             
-            channel.basicQos(1);
+            consumerChannel.basicQos(prefetchCount);
+            Histogram consumeTime = MetricsRegistry.getDefault().histogram("messaging_consume_seconds",
+                "Time to process and acknowledge a consumed message", "queue", queueName);
+            Counter failures = MetricsRegistry.getDefault().counter("messaging_consume_failures_total",
+                "Consumed messages that failed and were requeued", "queue", queueName);
             
-            System.out.println(" [*] Waiting for messages from queue '" + queueName + "'");
+            logger.info(" [*] Waiting for messages from queue '{}' with prefetch {} and {} worker threads",
+                queueName, prefetchCount, consumerThreads);
             
             DeliverCallback deliverCallback = (consumerTag, delivery) -> {
+                long deliveryTag = delivery.getEnvelope().getDeliveryTag();
                 String message = new String(delivery.getBody(), StandardCharsets.UTF_8);
-                
                 try {
-                    System.out.println(" [x] Received '" + message + "' from queue '" + queueName + "'");
-                    messageHandler.accept(message);
-                    
-                    channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
-                    System.out.println("Message acknowledged");
-                } catch (Exception e) {
-                    System.err.println("Error processing message: " + e.getMessage());
-                    
-                    try {
-                        channel.basicNack(delivery.getEnvelope().getDeliveryTag(), false, true);
-                        System.out.println("Message nacked and requeued");
-                    } catch (IOException ioException) {
-                        System.err.println("Failed to nack message: " + ioException.getMessage());
-                    }
+                    consumerExecutor.execute(() -> 
+                        handleDelivery(consumerChannel, queueName, deliveryTag, message, messageHandler,
+                            consumeTime, failures));
+                } catch (RejectedExecutionException e) {
+                    // Пул обработчиков уже остановлен - возвращаем сообщение в очередь
+                    nackAndRequeue(consumerChannel, deliveryTag);
                 }
             };
             
-            channel.basicConsume(queueName, false, deliverCallback, consumerTag -> { });
-            System.out.println("Started consuming messages from queue: " + queueName);
+            consumerChannel.basicConsume(queueName, false, deliverCallback, consumerTag -> { });
+            logger.info("Started consuming messages from queue: {}", queueName);
         } catch (Exception e) {
-            System.err.println("Error setting up message consumer: " + e.getMessage());
+            logger.error("Error setting up message consumer: {}", e.getMessage());
             throw new IOException("Failed to set up message consumer", e);
         }
     }
     
+    /**
+     * Обработать одно сообщение в потоке пула и подтвердить его
+     */
+    private void handleDelivery(Channel consumerChannel, String queueName, long deliveryTag,
+                                String message, Consumer<String> messageHandler,
+                                Histogram consumeTime, Counter failures) {
+        long start = System.nanoTime();
+        try {
+            logger.debug(" [x] Received '{}' from queue '{}'", message, queueName);
+            messageHandler.accept(message);
+            
+            consumerChannel.basicAck(deliveryTag, false);
+            logger.debug("Message acknowledged");
+        } catch (Exception e) {
+            logger.error("Error processing message: {}", e.getMessage());
+            failures.increment();
+            nackAndRequeue(consumerChannel, deliveryTag);
+        } finally {
+            consumeTime.recordSince(start);
+        }
+    }
+    
+    private void nackAndRequeue(Channel consumerChannel, long deliveryTag) {
+        try {
+            consumerChannel.basicNack(deliveryTag, false, true);
+            logger.warn("Message nacked and requeued");
+        } catch (IOException ioException) {
+            logger.error("Failed to nack message: {}", ioException.getMessage());
+        }
+    }
+    
     public void close() throws IOException {
+        consumerExecutor.shutdown();
+        try {
+            if (!consumerExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                consumerExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            consumerExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
         try {
             if (channel != null && channel.isOpen()) {
                 channel.close();
@@ -90,7 +282,7 @@ public class MessageBroker {
             if (connection != null && connection.isOpen()) {
                 connection.close();
             }
-            System.out.println("RabbitMQ connection closed");
+            logger.info("RabbitMQ connection closed");
         } catch (TimeoutException e) {
             throw new IOException("Timeout while closing RabbitMQ connections", e);
         }
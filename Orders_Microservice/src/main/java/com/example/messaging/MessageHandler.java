@@ -1,6 +1,7 @@
 package com.example.messaging;
 
 import com.example.OrderStatus;
+import com.example.logging.Logger;
 import com.example.messaging.MessageSchema.PaymentResult;
 import com.example.service.OrderService;
 import com.google.gson.Gson;
@@ -11,6 +12,8 @@ import com.google.gson.JsonParser;
  * Обработчик входящих сообщений для Orders Microservice
  */
 public class MessageHandler {
+    private static final Logger logger = Logger.getLogger(MessageHandler.class);
+
     private final OrderService orderService;
     private final Gson gson = new Gson();
     
@@ -23,14 +26,14 @@ public class MessageHandler {
      */
     public void handlePaymentResult(String message) {
         try {
-            System.out.println("Received payment result message: " + message);
+            logger.debug("Received payment result message: {}", message);
             
             // Парсим и проверяем структуру сообщения
             JsonObject jsonObject = JsonParser.parseString(message).getAsJsonObject();
             
             // Проверяем наличие необходимых полей
             if (!jsonObject.has("orderId") || !jsonObject.has("transactionId") || !jsonObject.has("success")) {
-                System.err.println("Invalid payment result message format: " + message);
+                logger.error("Invalid payment result message format: {}", message);
                 return;
             }
             
@@ -38,29 +41,26 @@ public class MessageHandler {
             PaymentResult paymentResult = gson.fromJson(message, PaymentResult.class);
             
             // Логируем полученный результат
-            System.out.println("Received payment result for order " + paymentResult.orderId + 
-                ": " + (paymentResult.success ? "SUCCESS" : "FAILURE"));
-            
-            if (paymentResult.failureReason != null && !paymentResult.failureReason.isEmpty()) {
-                System.out.println("Failure reason: " + paymentResult.failureReason);
+            if (paymentResult.success) {
+                logger.info("Received payment result for order {}: SUCCESS", paymentResult.orderId);
+            } else {
+                logger.info("Received payment result for order {}: FAILURE, reason: {}",
+                    paymentResult.orderId, paymentResult.failureReason);
             }
             
             // Обновляем статус заказа
             OrderStatus newStatus = paymentResult.success ? OrderStatus.PAID : OrderStatus.FAILED;
-            System.out.println("Updating order " + paymentResult.orderId + " status to " + newStatus);
             
             boolean updated = orderService.updateOrderStatus(paymentResult.orderId, newStatus);
             if (updated) {
-                System.out.println("Successfully updated order status");
-                
-                // Здесь можно добавить код для уведомления пользователя об изменении статуса заказа
-                // например, через WebSocket или другие механизмы уведомлений
+                // updateOrderStatus публикует OrderStatusChanged через outbox: шлюз сбрасывает кэш,
+                // а Frontend_Service пересылает статус браузерам пользователя по WebSocket
+                logger.debug("Successfully updated order {} status", paymentResult.orderId);
             } else {
-                System.err.println("Failed to update order status");
+                logger.error("Failed to update order {} status", paymentResult.orderId);
             }
         } catch (Exception e) {
-            System.err.println("Error handling payment result: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Error handling payment result: {}", e.getMessage(), e);
         }
     }
 }
\ No newline at end of file
@@ -14,7 +14,7 @@ public class OutboxMessage {
     private final String payload;
     private final String messageId; // Добавляем поле для messageId
     private final LocalDateTime createdAt;
-    private boolean processed;
+    private volatile boolean processed;
     private LocalDateTime processedAt;
 
     public OutboxMessage(String aggregateId, String aggregateType, String eventType, String payload) {
@@ -1,28 +1,42 @@
 package com.example.outbox;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 public class OutboxRepository {
     private final Map<String, OutboxMessage> messages = new ConcurrentHashMap<>();
 
+    // ID необработанных сообщений, чтобы не просматривать всю историю Outbox
+    private final Set<String> pendingMessageIds = ConcurrentHashMap.newKeySet();
+
 
     public void save(OutboxMessage message) {
         messages.put(message.getId(), message);
+        if (!message.isProcessed()) {
+            pendingMessageIds.add(message.getId());
+        }
     }
 
     public List<OutboxMessage>  findUnprocessedMessages() {
-        return messages.values().stream()
-                .filter(message -> !message.isProcessed())
-                .collect(Collectors.toList());
+        List<OutboxMessage> unprocessed = new ArrayList<>(pendingMessageIds.size());
+        for (String id : pendingMessageIds) {
+            OutboxMessage message = messages.get(id);
+            if (message != null && !message.isProcessed()) {
+                unprocessed.add(message);
+            }
+        }
+        return unprocessed;
     }
 
 
     public void markAsProcessed(String messageId) {
-        if (messages.containsKey(messageId)) {
-            messages.get(messageId).markAsProcessed();
+        OutboxMessage message = messages.get(messageId);
+        if (message != null) {
+            message.markAsProcessed();
         }
+        pendingMessageIds.remove(messageId);
     }
 }
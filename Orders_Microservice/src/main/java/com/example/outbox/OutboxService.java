@@ -1,104 +1,228 @@
 package com.example.outbox;
 
-import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
+import com.example.logging.Logger;
 import com.example.messaging.MessageBroker;
 import com.example.messaging.MessageSchema;
+import com.example.messaging.Partitions;
+import com.example.metrics.Counter;
+import com.example.metrics.Histogram;
+import com.example.metrics.MetricsRegistry;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
+/**
+ * Ретранслятор Outbox: публикует сообщение сразу после {@link #saveMessage(OutboxMessage)},
+ * а периодическая проверка лишь подбирает сообщения, отправка которых не удалась.
+ * Сообщения публикуются конвейером с подтверждениями брокера (publisher confirms).
+ */
 public class OutboxService {
+    private static final Logger logger = Logger.getLogger(OutboxService.class);
+    private static final Histogram lag = MetricsRegistry.getDefault().histogram("outbox_lag_seconds",
+            "Time from saving an outbox message to its confirmation by the broker");
+    private static final Counter unconfirmed = MetricsRegistry.getDefault().counter("outbox_unconfirmed_total",
+            "Outbox publications that were not confirmed and will be retried");
+
+    // Страховочная проверка Outbox - основная доставка идет через очередь ретранслятора
+    private static final long SWEEP_INTERVAL_SECONDS = 30;
+    private static final int MAX_BATCH_SIZE = 256;
+    // Максимум публикаций, одновременно ожидающих подтверждения брокера
+    private static final int MAX_IN_FLIGHT = 1024;
+
     private final OutboxRepository outboxRepository;
     private final MessageBroker messageBroker;
+    // Число экземпляров Payments: запрос на оплату идет в очередь экземпляра со счетом пользователя
+    private final int paymentsPartitions;
     private final Gson gson = new Gson();
+    private final BlockingQueue<OutboxMessage> pendingMessages = new LinkedBlockingQueue<>();
+    private final ExecutorService relay = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "orders-outbox-relay");
+        thread.setDaemon(true);
+        return thread;
+    });
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final Set<String> inFlightMessageIds = ConcurrentHashMap.newKeySet();
+    private final Semaphore inFlightPermits = new Semaphore(MAX_IN_FLIGHT);
 
     public OutboxService(OutboxRepository outboxRepository, MessageBroker messageBroker) {
+        this(outboxRepository, messageBroker, 1);
+    }
+
+    public OutboxService(OutboxRepository outboxRepository, MessageBroker messageBroker, int paymentsPartitions) {
         this.outboxRepository = outboxRepository;
         this.messageBroker = messageBroker;
+        this.paymentsPartitions = paymentsPartitions;
     }
 
     public void saveMessage(OutboxMessage message) {
         outboxRepository.save(message);
+        // Будим ретранслятор, не дожидаясь периодической проверки
+        pendingMessages.offer(message);
     }
 
     public void startProcessing() {
-        scheduler.scheduleAtFixedRate(this::processOutboxMessages, 0, 3, TimeUnit.SECONDS);
+        MetricsRegistry.getDefault().gauge("outbox_pending_messages",
+                "Outbox messages waiting for the relay", pendingMessages::size);
+        MetricsRegistry.getDefault().gauge("outbox_in_flight_messages",
+                "Outbox messages published and waiting for broker confirmation", inFlightMessageIds::size);
+        relay.submit(this::relayPendingMessages);
+        scheduler.scheduleAtFixedRate(this::processOutboxMessages,
+                SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Основной цикл ретранслятора: ждет новые сообщения и публикует их пачками
+     */
+    private void relayPendingMessages() {
+        List<OutboxMessage> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(pendingMessages.take());
+                pendingMessages.drainTo(batch, MAX_BATCH_SIZE - 1);
+                for (OutboxMessage message : batch) {
+                    // Сообщение могло попасть в очередь повторно через страховочную проверку
+                    if (message.isProcessed()) {
+                        continue;
+                    }
+                    try {
+                        publish(message);
+                    } catch (RuntimeException e) {
+                        // Ошибка одного сообщения не должна задерживать следующие за ним в пачке
+                        logger.error("Failed to publish outbox message {}: {}", message.getId(), e.getMessage(), e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error in outbox relay: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
     }
 
+    /**
+     * Страховочная проверка: возвращает в очередь ретранслятора сообщения, которые не удалось отправить
+     */
     private void processOutboxMessages() {
-        System.out.println("Checking for unprocessed messages in Outbox...");
         List<OutboxMessage> unprocessedMessages = outboxRepository.findUnprocessedMessages();
-        System.out.println("Found " + unprocessedMessages.size() + " unprocessed messages");
-        
-        unprocessedMessages.forEach(message -> {
-            try {
-                System.out.println("Processing message: " + message.getId() + 
-                                 ", eventType: " + message.getEventType() + 
-                                 ", payload: " + message.getPayload());
-                
-                // Определение очереди в зависимости от типа события
-                String queueName = null;
-                if ("PROCESS_PAYMENT".equals(message.getEventType())) {
-                    queueName = MessageSchema.PAYMENT_REQUESTS_QUEUE;
-                    System.out.println("Sending payment request to queue: " + queueName);
+        if (!unprocessedMessages.isEmpty()) {
+            logger.info("Outbox sweep found {} unprocessed messages", unprocessedMessages.size());
+            for (OutboxMessage message : unprocessedMessages) {
+                if (!inFlightMessageIds.contains(message.getId())) {
+                    pendingMessages.offer(message);
                 }
-                
-                if (queueName != null) {
-                    // Убеждаемся, что в payload есть messageId
-                    String payload = ensureMessageIdInPayload(message);
-                    System.out.println("Sending message to queue " + queueName + " with payload: " + payload);
-                    
-                    // Отправляем сообщение
-                    messageBroker.sendMessage(queueName, payload);
-                    System.out.println("Successfully sent message to queue " + queueName);
-                    
+            }
+        }
+    }
+
+    /**
+     * Опубликовать одно сообщение Outbox в очередь или обменник, соответствующие типу события.
+     * Публикация не блокируется до подтверждения брокера: сообщение отмечается обработанным
+     * только после ack, а при nack или таймауте остается в Outbox для повторной отправки.
+     */
+    private void publish(OutboxMessage message) throws InterruptedException {
+        JsonObject payload;
+        try {
+            payload = JsonParser.parseString(message.getPayload()).getAsJsonObject();
+        } catch (RuntimeException e) {
+            logger.warn("Skipping outbox message {} with malformed payload: {}", message.getId(), e.getMessage());
+            return;
+        }
+
+        // Определение очереди (или fanout-обменника для событий) в зависимости от типа события
+        String queueName = null;
+        String exchangeName = null;
+        if ("PROCESS_PAYMENT".equals(message.getEventType())) {
+            queueName = paymentRequestsQueue(payload);
+        } else if (MessageSchema.OrderEventType.ORDER_STATUS_CHANGED.equals(message.getEventType())) {
+            exchangeName = MessageSchema.ORDER_STATUS_EXCHANGE;
+        }
+
+        if (queueName == null && exchangeName == null) {
+            logger.warn("No queue found for event type: {}", message.getEventType());
+            return;
+        }
+
+        // Сообщение уже отправлено и ждет подтверждения
+        if (!inFlightMessageIds.add(message.getId())) {
+            return;
+        }
+        inFlightPermits.acquire();
+
+        // Убеждаемся, что в payload есть messageId
+        String body = withMessageId(payload, message);
+        CompletableFuture<Void> confirm;
+        try {
+            confirm = queueName != null
+                    ? messageBroker.publishAsync(queueName, body)
+                    : messageBroker.publishToExchangeAsync(exchangeName, body);
+        } catch (RuntimeException e) {
+            confirm = CompletableFuture.failedFuture(e);
+        }
+        String target = queueName != null ? queueName : exchangeName;
+        confirm.whenComplete((result, error) -> {
+            try {
+                if (error == null) {
                     outboxRepository.markAsProcessed(message.getId());
-                    System.out.println("Successfully processed outbox message: " + message.getId() + 
-                                     ", messageId: " + message.getMessageId() +
-                                     ", aggregateId: " + message.getAggregateId());
+                    lag.record(Duration.between(message.getCreatedAt(), LocalDateTime.now()).toNanos());
+                    logger.debug("Successfully processed outbox message: {}, messageId: {}, aggregateId: {}",
+                                 message.getId(), message.getMessageId(), message.getAggregateId());
                 } else {
-                    System.out.println("No queue found for event type: " + message.getEventType());
+                    unconfirmed.increment();
+                    logger.warn("Message {} to {} was not confirmed: {}", message.getId(), target, error.getMessage());
                 }
-            } catch (IOException e) {
-                System.err.println("Error processing outbox message: " + e.getMessage());
-                e.printStackTrace();
+            } finally {
+                inFlightMessageIds.remove(message.getId());
+                inFlightPermits.release();
             }
         });
     }
     
+    /**
+     * Очередь экземпляра Payments, которому принадлежит пользователь из запроса на оплату
+     * @return null, если в запросе нет userId
+     */
+    private String paymentRequestsQueue(JsonObject payload) {
+        if (!payload.has("userId")) {
+            return null;
+        }
+        return MessageSchema.paymentRequestsQueue(Partitions.of(payload.get("userId").getAsInt(), paymentsPartitions));
+    }
+
     /**
      * Убедиться, что в payload есть messageId для идентификации сообщений
      */
-    private String ensureMessageIdInPayload(OutboxMessage message) {
-        try {
-            // Парсим JSON строку
-            JsonObject jsonPayload = JsonParser.parseString(message.getPayload()).getAsJsonObject();
-            
-            // Проверяем наличие messageId
-            if (!jsonPayload.has("messageId")) {
-                jsonPayload.addProperty("messageId", message.getMessageId());
-            }
-            
-            return gson.toJson(jsonPayload);
-        } catch (Exception e) {
-            // В случае проблем с парсингом, возвращаем исходный payload
-            System.err.println("Error ensuring messageId in payload: " + e.getMessage());
-            return message.getPayload();
+    private String withMessageId(JsonObject payload, OutboxMessage message) {
+        if (!payload.has("messageId")) {
+            payload.addProperty("messageId", message.getMessageId());
         }
+        return gson.toJson(payload);
     }
 
     public void stopProcessing() {
         scheduler.shutdown();
+        relay.shutdownNow();
         try {
             if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
                 scheduler.shutdownNow();
             }
+            relay.awaitTermination(10, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             scheduler.shutdownNow();
             Thread.currentThread().interrupt();
@@ -5,26 +5,44 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import com.example.Order;
 import com.example.OrderStatus;
+import com.example.logging.Logger;
 
 /**
  * In-memory orders' storage.
  */
 
 public class OrderRepository {
-    private final Map<Integer, Order> orders = new ConcurrentHashMap<>();
+    private static final Logger logger = Logger.getLogger(OrderRepository.class);
+
+    private final Map<Long, Order> orders = new ConcurrentHashMap<>();
+
+    // Вторичный индекс userId -> заказы пользователя, упорядоченные по ID, т.е. по времени создания
+    // с точностью до миллисекунды (ID одной миллисекунды из разных потоков могут идти в любом порядке)
+    private final ConcurrentMap<Integer, ConcurrentSkipListMap<Long, Order>> ordersByUserId =
+            new ConcurrentHashMap<>();
 
     //Сохранить заказ
     public Order save(Order order) {
-        orders.put(order.getId(), order);
+        Order previous = orders.put(order.getId(), order);
+        if (previous != null && previous != order && previous.getUserId() != order.getUserId()) {
+            // Заказ с тем же ID перезаписан заказом другого пользователя - убираем его из старого индекса
+            Map<Long, Order> previousUserOrders = ordersByUserId.get(previous.getUserId());
+            if (previousUserOrders != null) {
+                previousUserOrders.remove(previous.getId(), previous);
+            }
+        }
+        ordersByUserId.computeIfAbsent(order.getUserId(), userId -> new ConcurrentSkipListMap<>())
+                .put(order.getId(), order);
         return order;
     }
 
     //Найти заказ по ID
-    public Optional<Order> findById(int id) {
+    public Optional<Order> findById(long id) {
         return Optional.ofNullable(orders.get(id));
     }
 
@@ -32,27 +50,29 @@ public class OrderRepository {
         return new ArrayList<>(orders.values());
     }
 
+    //Найти заказы пользователя в порядке создания (с точностью до миллисекунды), не просматривая заказы других пользователей
     public List<Order> findByUserId(int userId) {
-        return orders.values().stream() 
-                .filter(order -> order.getUserId() == userId)
-                .collect(Collectors.toList());
+        Map<Long, Order> userOrders = ordersByUserId.get(userId);
+        if (userOrders == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(userOrders.values());
     }
 
     // Обновлено: переименовано с UpdateStatus на updateStatus (camelCase)
-    public boolean updateStatus(int orderId, OrderStatus newStatus) {
-        System.out.println("Updating order " + orderId + " status to " + newStatus);
+    public boolean updateStatus(long orderId, OrderStatus newStatus) {
         if (orders.containsKey(orderId)) {
             orders.get(orderId).setStatus(newStatus);
-            System.out.println("Successfully updated order status");
+            logger.debug("Order {} status updated to {}", orderId, newStatus);
             return true;
         }
-        System.out.println("Order not found");
+        logger.warn("Cannot update status of order {}: order not found", orderId);
         return false;
     }
     
     // Для обратной совместимости оставим старый метод, 
     // который вызывает новый (для случая если где-то используется старое название)
-    public boolean UpdateStatus(int orderId, OrderStatus newStatus) {
+    public boolean UpdateStatus(long orderId, OrderStatus newStatus) {
         return updateStatus(orderId, newStatus);
     }
 }
\ No newline at end of file
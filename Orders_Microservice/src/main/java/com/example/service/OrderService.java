@@ -8,6 +8,7 @@ import java.util.UUID;
 import com.example.Good;
 import com.example.Order;
 import com.example.OrderStatus;
+import com.example.logging.Logger;
 import com.example.messaging.MessageSchema;
 import com.example.outbox.OutboxMessage;
 import com.example.outbox.OutboxService;
@@ -15,17 +16,26 @@ import com.example.repository.OrderRepository;
 import com.google.gson.Gson;
 
 public class OrderService {
+    private static final Logger logger = Logger.getLogger(OrderService.class);
+
     private final OrderRepository orderRepository;
     private final OutboxService outboxService;
+    // Номер этого экземпляра: результат оплаты должен вернуться в экземпляр, хранящий заказ
+    private final int partition;
     private final Gson gson = new Gson();
     
     public OrderService(OrderRepository orderRepository, OutboxService outboxService) {
+        this(orderRepository, outboxService, 0);
+    }
+
+    public OrderService(OrderRepository orderRepository, OutboxService outboxService, int partition) {
         this.orderRepository = orderRepository;
         this.outboxService = outboxService;
+        this.partition = partition;
     }
     
     public Order createOrder(int userId, List<Map<String, Object>> orderItems) {
-        System.out.println("Creating order for user " + userId + " with " + orderItems.size() + " items");
+        logger.debug("Creating order for user {} with {} items", userId, orderItems.size());
         Order order = new Order(userId);
         
         for (Map<String, Object> item : orderItems) {
@@ -34,7 +44,9 @@ public class OrderService {
             String description = (String) item.get("description");
             int quantity = ((Number) item.get("quantity")).intValue();
             
-            System.out.println("Adding item to order: " + name + ", price: " + price + ", quantity: " + quantity);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Adding item to order: {}, price: {}, quantity: {}", name, price, quantity);
+            }
             
             Good good = new Good(price, name, description, 100); // amount_on_market=100 (условное значение)
             
@@ -42,7 +54,7 @@ public class OrderService {
         }
         
         orderRepository.save(order);
-        System.out.println("Order saved with ID: " + order.getId() + ", total price: " + order.getTotalPrice());
+        logger.info("Order {} created for user {}, total price: {}", order.getId(), userId, order.getTotalPrice());
         
         // Создаем запрос на оплату, используя схему сообщений
         MessageSchema.PaymentRequest paymentRequest = new MessageSchema.PaymentRequest(
@@ -54,10 +66,11 @@ public class OrderService {
         
         // Добавляем уникальный messageId
         paymentRequest.messageId = UUID.randomUUID().toString();
+        paymentRequest.ordersPartition = partition;
         
         // Преобразуем в JSON и сохраняем в Outbox
         String payload = gson.toJson(paymentRequest);
-        System.out.println("Creating payment request message: " + payload);
+        logger.debug("Creating payment request message: {}", payload);
         
         OutboxMessage outboxMessage = new OutboxMessage(
                 String.valueOf(order.getId()),
@@ -68,12 +81,12 @@ public class OrderService {
         );
         
         outboxService.saveMessage(outboxMessage);
-        System.out.println("Payment request message saved to outbox");
+        logger.debug("Payment request message saved to outbox");
         
         return order;
     }
 
-    public Optional<Order> getOrderById(int id) {
+    public Optional<Order> getOrderById(long id) {
         return orderRepository.findById(id);
     }
     
@@ -81,8 +94,29 @@ public class OrderService {
         return orderRepository.findByUserId(userId);
     }
     
-    public boolean updateOrderStatus(int orderId, OrderStatus newStatus) {
-        System.out.println("Updating order " + orderId + " status to " + newStatus);
-        return orderRepository.updateStatus(orderId, newStatus);
+    public boolean updateOrderStatus(long orderId, OrderStatus newStatus) {
+        logger.info("Updating order {} status to {}", orderId, newStatus);
+        boolean updated = orderRepository.updateStatus(orderId, newStatus);
+        if (updated) {
+            orderRepository.findById(orderId).ifPresent(order -> publishStatusChanged(order, newStatus));
+        }
+        return updated;
+    }
+
+    /**
+     * Событие об изменении статуса уходит через Outbox всем подписчикам (например, кэшу шлюза)
+     */
+    private void publishStatusChanged(Order order, OrderStatus newStatus) {
+        MessageSchema.OrderStatusChanged event =
+            new MessageSchema.OrderStatusChanged(order.getId(), order.getUserId(), newStatus.name());
+        event.messageId = UUID.randomUUID().toString();
+
+        outboxService.saveMessage(new OutboxMessage(
+                String.valueOf(order.getId()),
+                "Order",
+                MessageSchema.OrderEventType.ORDER_STATUS_CHANGED,
+                gson.toJson(event),
+                event.messageId
+        ));
     }
 }
\ No newline at end of file
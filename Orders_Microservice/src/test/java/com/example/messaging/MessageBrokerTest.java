@@ -0,0 +1,154 @@
+package com.example.messaging;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import org.mockito.Mock;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmCallback;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+public class MessageBrokerTest {
+
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private Channel channel;
+
+    private MessageBroker messageBroker;
+
+    private ConfirmCallback ackCallback;
+
+    private ConfirmCallback nackCallback;
+
+    @Before
+    public void setUp() throws IOException, TimeoutException {
+        MockitoAnnotations.initMocks(this);
+
+        when(connectionFactory.newConnection()).thenReturn(connection);
+        when(connection.createChannel()).thenReturn(channel);
+        when(channel.getNextPublishSeqNo()).thenReturn(1L, 2L, 3L);
+
+        messageBroker = new MessageBroker();
+        try {
+            java.lang.reflect.Field factoryField = MessageBroker.class.getDeclaredField("factory");
+            factoryField.setAccessible(true);
+            factoryField.set(messageBroker, connectionFactory);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            fail("Failed to inject mocked connection factory: " + e.getMessage());
+        }
+        messageBroker.connect();
+
+        // Перехватываем обработчики подтверждений, зарегистрированные при подключении
+        ArgumentCaptor<ConfirmCallback> ackCaptor = ArgumentCaptor.forClass(ConfirmCallback.class);
+        ArgumentCaptor<ConfirmCallback> nackCaptor = ArgumentCaptor.forClass(ConfirmCallback.class);
+        verify(channel).confirmSelect();
+        verify(channel).addConfirmListener(ackCaptor.capture(), nackCaptor.capture());
+        ackCallback = ackCaptor.getValue();
+        nackCallback = nackCaptor.getValue();
+    }
+
+    @Test
+    public void testPublishAsyncCompletesOnAck() throws IOException {
+        CompletableFuture<Void> confirm = messageBroker.publishAsync("test-queue", "{\"key\":\"value\"}");
+
+        verify(channel).basicPublish(eq(""), eq("test-queue"), any(BasicProperties.class), any(byte[].class));
+        assertFalse(confirm.isDone());
+        assertEquals(1, messageBroker.getOutstandingConfirmCount());
+
+        ackCallback.handle(1L, false);
+
+        assertTrue(confirm.isDone());
+        assertFalse(confirm.isCompletedExceptionally());
+        assertEquals(0, messageBroker.getOutstandingConfirmCount());
+    }
+
+    @Test
+    public void testMultipleAckConfirmsAllPrecedingPublishes() throws IOException {
+        CompletableFuture<Void> first = messageBroker.publishAsync("test-queue", "1");
+        CompletableFuture<Void> second = messageBroker.publishAsync("test-queue", "2");
+        CompletableFuture<Void> third = messageBroker.publishAsync("test-queue", "3");
+
+        // Брокер подтверждает сразу первые два сообщения
+        ackCallback.handle(2L, true);
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        assertEquals(1, messageBroker.getOutstandingConfirmCount());
+    }
+
+    @Test
+    public void testPublishAsyncFailsOnNack() throws Exception {
+        CompletableFuture<Void> confirm = messageBroker.publishAsync("test-queue", "{\"key\":\"value\"}");
+
+        nackCallback.handle(1L, false);
+
+        assertTrue(confirm.isCompletedExceptionally());
+        try {
+            confirm.get();
+            fail("Nacked publish must fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testPublishAsyncFailsWhenPublishThrows() throws IOException {
+        when(channel.getNextPublishSeqNo()).thenReturn(1L);
+        doThrow(new IOException("channel closed"))
+                .when(channel).basicPublish(anyString(), anyString(), any(BasicProperties.class), any(byte[].class));
+
+        CompletableFuture<Void> confirm = messageBroker.publishAsync("test-queue", "{}");
+
+        assertTrue(confirm.isCompletedExceptionally());
+        assertEquals(0, messageBroker.getOutstandingConfirmCount());
+    }
+
+    @Test
+    public void testQueueIsDeclaredOnceForPipelinedPublishes() throws IOException {
+        messageBroker.publishAsync("test-queue", "1");
+        messageBroker.publishAsync("test-queue", "2");
+
+        verify(channel, times(1)).queueDeclare(eq("test-queue"), eq(true), eq(false), eq(false), isNull());
+    }
+
+    @Test
+    public void testPublishToExchangeDeclaresFanoutExchangeOnce() throws IOException {
+        CompletableFuture<Void> first = messageBroker.publishToExchangeAsync("events", "1");
+        messageBroker.publishToExchangeAsync("events", "2");
+
+        verify(channel, times(1)).exchangeDeclare(eq("events"), eq(BuiltinExchangeType.FANOUT), eq(true));
+        verify(channel, times(2)).basicPublish(eq("events"), eq(""), any(BasicProperties.class), any(byte[].class));
+
+        ackCallback.handle(1L, false);
+        assertTrue(first.isDone());
+        assertEquals(1, messageBroker.getOutstandingConfirmCount());
+    }
+}
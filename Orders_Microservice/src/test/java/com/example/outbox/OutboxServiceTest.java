@@ -0,0 +1,170 @@
+package com.example.outbox;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+
+import com.example.messaging.MessageBroker;
+import com.example.messaging.MessageSchema;
+import com.example.messaging.Partitions;
+
+public class OutboxServiceTest {
+
+    @Mock
+    private MessageBroker messageBroker;
+
+    private OutboxRepository outboxRepository;
+
+    private OutboxService outboxService;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        outboxRepository = new OutboxRepository();
+        outboxService = new OutboxService(outboxRepository, messageBroker);
+        when(messageBroker.publishAsync(anyString(), anyString()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(null));
+    }
+
+    @After
+    public void tearDown() {
+        outboxService.stopProcessing();
+    }
+
+    @Test(timeout = 5000)
+    public void testSavedMessageIsPublishedWithoutWaitingForSweep() throws Exception {
+        outboxService.startProcessing();
+
+        // Сохраняем сообщение - ретранслятор должен отправить его сразу
+        OutboxMessage message = new OutboxMessage("1", "Payment", "PROCESS_PAYMENT", "{\"orderId\":1,\"userId\":7}");
+        outboxService.saveMessage(message);
+
+        verify(messageBroker, timeout(1000)).publishAsync(eq(MessageSchema.paymentRequestsQueue(0)), anyString());
+        waitUntilProcessed(message);
+        assertTrue(outboxRepository.findUnprocessedMessages().isEmpty());
+    }
+
+    @Test(timeout = 5000)
+    public void testPaymentRequestGoesToQueueOfUsersPaymentsInstance() throws Exception {
+        OutboxService partitioned = new OutboxService(outboxRepository, messageBroker, 3);
+        partitioned.startProcessing();
+        try {
+            for (int userId = 0; userId < 10; userId++) {
+                partitioned.saveMessage(new OutboxMessage(String.valueOf(userId), "Payment", "PROCESS_PAYMENT",
+                        "{\"orderId\":" + userId + ",\"userId\":" + userId + "}"));
+                verify(messageBroker, timeout(1000)).publishAsync(
+                        eq(MessageSchema.paymentRequestsQueue(Partitions.of(userId, 3))), contains("\"userId\":" + userId + ","));
+            }
+        } finally {
+            partitioned.stopProcessing();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testMalformedMessagesDoNotBlockRestOfBatch() throws Exception {
+        // Все три сообщения попадают в одну пачку ретранслятора
+        outboxService.saveMessage(new OutboxMessage("6", "Payment", "PROCESS_PAYMENT", "not json"));
+        outboxService.saveMessage(new OutboxMessage("7", "Payment", "PROCESS_PAYMENT", "{\"orderId\":7,\"userId\":\"abc\"}"));
+        OutboxMessage valid = new OutboxMessage("8", "Payment", "PROCESS_PAYMENT", "{\"orderId\":8,\"userId\":7}");
+        outboxService.saveMessage(valid);
+        outboxService.startProcessing();
+
+        waitUntilProcessed(valid);
+        verify(messageBroker, times(1)).publishAsync(anyString(), anyString());
+        verify(messageBroker).publishAsync(eq(MessageSchema.paymentRequestsQueue(0)), contains("\"orderId\":8"));
+        assertEquals(2, outboxRepository.findUnprocessedMessages().size());
+    }
+
+    @Test(timeout = 5000)
+    public void testFailedMessageStaysPendingForSweep() throws Exception {
+        when(messageBroker.publishAsync(anyString(), anyString()))
+                .thenAnswer(invocation -> CompletableFuture.failedFuture(new IOException("nacked")));
+        outboxService.startProcessing();
+
+        OutboxMessage message = new OutboxMessage("2", "Payment", "PROCESS_PAYMENT", "{\"orderId\":2,\"userId\":7}");
+        outboxService.saveMessage(message);
+
+        verify(messageBroker, timeout(1000)).publishAsync(anyString(), anyString());
+        assertEquals(1, outboxRepository.findUnprocessedMessages().size());
+        assertFalse(message.isProcessed());
+
+        // Страховочная проверка возвращает сообщение в очередь ретранслятора
+        java.lang.reflect.Method method = OutboxService.class.getDeclaredMethod("processOutboxMessages");
+        method.setAccessible(true);
+        method.invoke(outboxService);
+
+        verify(messageBroker, timeout(1000).times(2)).publishAsync(anyString(), anyString());
+    }
+
+    @Test(timeout = 5000)
+    public void testProcessedMessageIsNotPublishedTwice() throws Exception {
+        outboxService.startProcessing();
+
+        OutboxMessage message = new OutboxMessage("3", "Payment", "PROCESS_PAYMENT", "{\"orderId\":3,\"userId\":7}");
+        outboxService.saveMessage(message);
+        waitUntilProcessed(message);
+
+        // Повторная постановка в очередь уже отправленного сообщения игнорируется
+        outboxService.saveMessage(message);
+        Thread.sleep(200);
+
+        verify(messageBroker, times(1)).publishAsync(anyString(), anyString());
+    }
+
+    @Test(timeout = 5000)
+    public void testMessageIsProcessedOnlyAfterConfirm() throws Exception {
+        CompletableFuture<Void> confirm = new CompletableFuture<>();
+        when(messageBroker.publishAsync(anyString(), anyString())).thenReturn(confirm);
+        outboxService.startProcessing();
+
+        OutboxMessage message = new OutboxMessage("4", "Payment", "PROCESS_PAYMENT", "{\"orderId\":4,\"userId\":7}");
+        outboxService.saveMessage(message);
+        verify(messageBroker, timeout(1000)).publishAsync(anyString(), anyString());
+
+        // Пока брокер не подтвердил публикацию, сообщение остается в Outbox
+        assertFalse(message.isProcessed());
+        assertEquals(1, outboxRepository.findUnprocessedMessages().size());
+
+        confirm.complete(null);
+        waitUntilProcessed(message);
+        assertTrue(outboxRepository.findUnprocessedMessages().isEmpty());
+    }
+
+    @Test(timeout = 5000)
+    public void testOrderStatusEventIsPublishedToExchange() throws Exception {
+        when(messageBroker.publishToExchangeAsync(anyString(), anyString()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(null));
+        outboxService.startProcessing();
+
+        OutboxMessage message = new OutboxMessage("5", "Order",
+                MessageSchema.OrderEventType.ORDER_STATUS_CHANGED, "{\"orderId\":5,\"status\":\"PAID\"}");
+        outboxService.saveMessage(message);
+
+        verify(messageBroker, timeout(1000))
+                .publishToExchangeAsync(eq(MessageSchema.ORDER_STATUS_EXCHANGE), anyString());
+        waitUntilProcessed(message);
+        verify(messageBroker, never()).publishAsync(anyString(), anyString());
+    }
+
+    private void waitUntilProcessed(OutboxMessage message) throws InterruptedException {
+        while (!message.isProcessed()) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -24,7 +24,7 @@ public class OrderRepositoryTest {
         // Создание тестового заказа
         Order order = new Order(1);
         order = orderRepository.save(order);
-        int orderId = order.getId();
+        long orderId = order.getId();
 
         // Поиск по ID
         Optional<Order> foundOrder = orderRepository.findById(orderId);
@@ -69,12 +69,49 @@ public class OrderRepositoryTest {
         assertTrue(userOrders.isEmpty());
     }
 
+    @Test
+    public void testFindByUserIdReturnsOrdersInCreationOrder() {
+        // Сохраняем заказы не по порядку создания
+        int userId = 7;
+        Order first = new Order(userId);
+        Order second = new Order(userId);
+        Order third = new Order(userId);
+
+        orderRepository.save(third);
+        orderRepository.save(first);
+        orderRepository.save(new Order(8));
+        orderRepository.save(second);
+
+        // Поиск по userId
+        List<Order> userOrders = orderRepository.findByUserId(userId);
+
+        // Заказы возвращаются в порядке создания
+        assertEquals(3, userOrders.size());
+        assertEquals(first.getId(), userOrders.get(0).getId());
+        assertEquals(second.getId(), userOrders.get(1).getId());
+        assertEquals(third.getId(), userOrders.get(2).getId());
+    }
+
+    @Test
+    public void testSaveSameOrderTwiceDoesNotDuplicateIndexEntry() {
+        // Повторное сохранение того же заказа (например, после смены статуса)
+        Order order = new Order(3);
+        orderRepository.save(order);
+        order.setStatus(OrderStatus.PAID);
+        orderRepository.save(order);
+
+        // Проверки
+        List<Order> userOrders = orderRepository.findByUserId(3);
+        assertEquals(1, userOrders.size());
+        assertEquals(OrderStatus.PAID, userOrders.get(0).getStatus());
+    }
+
     @Test
     public void testUpdateStatus() {
         // Создание тестового заказа
         Order order = new Order(1);
         order = orderRepository.save(order);
-        int orderId = order.getId();
+        long orderId = order.getId();
 
         // Обновление статуса
         boolean updated = orderRepository.updateStatus(orderId, OrderStatus.PAID);
@@ -13,13 +13,16 @@ import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 import static org.mockito.ArgumentMatchers.any;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.MockitoAnnotations;
 
 import com.example.Order;
 import com.example.OrderStatus;
+import com.example.messaging.MessageSchema;
 import com.example.outbox.OutboxMessage;
 import com.example.outbox.OutboxService;
 import com.example.repository.OrderRepository;
@@ -144,6 +147,23 @@ public class OrderServiceTest {
         verify(orderRepository).updateStatus(orderId, newStatus);
     }
 
+    @Test
+    public void testUpdateOrderStatusPublishesStatusChangedEvent() {
+        Order order = new Order(7);
+        when(orderRepository.updateStatus(order.getId(), OrderStatus.PAID)).thenReturn(true);
+        when(orderRepository.findById(order.getId())).thenReturn(Optional.of(order));
+
+        orderService.updateOrderStatus(order.getId(), OrderStatus.PAID);
+
+        ArgumentCaptor<OutboxMessage> captor = ArgumentCaptor.forClass(OutboxMessage.class);
+        verify(outboxService).saveMessage(captor.capture());
+        OutboxMessage message = captor.getValue();
+        assertEquals(MessageSchema.OrderEventType.ORDER_STATUS_CHANGED, message.getEventType());
+        assertEquals(String.valueOf(order.getId()), message.getAggregateId());
+        assertTrue(message.getPayload().contains("\"userId\":7"));
+        assertTrue(message.getPayload().contains("\"status\":\"PAID\""));
+    }
+
     @Test
     public void testUpdateOrderStatus_NotFound() {
         // Подготовка данных
@@ -158,6 +178,7 @@ public class OrderServiceTest {
         
         // Проверки
         assertFalse(result);
+        verify(outboxService, never()).saveMessage(any(OutboxMessage.class));
     }
     
     @Test
@@ -3,14 +3,19 @@ package com.example;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import com.example.controller.AccountController;
 import com.example.inbox.InboxRepository;
 import com.example.inbox.InboxService;
+import com.example.messaging.KeyedExecutor;
 import com.example.messaging.MessageBroker;
 import com.example.messaging.MessageSchema;
+import com.example.metrics.MetricsRegistry;
+import com.example.metrics.SparkMetrics;
 import com.example.outbox.OutboxRepository;
 import com.example.outbox.OutboxService;
 import com.example.repository.AccountRepository;
@@ -19,6 +24,7 @@ import com.example.service.AccountService;
 import com.example.service.PaymentService;
 import com.google.gson.Gson;
 
+import static com.example.metrics.SparkMetrics.measured;
 import static spark.Spark.awaitInitialization;
 import static spark.Spark.exception;
 import static spark.Spark.get;
@@ -30,6 +36,7 @@ public class App {
     private static MessageBroker messageBroker;
     private static InboxService inboxService;
     private static OutboxService outboxService;
+    private static KeyedExecutor paymentLanes;
     private static final Gson gson = new Gson();
     
     public static void main(String[] args) {
@@ -37,10 +44,24 @@ public class App {
         
         System.out.println("Payments microservice is starting on port 8082");
         
+        // Позиция экземпляра в PAYMENTS_SERVICE_URL шлюза: шлюз направляет сюда пользователей раздела NODE_ID
+        // (см. Partitions), и Orders отправляет запросы на оплату их заказов в очередь этого раздела
+        int nodeId = System.getenv("NODE_ID") != null ?
+                     Integer.parseInt(System.getenv("NODE_ID")) : 0;
+        String paymentRequestsQueue = MessageSchema.paymentRequestsQueue(nodeId);
+        
         // Инициализация репозиториев
         AccountRepository accountRepository = new AccountRepository();
         PaymentRepository paymentRepository = new PaymentRepository();
-        InboxRepository inboxRepository = new InboxRepository();
+        
+        // Окно дедупликации входящих сообщений: размер, время хранения и хранение тел сообщений
+        int inboxMaxEntries = System.getenv("INBOX_MAX_ENTRIES") != null ?
+                              Integer.parseInt(System.getenv("INBOX_MAX_ENTRIES")) : InboxRepository.DEFAULT_MAX_ENTRIES;
+        Duration inboxRetention = System.getenv("INBOX_RETENTION_MINUTES") != null ?
+                                  Duration.ofMinutes(Long.parseLong(System.getenv("INBOX_RETENTION_MINUTES"))) : InboxRepository.DEFAULT_RETENTION;
+        boolean inboxStorePayloads = Boolean.parseBoolean(System.getenv("INBOX_STORE_PAYLOADS"));
+        InboxRepository inboxRepository = new InboxRepository(inboxMaxEntries, inboxRetention, inboxStorePayloads);
+        
         OutboxRepository outboxRepository = new OutboxRepository();
         
         // Инициализация брокера сообщений с учетом Docker-окружения
@@ -49,7 +70,13 @@ public class App {
         int rabbitMQPort = System.getenv("RABBITMQ_PORT") != null ? 
                            Integer.parseInt(System.getenv("RABBITMQ_PORT")) : 5672;
                            
-        messageBroker = new MessageBroker(rabbitMQHost, rabbitMQPort);
+        // Параметры потребителя: prefetch и число потоков-обработчиков сообщений
+        int prefetchCount = System.getenv("RABBITMQ_PREFETCH") != null ?
+                            Integer.parseInt(System.getenv("RABBITMQ_PREFETCH")) : MessageBroker.DEFAULT_PREFETCH_COUNT;
+        int consumerThreads = System.getenv("CONSUMER_THREADS") != null ?
+                              Integer.parseInt(System.getenv("CONSUMER_THREADS")) : Runtime.getRuntime().availableProcessors();
+        
+        messageBroker = new MessageBroker(rabbitMQHost, rabbitMQPort, prefetchCount, consumerThreads);
         try {
             messageBroker.connect();
         } catch (Exception e) {
@@ -69,15 +96,16 @@ public class App {
         
         // Инициализация Inbox сервиса
         inboxService = new InboxService(inboxRepository, paymentService);
+        paymentLanes = new KeyedExecutor(consumerThreads, "payment-lane");
         
         // Запускаем обработку входящих сообщений
         try {
-            messageBroker.receiveMessages(MessageSchema.PAYMENT_REQUESTS_QUEUE, message -> {
-                System.out.println("Received payment request: " + message);
-                inboxService.processMessage(message);
-            });
+            // Запросы одного пользователя обрабатываются по порядку, разных пользователей - параллельно
+            messageBroker.receiveMessages(paymentRequestsQueue,
+                                          inboxService::processMessage,
+                                          message -> paymentLanes.laneFor(inboxService.partitionKey(message)));
             System.out.println("Started listening for payment requests on queue: " 
-                + MessageSchema.PAYMENT_REQUESTS_QUEUE);
+                + paymentRequestsQueue);
         } catch (IOException e) {
             System.err.println("Failed to set up message consumer: " + e.getMessage());
             e.printStackTrace();
@@ -87,13 +115,16 @@ public class App {
         // Инициализация контроллеров
         AccountController accountController = new AccountController(accountService);
         
+        // Время обработки запросов по маршрутам и эндпоинт /metrics для Prometheus
+        SparkMetrics.install(MetricsRegistry.getDefault());
+        
         // REST API эндпоинты
         get("/payments/hello", (req, res) -> "Hello from Payments Microservice!");
         
         // Эндпоинты для работы со счетами
-        post("/payments/accounts", accountController.getCreateAccount());
-        get("/payments/accounts/:userId/balance", accountController.getGetBalance());
-        post("/payments/accounts/:userId/deposit", accountController.getDepositFunds());
+        post("/payments/accounts", measured(accountController.getCreateAccount()));
+        get("/payments/accounts/:userId/balance", measured(accountController.getGetBalance()));
+        post("/payments/accounts/:userId/deposit", measured(accountController.getDepositFunds()));
         
         // Добавляем эндпоинт для проверки состояния сервиса
         get("/payments/health", (req, res) -> {
@@ -128,6 +159,7 @@ public class App {
         // Корректное завершение работы
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             outboxService.stopProcessing();
+            paymentLanes.shutdown(10, TimeUnit.SECONDS);
             try {
                 messageBroker.close();
             } catch (IOException e) {
@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.example.Account;
+import com.example.Money;
 import com.example.service.AccountService;
 import com.google.gson.Gson;
 
@@ -79,12 +80,16 @@ public class AccountController {
                 Map<String, Object> requestBody = gson.fromJson(request.body(), Map.class);
                 double amount = ((Number) requestBody.get("amount")).doubleValue();
                 
-                if (amount <= 0) {
+                // Сумма округляется до копейки: нулевая после округления тоже отклоняется
+                Money deposit;
+                try {
+                    deposit = Money.positive(amount, "Deposit amount");
+                } catch (IllegalArgumentException e) {
                     response.status(400); // Bad Request
-                    return gson.toJson(Map.of("error", "Deposit amount must be positive"));
+                    return gson.toJson(Map.of("error", e.getMessage()));
                 }
                 
-                Account account = accountService.depositFunds(userId, amount);
+                Account account = accountService.depositFunds(userId, deposit);
                 
                 response.status(200); // OK
                 response.type("application/json");
@@ -93,7 +98,7 @@ public class AccountController {
                         "accountId", account.getId(),
                         "userId", account.getUserId(),
                         "balance", account.getBalance(),
-                        "depositAmount", amount
+                        "depositAmount", deposit.toDouble()
                 ));
             } catch (IllegalArgumentException e) {
                 response.status(404); // Not Found
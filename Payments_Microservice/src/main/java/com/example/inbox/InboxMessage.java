@@ -11,8 +11,8 @@ public class InboxMessage {
     private final String payload;
     private final String transactionId;
     private final LocalDateTime receivedAt;
-    private boolean processed;
-    private LocalDateTime processedAt;
+    private volatile boolean processed;
+    private volatile LocalDateTime processedAt;
     
     public InboxMessage(String id, String messageType, String payload, String transactionId) {
         this.id = id;
@@ -23,6 +23,23 @@ public class InboxMessage {
         this.processed = false;
     }
     
+    private InboxMessage(InboxMessage source, String payload) {
+        this.id = source.id;
+        this.messageType = source.messageType;
+        this.payload = payload;
+        this.transactionId = source.transactionId;
+        this.receivedAt = source.receivedAt;
+        this.processed = source.processed;
+        this.processedAt = source.processedAt;
+    }
+    
+    /**
+     * Копия сообщения без тела - для хранения в окне дедупликации
+     */
+    public InboxMessage withoutPayload() {
+        return payload == null ? this : new InboxMessage(this, null);
+    }
+    
     // Геттеры
     public String getId() {
         return id;
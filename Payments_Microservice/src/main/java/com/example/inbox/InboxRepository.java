@@ -1,22 +1,90 @@
 package com.example.inbox;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
- * Репозиторий для хранения входящих сообщений с дедупликацией
+ * Репозиторий для хранения входящих сообщений с дедупликацией.
+ * Хранит только окно последних сообщений: не больше {@code maxEntries} записей
+ * и не старше {@code retention}. Окно должно перекрывать максимальный срок
+ * повторной доставки сообщения брокером.
  */
 public class InboxRepository {
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+    public static final Duration DEFAULT_RETENTION = Duration.ofHours(24);
+
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
     private final Map<String, InboxMessage> messages = new ConcurrentHashMap<>();
+    private final Map<String, InboxMessage> messagesByTransactionId = new ConcurrentHashMap<>();
+
+    // Очередь записей в порядке вставки - по ней вытесняются самые старые сообщения
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final int maxEntries;
+    private final long retentionMillis;
+    private final boolean storePayloads;
+    private final Clock clock;
+
+    // Фильтр Блума перед картой для быстрых отрицательных ответов existsById
+    private volatile BloomGenerations bloom;
+
+    public InboxRepository() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_RETENTION, false);
+    }
+
+    /**
+     * @param maxEntries максимальное число хранимых сообщений
+     * @param retention время хранения сообщения
+     * @param storePayloads хранить ли тело сообщения (нужно только для отладки)
+     */
+    public InboxRepository(int maxEntries, Duration retention, boolean storePayloads) {
+        this(maxEntries, retention, storePayloads, Clock.systemUTC());
+    }
+
+    InboxRepository(int maxEntries, Duration retention, boolean storePayloads, Clock clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.retentionMillis = retention.toMillis();
+        this.storePayloads = storePayloads;
+        this.clock = clock;
+        this.bloom = new BloomGenerations(newBloomFilter(), newBloomFilter());
+    }
     
     /**
      * Сохранить входящее сообщение
      */
     public void save(InboxMessage message) {
-        messages.put(message.getId(), message);
+        InboxMessage stored = prepare(message);
+        if (messages.put(stored.getId(), stored) == null) {
+            track(stored);
+        }
+        messagesByTransactionId.put(stored.getTransactionId(), stored);
+    }
+    
+    /**
+     * Атомарно сохранить сообщение, если сообщения с таким ID еще нет
+     * @return true если сообщение сохранено, false если оно уже было получено ранее
+     */
+    public boolean saveIfAbsent(InboxMessage message) {
+        InboxMessage stored = prepare(message);
+        if (messages.putIfAbsent(stored.getId(), stored) != null) {
+            return false;
+        }
+        messagesByTransactionId.put(stored.getTransactionId(), stored);
+        track(stored);
+        return true;
     }
     
     /**
@@ -30,16 +98,14 @@ public class InboxRepository {
      * Проверить существование сообщения по ID
      */
     public boolean existsById(String id) {
-        return messages.containsKey(id);
+        return bloom.mightContain(id) && messages.containsKey(id);
     }
     
     /**
      * Найти сообщение по transactionId
      */
     public Optional<InboxMessage> findByTransactionId(String transactionId) {
-        return messages.values().stream()
-                .filter(message -> message.getTransactionId().equals(transactionId))
-                .findFirst();
+        return Optional.ofNullable(messagesByTransactionId.get(transactionId));
     }
     
     /**
@@ -55,8 +121,9 @@ public class InboxRepository {
      * Отметить сообщение как обработанное
      */
     public void markAsProcessed(String messageId) {
-        if (messages.containsKey(messageId)) {
-            messages.get(messageId).markAsProcessed();
+        InboxMessage message = messages.get(messageId);
+        if (message != null) {
+            message.markAsProcessed();
         }
     }
     
@@ -64,7 +131,101 @@ public class InboxRepository {
      * Проверить, было ли сообщение с данным transactionId обработано
      */
     public boolean isProcessed(String transactionId) {
-        return messages.values().stream()
-                .anyMatch(message -> message.getTransactionId().equals(transactionId) && message.isProcessed());
+        InboxMessage message = messagesByTransactionId.get(transactionId);
+        return message != null && message.isProcessed();
+    }
+
+    /**
+     * Число сообщений в окне дедупликации
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Удалить сообщения, вышедшие за пределы окна хранения
+     */
+    public void evictExpired() {
+        long now = clock.millis();
+        Entry oldest;
+        while ((oldest = insertionOrder.peek()) != null
+                && (size.get() > maxEntries || now - oldest.insertedAtMillis > retentionMillis)) {
+            // Запись удаляет только поток, которому удалось снять ее с головы очереди
+            if (insertionOrder.remove(oldest)) {
+                remove(oldest);
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        messages.remove(entry.messageId);
+        messagesByTransactionId.computeIfPresent(entry.transactionId,
+                (transactionId, message) -> message.getId().equals(entry.messageId) ? null : message);
+        size.decrementAndGet();
+    }
+
+    private InboxMessage prepare(InboxMessage message) {
+        return storePayloads ? message : message.withoutPayload();
+    }
+
+    private void track(InboxMessage message) {
+        // Сначала фильтр, потом очередь: сообщение из карты всегда есть хотя бы в одном поколении фильтра
+        addToBloom(message.getId());
+        insertionOrder.add(new Entry(message.getId(), message.getTransactionId(), clock.millis()));
+        size.incrementAndGet();
+        evictExpired();
+    }
+
+    private void addToBloom(String id) {
+        BloomGenerations generations = bloom;
+        generations.current.put(id);
+        if (generations.insertions.incrementAndGet() >= maxEntries) {
+            rotateBloom(generations);
+        }
+    }
+
+    /**
+     * Смена поколения фильтра. В окне хранится не больше maxEntries последних сообщений,
+     * а два поколения покрывают не меньше maxEntries последних вставок, поэтому
+     * ложноотрицательный ответ возможен только для сообщения, которое уже вытесняется из окна.
+     */
+    private synchronized void rotateBloom(BloomGenerations expected) {
+        if (bloom == expected) {
+            bloom = new BloomGenerations(newBloomFilter(), expected.current);
+        }
+    }
+
+    private BloomFilter newBloomFilter() {
+        return new BloomFilter(maxEntries, BLOOM_FALSE_POSITIVE_RATE);
+    }
+
+    private static final class Entry {
+        private final String messageId;
+        private final String transactionId;
+        private final long insertedAtMillis;
+
+        private Entry(String messageId, String transactionId, long insertedAtMillis) {
+            this.messageId = messageId;
+            this.transactionId = transactionId;
+            this.insertedAtMillis = insertedAtMillis;
+        }
+    }
+
+    /**
+     * Неизменяемая пара поколений фильтра: читатели видят согласованный снимок
+     */
+    private static final class BloomGenerations {
+        private final BloomFilter current;
+        private final BloomFilter previous;
+        private final AtomicInteger insertions = new AtomicInteger();
+
+        private BloomGenerations(BloomFilter current, BloomFilter previous) {
+            this.current = current;
+            this.previous = previous;
+        }
+
+        private boolean mightContain(String id) {
+            return current.mightContain(id) || previous.mightContain(id);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.example.inbox;
 
+import com.example.logging.Logger;
 import com.example.messaging.MessageSchema;
 import com.example.service.PaymentService;
 import com.google.gson.Gson;
@@ -10,6 +11,8 @@ import com.google.gson.JsonParser;
  * Сервис для обработки входящих сообщений с поддержкой идемпотентности
  */
 public class InboxService {
+    private static final Logger logger = Logger.getLogger(InboxService.class);
+
     private final InboxRepository inboxRepository;
     private final PaymentService paymentService;
     private final Gson gson = new Gson();
@@ -24,14 +27,14 @@ public class InboxService {
      */
     public void processMessage(String payload) {
         try {
-            System.out.println("Received message in InboxService: " + payload);
+            logger.debug("Received message in InboxService: {}", payload);
             
             // Парсим JSON сообщение
             JsonObject jsonObject = JsonParser.parseString(payload).getAsJsonObject();
             
             // Проверяем, соответствует ли сообщение схеме
             if (!validateMessageSchema(jsonObject)) {
-                System.err.println("Invalid message format: " + payload);
+                logger.warn("Invalid message format: {}", payload);
                 return;
             }
             
@@ -44,11 +47,11 @@ public class InboxService {
                 messageId = jsonObject.get("transactionId").getAsString();
             }
             
-            System.out.println("Processing message with ID: " + messageId);
+            logger.debug("Processing message with ID: {}", messageId);
             
             // Проверяем, было ли это сообщение уже обработано (дедупликация)
             if (inboxRepository.existsById(messageId)) {
-                System.out.println("Message with ID " + messageId + " already processed. Skipping.");
+                logger.info("Message with ID {} already processed. Skipping.", messageId);
                 return;
             }
             
@@ -60,38 +63,53 @@ public class InboxService {
                                                        jsonObject.get("eventType").getAsString(), 
                                                        payload, 
                                                        transactionId);
-            inboxRepository.save(inboxMessage);
-            System.out.println("Saved message to inbox with ID: " + messageId);
+            // Атомарная вставка: при параллельной обработке дубликат обработает только один поток
+            if (!inboxRepository.saveIfAbsent(inboxMessage)) {
+                logger.info("Message with ID {} is already being processed. Skipping.", messageId);
+                return;
+            }
+            logger.debug("Saved message to inbox with ID: {}", messageId);
             
             // Обрабатываем платеж в зависимости от типа события
             String eventType = jsonObject.get("eventType").getAsString();
             
             if (MessageSchema.PaymentRequestType.PROCESS_PAYMENT.equals(eventType)) {
                 // Извлекаем данные для платежа
-                int orderId = jsonObject.get("orderId").getAsInt();
+                long orderId = jsonObject.get("orderId").getAsLong();
                 int userId = jsonObject.get("userId").getAsInt();
                 double amount = jsonObject.get("amount").getAsDouble();
-                
-                System.out.println("Processing payment for order " + orderId + 
-                                 ", user " + userId + 
-                                 ", amount " + amount);
+                int ordersPartition = jsonObject.has("ordersPartition") ? jsonObject.get("ordersPartition").getAsInt() : 0;
                 
                 // Идемпотентная обработка
-                boolean success = paymentService.processPayment(orderId, userId, amount, transactionId);
+                boolean success = paymentService.processPayment(orderId, userId, amount, transactionId, ordersPartition);
                 
-                System.out.println("Payment processed for order " + orderId + 
-                                  ", result: " + (success ? "success" : "failed"));
+                logger.info("Payment processed for order {}, user {}, amount {}, result: {}",
+                            orderId, userId, amount, success ? "success" : "failed");
             } else {
-                System.out.println("Unknown event type: " + eventType + ". Skipping processing.");
+                logger.warn("Unknown event type: {}. Skipping processing.", eventType);
             }
             
             // Отмечаем сообщение как обработанное
             inboxRepository.markAsProcessed(inboxMessage.getId());
-            System.out.println("Marked message as processed: " + messageId);
+            logger.debug("Marked message as processed: {}", messageId);
             
         } catch (Exception e) {
-            System.err.println("Error processing incoming message: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Error processing incoming message: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Ключ партиционирования запроса на оплату - ID пользователя.
+     * Запросы одного пользователя должны обрабатываться строго последовательно,
+     * чтобы параллельные списания с одного счета не гонялись друг с другом.
+     * @return userId или null, если сообщение не удалось разобрать
+     */
+    public Integer partitionKey(String payload) {
+        try {
+            JsonObject jsonObject = JsonParser.parseString(payload).getAsJsonObject();
+            return jsonObject.has("userId") ? jsonObject.get("userId").getAsInt() : null;
+        } catch (Exception e) {
+            return null;
         }
     }
     
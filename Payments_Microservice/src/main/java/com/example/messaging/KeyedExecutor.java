@@ -0,0 +1,82 @@
+package com.example.messaging;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Исполнитель с упорядочиванием по ключу.
+ * Каждый ключ закрепляется за одной "полосой" - однопоточным исполнителем, поэтому задачи
+ * с одинаковым ключом выполняются строго последовательно в порядке поступления,
+ * а задачи с разными ключами выполняются параллельно на разных полосах.
+ */
+public class KeyedExecutor {
+    private final ExecutorService[] lanes;
+
+    public KeyedExecutor(int laneCount, String threadNamePrefix) {
+        if (laneCount <= 0) {
+            throw new IllegalArgumentException("Lane count must be positive");
+        }
+        this.lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            String threadName = threadNamePrefix + "-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Получить полосу, за которой закреплен ключ
+     */
+    public Executor laneFor(Object key) {
+        return lanes[laneIndex(key)];
+    }
+
+    /**
+     * Выполнить задачу на полосе ключа
+     */
+    public void execute(Object key, Runnable task) {
+        laneFor(key).execute(task);
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    int laneIndex(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        // Перемешиваем биты, чтобы последовательные ключи равномерно распределялись по полосам
+        hash ^= (hash >>> 16);
+        hash *= 0x85ebca6b;
+        hash ^= (hash >>> 13);
+        return Math.floorMod(hash, lanes.length);
+    }
+
+    /**
+     * Остановить полосы, дождавшись выполнения уже поставленных задач
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ExecutorService lane : lanes) {
+                if (!lane.awaitTermination(timeout, unit)) {
+                    lane.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            for (ExecutorService lane : lanes) {
+                lane.shutdownNow();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -4,9 +4,21 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
+import com.example.logging.Logger;
+import com.example.metrics.Counter;
+import com.example.metrics.Histogram;
+import com.example.metrics.MetricsRegistry;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.rabbitmq.client.AMQP;
@@ -14,11 +26,23 @@ import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
 
 public class MessageBroker {
+    private static final Logger logger = Logger.getLogger(MessageBroker.class);
+
+    public static final int DEFAULT_PREFETCH_COUNT = 32;
+
     private final ConnectionFactory factory;
     private Connection connection;
     private Channel channel;
+    private final QueueTopology topology = new QueueTopology();
+
+    // Сколько неподтвержденных сообщений брокер отдает потребителю и сколько потоков их обрабатывают
+    private final int prefetchCount;
+    private final int consumerThreads;
+    private final ExecutorService consumerExecutor;
     
     // Для отслеживания отправленных сообщений (предотвращение дубликатов)
     private final Map<String, Long> sentMessages = new ConcurrentHashMap<>();
@@ -28,69 +52,108 @@ public class MessageBroker {
     }
     
     public MessageBroker(String host, int port) {
+        this(host, port, DEFAULT_PREFETCH_COUNT, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MessageBroker(String host, int port, int prefetchCount, int consumerThreads) {
+        if (prefetchCount <= 0 || consumerThreads <= 0) {
+            throw new IllegalArgumentException("Prefetch count and consumer threads must be positive");
+        }
         factory = new ConnectionFactory();
         factory.setHost(host);
         factory.setPort(port);
+        this.prefetchCount = prefetchCount;
+        this.consumerThreads = consumerThreads;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.consumerExecutor = new ThreadPoolExecutor(consumerThreads, consumerThreads,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "message-consumer-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
     }
 
     public void connect() throws IOException, TimeoutException {
+        topology.reset();
         connection = factory.newConnection();
         channel = connection.createChannel();
+        if (connection instanceof Recoverable) {
+            // После автоматического восстановления соединения очереди нужно объявить заново
+            ((Recoverable) connection).addRecoveryListener(new RecoveryListener() {
+                @Override
+                public void handleRecovery(Recoverable recoverable) {
+                    topology.reset();
+                }
+
+                @Override
+                public void handleRecoveryStarted(Recoverable recoverable) {
+                }
+            });
+        }
     }
     
     /**
      * Отправка сообщения с гарантированной доставкой и идемпотентностью
      */
     public void sendMessage(String queueName, String message) throws IOException {
-        System.out.println("Declaring queue: " + queueName);
-        channel.queueDeclare(queueName, true, false, false, null);
+        topology.ensureDeclared(channel, queueName);
         
         AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
                 .deliveryMode(2) // persistent
                 .build();
         
-        System.out.println("Sending message to queue " + queueName + ": " + message);
         channel.basicPublish("", queueName, properties, message.getBytes(StandardCharsets.UTF_8));
-        System.out.println(" [x] Sent '" + message + "' to queue '" + queueName + "'");
+        logger.debug(" [x] Sent '{}' to queue '{}'", message, queueName);
     }
     
     /**
-     * Получение сообщений из очереди с дедупликацией
+     * Получение сообщений из очереди.
+     * Брокер отдает потребителю до prefetchCount неподтвержденных сообщений, обработчик
+     * выполняется в пуле потоков, а каждое сообщение подтверждается по своему delivery tag.
      */
     public void receiveMessages(String queueName, Consumer<String> messageHandler) throws IOException {
+        receiveMessages(queueName, messageHandler, message -> consumerExecutor);
+    }
+    
+    /**
+     * Получение сообщений из очереди с выбором исполнителя для каждого сообщения.
+     * Диспетчер вызывается в потоке доставки RabbitMQ в порядке поступления сообщений,
+     * поэтому исполнитель с упорядочиванием по ключу (см. {@link KeyedExecutor}) сохраняет
+     * порядок сообщений с одинаковым ключом.
+     */
+    public void receiveMessages(String queueName, Consumer<String> messageHandler,
+                                Function<String, Executor> dispatcher) throws IOException {
         try {
-            System.out.println("Declaring queue for receiving: " + queueName);
-            channel.queueDeclare(queueName, true, false, false, null);
+            logger.debug("Declaring queue for receiving: {}", queueName);
+            // Отдельный канал для потребителя, чтобы подтверждения не смешивались с публикациями
+            Channel consumerChannel = connection.createChannel();
+            topology.ensureDeclared(consumerChannel, queueName);
             
-            channel.basicQos(1);
+            consumerChannel.basicQos(prefetchCount);
+            Histogram consumeTime = MetricsRegistry.getDefault().histogram("messaging_consume_seconds",
+                "Time to process and acknowledge a consumed message", "queue", queueName);
+            Counter failures = MetricsRegistry.getDefault().counter("messaging_consume_failures_total",
+                "Consumed messages that failed and were requeued", "queue", queueName);
             
-            System.out.println(" [*] Waiting for messages from queue '" + queueName + "'");
+            logger.info(" [*] Waiting for messages from queue '{}' with prefetch {}", queueName, prefetchCount);
             
             DeliverCallback deliverCallback = (consumerTag, delivery) -> {
+                long deliveryTag = delivery.getEnvelope().getDeliveryTag();
                 String message = new String(delivery.getBody(), StandardCharsets.UTF_8);
-                
                 try {
-                    System.out.println(" [x] Received '" + message + "' from queue '" + queueName + "'");
-                    messageHandler.accept(message);
-                    
-                    channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
-                    System.out.println("Message acknowledged");
-                } catch (Exception e) {
-                    System.err.println("Error processing message: " + e.getMessage());
-                    
-                    try {
-                        channel.basicNack(delivery.getEnvelope().getDeliveryTag(), false, true);
-                        System.out.println("Message nacked and requeued");
-                    } catch (IOException ioException) {
-                        System.err.println("Failed to nack message: " + ioException.getMessage());
-                    }
+                    dispatcher.apply(message).execute(() -> 
+                        handleDelivery(consumerChannel, queueName, deliveryTag, message, messageHandler,
+                            consumeTime, failures));
+                } catch (RejectedExecutionException e) {
+                    // Пул обработчиков уже остановлен - возвращаем сообщение в очередь
+                    nackAndRequeue(consumerChannel, deliveryTag);
                 }
             };
             
-            channel.basicConsume(queueName, false, deliverCallback, consumerTag -> { });
-            System.out.println("Started consuming messages from queue: " + queueName);
+            consumerChannel.basicConsume(queueName, false, deliverCallback, consumerTag -> { });
+            logger.info("Started consuming messages from queue: {}", queueName);
         } catch (Exception e) {
-            System.err.println("Error setting up message consumer: " + e.getMessage());
+            logger.error("Error setting up message consumer: {}", e.getMessage());
             throw new IOException("Failed to set up message consumer", e);
         }
     }
@@ -132,7 +195,47 @@ public class MessageBroker {
         sentMessages.entrySet().removeIf(entry -> entry.getValue() < cutoffTime);
     }
     
+    /**
+     * Обработать одно сообщение в потоке пула и подтвердить его
+     */
+    private void handleDelivery(Channel consumerChannel, String queueName, long deliveryTag,
+                                String message, Consumer<String> messageHandler,
+                                Histogram consumeTime, Counter failures) {
+        long start = System.nanoTime();
+        try {
+            logger.debug(" [x] Received '{}' from queue '{}'", message, queueName);
+            messageHandler.accept(message);
+            
+            consumerChannel.basicAck(deliveryTag, false);
+            logger.debug("Message acknowledged");
+        } catch (Exception e) {
+            logger.error("Error processing message: {}", e.getMessage());
+            failures.increment();
+            nackAndRequeue(consumerChannel, deliveryTag);
+        } finally {
+            consumeTime.recordSince(start);
+        }
+    }
+    
+    private void nackAndRequeue(Channel consumerChannel, long deliveryTag) {
+        try {
+            consumerChannel.basicNack(deliveryTag, false, true);
+            logger.warn("Message nacked and requeued");
+        } catch (IOException ioException) {
+            logger.error("Failed to nack message: {}", ioException.getMessage());
+        }
+    }
+    
     public void close() throws IOException {
+        consumerExecutor.shutdown();
+        try {
+            if (!consumerExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                consumerExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            consumerExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
         try {
             if (channel != null && channel.isOpen()) {
                 channel.close();
@@ -140,7 +243,7 @@ public class MessageBroker {
             if (connection != null && connection.isOpen()) {
                 connection.close();
             }
-            System.out.println("RabbitMQ connection closed");
+            logger.info("RabbitMQ connection closed");
         } catch (TimeoutException e) {
             throw new IOException("Timeout while closing RabbitMQ connections", e);
         }
@@ -0,0 +1,41 @@
+package com.example.messaging;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * Реестр объявленных очередей.
+ * Очередь объявляется один раз при первом использовании, а не перед каждой публикацией;
+ * после переподключения реестр сбрасывается и очереди объявляются заново.
+ */
+public class QueueTopology {
+    private final Set<String> declaredQueues = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Объявить долговечную очередь, если она еще не объявлена в текущем подключении
+     */
+    public void ensureDeclared(Channel channel, String queueName) throws IOException {
+        if (declaredQueues.contains(queueName)) {
+            return;
+        }
+        channel.queueDeclare(queueName, true, false, false, null);
+        declaredQueues.add(queueName);
+    }
+
+    /**
+     * Проверить, объявлена ли очередь в текущем подключении
+     */
+    public boolean isDeclared(String queueName) {
+        return declaredQueues.contains(queueName);
+    }
+
+    /**
+     * Забыть объявленные очереди (вызывается при подключении и восстановлении соединения)
+     */
+    public void reset() {
+        declaredQueues.clear();
+    }
+}
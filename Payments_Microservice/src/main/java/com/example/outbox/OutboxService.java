@@ -1,12 +1,18 @@
 package com.example.outbox;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import com.example.logging.Logger;
 import com.example.messaging.MessageBroker;
 import com.example.messaging.MessageSchema;
+import com.example.metrics.Counter;
+import com.example.metrics.Histogram;
+import com.example.metrics.MetricsRegistry;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -15,6 +21,12 @@ import com.google.gson.JsonParser;
  * Сервис для обработки исходящих сообщений с поддержкой messageId
  */
 public class OutboxService {
+    private static final Logger logger = Logger.getLogger(OutboxService.class);
+    private static final Histogram lag = MetricsRegistry.getDefault().histogram("outbox_lag_seconds",
+            "Time from saving an outbox message to its publication");
+    private static final Counter failures = MetricsRegistry.getDefault().counter("outbox_publish_failures_total",
+            "Outbox publications that failed and will be retried");
+
     private final OutboxRepository outboxRepository;
     private final MessageBroker messageBroker;
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
@@ -48,7 +60,7 @@ public class OutboxService {
                 // Определение очереди в зависимости от типа события
                 String queueName = null;
                 if ("PAYMENT_RESULT".equals(message.getEventType())) {
-                    queueName = MessageSchema.ORDER_PAYMENT_RESULTS_QUEUE;
+                    queueName = paymentResultsQueue(message);
                 }
                 
                 if (queueName != null) {
@@ -58,16 +70,25 @@ public class OutboxService {
                     // Отправляем сообщение
                     messageBroker.sendMessage(queueName, payload);
                     outboxRepository.markAsProcessed(message.getId());
-                    System.out.println("Successfully processed outbox message: " + message.getId() + 
-                                     ", messageId: " + message.getMessageId() +
-                                     ", correlationId: " + message.getCorrelationId());
+                    lag.record(Duration.between(message.getCreatedAt(), LocalDateTime.now()).toNanos());
+                    logger.debug("Successfully processed outbox message: {}, messageId: {}, correlationId: {}",
+                                 message.getId(), message.getMessageId(), message.getCorrelationId());
                 }
             } catch (IOException e) {
-                System.err.println("Error processing outbox message: " + e.getMessage());
+                failures.increment();
+                logger.error("Error processing outbox message: {}", e.getMessage());
             }
         });
     }
     
+    /**
+     * Очередь экземпляра Orders, хранящего оплаченный заказ
+     */
+    private String paymentResultsQueue(OutboxMessage message) {
+        JsonObject payload = JsonParser.parseString(message.getPayload()).getAsJsonObject();
+        return MessageSchema.paymentResultsQueue(payload.has("ordersPartition") ? payload.get("ordersPartition").getAsInt() : 0);
+    }
+    
     /**
      * Убедиться, что в payload есть messageId для идентификации сообщений
      */
@@ -96,7 +117,7 @@ public class OutboxService {
             return gson.toJson(jsonPayload);
         } catch (Exception e) {
             // В случае проблем с парсингом, возвращаем исходный payload
-            System.err.println("Error ensuring messageId in payload: " + e.getMessage());
+            logger.warn("Error ensuring messageId in payload: {}", e.getMessage());
             return message.getPayload();
         }
     }
@@ -11,14 +11,33 @@ import com.example.Account;
  */
 public class AccountRepository {
     private final Map<Integer, Account> accounts = new ConcurrentHashMap<>();
+
+    // Индекс по ID пользователя: у пользователя не больше одного счета
+    private final Map<Integer, Account> accountsByUserId = new ConcurrentHashMap<>();
     
     /**
-     * Сохранить счет
+     * Сохранить счет; прежний счет того же пользователя удаляется из обоих индексов
      */
     public Account save(Account account) {
         accounts.put(account.getId(), account);
+        Account previous = accountsByUserId.put(account.getUserId(), account);
+        if (previous != null && previous != account) {
+            accounts.remove(previous.getId(), previous);
+        }
         return account;
     }
+
+    /**
+     * Атомарно сохранить счет, если у пользователя еще нет счета
+     * @return true если счет сохранен, false если счет пользователя уже существует
+     */
+    public boolean saveIfAbsent(Account account) {
+        if (accountsByUserId.putIfAbsent(account.getUserId(), account) != null) {
+            return false;
+        }
+        accounts.put(account.getId(), account);
+        return true;
+    }
     
     /**
      * Найти счет по ID
@@ -31,16 +50,13 @@ public class AccountRepository {
      * Найти счет по ID пользователя
      */
     public Optional<Account> findByUserId(int userId) {
-        return accounts.values().stream()
-                .filter(account -> account.getUserId() == userId)
-                .findFirst();
+        return Optional.ofNullable(accountsByUserId.get(userId));
     }
     
     /**
      * Проверить существование счета для пользователя
      */
     public boolean existsByUserId(int userId) {
-        return accounts.values().stream()
-                .anyMatch(account -> account.getUserId() == userId);
+        return accountsByUserId.containsKey(userId);
     }
-}
\ No newline at end of file
+}
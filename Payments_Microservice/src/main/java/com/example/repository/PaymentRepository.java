@@ -4,8 +4,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.example.Payment;
 import com.example.PaymentStatus;
@@ -15,14 +16,38 @@ import com.example.PaymentStatus;
  */
 public class PaymentRepository {
     private final Map<Integer, Payment> payments = new ConcurrentHashMap<>();
+
+    // Индекс для проверки идемпотентности: transactionId -> платеж
+    private final Map<String, Payment> paymentsByTransactionId = new ConcurrentHashMap<>();
+
+    // Индекс платежей заказа в порядке создания
+    private final Map<Long, Queue<Payment>> paymentsByOrderId = new ConcurrentHashMap<>();
     
     /**
      * Сохранить платеж
      */
     public Payment save(Payment payment) {
-        payments.put(payment.getId(), payment);
+        paymentsByTransactionId.put(payment.getTransactionId(), payment);
+        if (payments.put(payment.getId(), payment) == null) {
+            indexByOrderId(payment);
+        }
         return payment;
     }
+
+    /**
+     * Атомарно сохранить платеж, если платежа с таким transactionId еще нет.
+     * Из нескольких параллельных повторных доставок платеж создаст только одна.
+     * @return уже существующий платеж с этим transactionId или пустой Optional, если платеж сохранен
+     */
+    public Optional<Payment> saveIfAbsent(Payment payment) {
+        Payment existing = paymentsByTransactionId.putIfAbsent(payment.getTransactionId(), payment);
+        if (existing != null) {
+            return Optional.of(existing);
+        }
+        payments.put(payment.getId(), payment);
+        indexByOrderId(payment);
+        return Optional.empty();
+    }
     
     /**
      * Найти платеж по ID
@@ -34,19 +59,19 @@ public class PaymentRepository {
     /**
      * Найти все платежи по ID заказа
      */
-    public List<Payment> findByOrderId(int orderId) {
-        return payments.values().stream()
-                .filter(payment -> payment.getOrderId() == orderId)
-                .collect(Collectors.toList());
+    public List<Payment> findByOrderId(long orderId) {
+        Queue<Payment> orderPayments = paymentsByOrderId.get(orderId);
+        if (orderPayments == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(orderPayments);
     }
     
     /**
      * Найти платеж по transactionId
      */
     public Optional<Payment> findByTransactionId(String transactionId) {
-        return payments.values().stream()
-                .filter(payment -> payment.getTransactionId().equals(transactionId))
-                .findFirst();
+        return Optional.ofNullable(paymentsByTransactionId.get(transactionId));
     }
     
     /**
@@ -66,4 +91,9 @@ public class PaymentRepository {
         }
         return false;
     }
-}
\ No newline at end of file
+
+    private void indexByOrderId(Payment payment) {
+        paymentsByOrderId.computeIfAbsent(payment.getOrderId(), orderId -> new ConcurrentLinkedQueue<>())
+                .add(payment);
+    }
+}
@@ -3,12 +3,16 @@ package com.example.service;
 import java.util.Optional;
 
 import com.example.Account;
+import com.example.Money;
+import com.example.logging.Logger;
 import com.example.repository.AccountRepository;
 
 /**
  * Сервис для работы со счетами
  */
 public class AccountService {
+    private static final Logger logger = Logger.getLogger(AccountService.class);
+
     private final AccountRepository accountRepository;
     
     public AccountService(AccountRepository accountRepository) {
@@ -19,21 +23,25 @@ public class AccountService {
      * Создать новый счет для пользователя
      */
     public Account createAccount(int userId) {
-        // Проверка, что у пользователя еще нет счета
-        Optional<Account> existingAccount = accountRepository.findByUserId(userId);
-        if (existingAccount.isPresent()) {
+        // Создаем счет атомарно: при параллельных запросах счет получит только один из них
+        Account account = new Account(userId);
+        if (!accountRepository.saveIfAbsent(account)) {
             throw new IllegalStateException("Account for user " + userId + " already exists");
         }
-        
-        // Создаем новый счет
-        Account account = new Account(userId);
-        return accountRepository.save(account);
+        return account;
     }
     
     /**
      * Пополнить счет пользователя
      */
     public Account depositFunds(int userId, double amount) {
+        return depositFunds(userId, Money.positive(amount, "Deposit amount"));
+    }
+    
+    /**
+     * Пополнить счет пользователя на сумму в копейках
+     */
+    public Account depositFunds(int userId, Money amount) {
         Account account = getAccountByUserId(userId);
         
         // Атомарное пополнение счета
@@ -47,19 +55,25 @@ public class AccountService {
      * Списать средства со счета пользователя
      */
     public boolean withdrawFunds(int userId, double amount) {
-        System.out.println("Attempting to withdraw " + amount + " from user " + userId + "'s account");
+        return withdrawFunds(userId, Money.positive(amount, "Withdrawal amount"));
+    }
+    
+    /**
+     * Списать сумму в копейках со счета пользователя
+     */
+    public boolean withdrawFunds(int userId, Money amount) {
         Account account = getAccountByUserId(userId);
-        System.out.println("Current balance before withdrawal: " + account.getBalance());
+        logger.debug("Attempting to withdraw {} from user {}'s account", amount, userId);
         
         // Атомарное списание средств с проверкой достаточности
         boolean success = account.withdraw(amount);
         
         // Если списание успешно, сохраняем обновление
         if (success) {
-            System.out.println("Withdrawal successful. New balance: " + account.getBalance());
+            logger.debug("Withdrawal successful. New balance: {}", account.getBalanceMoney());
             accountRepository.save(account);
         } else {
-            System.out.println("Withdrawal failed. Insufficient funds. Current balance: " + account.getBalance());
+            logger.info("Withdrawal failed. Insufficient funds. Current balance: {}", account.getBalanceMoney());
         }
         
         return success;
@@ -69,8 +83,14 @@ public class AccountService {
      * Получить баланс счета пользователя
      */
     public double getBalance(int userId) {
-        Account account = getAccountByUserId(userId);
-        return account.getBalance();
+        return getBalanceMoney(userId).toDouble();
+    }
+    
+    /**
+     * Получить баланс счета пользователя в копейках
+     */
+    public Money getBalanceMoney(int userId) {
+        return getAccountByUserId(userId).getBalanceMoney();
     }
     
     /**
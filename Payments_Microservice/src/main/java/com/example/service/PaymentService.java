@@ -4,9 +4,13 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import com.example.Money;
 import com.example.Payment;
 import com.example.PaymentStatus;
+import com.example.logging.Logger;
 import com.example.messaging.MessageSchema;
+import com.example.metrics.Counter;
+import com.example.metrics.MetricsRegistry;
 import com.example.outbox.OutboxMessage;
 import com.example.outbox.OutboxService;
 import com.example.repository.PaymentRepository;
@@ -16,6 +20,16 @@ import com.google.gson.Gson;
  * Сервис для обработки платежей с гарантией exactly-once семантики
  */
 public class PaymentService {
+    private static final Logger logger = Logger.getLogger(PaymentService.class);
+    private static final String PAYMENTS_METRIC = "payments_total";
+    private static final String PAYMENTS_HELP = "Processed payments by result";
+    private static final Counter succeeded =
+            MetricsRegistry.getDefault().counter(PAYMENTS_METRIC, PAYMENTS_HELP, "result", "success");
+    private static final Counter failed =
+            MetricsRegistry.getDefault().counter(PAYMENTS_METRIC, PAYMENTS_HELP, "result", "failed");
+    private static final Counter errors =
+            MetricsRegistry.getDefault().counter(PAYMENTS_METRIC, PAYMENTS_HELP, "result", "error");
+
     private final PaymentRepository paymentRepository;
     private final AccountService accountService;
     private final OutboxService outboxService;
@@ -38,18 +52,26 @@ public class PaymentService {
      * @param transactionId Уникальный идентификатор транзакции
      * @return true если платеж успешен, false если платеж не удался
      */
-    public boolean processPayment(int orderId, int userId, double amount, String transactionId) {
-        System.out.println("Starting payment processing for order " + orderId + 
-                         ", user " + userId + 
-                         ", amount " + amount + 
-                         ", transactionId " + transactionId);
+    public boolean processPayment(long orderId, int userId, double amount, String transactionId) {
+        return processPayment(orderId, userId, amount, transactionId, 0);
+    }
+    
+    /**
+     * Обработать платеж заказа, хранящегося на экземпляре Orders {@code ordersPartition}:
+     * результат оплаты отправляется в очередь этого экземпляра
+     */
+    public boolean processPayment(long orderId, int userId, double amount, String transactionId, int ordersPartition) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Starting payment processing for order {}, user {}, amount {}, transactionId {}",
+                         orderId, userId, amount, transactionId);
+        }
         
         // Проверка на повторную обработку платежа (идемпотентность)
         Optional<Payment> existingPayment = paymentRepository.findByTransactionId(transactionId);
         if (existingPayment.isPresent()) {
             // Если платеж уже обрабатывался, возвращаем результат предыдущей обработки
             Payment payment = existingPayment.get();
-            System.out.println("Payment with transactionId " + transactionId + " already processed. Status: " + payment.getStatus());
+            logger.info("Payment with transactionId {} already processed. Status: {}", transactionId, payment.getStatus());
             return payment.getStatus() == PaymentStatus.COMPLETED;
         }
         
@@ -57,21 +79,31 @@ public class PaymentService {
             // Создаем запись о платеже в статусе PENDING
             Payment payment = new Payment(orderId, amount);
             payment.setTransactionId(transactionId); // Устанавливаем переданный transactionId вместо генерации нового
-            paymentRepository.save(payment);
-            System.out.println("Created new payment record with ID: " + payment.getId());
+            // Атомарная вставка: параллельная повторная доставка того же запроса не создаст второй платеж
+            Optional<Payment> concurrentPayment = paymentRepository.saveIfAbsent(payment);
+            if (concurrentPayment.isPresent()) {
+                logger.info("Payment with transactionId {} is already being processed. Status: {}", transactionId, concurrentPayment.get().getStatus());
+                return concurrentPayment.get().getStatus() == PaymentStatus.COMPLETED;
+            }
+            logger.debug("Created new payment record with ID: {}", payment.getId());
             
             String failureReason = null;
             boolean success = false;
             
-            // Проверяем наличие счета у пользователя
-            if (!accountService.hasAccount(userId)) {
+            // Сумма меньше полукопейки не списывается: после округления до копейки она равна нулю
+            if (Money.of(amount).getMinorUnits() <= 0) {
+                payment.setStatus(PaymentStatus.FAILED);
+                paymentRepository.save(payment);
+                failureReason = "Payment amount must be at least 0.01";
+                logger.info("Payment for order {} failed: {}", orderId, failureReason);
+            } else if (!accountService.hasAccount(userId)) {
                 // Счет не найден, помечаем платеж как неуспешный
                 payment.setStatus(PaymentStatus.FAILED);
                 paymentRepository.save(payment);
                 failureReason = "Account not found for user " + userId;
-                System.out.println("Payment failed: " + failureReason);
+                logger.info("Payment for order {} failed: {}", orderId, failureReason);
             } else {
-                System.out.println("Found account for user " + userId + ", attempting to withdraw " + amount);
+                logger.debug("Found account for user {}, attempting to withdraw {}", userId, amount);
                 // Пытаемся списать средства со счета
                 success = accountService.withdrawFunds(userId, amount);
                 
@@ -79,24 +111,25 @@ public class PaymentService {
                     // Успешное списание средств
                     payment.setStatus(PaymentStatus.COMPLETED);
                     paymentRepository.save(payment);
-                    System.out.println("Successfully withdrew " + amount + " from user " + userId + "'s account");
+                    logger.debug("Successfully withdrew {} from user {}'s account", amount, userId);
                 } else {
                     // Недостаточно средств или другая ошибка списания
                     payment.setStatus(PaymentStatus.FAILED);
                     paymentRepository.save(payment);
                     failureReason = "Insufficient funds";
-                    System.out.println("Payment failed: " + failureReason);
+                    logger.info("Payment for order {} failed: {}", orderId, failureReason);
                 }
             }
             
             // Отправляем результат в Order Service через Outbox
-            System.out.println("Sending payment result to Order Service. Success: " + success);
-            sendPaymentResultMessage(payment, success, failureReason);
+            logger.debug("Sending payment result to Order Service. Success: {}", success);
+            sendPaymentResultMessage(payment, success, failureReason, ordersPartition);
             
+            (success ? succeeded : failed).increment();
             return success;
         } catch (Exception e) {
-            System.err.println("Error processing payment: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Error processing payment: {}", e.getMessage(), e);
+            errors.increment();
             return false;
         }
     }
@@ -104,7 +137,7 @@ public class PaymentService {
     /**
      * Отправить сообщение о результате платежа через Outbox
      */
-    private void sendPaymentResultMessage(Payment payment, boolean success, String failureReason) {
+    private void sendPaymentResultMessage(Payment payment, boolean success, String failureReason, int ordersPartition) {
         // Создаем объект результата платежа по схеме
         MessageSchema.PaymentResult paymentResult = new MessageSchema.PaymentResult(
             payment.getOrderId(),
@@ -114,6 +147,8 @@ public class PaymentService {
             failureReason
         );
         
+        paymentResult.ordersPartition = ordersPartition;
+        
         // Добавляем уникальный messageId
         paymentResult.messageId = UUID.randomUUID().toString();
         
@@ -135,7 +170,7 @@ public class PaymentService {
     /**
      * Получить историю платежей для заказа
      */
-    public List<Payment> getPaymentsForOrder(int orderId) {
+    public List<Payment> getPaymentsForOrder(long orderId) {
         return paymentRepository.findByOrderId(orderId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+package com.example.inbox;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InboxRepositoryTest {
+
+    private MutableClock clock;
+    private InboxRepository inboxRepository;
+
+    @Before
+    public void setUp() {
+        clock = new MutableClock();
+        inboxRepository = new InboxRepository(100, Duration.ofMinutes(10), false, clock);
+    }
+
+    private InboxMessage newMessage(int n) {
+        return new InboxMessage("msg-" + n, "PROCESS_PAYMENT", "{\"n\":" + n + "}", "tx-" + n);
+    }
+
+    @Test
+    public void testSaveIfAbsentAndLookups() {
+        assertTrue(inboxRepository.saveIfAbsent(newMessage(1)));
+        assertFalse(inboxRepository.saveIfAbsent(newMessage(1)));
+
+        assertTrue(inboxRepository.existsById("msg-1"));
+        assertFalse(inboxRepository.existsById("msg-2"));
+        assertEquals("msg-1", inboxRepository.findByTransactionId("tx-1").get().getId());
+        assertFalse(inboxRepository.findByTransactionId("tx-2").isPresent());
+
+        assertFalse(inboxRepository.isProcessed("tx-1"));
+        inboxRepository.markAsProcessed("msg-1");
+        assertTrue(inboxRepository.isProcessed("tx-1"));
+    }
+
+    @Test
+    public void testPayloadIsNotStoredByDefault() {
+        inboxRepository.saveIfAbsent(newMessage(1));
+        assertNull(inboxRepository.findById("msg-1").get().getPayload());
+
+        InboxRepository withPayloads = new InboxRepository(100, Duration.ofMinutes(10), true, clock);
+        withPayloads.saveIfAbsent(newMessage(1));
+        assertEquals("{\"n\":1}", withPayloads.findById("msg-1").get().getPayload());
+    }
+
+    @Test
+    public void testOldestMessagesAreEvictedWhenWindowIsFull() {
+        for (int i = 0; i < 150; i++) {
+            inboxRepository.saveIfAbsent(newMessage(i));
+        }
+
+        assertEquals(100, inboxRepository.size());
+        assertFalse(inboxRepository.existsById("msg-49"));
+        assertFalse(inboxRepository.findByTransactionId("tx-49").isPresent());
+        assertTrue(inboxRepository.existsById("msg-50"));
+        assertTrue(inboxRepository.existsById("msg-149"));
+    }
+
+    @Test
+    public void testExpiredMessagesAreEvicted() {
+        inboxRepository.saveIfAbsent(newMessage(1));
+        clock.advance(Duration.ofMinutes(11));
+        inboxRepository.saveIfAbsent(newMessage(2));
+
+        assertFalse(inboxRepository.existsById("msg-1"));
+        assertTrue(inboxRepository.existsById("msg-2"));
+        assertEquals(1, inboxRepository.size());
+    }
+
+    @Test
+    public void testNoFalseNegativesAcrossBloomGenerations() {
+        // Несколько смен поколений фильтра: все сообщения окна должны находиться
+        for (int i = 0; i < 1000; i++) {
+            inboxRepository.saveIfAbsent(newMessage(i));
+            for (int j = Math.max(0, i - 99); j <= i; j += 7) {
+                assertTrue("msg-" + j, inboxRepository.existsById("msg-" + j));
+            }
+        }
+    }
+
+    @Test
+    public void testBloomFilterFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("msg-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 10_000; i < 110_000; i++) {
+            if (filter.mightContain("msg-" + i)) {
+                falsePositives++;
+            }
+        }
+        // Ожидается около 1%, проверяем с запасом
+        assertTrue("False positives: " + falsePositives, falsePositives < 2_000);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
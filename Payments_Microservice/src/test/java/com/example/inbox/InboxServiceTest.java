@@ -2,8 +2,10 @@ package com.example.inbox;
 
 import org.junit.Before;
 import org.junit.Test;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyDouble;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import org.mockito.Mock;
@@ -41,14 +43,15 @@ public class InboxServiceTest {
         
         // Настраиваем моки для репозитория
         when(inboxRepository.existsById(messageId)).thenReturn(false);
+        when(inboxRepository.saveIfAbsent(any(InboxMessage.class))).thenReturn(true);
         when(inboxRepository.isProcessed(transactionId)).thenReturn(false);
-        when(paymentService.processPayment(anyInt(), anyInt(), anyDouble(), anyString())).thenReturn(true);
+        when(paymentService.processPayment(anyLong(), anyInt(), anyDouble(), anyString(), anyInt())).thenReturn(true);
         
         // Напрямую вызываем метод processMessage, а не через рефлексию
         inboxService.processMessage(validJson);
         
         // Проверяем вызовы
-        verify(paymentService).processPayment(eq(1), eq(1), eq(100.0), eq(transactionId));
+        verify(paymentService).processPayment(eq(1L), eq(1), eq(100.0), eq(transactionId), eq(2));
     }
     
     @Test
@@ -60,7 +63,7 @@ public class InboxServiceTest {
         inboxService.processMessage(invalidJson);
         
         // Проверяем, что обработки не было
-        verify(paymentService, never()).processPayment(anyInt(), anyInt(), anyDouble(), anyString());
+        verify(paymentService, never()).processPayment(anyLong(), anyInt(), anyDouble(), anyString(), anyInt());
     }
     
     @Test
@@ -77,7 +80,7 @@ public class InboxServiceTest {
         inboxService.processMessage(validJson);
         
         // Проверяем, что платеж не обрабатывался
-        verify(paymentService, never()).processPayment(anyInt(), anyInt(), anyDouble(), anyString());
+        verify(paymentService, never()).processPayment(anyLong(), anyInt(), anyDouble(), anyString(), anyInt());
     }
     
     // Вспомогательный метод для создания валидного JSON
@@ -88,7 +91,23 @@ public class InboxServiceTest {
         json.addProperty("userId", 1);
         json.addProperty("amount", 100.0);
         json.addProperty("transactionId", transactionId);
+        json.addProperty("ordersPartition", 2);
         json.addProperty("messageId", "msg-123"); // Добавляем messageId для теста
         return json.toString();
     }
+    
+    @Test
+    public void testConcurrentDuplicateIsProcessedOnce() {
+        // Сообщение еще не в Inbox, но другой поток уже успел его сохранить
+        String transactionId = "tx-789";
+        String validJson = createValidPaymentRequestJson(transactionId);
+        
+        when(inboxRepository.existsById(anyString())).thenReturn(false);
+        when(inboxRepository.saveIfAbsent(any(InboxMessage.class))).thenReturn(false);
+        
+        inboxService.processMessage(validJson);
+        
+        // Платеж обрабатывает только поток, который сохранил сообщение
+        verify(paymentService, never()).processPayment(anyLong(), anyInt(), anyDouble(), anyString(), anyInt());
+    }
 }
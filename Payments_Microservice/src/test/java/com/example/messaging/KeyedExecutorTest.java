@@ -0,0 +1,98 @@
+package com.example.messaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyedExecutorTest {
+
+    private KeyedExecutor keyedExecutor;
+
+    @Before
+    public void setUp() {
+        keyedExecutor = new KeyedExecutor(4, "test-lane");
+    }
+
+    @After
+    public void tearDown() {
+        keyedExecutor.shutdown(2, TimeUnit.SECONDS);
+    }
+
+    @Test(timeout = 5000)
+    public void testTasksWithSameKeyRunInSubmissionOrder() throws InterruptedException {
+        int users = 8;
+        int tasksPerUser = 1000;
+        Map<Integer, List<Integer>> executionOrder = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(users * tasksPerUser);
+
+        // Задачи разных пользователей перемешаны, как в очереди запросов на оплату
+        for (int i = 0; i < tasksPerUser; i++) {
+            for (int userId = 0; userId < users; userId++) {
+                int sequence = i;
+                int key = userId;
+                keyedExecutor.execute(key, () -> {
+                    executionOrder.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>()))
+                            .add(sequence);
+                    done.countDown();
+                });
+            }
+        }
+
+        assertTrue(done.await(4, TimeUnit.SECONDS));
+        for (int userId = 0; userId < users; userId++) {
+            List<Integer> sequences = executionOrder.get(userId);
+            assertEquals(tasksPerUser, sequences.size());
+            for (int i = 0; i < tasksPerUser; i++) {
+                assertEquals(Integer.valueOf(i), sequences.get(i));
+            }
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testTasksWithDifferentLanesRunConcurrently() throws InterruptedException {
+        // Подбираем два ключа, попадающих на разные полосы
+        int firstKey = 1;
+        int secondKey = 2;
+        while (keyedExecutor.laneIndex(secondKey) == keyedExecutor.laneIndex(firstKey)) {
+            secondKey++;
+        }
+        assertNotEquals(keyedExecutor.laneIndex(firstKey), keyedExecutor.laneIndex(secondKey));
+
+        // Каждая задача ждет, пока стартует другая - это возможно только при параллельном выполнении
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CountDownLatch finished = new CountDownLatch(2);
+        Runnable task = () -> {
+            bothStarted.countDown();
+            try {
+                if (bothStarted.await(2, TimeUnit.SECONDS)) {
+                    finished.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        keyedExecutor.execute(firstKey, task);
+        keyedExecutor.execute(secondKey, task);
+
+        assertTrue(finished.await(3, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSameKeyAlwaysMapsToSameLane() {
+        for (int userId = 0; userId < 100; userId++) {
+            assertEquals(keyedExecutor.laneIndex(userId), keyedExecutor.laneIndex(Integer.valueOf(userId)));
+            assertTrue(keyedExecutor.laneIndex(userId) < keyedExecutor.getLaneCount());
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.example.messaging;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
 
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyMap;
@@ -14,14 +19,21 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import org.mockito.Mock;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.MockitoAnnotations;
 
 import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.CancelCallback;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
 
 public class MessageBrokerTest {
 
@@ -81,4 +93,70 @@ public class MessageBrokerTest {
         verify(channel).queueDeclare(eq(queueName), eq(true), eq(false), eq(false), isNull());
         verify(channel).basicPublish(anyString(), eq(queueName), any(BasicProperties.class), any(byte[].class));
     }
+    
+    @Test
+    public void testQueueIsDeclaredOnlyOnceForRepeatedSends() throws IOException {
+        String queueName = "test-queue";
+        
+        messageBroker.sendMessage(queueName, "{\"n\":1}");
+        messageBroker.sendMessage(queueName, "{\"n\":2}");
+        messageBroker.sendMessage(queueName, "{\"n\":3}");
+        
+        // Очередь объявляется один раз, публикаций - три
+        verify(channel, times(1)).queueDeclare(eq(queueName), eq(true), eq(false), eq(false), isNull());
+        verify(channel, times(3)).basicPublish(anyString(), eq(queueName), any(BasicProperties.class), any(byte[].class));
+    }
+    
+    @Test
+    public void testQueueIsRedeclaredAfterReconnect() throws IOException, TimeoutException {
+        String queueName = "test-queue";
+        
+        messageBroker.sendMessage(queueName, "{\"n\":1}");
+        messageBroker.connect();
+        messageBroker.sendMessage(queueName, "{\"n\":2}");
+        
+        verify(channel, times(2)).queueDeclare(eq(queueName), eq(true), eq(false), eq(false), isNull());
+    }
+    
+    @Test
+    public void testReceivedMessagesAreHandledInWorkerPoolAndAckedByTag() throws Exception {
+        String queueName = "consume-queue";
+        Set<String> handlerThreads = ConcurrentHashMap.newKeySet();
+        
+        messageBroker.receiveMessages(queueName, message -> handlerThreads.add(Thread.currentThread().getName()));
+        
+        verify(channel).basicQos(MessageBroker.DEFAULT_PREFETCH_COUNT);
+        ArgumentCaptor<DeliverCallback> callbackCaptor = ArgumentCaptor.forClass(DeliverCallback.class);
+        verify(channel).basicConsume(eq(queueName), eq(false), callbackCaptor.capture(), any(CancelCallback.class));
+        
+        // Имитируем две доставки от брокера
+        callbackCaptor.getValue().handle("consumer", delivery(queueName, 5L, "{\"n\":1}"));
+        callbackCaptor.getValue().handle("consumer", delivery(queueName, 6L, "{\"n\":2}"));
+        
+        // Каждое сообщение подтверждается по своему delivery tag
+        verify(channel, timeout(1000)).basicAck(5L, false);
+        verify(channel, timeout(1000)).basicAck(6L, false);
+        assertTrue(handlerThreads.stream().allMatch(name -> name.startsWith("message-consumer-")));
+    }
+    
+    @Test
+    public void testFailedMessageIsNackedAndRequeued() throws Exception {
+        String queueName = "consume-queue";
+        
+        messageBroker.receiveMessages(queueName, message -> {
+            throw new IllegalStateException("handler failure");
+        });
+        
+        ArgumentCaptor<DeliverCallback> callbackCaptor = ArgumentCaptor.forClass(DeliverCallback.class);
+        verify(channel).basicConsume(eq(queueName), eq(false), callbackCaptor.capture(), any(CancelCallback.class));
+        callbackCaptor.getValue().handle("consumer", delivery(queueName, 7L, "{}"));
+        
+        verify(channel, timeout(1000)).basicNack(7L, false, true);
+        verify(channel, never()).basicAck(7L, false);
+    }
+    
+    private Delivery delivery(String queueName, long deliveryTag, String body) {
+        return new Delivery(new Envelope(deliveryTag, false, "", queueName),
+                new BasicProperties(), body.getBytes(StandardCharsets.UTF_8));
+    }
 }
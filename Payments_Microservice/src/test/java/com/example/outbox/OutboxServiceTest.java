@@ -1,5 +1,6 @@
 package com.example.outbox;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -10,6 +11,7 @@ import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.Test;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import org.mockito.Mock;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -17,6 +19,7 @@ import static org.mockito.Mockito.when;
 import org.mockito.MockitoAnnotations;
 
 import com.example.messaging.MessageBroker;
+import com.example.messaging.MessageSchema;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
@@ -56,10 +59,12 @@ public class OutboxServiceTest {
         when(message.getId()).thenReturn("msg-123");
         
         // Instead of getQueueName, we'll mock getEventType
-        // In OutboxService, "PAYMENT_RESULT" eventType uses ORDER_PAYMENT_RESULTS_QUEUE
+        // In OutboxService, "PAYMENT_RESULT" eventType uses the results queue of the Orders instance,
+        // instance 0 when the payload does not name one
         when(message.getEventType()).thenReturn("PAYMENT_RESULT");
         when(message.getPayload()).thenReturn("{\"key\":\"value\"}");
         when(message.getMessageId()).thenReturn(UUID.randomUUID().toString());
+        when(message.getCreatedAt()).thenReturn(LocalDateTime.now());
         
         messages.add(message);
         
@@ -72,10 +77,27 @@ public class OutboxServiceTest {
         method.invoke(outboxService);
         
         // Verify interactions - messageBroker.sendMessage is called with the right parameters
-        verify(messageBroker).sendMessage(anyString(), anyString());
+        verify(messageBroker).sendMessage(eq(MessageSchema.paymentResultsQueue(0)), anyString());
         verify(outboxRepository).markAsProcessed(anyString());
     }
     
+    @Test
+    public void testPaymentResultGoesToQueueOfOrdersInstance() throws Exception {
+        OutboxMessage message = mock(OutboxMessage.class);
+        when(message.getId()).thenReturn("msg-456");
+        when(message.getEventType()).thenReturn("PAYMENT_RESULT");
+        when(message.getPayload()).thenReturn("{\"orderId\":1,\"ordersPartition\":2}");
+        when(message.getMessageId()).thenReturn(UUID.randomUUID().toString());
+        when(message.getCreatedAt()).thenReturn(LocalDateTime.now());
+        when(outboxRepository.findUnprocessedMessages()).thenReturn(List.of(message));
+        
+        java.lang.reflect.Method method = OutboxService.class.getDeclaredMethod("processOutboxMessages");
+        method.setAccessible(true);
+        method.invoke(outboxService);
+        
+        verify(messageBroker).sendMessage(eq(MessageSchema.paymentResultsQueue(2)), anyString());
+    }
+    
     @Test
     public void testEnsureMessageIdInJson() {
         // Create a simple JSON payload
@@ -0,0 +1,89 @@
+package com.example.repository;
+
+import com.example.Account;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AccountRepositoryTest {
+
+    private AccountRepository accountRepository;
+
+    @Before
+    public void setUp() {
+        accountRepository = new AccountRepository();
+    }
+
+    @Test
+    public void testFindByUserId() {
+        Account account = accountRepository.save(new Account(1));
+        accountRepository.save(new Account(2));
+
+        Optional<Account> found = accountRepository.findByUserId(1);
+
+        assertTrue(found.isPresent());
+        assertSame(account, found.get());
+        assertTrue(accountRepository.existsByUserId(2));
+        assertFalse(accountRepository.existsByUserId(3));
+        assertFalse(accountRepository.findByUserId(3).isPresent());
+    }
+
+    @Test
+    public void testSaveIfAbsentKeepsFirstAccount() {
+        Account first = new Account(1);
+        Account second = new Account(1);
+
+        assertTrue(accountRepository.saveIfAbsent(first));
+        assertFalse(accountRepository.saveIfAbsent(second));
+
+        // Второй счет не должен появиться ни в одном из индексов
+        assertSame(first, accountRepository.findByUserId(1).get());
+        assertFalse(accountRepository.findById(second.getId()).isPresent());
+    }
+
+    @Test
+    public void testSaveReplacingUsersAccountRemovesOldAccount() {
+        Account first = accountRepository.save(new Account(1));
+        Account second = accountRepository.save(new Account(1));
+
+        // Оба индекса указывают на один и тот же счет пользователя
+        assertSame(second, accountRepository.findByUserId(1).get());
+        assertSame(second, accountRepository.findById(second.getId()).get());
+        assertFalse(accountRepository.findById(first.getId()).isPresent());
+
+        // Повторное сохранение того же счета ничего не удаляет
+        accountRepository.save(second);
+        assertSame(second, accountRepository.findById(second.getId()).get());
+    }
+
+    @Test(timeout = 5000)
+    public void testConcurrentSaveIfAbsentCreatesSingleAccount() throws InterruptedException {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger created = new AtomicInteger();
+
+        for (int i = 0; i < threads; i++) {
+            executor.submit(() -> {
+                start.await();
+                if (accountRepository.saveIfAbsent(new Account(1))) {
+                    created.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(4, TimeUnit.SECONDS));
+
+        assertEquals(1, created.get());
+    }
+}
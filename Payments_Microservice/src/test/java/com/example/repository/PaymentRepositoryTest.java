@@ -0,0 +1,95 @@
+package com.example.repository;
+
+import com.example.Payment;
+import com.example.PaymentStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PaymentRepositoryTest {
+
+    private PaymentRepository paymentRepository;
+
+    @Before
+    public void setUp() {
+        paymentRepository = new PaymentRepository();
+    }
+
+    private Payment newPayment(int orderId, String transactionId) {
+        Payment payment = new Payment(orderId, 10.0);
+        payment.setTransactionId(transactionId);
+        return payment;
+    }
+
+    @Test
+    public void testFindByTransactionId() {
+        Payment payment = paymentRepository.save(newPayment(1, "tx-1"));
+
+        assertSame(payment, paymentRepository.findByTransactionId("tx-1").get());
+        assertFalse(paymentRepository.findByTransactionId("tx-2").isPresent());
+    }
+
+    @Test
+    public void testFindByOrderIdReturnsPaymentsInCreationOrder() {
+        Payment first = paymentRepository.save(newPayment(1, "tx-1"));
+        paymentRepository.save(newPayment(2, "tx-2"));
+        Payment second = paymentRepository.save(newPayment(1, "tx-3"));
+
+        // Повторное сохранение при смене статуса не должно дублировать платеж в индексе
+        first.setStatus(PaymentStatus.FAILED);
+        paymentRepository.save(first);
+
+        List<Payment> orderPayments = paymentRepository.findByOrderId(1);
+        assertEquals(2, orderPayments.size());
+        assertSame(first, orderPayments.get(0));
+        assertSame(second, orderPayments.get(1));
+        assertTrue(paymentRepository.findByOrderId(3).isEmpty());
+    }
+
+    @Test
+    public void testSaveIfAbsentReturnsExistingPayment() {
+        Payment first = newPayment(1, "tx-1");
+        Payment duplicate = newPayment(1, "tx-1");
+
+        assertFalse(paymentRepository.saveIfAbsent(first).isPresent());
+        Optional<Payment> existing = paymentRepository.saveIfAbsent(duplicate);
+
+        assertTrue(existing.isPresent());
+        assertSame(first, existing.get());
+        assertFalse(paymentRepository.findById(duplicate.getId()).isPresent());
+        assertEquals(1, paymentRepository.findByOrderId(1).size());
+    }
+
+    @Test(timeout = 5000)
+    public void testConcurrentSaveIfAbsentCreatesSinglePayment() throws InterruptedException {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger created = new AtomicInteger();
+
+        for (int i = 0; i < threads; i++) {
+            executor.submit(() -> {
+                start.await();
+                if (!paymentRepository.saveIfAbsent(newPayment(1, "tx-1")).isPresent()) {
+                    created.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(4, TimeUnit.SECONDS));
+
+        assertEquals(1, created.get());
+        assertEquals(1, paymentRepository.findByOrderId(1).size());
+    }
+}
@@ -13,7 +13,6 @@ import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyDouble;
 import org.mockito.Mock;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
@@ -23,6 +22,7 @@ import static org.mockito.Mockito.when;
 import org.mockito.MockitoAnnotations;
 
 import com.example.Account;
+import com.example.Money;
 import com.example.repository.AccountRepository;
 
 public class AccountServiceTest {
@@ -60,12 +60,8 @@ public class AccountServiceTest {
         // Подготовка данных
         int userId = 1;
         
-        // Создаем реальный Account (т.к. id генерируется в конструкторе)
-        Account realAccount = new Account(userId);
-        
         // Настройка моков
-        when(accountRepository.findByUserId(userId)).thenReturn(Optional.empty());
-        when(accountRepository.save(any(Account.class))).thenReturn(realAccount);
+        when(accountRepository.saveIfAbsent(any(Account.class))).thenReturn(true);
 
         // Вызов тестируемого метода
         Account result = accountService.createAccount(userId);
@@ -76,18 +72,16 @@ public class AccountServiceTest {
         assertEquals(0.0, result.getBalance(), 0.001);
 
         // Проверка вызова методов репозитория
-        verify(accountRepository).findByUserId(userId);
-        verify(accountRepository).save(any(Account.class));
+        verify(accountRepository).saveIfAbsent(any(Account.class));
     }
 
     @Test(expected = IllegalStateException.class, timeout = 1000)
     public void testCreateAccountWhenAccountAlreadyExists() {
         // Подготовка данных
         int userId = 1;
-        Account existingAccount = new Account(userId);
 
         // Настройка моков
-        when(accountRepository.findByUserId(userId)).thenReturn(Optional.of(existingAccount));
+        when(accountRepository.saveIfAbsent(any(Account.class))).thenReturn(false);
 
         // Вызов тестируемого метода - должен выбросить исключение
         accountService.createAccount(userId);
@@ -136,7 +130,7 @@ public class AccountServiceTest {
         account.deposit(100.0); // Предварительно пополняем счет
         
         // Обхоим проблему с долгим выполнением withdraw
-        doReturn(true).when(account).withdraw(anyDouble());
+        doReturn(true).when(account).withdraw(any(Money.class));
 
         // Настройка моков
         when(accountRepository.findByUserId(userId)).thenReturn(Optional.of(account));
@@ -151,7 +145,7 @@ public class AccountServiceTest {
         // Проверка вызова методов репозитория
         verify(accountRepository).findByUserId(userId);
         verify(accountRepository).save(any(Account.class));
-        verify(account).withdraw(50.0);
+        verify(account).withdraw(Money.ofMinor(5000));
     }
 
     @Test(timeout = 1000)
@@ -162,7 +156,7 @@ public class AccountServiceTest {
         account.deposit(30.0); // Пополняем на сумму меньше, чем будем снимать
         
         // Обходим проблему с долгим выполнением withdraw
-        doReturn(false).when(account).withdraw(anyDouble());
+        doReturn(false).when(account).withdraw(any(Money.class));
 
         // Настройка моков
         when(accountRepository.findByUserId(userId)).thenReturn(Optional.of(account));
@@ -175,7 +169,7 @@ public class AccountServiceTest {
         
         // Проверка вызова методов репозитория
         verify(accountRepository).findByUserId(userId);
-        verify(account).withdraw(50.0);
+        verify(account).withdraw(Money.ofMinor(5000));
         verify(accountRepository, never()).save(any(Account.class)); // Не должно быть вызова save при неуспешном снятии
     }
 
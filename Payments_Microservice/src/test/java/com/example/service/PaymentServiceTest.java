@@ -15,9 +15,9 @@ import org.junit.Test;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyDouble;
 import static org.mockito.ArgumentMatchers.anyInt;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import static org.mockito.Mockito.never;
-import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.MockitoAnnotations;
@@ -25,9 +25,13 @@ import org.mockito.MockitoAnnotations;
 import com.example.Payment;
 import com.example.PaymentStatus;
 import com.example.TestUtils;
+import com.example.messaging.MessageSchema;
+import com.example.metrics.Counter;
+import com.example.metrics.MetricsRegistry;
 import com.example.outbox.OutboxMessage;
 import com.example.outbox.OutboxService;
 import com.example.repository.PaymentRepository;
+import com.google.gson.Gson;
 
 public class PaymentServiceTest {
 
@@ -69,6 +73,7 @@ public class PaymentServiceTest {
 
         // Настройка моков
         when(paymentRepository.findByTransactionId(transactionId)).thenReturn(Optional.empty());
+        when(paymentRepository.saveIfAbsent(any(Payment.class))).thenReturn(Optional.empty());
         when(accountService.hasAccount(userId)).thenReturn(true);
         when(accountService.withdrawFunds(userId, amount)).thenReturn(true);
         
@@ -88,7 +93,8 @@ public class PaymentServiceTest {
         verify(paymentRepository).findByTransactionId(transactionId);
         verify(accountService).hasAccount(userId);
         verify(accountService).withdrawFunds(userId, amount);
-        verify(paymentRepository, times(2)).save(any(Payment.class));
+        verify(paymentRepository).saveIfAbsent(any(Payment.class));
+        verify(paymentRepository).save(any(Payment.class));
         verify(outboxService).saveMessage(any(OutboxMessage.class));
     }
 
@@ -120,6 +126,31 @@ public class PaymentServiceTest {
         verify(outboxService, never()).saveMessage(any(OutboxMessage.class));
     }
 
+    @Test
+    public void testProcessPaymentConcurrentRedelivery() {
+        // Подготовка данных
+        int orderId = 1;
+        int userId = 1;
+        double amount = 100.0;
+        String transactionId = "tx-123";
+
+        // Платеж уже создан параллельной доставкой того же запроса
+        Payment concurrentPayment = new Payment(orderId, amount);
+        concurrentPayment.setTransactionId(transactionId);
+
+        // Настройка моков
+        when(paymentRepository.findByTransactionId(transactionId)).thenReturn(Optional.empty());
+        when(paymentRepository.saveIfAbsent(any(Payment.class))).thenReturn(Optional.of(concurrentPayment));
+
+        // Вызов тестируемого метода
+        boolean result = paymentService.processPayment(orderId, userId, amount, transactionId);
+
+        // Проверки: платеж еще в статусе PENDING, повторного списания нет
+        assertFalse(result);
+        verify(accountService, never()).withdrawFunds(anyInt(), anyDouble());
+        verify(outboxService, never()).saveMessage(any(OutboxMessage.class));
+    }
+
     @Test
     public void testProcessPaymentNoAccount() {
         // Подготовка данных
@@ -134,6 +165,7 @@ public class PaymentServiceTest {
 
         // Настройка моков
         when(paymentRepository.findByTransactionId(transactionId)).thenReturn(Optional.empty());
+        when(paymentRepository.saveIfAbsent(any(Payment.class))).thenReturn(Optional.empty());
         when(accountService.hasAccount(userId)).thenReturn(false);
         when(paymentRepository.save(any(Payment.class))).thenReturn(payment);
 
@@ -147,7 +179,8 @@ public class PaymentServiceTest {
         verify(paymentRepository).findByTransactionId(transactionId);
         verify(accountService).hasAccount(userId);
         verify(accountService, never()).withdrawFunds(anyInt(), anyDouble());
-        verify(paymentRepository, times(2)).save(any(Payment.class)); // Один раз для создания, один раз для обновления статуса
+        verify(paymentRepository).saveIfAbsent(any(Payment.class));
+        verify(paymentRepository).save(any(Payment.class)); // Обновление статуса, создание - через saveIfAbsent
         verify(outboxService).saveMessage(any(OutboxMessage.class));
     }
 
@@ -165,6 +198,7 @@ public class PaymentServiceTest {
 
         // Настройка моков
         when(paymentRepository.findByTransactionId(transactionId)).thenReturn(Optional.empty());
+        when(paymentRepository.saveIfAbsent(any(Payment.class))).thenReturn(Optional.empty());
         when(accountService.hasAccount(userId)).thenReturn(true);
         when(accountService.withdrawFunds(userId, amount)).thenReturn(false); // Недостаточно средств
         when(paymentRepository.save(any(Payment.class))).thenReturn(payment);
@@ -179,7 +213,8 @@ public class PaymentServiceTest {
         verify(paymentRepository).findByTransactionId(transactionId);
         verify(accountService).hasAccount(userId);
         verify(accountService).withdrawFunds(userId, amount);
-        verify(paymentRepository, times(2)).save(any(Payment.class)); // Один раз для создания, один раз для обновления статуса
+        verify(paymentRepository).saveIfAbsent(any(Payment.class));
+        verify(paymentRepository).save(any(Payment.class)); // Обновление статуса, создание - через saveIfAbsent
         verify(outboxService).saveMessage(any(OutboxMessage.class));
     }
 
@@ -209,4 +244,58 @@ public class PaymentServiceTest {
         // Проверка вызова методов
         verify(paymentRepository).findByOrderId(orderId);
     }
+
+    @Test
+    public void testPaymentResultsAreCounted() {
+        Counter succeeded = MetricsRegistry.getDefault().counter("payments_total", "", "result", "success");
+        Counter failed = MetricsRegistry.getDefault().counter("payments_total", "", "result", "failed");
+        long succeededBefore = succeeded.get();
+        long failedBefore = failed.get();
+        when(paymentRepository.findByTransactionId(any())).thenReturn(Optional.empty());
+        when(paymentRepository.saveIfAbsent(any(Payment.class))).thenReturn(Optional.empty());
+        when(accountService.hasAccount(1)).thenReturn(true);
+        when(accountService.withdrawFunds(1, 100.0)).thenReturn(true);
+        when(accountService.hasAccount(2)).thenReturn(false);
+
+        paymentService.processPayment(1, 1, 100.0, "tx-1");
+        paymentService.processPayment(2, 2, 100.0, "tx-2");
+        paymentService.processPayment(3, 2, 100.0, "tx-3");
+
+        assertEquals(succeededBefore + 1, succeeded.get());
+        assertEquals(failedBefore + 2, failed.get());
+    }
+
+    @Test
+    public void testPaymentResultIsAddressedToOrdersInstanceOfRequest() {
+        when(paymentRepository.findByTransactionId(any())).thenReturn(Optional.empty());
+        when(paymentRepository.saveIfAbsent(any(Payment.class))).thenReturn(Optional.empty());
+        when(accountService.hasAccount(1)).thenReturn(true);
+        when(accountService.withdrawFunds(1, 100.0)).thenReturn(true);
+
+        paymentService.processPayment(1, 1, 100.0, "tx-1", 2);
+
+        ArgumentCaptor<OutboxMessage> message = ArgumentCaptor.forClass(OutboxMessage.class);
+        verify(outboxService).saveMessage(message.capture());
+        MessageSchema.PaymentResult result = new Gson().fromJson(message.getValue().getPayload(), MessageSchema.PaymentResult.class);
+        assertEquals(2, result.ordersPartition);
+    }
+
+    @Test
+    public void testAmountBelowHalfKopeckFailsWithoutWithdrawal() {
+        Counter errors = MetricsRegistry.getDefault().counter("payments_total", "", "result", "error");
+        long errorsBefore = errors.get();
+        when(paymentRepository.findByTransactionId(any())).thenReturn(Optional.empty());
+        when(paymentRepository.saveIfAbsent(any(Payment.class))).thenReturn(Optional.empty());
+        when(accountService.hasAccount(1)).thenReturn(true);
+
+        assertFalse(paymentService.processPayment(1, 1, 0.004, "tx-1"));
+
+        verify(accountService, never()).withdrawFunds(anyInt(), anyDouble());
+        ArgumentCaptor<OutboxMessage> message = ArgumentCaptor.forClass(OutboxMessage.class);
+        verify(outboxService).saveMessage(message.capture());
+        MessageSchema.PaymentResult result = new Gson().fromJson(message.getValue().getPayload(), MessageSchema.PaymentResult.class);
+        assertFalse(result.success);
+        assertEquals("Payment amount must be at least 0.01", result.failureReason);
+        assertEquals(errorsBefore, errors.get());
+    }
 }